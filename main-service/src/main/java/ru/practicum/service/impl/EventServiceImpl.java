@@ -27,6 +27,7 @@ import ru.practicum.dto.request.EventRequestStatusUpdateResult;
 import ru.practicum.dto.request.ParticipationRequestDto;
 import ru.practicum.ewm.StatsClient;
 import ru.practicum.ewm.dto.StatsDto;
+import ru.practicum.ewm.dto.UriWindowDto;
 import ru.practicum.exception.ConflictException;
 import ru.practicum.exception.NotFoundException;
 import ru.practicum.exception.ValidationException;
@@ -417,21 +418,15 @@ public class EventServiceImpl implements EventService {
     }
 
     private Map<Long, Long> getViewsAllEvents(List<Event> events) {
-        List<String> uris = events.stream()
-                .map(event -> String.format("/events/%s", event.getId()))
+        // Просмотры каждого события считаются с момента его создания
+        List<UriWindowDto> windows = events.stream()
+                .filter(event -> event.getCreatedOn() != null)
+                .map(event -> new UriWindowDto(String.format("/events/%s", event.getId()), event.getCreatedOn()))
                 .collect(Collectors.toList());
-
-        List<LocalDateTime> startDates = events.stream()
-                .map(Event::getCreatedOn)
-                .toList();
-        LocalDateTime earliestDate = startDates.stream()
-                .min(LocalDateTime::compareTo)
-                .orElse(null);
         Map<Long, Long> viewStatsMap = new HashMap<>();
 
-        if (earliestDate != null) {
-            ResponseEntity<Object> response = statsClient.getStats(earliestDate, LocalDateTime.now(),
-                    uris, true);
+        if (!windows.isEmpty()) {
+            ResponseEntity<Object> response = statsClient.getStatsSince(windows, true);
 
             List<StatsDto> viewStatsList = objectMapper.convertValue(response.getBody(), new TypeReference<>() {
             });
@@ -440,7 +435,8 @@ public class EventServiceImpl implements EventService {
                     .filter(statsDto -> statsDto.getUri().startsWith("/events/"))
                     .collect(Collectors.toMap(
                             statsDto -> Long.parseLong(statsDto.getUri().substring("/events/".length())),
-                            StatsDto::getHits
+                            StatsDto::getHits,
+                            Long::sum
                     ));
         }
         return viewStatsMap;
@@ -0,0 +1,132 @@
+package ru.practicum.ewm.bench;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.model.Hit;
+import ru.practicum.ewm.repository.BackfillRepository;
+import ru.practicum.ewm.repository.CompactionRepository;
+import ru.practicum.ewm.repository.DatabaseDialect;
+import ru.practicum.ewm.repository.DictionaryRepository;
+import ru.practicum.ewm.repository.HitBatchRepository;
+import ru.practicum.ewm.repository.HitQueryRepository;
+import ru.practicum.ewm.repository.RollupRepository;
+import ru.practicum.ewm.repository.SketchRepository;
+import ru.practicum.ewm.repository.UriFilterBuilder;
+import ru.practicum.ewm.service.CompactionWatermark;
+import ru.practicum.ewm.service.DictionaryService;
+import ru.practicum.ewm.service.RollupService;
+import ru.practicum.ewm.service.SketchService;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Встроенная H2 в файле со схемой сервера и теми же репозиториями и сервисами, что и в приложении, без контекста
+// Spring. JMH повторяет подготовку для каждого бенчмарка и параметра, поэтому заполненная база переиспользуется:
+// данные генерируются заново, только если число строк в ней не совпадает с запрошенным
+class BenchDatabase implements AutoCloseable {
+    static final String APP = "ewm-main-service";
+    static final LocalDateTime END = LocalDateTime.of(2024, 7, 1, 0, 0);
+    static final int DAYS = 30;
+
+    private static final int CHUNK = 10_000;
+    private static final int IP_POOL = 100_000;
+
+    final HikariDataSource dataSource;
+    final JdbcTemplate jdbcTemplate;
+    final DictionaryService dictionaryService;
+    final HitQueryRepository hitQueryRepository;
+    final RollupRepository rollupRepository;
+    final RollupService rollupService;
+    final SketchService sketchService;
+
+    private final HitBatchRepository hitBatchRepository;
+
+    BenchDatabase(String name) {
+        Path file = Path.of(System.getProperty("java.io.tmpdir"), "ewm-bench", name);
+        dataSource = new HikariDataSource();
+        // Без кэша команд: H2 вернула бы повторному запросу с теми же параметрами прошлый результат,
+        // и замер показал бы не выполнение запроса, а обращение к кэшу
+        dataSource.setJdbcUrl("jdbc:h2:file:" + file.toAbsolutePath() + ";MODE=PostgreSQL;QUERY_CACHE_SIZE=0");
+        dataSource.setUsername("sa");
+        dataSource.setMaximumPoolSize(4);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DatabaseDialect dialect = new DatabaseDialect(jdbcTemplate);
+        UriFilterBuilder uriFilterBuilder = new UriFilterBuilder(32);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        // Уплотнения в тестовых данных нет: граница не загружается и остаётся пустой
+        CompactionWatermark compactionWatermark = new CompactionWatermark(new CompactionRepository(jdbcTemplate,
+                dialect));
+        dictionaryService = new DictionaryService(new DictionaryRepository(jdbcTemplate, dialect));
+        hitQueryRepository = new HitQueryRepository(jdbcTemplate, dialect, uriFilterBuilder, 10_000);
+        rollupRepository = new RollupRepository(jdbcTemplate, dialect, uriFilterBuilder);
+        hitBatchRepository = new HitBatchRepository(jdbcTemplate, 500);
+        BackfillRepository backfillRepository = new BackfillRepository(jdbcTemplate);
+        rollupService = new RollupService(rollupRepository, null, hitQueryRepository, backfillRepository,
+                transactionTemplate, compactionWatermark, true);
+        sketchService = new SketchService(new SketchRepository(jdbcTemplate, dialect, uriFilterBuilder), null,
+                hitQueryRepository, backfillRepository, transactionTemplate, compactionWatermark, true);
+    }
+
+    // Схема сервера без заполнения
+    void createSchema() {
+        try (Connection connection = dataSource.getConnection()) {
+            ScriptUtils.executeSqlScript(connection, new ClassPathResource("schema-h2.sql"));
+            ScriptUtils.executeSqlScript(connection, new ClassPathResource("schema.sql"));
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // hits запросов за DAYS суток до END по uris uri; популярность uri убывает степенным законом
+    void seed(int hits, int uris) {
+        createSchema();
+        Long existing = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM stats", Long.class);
+        if (existing != null && existing == hits) {
+            return;
+        }
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+        createSchema();
+        System.out.printf("%nЗаполнение H2: %d запросов по %d uri%n", hits, uris);
+        long started = System.currentTimeMillis();
+        Random random = new Random(42);
+        int appId = dictionaryService.appId(APP);
+        int[] uriIds = new int[uris];
+        for (int i = 0; i < uris; i++) {
+            uriIds[i] = dictionaryService.uriId("/events/" + i);
+        }
+        int[] ips = new int[IP_POOL];
+        for (int i = 0; i < IP_POOL; i++) {
+            ips[i] = random.nextInt();
+        }
+        long seconds = DAYS * 24L * 3600;
+        LocalDateTime start = END.minusDays(DAYS);
+        for (int done = 0; done < hits; done += CHUNK) {
+            List<Hit> chunk = new ArrayList<>(CHUNK);
+            for (int i = 0; i < Math.min(CHUNK, hits - done); i++) {
+                int uri = (int) (Math.pow(random.nextDouble(), 3) * uris);
+                chunk.add(new Hit(null, null, null, null, start.plusSeconds((long) (random.nextDouble() * seconds)),
+                        appId, uriIds[uri], ips[random.nextInt(IP_POOL)], null, 1));
+            }
+            hitBatchRepository.saveAll(chunk);
+            // Вне транзакции скетчи пополняются сразу, как после коммита записи
+            sketchService.onHitsSaved(chunk);
+        }
+        sketchService.flush();
+        rollupRepository.rebuild();
+        System.out.printf("Заполнение H2 заняло %d с%n", (System.currentTimeMillis() - started) / 1000);
+    }
+
+    @Override
+    public void close() {
+        dataSource.close();
+    }
+}
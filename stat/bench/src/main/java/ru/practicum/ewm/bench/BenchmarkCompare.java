@@ -0,0 +1,90 @@
+package ru.practicum.ewm.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Сравнение двух результатов BenchmarkMain (JSON JMH) по одним и тем же бенчмаркам и параметрам:
+// java -cp benchmarks.jar ru.practicum.ewm.bench.BenchmarkCompare jmh-<база>.json jmh-<новый>.json [порог, %]
+// Регрессия - ухудшение больше порога (по умолчанию 10%), при котором интервалы score ± error не пересекаются.
+// Код выхода 1, если найдена хотя бы одна регрессия; бенчмарки, которых нет в одном из файлов, только выводятся
+public class BenchmarkCompare {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Использование: BenchmarkCompare <база.json> <новый.json> [порог, %]");
+            System.exit(2);
+        }
+        double threshold = args.length == 3 ? Double.parseDouble(args[2]) / 100 : 0.1;
+        Map<String, Result> base = read(Path.of(args[0]));
+        Map<String, Result> current = read(Path.of(args[1]));
+
+        int regressions = 0;
+        for (Map.Entry<String, Result> entry : current.entrySet()) {
+            Result before = base.get(entry.getKey());
+            Result after = entry.getValue();
+            if (before == null) {
+                System.out.printf(Locale.ROOT, "%-90s %14s %12.3f %s  новый%n", entry.getKey(), "",
+                        after.score(), after.unit());
+                continue;
+            }
+            // Для режимов среднего времени меньше - лучше, для пропускной способности - больше
+            double change = after.score() / before.score() - 1;
+            double worse = after.higherIsBetter() ? -change : change;
+            boolean separated = after.higherIsBetter()
+                    ? after.score() + after.error() < before.score() - before.error()
+                    : after.score() - after.error() > before.score() + before.error();
+            boolean regression = worse > threshold && separated;
+            if (regression) {
+                regressions++;
+            }
+            System.out.printf(Locale.ROOT, "%-90s %12.3f → %12.3f %s %+7.1f%%%s%n", entry.getKey(), before.score(),
+                    after.score(), after.unit(), change * 100, regression ? "  РЕГРЕССИЯ" : "");
+        }
+        base.keySet().stream().filter(key -> !current.containsKey(key))
+                .forEach(key -> System.out.printf("%-90s  нет в новом результате%n", key));
+
+        System.out.printf(Locale.ROOT, "Сравнено %d, регрессий больше %.0f%%: %d%n",
+                current.keySet().stream().filter(base::containsKey).count(), threshold * 100, regressions);
+        if (regressions > 0) {
+            System.exit(1);
+        }
+    }
+
+    // Ключ - имя бенчмарка, режим и параметры в порядке имён
+    private static Map<String, Result> read(Path file) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (JsonNode run : MAPPER.readTree(file.toFile())) {
+            StringBuilder key = new StringBuilder(run.get("benchmark").asText()
+                    .replace("ru.practicum.ewm.bench.", ""));
+            String mode = run.get("mode").asText();
+            key.append(" [").append(mode);
+            JsonNode params = run.get("params");
+            if (params != null) {
+                Map<String, String> sorted = new TreeMap<>();
+                for (Iterator<Map.Entry<String, JsonNode>> it = params.fields(); it.hasNext(); ) {
+                    Map.Entry<String, JsonNode> param = it.next();
+                    sorted.put(param.getKey(), param.getValue().asText());
+                }
+                sorted.forEach((name, value) -> key.append(", ").append(name).append('=').append(value));
+            }
+            key.append(']');
+            JsonNode metric = run.get("primaryMetric");
+            double error = metric.get("scoreError").asDouble();
+            results.put(key.toString(), new Result(metric.get("score").asDouble(),
+                    Double.isNaN(error) ? 0 : error, metric.get("scoreUnit").asText(), "thrpt".equals(mode)));
+        }
+        return results;
+    }
+
+    private record Result(double score, double error, String unit, boolean higherIsBetter) {
+    }
+}
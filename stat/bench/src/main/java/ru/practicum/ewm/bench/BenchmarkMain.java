@@ -0,0 +1,46 @@
+package ru.practicum.ewm.bench;
+
+import org.openjdk.jmh.Main;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Запуск JMH с результатами в JSON: по умолчанию jmh-<коммит>.json в текущем каталоге, чтобы файлы двух
+// коммитов можно сравнить через BenchmarkCompare. Аргументы JMH передаются как есть, -rf и -rff отменяют
+// значения по умолчанию
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (!options.contains("-rf")) {
+            options.addAll(List.of("-rf", "json"));
+            if (!options.contains("-rff")) {
+                options.addAll(List.of("-rff", "jmh-" + revision() + ".json"));
+            }
+        }
+        Main.main(options.toArray(new String[0]));
+    }
+
+    // Короткий хеш текущего коммита, а вне git-репозитория - время запуска
+    private static String revision() {
+        try {
+            Process git = new ProcessBuilder("git", "rev-parse", "--short", "HEAD").redirectErrorStream(true).start();
+            try (InputStream out = git.getInputStream()) {
+                String hash = new String(out.readAllBytes(), StandardCharsets.UTF_8).trim();
+                if (git.waitFor() == 0 && !hash.isEmpty()) {
+                    return hash;
+                }
+            }
+        } catch (IOException e) {
+            // git недоступен
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+    }
+}
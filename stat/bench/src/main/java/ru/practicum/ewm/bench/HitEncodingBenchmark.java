@@ -0,0 +1,106 @@
+package ru.practicum.ewm.bench;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.practicum.ewm.codec.HitBinaryCodec;
+import ru.practicum.ewm.dto.HitDto;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Время на один запрос при кодировании и разборе пакета HitDto в JSON и в HitBinaryCodec.
+// Размер на один запрос печатается при подготовке: batch=1 - /hit, batch=100 - /hit/batch
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HitEncodingBenchmark {
+    private static final int MAX_BATCH = 100;
+    private static final TypeReference<List<HitDto>> HIT_LIST = new TypeReference<>() {
+    };
+
+    @Param({"1", "100"})
+    private int batch;
+
+    private final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private List<HitDto> hits;
+    private byte[] json;
+    private byte[] binary;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        LocalDateTime start = LocalDateTime.of(2024, 7, 1, 12, 0);
+        hits = new ArrayList<>();
+        for (int i = 0; i < batch; i++) {
+            hits.add(HitDto.builder()
+                    .app("ewm-main-service")
+                    .uri("/events/" + (i % 20))
+                    .ip("192.168." + (i % 7) + "." + (i % 250 + 1))
+                    .timestamp(start.plusSeconds(i * 3L))
+                    .build());
+        }
+        json = mapper.writeValueAsBytes(hits);
+        binary = HitBinaryCodec.encode(hits);
+        System.out.printf("%nbatch=%d: JSON %.1f байт на запрос, двоичный %.1f байт на запрос%n",
+                batch, (double) json.length / batch, (double) binary.length / batch);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MAX_BATCH)
+    public byte[] jsonEncode() throws JsonProcessingException {
+        byte[] result = null;
+        for (int i = 0; i < MAX_BATCH / batch; i++) {
+            result = mapper.writeValueAsBytes(hits);
+        }
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MAX_BATCH)
+    public List<HitDto> jsonDecode() throws IOException {
+        List<HitDto> result = null;
+        for (int i = 0; i < MAX_BATCH / batch; i++) {
+            result = mapper.readValue(json, HIT_LIST);
+        }
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MAX_BATCH)
+    public byte[] binaryEncode() {
+        byte[] result = null;
+        for (int i = 0; i < MAX_BATCH / batch; i++) {
+            result = HitBinaryCodec.encode(hits);
+        }
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MAX_BATCH)
+    public List<HitDto> binaryDecode() {
+        List<HitDto> result = null;
+        for (int i = 0; i < MAX_BATCH / batch; i++) {
+            result = HitBinaryCodec.decode(binary);
+        }
+        return result;
+    }
+}
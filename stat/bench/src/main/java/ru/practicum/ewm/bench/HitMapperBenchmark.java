@@ -0,0 +1,55 @@
+package ru.practicum.ewm.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.practicum.ewm.dto.HitDto;
+import ru.practicum.ewm.mapper.HitMapper;
+import ru.practicum.ewm.model.Hit;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+// Время преобразования одного запроса HitDto -> Hit (с разбором IP) и обратно
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HitMapperBenchmark {
+    @Param({"192.168.12.34", "2001:db8:85a3::8a2e:370:7334", "::ffff:10.0.0.1"})
+    private String ip;
+
+    private HitDto dto;
+    private Hit hit;
+
+    @Setup
+    public void setUp() {
+        dto = HitDto.builder()
+                .app("ewm-main-service")
+                .uri("/events/42")
+                .ip(ip)
+                .timestamp(LocalDateTime.of(2024, 7, 1, 12, 0, 5))
+                .build();
+        hit = HitMapper.mapFromDto(dto);
+    }
+
+    @Benchmark
+    public Hit mapFromDto() {
+        return HitMapper.mapFromDto(dto);
+    }
+
+    @Benchmark
+    public HitDto mapToDto() {
+        return HitMapper.mapToDto(hit);
+    }
+}
@@ -0,0 +1,80 @@
+package ru.practicum.ewm.bench;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.practicum.ewm.dto.StatsDto;
+import ru.practicum.ewm.model.StatsKey;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// Сборка ответа /stats из подсчитанных строк, как в конце StatsServiceImpl.getStats: имена app и uri
+// из кэша справочников, сортировка по убыванию просмотров; отдельно - сериализация ответа в JSON
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatsConversionBenchmark {
+    @Param({"10", "1000"})
+    private int rows;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private BenchDatabase database;
+    private Map<StatsKey, Long> counts;
+    private List<StatsDto> response;
+
+    @Setup
+    public void setUp() {
+        database = new BenchDatabase("dictionary");
+        database.createSchema();
+        Random random = new Random(42);
+        int appId = database.dictionaryService.appId(BenchDatabase.APP);
+        counts = new HashMap<>();
+        for (int i = 0; i < rows; i++) {
+            counts.put(new StatsKey(appId, database.dictionaryService.uriId("/events/" + i)),
+                    (long) random.nextInt(1_000_000));
+        }
+        response = convert();
+    }
+
+    @TearDown
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public List<StatsDto> toStatsDto() {
+        return convert();
+    }
+
+    @Benchmark
+    public byte[] toJson() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(response);
+    }
+
+    private List<StatsDto> convert() {
+        return counts.entrySet().stream()
+                .map(entry -> database.dictionaryService.toStatsDto(entry.getKey(), entry.getValue()))
+                .sorted(Comparator.comparing(StatsDto::getHits).reversed())
+                .collect(Collectors.toList());
+    }
+}
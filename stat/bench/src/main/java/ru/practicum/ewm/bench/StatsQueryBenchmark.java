@@ -0,0 +1,93 @@
+package ru.practicum.ewm.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.practicum.ewm.model.StatsKey;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+// Подсчёт /stats за окно в hours часов тремя путями: по сырым строкам, по агрегатам с сырыми краями окна
+// и по скетчам HyperLogLog (уникальные). Начало окна не выровнено по минуте, как у обычного запроса.
+// Размер данных: -p hits=5000000 -p uris=1000; база H2 сохраняется между запусками в java.io.tmpdir
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatsQueryBenchmark {
+    @Param({"1000000"})
+    private int hits;
+
+    @Param({"200"})
+    private int uris;
+
+    @Param({"1", "24", "168"})
+    private int hours;
+
+    // Все uri либо десять самых популярных
+    @Param({"all", "top10"})
+    private String filter;
+
+    private BenchDatabase database;
+    private LocalDateTime start;
+    private LocalDateTime end;
+    private List<Integer> uriIds;
+
+    @Setup
+    public void setUp() {
+        database = new BenchDatabase("stats-" + hits + "-" + uris);
+        database.seed(hits, uris);
+        end = BenchDatabase.END.minusHours(1).plusSeconds(37);
+        start = end.minusHours(hours).minusMinutes(17);
+        uriIds = "all".equals(filter) ? null : database.dictionaryService.findUriIds(
+                IntStream.range(0, 10).mapToObj(i -> "/events/" + i).toList());
+    }
+
+    @TearDown
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public Map<StatsKey, Long> rawHits() {
+        return raw(false);
+    }
+
+    @Benchmark
+    public Map<StatsKey, Long> rollupHits() {
+        return database.rollupService.countHits(start, end, uriIds);
+    }
+
+    @Benchmark
+    public Map<StatsKey, Long> rawUnique() {
+        return raw(true);
+    }
+
+    @Benchmark
+    public Map<StatsKey, Long> sketchUnique() {
+        return database.sketchService.countUnique(start, end, uriIds);
+    }
+
+    private Map<StatsKey, Long> raw(boolean unique) {
+        Map<StatsKey, Long> counts = new HashMap<>();
+        database.hitQueryRepository.count(start, end, uriIds, unique,
+                rs -> counts.put(new StatsKey(rs.getInt(1), rs.getInt(2)), rs.getLong(3)));
+        return counts;
+    }
+}
@@ -20,15 +20,25 @@ public class BaseClient {
     }
 
     protected <T> ResponseEntity<Object> post(T body) {
-        return makeAndSendRequest(HttpMethod.POST, "/hit", null, body);
+        return post("/hit", body);
+    }
+
+    protected <T> ResponseEntity<Object> post(String path, T body) {
+        return makeAndSendRequest(HttpMethod.POST, path, null, body, defaultHeaders());
+    }
+
+    protected ResponseEntity<Object> post(String path, byte[] body, MediaType contentType) {
+        HttpHeaders headers = defaultHeaders();
+        headers.setContentType(contentType);
+        return makeAndSendRequest(HttpMethod.POST, path, null, body, headers);
     }
 
     protected <T> ResponseEntity<Object> get(String path, @Nullable Map<String, Object> parameters) {
-        return makeAndSendRequest(HttpMethod.GET, path, parameters, null);
+        return makeAndSendRequest(HttpMethod.GET, path, parameters, null, defaultHeaders());
     }
 
-    private <T> ResponseEntity<Object> makeAndSendRequest(HttpMethod method, String path, @Nullable Map<String, Object> parameters, @Nullable T body) {
-        HttpEntity<T> requestEntity = new HttpEntity<>(body, defaultHeaders());
+    private <T> ResponseEntity<Object> makeAndSendRequest(HttpMethod method, String path, @Nullable Map<String, Object> parameters, @Nullable T body, HttpHeaders headers) {
+        HttpEntity<T> requestEntity = new HttpEntity<>(body, headers);
 
         ResponseEntity<Object> exploreWithMeServerResponse;
         try {
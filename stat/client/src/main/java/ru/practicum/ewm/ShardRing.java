@@ -0,0 +1,100 @@
+package ru.practicum.ewm;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+// Кольцо согласованного хеширования: каждый шард занимает virtualNodes точек, uri принадлежит шарду первой
+// точки не меньше хеша uri (по кругу). При добавлении или удалении шарда меняют владельца только дуги,
+// примыкающие к точкам этого шарда, - около 1/N ключей
+public class ShardRing {
+    private final List<String> shards;
+    private final long[] points;
+    private final String[] owners;
+
+    public ShardRing(List<String> shards, int virtualNodes) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("Список шардов не может быть пустым");
+        }
+        this.shards = List.copyOf(shards);
+        long[][] nodes = new long[shards.size() * virtualNodes][];
+        for (int shard = 0; shard < shards.size(); shard++) {
+            for (int node = 0; node < virtualNodes; node++) {
+                nodes[shard * virtualNodes + node] = new long[]{hash(shards.get(shard) + "#" + node), shard};
+            }
+        }
+        Arrays.sort(nodes, (a, b) -> Long.compare(a[0], b[0]));
+        points = new long[nodes.length];
+        owners = new String[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            points[i] = nodes[i][0];
+            owners[i] = shards.get((int) nodes[i][1]);
+        }
+    }
+
+    public List<String> getShards() {
+        return shards;
+    }
+
+    public String owner(String uri) {
+        return ownerOf(hash(uri));
+    }
+
+    // Дуги кольца, которые при переходе к next меняют владельца. Границы дуг - объединение точек обоих колец,
+    // поэтому внутри каждой дуги владелец постоянен в обоих кольцах
+    public List<Move> plan(ShardRing next) {
+        TreeSet<Long> bounds = new TreeSet<>();
+        Arrays.stream(points).forEach(bounds::add);
+        Arrays.stream(next.points).forEach(bounds::add);
+        List<Move> moves = new ArrayList<>();
+        long from = bounds.last();
+        for (long to : bounds) {
+            String source = ownerOf(to);
+            String target = next.ownerOf(to);
+            if (!source.equals(target)) {
+                Move last = moves.isEmpty() ? null : moves.get(moves.size() - 1);
+                if (last != null && last.to() == from && last.source().equals(source) && last.target().equals(target)) {
+                    moves.set(moves.size() - 1, new Move(last.from(), to, source, target));
+                } else {
+                    moves.add(new Move(from, to, source, target));
+                }
+            }
+            from = to;
+        }
+        return moves;
+    }
+
+    // 64-битный FNV-1a с финализатором MurmurHash3: одинаков у всех клиентов и не зависит от String.hashCode
+    public static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private String ownerOf(long hash) {
+        int index = Arrays.binarySearch(points, hash);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    // Ключи с хешем в (from, to] переезжают с source на target; дуга через конец кольца имеет from > to
+    public record Move(long from, long to, String source, String target) {
+        // Доля всего пространства ключей
+        public double share() {
+            double length = (double) (to - from);
+            return (length < 0 ? length + 0x1p64 : length) / 0x1p64;
+        }
+    }
+}
@@ -1,29 +1,87 @@
 package ru.practicum.ewm;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.util.DefaultUriBuilderFactory;
+import ru.practicum.ewm.codec.HitBinaryCodec;
+import ru.practicum.ewm.dto.CounterDto;
 import ru.practicum.ewm.dto.HitDto;
+import ru.practicum.ewm.dto.SketchDto;
+import ru.practicum.ewm.dto.StatsDto;
+import ru.practicum.ewm.dto.StatsQueryDto;
+import ru.practicum.ewm.dto.UriWindowDto;
+import ru.practicum.ewm.sketch.HyperLogLog;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.function.BiFunction;
 
+// Запросы записываются на шард, владеющий uri в кольце stats-server.shards. Чтение идёт на шарды запрошенных
+// uri, а на время перебалансировки (stats-server.previous-shards) - ещё и на прежних владельцев. Просмотры
+// одного (app, uri) с разных шардов складываются, уникальные - объединением скетчей HyperLogLog
 @Component
+@Slf4j
 public class StatsClient extends BaseClient {
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final MediaType BINARY_HITS = MediaType.parseMediaType(HitBinaryCodec.MEDIA_TYPE);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final TypeReference<List<StatsDto>> STATS_LIST = new TypeReference<>() {
+    };
+    private static final TypeReference<List<SketchDto>> SKETCH_LIST = new TypeReference<>() {
+    };
+    private static final TypeReference<List<CounterDto>> COUNTER_LIST = new TypeReference<>() {
+    };
+
+    // Запросы отправляются в двоичном виде HitBinaryCodec вместо JSON; сервер должен его поддерживать
+    private final boolean binaryHits;
+    private final ShardRing ring;
+    private final ShardRing previousRing;
 
     public StatsClient(@Value("${stats-server.url:http://localhost:9090}") String serverUrl,
+                       @Value("${stats-server.binary-hits:false}") boolean binaryHits,
+                       @Value("${stats-server.shards:}") String shards,
+                       @Value("${stats-server.previous-shards:}") String previousShards,
+                       @Value("${stats-server.virtual-nodes:160}") int virtualNodes,
                        RestTemplateBuilder builder) {
         super(
                 builder
                         .uriTemplateHandler(new DefaultUriBuilderFactory(serverUrl))
                         .build()
         );
+        this.binaryHits = binaryHits;
+        List<String> current = parseShards(shards);
+        this.ring = new ShardRing(current.isEmpty() ? List.of(serverUrl) : current, virtualNodes);
+        List<String> previous = parseShards(previousShards);
+        this.previousRing = previous.isEmpty() ? null : new ShardRing(previous, virtualNodes);
+        if (previousRing != null) {
+            List<ShardRing.Move> plan = getRebalancePlan();
+            log.info("Перебалансировка шардов {} -> {}: меняют владельца {}% ключей, дуг: {}",
+                    previousRing.getShards(), ring.getShards(),
+                    String.format("%.1f", plan.stream().mapToDouble(ShardRing.Move::share).sum() * 100), plan.size());
+        }
+    }
+
+    // Дуги кольца, ключи которых переезжают с прежних шардов на новые; пусто, если перебалансировки нет
+    public List<ShardRing.Move> getRebalancePlan() {
+        return previousRing == null ? List.of() : previousRing.plan(ring);
     }
 
     public ResponseEntity<Object> saveHit(String app, String uri, String ip) {
@@ -33,31 +91,279 @@ public class StatsClient extends BaseClient {
                 .ip(ip)
                 .timestamp(LocalDateTime.now())
                 .build();
-        return post(hit);
+        return saveHit(hit);
+    }
+
+    // Пакет делится по шардам; при ошибке на одном из шардов возвращается его ответ,
+    // а части пакета, уже принятые другими шардами, остаются сохранёнными
+    public ResponseEntity<Object> saveHits(List<HitDto> hits) {
+        Map<String, List<HitDto>> byShard = new LinkedHashMap<>();
+        for (HitDto hit : hits) {
+            byShard.computeIfAbsent(owner(hit == null ? null : hit.getUri()), shard -> new ArrayList<>()).add(hit);
+        }
+        if (byShard.isEmpty()) {
+            byShard.put(ring.getShards().get(0), hits);
+        }
+        ResponseEntity<Object> response = null;
+        for (Map.Entry<String, List<HitDto>> entry : byShard.entrySet()) {
+            String path = entry.getKey() + "/hit/batch";
+            response = binaryHits
+                    ? post(path, HitBinaryCodec.encode(entry.getValue()), BINARY_HITS)
+                    : post(path, entry.getValue());
+            if (!response.getStatusCode().is2xxSuccessful()) {
+                return response;
+            }
+        }
+        return response;
     }
 
     public ResponseEntity<Object> getStats(LocalDateTime start, LocalDateTime end,
                                            List<String> uris, Boolean unique) {
+        boolean isUnique = unique != null ? unique : false;
+        Map<String, List<String>> targets = targets(uris);
+        if (targets.size() == 1) {
+            Map.Entry<String, List<String>> target = targets.entrySet().iterator().next();
+            return getShardStats(target.getKey(), start, end, target.getValue(), isUnique);
+        }
+        Map<String, ResponseEntity<Object>> responses = new LinkedHashMap<>();
+        targets.forEach((shard, shardUris) -> responses.put(shard,
+                getShardStats(shard, start, end, shardUris, isUnique)));
+        return gather(responses, isUnique, (shard, uriNames) -> getSketches(shard, start, end, uriNames));
+    }
+
+    // Все uri одним запросом, каждый за своё окно [since, сейчас]; строка запроса не растёт с числом uri
+    public ResponseEntity<Object> getStatsSince(List<UriWindowDto> uris, Boolean unique) {
+        boolean isUnique = unique != null ? unique : false;
+        Map<String, List<UriWindowDto>> targets = new LinkedHashMap<>();
+        for (UriWindowDto window : uris) {
+            for (String shard : owners(window == null ? null : window.getUri())) {
+                targets.computeIfAbsent(shard, s -> new ArrayList<>()).add(window);
+            }
+        }
+        if (targets.size() <= 1) {
+            String shard = targets.isEmpty() ? ring.getShards().get(0) : targets.keySet().iterator().next();
+            return postQuery(shard, uris, isUnique, null);
+        }
+        // Конец окна фиксируется на клиенте, чтобы все шарды считали до одного и того же момента
+        LocalDateTime end = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        Map<String, ResponseEntity<Object>> responses = new LinkedHashMap<>();
+        targets.forEach((shard, windows) -> responses.put(shard, postQuery(shard, windows, isUnique, end)));
+        Map<String, LocalDateTime> since = new HashMap<>();
+        for (UriWindowDto window : uris) {
+            if (window != null) {
+                since.put(window.getUri(), window.getSince());
+            }
+        }
+        return gather(responses, isUnique, (shard, uriNames) -> {
+            // Окна разных uri начинаются в разное время, поэтому скетчи запрашиваются по каждому началу окна
+            Map<LocalDateTime, List<String>> byStart = new HashMap<>();
+            uriNames.forEach(uri -> byStart.computeIfAbsent(since.get(uri), s -> new ArrayList<>()).add(uri));
+            List<Object> sketches = new ArrayList<>();
+            for (Map.Entry<LocalDateTime, List<String>> entry : byStart.entrySet()) {
+                ResponseEntity<Object> response = getSketches(shard, entry.getKey(), end, entry.getValue());
+                if (!response.getStatusCode().is2xxSuccessful()) {
+                    return response;
+                }
+                sketches.addAll((List<?>) response.getBody());
+            }
+            return ResponseEntity.ok(sketches);
+        });
+    }
+
+    // Просмотры и уникальные посетители uri за всё время. Пока идёт перебалансировка, счётчики uri лежат на двух
+    // шардах: просмотры складываются, а уникальные берутся по большему из шардов и потому занижены
+    public ResponseEntity<Object> getCounters(List<String> uris) {
+        if (uris == null || uris.isEmpty()) {
+            // Запрос без uri некорректен, его отклонит любой шард
+            return getShardCounters(ring.getShards().get(0), List.of());
+        }
+        Map<String, List<String>> targets = targets(uris);
+        if (targets.size() == 1) {
+            Map.Entry<String, List<String>> target = targets.entrySet().iterator().next();
+            return getShardCounters(target.getKey(), target.getValue());
+        }
+        Map<Key, CounterDto> merged = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> target : targets.entrySet()) {
+            ResponseEntity<Object> response = getShardCounters(target.getKey(), target.getValue());
+            if (!response.getStatusCode().is2xxSuccessful()) {
+                return response;
+            }
+            for (CounterDto row : MAPPER.convertValue(response.getBody(), COUNTER_LIST)) {
+                merged.merge(new Key(row.getApp(), row.getUri()), row, (left, right) -> new CounterDto(left.getApp(),
+                        left.getUri(), left.getHits() + right.getHits(), Math.max(left.getUniques(), right.getUniques())));
+            }
+        }
+        return ResponseEntity.ok(new ArrayList<>(merged.values()));
+    }
+
+    public void postStats(HitDto hitDto) {
+        saveHit(hitDto);
+    }
+
+    private ResponseEntity<Object> saveHit(HitDto hit) {
+        String path = owner(hit.getUri()) + "/hit";
+        if (binaryHits) {
+            return post(path, HitBinaryCodec.encode(List.of(hit)), BINARY_HITS);
+        }
+        return post(path, hit);
+    }
+
+    private ResponseEntity<Object> getShardStats(String shard, LocalDateTime start, LocalDateTime end,
+                                                 List<String> uris, boolean unique) {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("start", start.format(FORMATTER));
+        parameters.put("end", end.format(FORMATTER));
+        parameters.put("unique", unique);
 
+        StringBuilder pathBuilder = new StringBuilder(shard).append("/stats?start={start}&end={end}&unique={unique}");
+        appendUris(pathBuilder, parameters, uris);
+        return get(pathBuilder.toString(), parameters);
+    }
+
+    private ResponseEntity<Object> getShardCounters(String shard, List<String> uris) {
+        Map<String, Object> parameters = new HashMap<>();
+        StringJoiner path = new StringJoiner("&", shard + "/stats/counters?", "");
+        for (int i = 0; i < uris.size(); i++) {
+            path.add("uris={uri" + i + "}");
+            parameters.put("uri" + i, uris.get(i));
+        }
+        return get(path.toString(), parameters);
+    }
+
+    private ResponseEntity<Object> getSketches(String shard, LocalDateTime start, LocalDateTime end,
+                                               List<String> uris) {
         Map<String, Object> parameters = new HashMap<>();
         parameters.put("start", start.format(FORMATTER));
         parameters.put("end", end.format(FORMATTER));
-        parameters.put("unique", unique != null ? unique : false);
 
-        StringBuilder pathBuilder = new StringBuilder("/stats?start={start}&end={end}&unique={unique}");
+        StringBuilder pathBuilder = new StringBuilder(shard).append("/stats/sketches?start={start}&end={end}");
+        appendUris(pathBuilder, parameters, uris);
+        return get(pathBuilder.toString(), parameters);
+    }
+
+    private ResponseEntity<Object> postQuery(String shard, List<UriWindowDto> windows, boolean unique,
+                                             LocalDateTime end) {
+        StatsQueryDto query = StatsQueryDto.builder()
+                .uris(windows)
+                .unique(unique)
+                .end(end)
+                .build();
+        return post(shard + "/stats/query", query);
+    }
+
+    // Ответы шардов объединяются по (app, uri). Если ключ пришёл с нескольких шардов, его уникальные
+    // просмотры нельзя сложить: у этих шардов запрашиваются скетчи, и оценка берётся по их объединению
+    private ResponseEntity<Object> gather(Map<String, ResponseEntity<Object>> responses, boolean unique,
+                                          BiFunction<String, List<String>, ResponseEntity<Object>> sketches) {
+        Map<Key, Long> totals = new HashMap<>();
+        Map<Key, List<String>> sources = new HashMap<>();
+        Set<Key> estimated = new HashSet<>();
+        for (Map.Entry<String, ResponseEntity<Object>> entry : responses.entrySet()) {
+            ResponseEntity<Object> response = entry.getValue();
+            if (!response.getStatusCode().is2xxSuccessful()) {
+                return response;
+            }
+            for (StatsDto row : MAPPER.convertValue(response.getBody(), STATS_LIST)) {
+                Key key = new Key(row.getApp(), row.getUri());
+                totals.merge(key, row.getHits(), Long::sum);
+                if (Boolean.TRUE.equals(row.getEstimated())) {
+                    estimated.add(key);
+                }
+                sources.computeIfAbsent(key, k -> new ArrayList<>()).add(entry.getKey());
+            }
+        }
+        if (unique) {
+            Map<String, Set<String>> overlapping = new LinkedHashMap<>();
+            sources.forEach((key, shards) -> {
+                if (shards.size() > 1) {
+                    shards.forEach(shard -> overlapping.computeIfAbsent(shard, s -> new LinkedHashSet<>())
+                            .add(key.uri()));
+                }
+            });
+            Map<Key, HyperLogLog> merged = new HashMap<>();
+            for (Map.Entry<String, Set<String>> entry : overlapping.entrySet()) {
+                ResponseEntity<Object> response = sketches.apply(entry.getKey(), new ArrayList<>(entry.getValue()));
+                if (!response.getStatusCode().is2xxSuccessful()) {
+                    return response;
+                }
+                for (SketchDto sketch : MAPPER.convertValue(response.getBody(), SKETCH_LIST)) {
+                    Key key = new Key(sketch.getApp(), sketch.getUri());
+                    if (sources.getOrDefault(key, List.of()).size() > 1) {
+                        merged.computeIfAbsent(key, k -> new HyperLogLog())
+                                .merge(HyperLogLog.fromBytes(sketch.getSketch()));
+                    }
+                }
+            }
+            merged.forEach((key, sketch) -> {
+                totals.put(key, sketch.estimate());
+                estimated.add(key);
+            });
+        }
+        List<StatsDto> result = new ArrayList<>();
+        totals.forEach((key, hits) -> result.add(new StatsDto(key.app(), key.uri(), hits,
+                estimated.contains(key) ? Boolean.TRUE : null)));
+        result.sort(Comparator.comparing(StatsDto::getHits).reversed());
+        return ResponseEntity.ok(result);
+    }
+
+    // Запрос без uri некорректен, его отклонит любой шард; отправляем на первый
+    private String owner(String uri) {
+        return uri == null ? ring.getShards().get(0) : ring.owner(uri);
+    }
+
+    // Шарды, на которых могут лежать запросы uri: текущий владелец и, пока идёт перебалансировка, прежний
+    private Set<String> owners(String uri) {
+        Set<String> owners = new LinkedHashSet<>();
+        owners.add(owner(uri));
+        if (previousRing != null && uri != null) {
+            owners.add(previousRing.owner(uri));
+        }
+        return owners;
+    }
+
+    private Set<String> allShards() {
+        Set<String> shards = new LinkedHashSet<>(ring.getShards());
+        if (previousRing != null) {
+            shards.addAll(previousRing.getShards());
+        }
+        return shards;
+    }
+
+    // Без фильтра по uri опрашиваются все шарды (список uri шарда - null)
+    private Map<String, List<String>> targets(List<String> uris) {
+        Map<String, List<String>> targets = new LinkedHashMap<>();
+        if (uris == null || uris.isEmpty()) {
+            allShards().forEach(shard -> targets.put(shard, null));
+            return targets;
+        }
+        for (String uri : uris) {
+            // Префикс (uri с * на конце) может совпасть с uri любого шарда
+            Set<String> owners = uri != null && uri.endsWith("*") ? allShards() : owners(uri);
+            for (String shard : owners) {
+                targets.computeIfAbsent(shard, s -> new ArrayList<>()).add(uri);
+            }
+        }
+        return targets;
+    }
 
-        // Добавляем URIs как отдельные параметры
+    // Добавляем URIs как отдельные параметры
+    private static void appendUris(StringBuilder pathBuilder, Map<String, Object> parameters, List<String> uris) {
         if (uris != null && !uris.isEmpty()) {
             for (int i = 0; i < uris.size(); i++) {
                 pathBuilder.append("&uris={uri").append(i).append("}");
                 parameters.put("uri" + i, uris.get(i));
             }
         }
+    }
 
-        return get(pathBuilder.toString(), parameters);
+    private static List<String> parseShards(String shards) {
+        return Arrays.stream(shards.split(","))
+                .map(String::trim)
+                .filter(shard -> !shard.isEmpty())
+                .map(shard -> shard.endsWith("/") ? shard.substring(0, shard.length() - 1) : shard)
+                .toList();
     }
 
-    public void postStats(HitDto hitDto) {
-        post(hitDto);
+    private record Key(String app, String uri) {
     }
-}
\ No newline at end of file
+}
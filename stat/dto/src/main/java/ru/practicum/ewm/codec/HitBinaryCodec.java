@@ -0,0 +1,166 @@
+package ru.practicum.ewm.codec;
+
+import ru.practicum.ewm.dto.HitDto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Компактное двоичное представление пакета HitDto: версия, число запросов, затем для каждого запроса
+// флаги наличия id и времени, id + 1 и время в секундах эпохи (zigzag) как varint, и строки app, uri, ip.
+// Строка кодируется varint-префиксом: 0 - та же, что у предыдущего запроса, 1 - null, n + 2 - n байт UTF-8.
+// Время не форматируется и не разбирается как строка, а повторяющиеся app и uri пакета занимают по байту
+public final class HitBinaryCodec {
+    public static final String MEDIA_TYPE = "application/x-ewm-hits";
+
+    private static final int VERSION = 1;
+    private static final int HAS_ID = 1;
+    private static final int HAS_TIMESTAMP = 2;
+    private static final int SAME = 0;
+    private static final int NULL = 1;
+
+    private HitBinaryCodec() {
+    }
+
+    public static byte[] encode(List<HitDto> hits) {
+        Writer writer = new Writer(16 + hits.size() * 48);
+        writer.writeVarint(VERSION);
+        writer.writeVarint(hits.size());
+        HitDto previous = null;
+        for (HitDto hit : hits) {
+            writer.writeVarint((hit.getId() != null ? HAS_ID : 0) | (hit.getTimestamp() != null ? HAS_TIMESTAMP : 0));
+            if (hit.getId() != null) {
+                writer.writeVarint(hit.getId() + 1);
+            }
+            if (hit.getTimestamp() != null) {
+                long seconds = hit.getTimestamp().toEpochSecond(ZoneOffset.UTC);
+                writer.writeVarint(seconds << 1 ^ seconds >> 63);
+            }
+            writer.writeString(hit.getApp(), previous == null ? null : previous.getApp(), previous != null);
+            writer.writeString(hit.getUri(), previous == null ? null : previous.getUri(), previous != null);
+            writer.writeString(hit.getIp(), previous == null ? null : previous.getIp(), previous != null);
+            previous = hit;
+        }
+        return writer.toByteArray();
+    }
+
+    public static List<HitDto> decode(byte[] bytes) {
+        Reader reader = new Reader(bytes);
+        if (reader.readVarint() != VERSION) {
+            throw new IllegalArgumentException("Неподдерживаемая версия двоичного представления запросов");
+        }
+        long count = reader.readVarint();
+        // Каждый запрос занимает не меньше 4 байт: защита от огромного count в повреждённых данных
+        if (count < 0 || count > bytes.length / 4) {
+            throw new IllegalArgumentException("Некорректное число запросов в пакете: " + count);
+        }
+        List<HitDto> hits = new ArrayList<>((int) count);
+        HitDto previous = null;
+        for (int i = 0; i < count; i++) {
+            long flags = reader.readVarint();
+            HitDto hit = new HitDto();
+            if ((flags & HAS_ID) != 0) {
+                hit.setId(reader.readVarint() - 1);
+            }
+            if ((flags & HAS_TIMESTAMP) != 0) {
+                long zigzag = reader.readVarint();
+                hit.setTimestamp(LocalDateTime.ofEpochSecond(zigzag >>> 1 ^ -(zigzag & 1), 0, ZoneOffset.UTC));
+            }
+            hit.setApp(reader.readString(previous == null ? null : previous.getApp()));
+            hit.setUri(reader.readString(previous == null ? null : previous.getUri()));
+            hit.setIp(reader.readString(previous == null ? null : previous.getIp()));
+            hits.add(hit);
+            previous = hit;
+        }
+        if (reader.position != bytes.length) {
+            throw new IllegalArgumentException("Лишние данные после пакета запросов");
+        }
+        return hits;
+    }
+
+    private static final class Writer {
+        private byte[] buffer;
+        private int size;
+
+        private Writer(int capacity) {
+            this.buffer = new byte[capacity];
+        }
+
+        private void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7fL) != 0) {
+                buffer[size++] = (byte) (value & 0x7f | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        private void writeString(String value, String previous, boolean hasPrevious) {
+            if (hasPrevious && (value == null ? previous == null : value.equals(previous))) {
+                writeVarint(SAME);
+            } else if (value == null) {
+                writeVarint(NULL);
+            } else {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                writeVarint(bytes.length + 2L);
+                ensure(bytes.length);
+                System.arraycopy(bytes, 0, buffer, size, bytes.length);
+                size += bytes.length;
+            }
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] bytes;
+        private int position;
+
+        private Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private long readVarint() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= bytes.length) {
+                    throw new IllegalArgumentException("Двоичное представление запросов оборвано");
+                }
+                byte b = bytes[position++];
+                result |= (long) (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return result;
+                }
+            }
+            throw new IllegalArgumentException("Некорректное число в двоичном представлении запросов");
+        }
+
+        private String readString(String previous) {
+            long prefix = readVarint();
+            if (prefix == SAME) {
+                return previous;
+            }
+            if (prefix == NULL) {
+                return null;
+            }
+            long length = prefix - 2;
+            if (length > bytes.length - position) {
+                throw new IllegalArgumentException("Двоичное представление запросов оборвано");
+            }
+            String value = new String(bytes, position, (int) length, StandardCharsets.UTF_8);
+            position += (int) length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package ru.practicum.ewm.codec;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Построчное чтение выгрузки HitExportWriter: в памяти только текущий блок, строки не материализуются.
+// while (reader.next()) { reader.getUri(); ... }. Если выгрузка оборвалась, next() бросает EOFException,
+// а докачка запрашивается с afterTime = getTimestamp() и afterId = getId() последней прочитанной строки
+public final class HitExportReader implements Closeable {
+    private final InputStream in;
+    private final List<String> apps = new ArrayList<>();
+    private final List<String> uris = new ArrayList<>();
+    private long[] ids = new long[0];
+    private long[] seconds = new long[0];
+    private int[] appIndexes = new int[0];
+    private int[] uriIndexes = new int[0];
+    private int[] weights = new int[0];
+    private int[] ipOffsets = new int[0];
+    private byte[] ipv6Flags = new byte[0];
+    private byte[] ips = new byte[0];
+    private long previousId;
+    private long previousSecond;
+    private int rows;
+    private int row = -1;
+    private boolean complete;
+
+    public HitExportReader(InputStream in) throws IOException {
+        this.in = in instanceof BufferedInputStream ? in : new BufferedInputStream(in);
+        byte[] magic = readBytes(HitExportWriter.MAGIC.length);
+        if (!Arrays.equals(magic, HitExportWriter.MAGIC)) {
+            throw new IOException("Поток не является выгрузкой запросов");
+        }
+        if (readVarint() != HitExportWriter.VERSION) {
+            throw new IOException("Неподдерживаемая версия выгрузки запросов");
+        }
+    }
+
+    // false - выгрузка прочитана целиком
+    public boolean next() throws IOException {
+        if (row + 1 < rows) {
+            row++;
+            return true;
+        }
+        if (complete) {
+            return false;
+        }
+        readBlock();
+        if (rows == 0) {
+            complete = true;
+            return false;
+        }
+        row = 0;
+        return true;
+    }
+
+    public long getId() {
+        return ids[row];
+    }
+
+    public LocalDateTime getTimestamp() {
+        return LocalDateTime.ofEpochSecond(seconds[row], 0, ZoneOffset.UTC);
+    }
+
+    public long getEpochSecond() {
+        return seconds[row];
+    }
+
+    public String getApp() {
+        return apps.get(appIndexes[row]);
+    }
+
+    public String getUri() {
+        return uris.get(uriIndexes[row]);
+    }
+
+    // Сколько запросов представляет строка: больше 1 для прореженных uri
+    public int getWeight() {
+        return weights[row];
+    }
+
+    public boolean isIpv6() {
+        return (ipv6Flags[row >>> 3] & 1 << (row & 7)) != 0;
+    }
+
+    // Только для IPv4: адрес как знаковое 32-битное число
+    public int getIp4() {
+        int offset = ipOffsets[row];
+        return (ips[offset] & 0xff) << 24 | (ips[offset + 1] & 0xff) << 16 | (ips[offset + 2] & 0xff) << 8
+                | ips[offset + 3] & 0xff;
+    }
+
+    // Только для IPv6: 16 байт адреса
+    public byte[] getIp6() {
+        int offset = ipOffsets[row];
+        return Arrays.copyOfRange(ips, offset, offset + 16);
+    }
+
+    public String getIp() {
+        if (!isIpv6()) {
+            int ip = getIp4();
+            return (ip >>> 24) + "." + (ip >>> 16 & 0xff) + "." + (ip >>> 8 & 0xff) + "." + (ip & 0xff);
+        }
+        try {
+            return InetAddress.getByAddress(getIp6()).getHostAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void readBlock() throws IOException {
+        long count = readVarint();
+        if (count < 0 || count > HitExportWriter.MAX_BLOCK_ROWS) {
+            throw new IOException("Некорректное число строк в блоке выгрузки: " + count);
+        }
+        rows = (int) count;
+        row = -1;
+        if (rows == 0) {
+            return;
+        }
+        readNames(apps);
+        readNames(uris);
+        ensureCapacity();
+        for (int i = 0; i < rows; i++) {
+            previousId += unzigzag(readVarint());
+            ids[i] = previousId;
+        }
+        for (int i = 0; i < rows; i++) {
+            previousSecond += unzigzag(readVarint());
+            seconds[i] = previousSecond;
+        }
+        readIndexes(appIndexes, apps.size());
+        readIndexes(uriIndexes, uris.size());
+        for (int i = 0; i < rows; i++) {
+            weights[i] = (int) readVarint();
+        }
+        int flagBytes = (rows + 7) / 8;
+        readFully(ipv6Flags, 0, flagBytes);
+        int size = 0;
+        for (int i = 0; i < rows; i++) {
+            ipOffsets[i] = size;
+            size += (ipv6Flags[i >>> 3] & 1 << (i & 7)) != 0 ? 16 : 4;
+        }
+        if (ips.length < size) {
+            ips = new byte[size];
+        }
+        readFully(ips, 0, size);
+    }
+
+    private void ensureCapacity() {
+        if (ids.length < rows) {
+            ids = new long[rows];
+            seconds = new long[rows];
+            appIndexes = new int[rows];
+            uriIndexes = new int[rows];
+            weights = new int[rows];
+            ipOffsets = new int[rows];
+            ipv6Flags = new byte[(rows + 7) / 8];
+        }
+    }
+
+    private void readNames(List<String> names) throws IOException {
+        long count = readVarint();
+        if (count < 0 || count > rows) {
+            throw new IOException("Некорректное число новых значений словаря выгрузки: " + count);
+        }
+        for (int i = 0; i < count; i++) {
+            long length = readVarint();
+            if (length < 0 || length > Integer.MAX_VALUE) {
+                throw new IOException("Некорректная длина строки в выгрузке: " + length);
+            }
+            names.add(new String(readBytes((int) length), StandardCharsets.UTF_8));
+        }
+    }
+
+    private void readIndexes(int[] target, int dictionarySize) throws IOException {
+        for (int i = 0; i < rows; i++) {
+            long index = readVarint();
+            if (index < 0 || index >= dictionarySize) {
+                throw new IOException("Ссылка за пределы словаря выгрузки: " + index);
+            }
+            target[i] = (int) index;
+        }
+    }
+
+    private long readVarint() throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Выгрузка запросов оборвана");
+            }
+            result |= (long) (b & 0x7f) << shift;
+            if (b < 0x80) {
+                return result;
+            }
+        }
+        throw new IOException("Некорректное число в выгрузке запросов");
+    }
+
+    private byte[] readBytes(int length) throws IOException {
+        byte[] bytes = new byte[length];
+        readFully(bytes, 0, length);
+        return bytes;
+    }
+
+    private void readFully(byte[] target, int offset, int length) throws IOException {
+        if (in.readNBytes(target, offset, length) < length) {
+            throw new EOFException("Выгрузка запросов оборвана");
+        }
+    }
+
+    private static long unzigzag(long value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+}
@@ -0,0 +1,169 @@
+package ru.practicum.ewm.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Выгрузка сырых запросов блоками по столбцам. Заголовок - байты EWMX и версия, затем блоки:
+// число строк (0 - конец выгрузки), новые app и uri словаря выгрузки (число, затем строки с varint-длиной),
+// столбцы id и времени в секундах эпохи (zigzag-разность с предыдущей строкой), номера app и uri в словаре, вес,
+// битовая карта IPv6 и упакованные адреса: 4 байта на IPv4, 16 на IPv6. Все числа - varint.
+// Словарь и разности продолжаются через границы блоков, поэтому читать выгрузку можно только с начала;
+// в памяти держится один блок
+public final class HitExportWriter {
+    public static final String MEDIA_TYPE = "application/x-ewm-hit-export";
+
+    static final byte[] MAGIC = {'E', 'W', 'M', 'X'};
+    static final int VERSION = 1;
+    static final int MAX_BLOCK_ROWS = 1 << 16;
+
+    private final OutputStream out;
+    private final int blockRows;
+    private final Map<String, Integer> apps = new HashMap<>();
+    private final Map<String, Integer> uris = new HashMap<>();
+    private final Column header = new Column();
+    private final Column newAppNames = new Column();
+    private final Column newUriNames = new Column();
+    private final Column ids = new Column();
+    private final Column times = new Column();
+    private final Column appIndexes = new Column();
+    private final Column uriIndexes = new Column();
+    private final Column weights = new Column();
+    private final Column ips = new Column();
+    private final byte[] ipv6Flags;
+    private int knownApps;
+    private int knownUris;
+    private int rows;
+    private long previousId;
+    private long previousSecond;
+
+    public HitExportWriter(OutputStream out, int blockRows) throws IOException {
+        if (blockRows < 1 || blockRows > MAX_BLOCK_ROWS) {
+            throw new IllegalArgumentException("Размер блока должен быть от 1 до " + MAX_BLOCK_ROWS);
+        }
+        this.out = out;
+        this.blockRows = blockRows;
+        this.ipv6Flags = new byte[(blockRows + 7) / 8];
+        out.write(MAGIC);
+        header.writeVarint(VERSION);
+        header.writeTo(out);
+    }
+
+    // Заполнен ровно один из адресов: ip4 (как знаковое 32-битное число) либо ip6
+    public void write(long id, LocalDateTime timestamp, String app, String uri, Integer ip4, byte[] ip6, int weight)
+            throws IOException {
+        long second = timestamp.toEpochSecond(ZoneOffset.UTC);
+        ids.writeZigzag(id - previousId);
+        times.writeZigzag(second - previousSecond);
+        previousId = id;
+        previousSecond = second;
+        appIndexes.writeVarint(index(apps, app, newAppNames));
+        uriIndexes.writeVarint(index(uris, uri, newUriNames));
+        weights.writeVarint(weight);
+        if (ip4 != null) {
+            ips.writeInt(ip4);
+        } else {
+            ipv6Flags[rows >>> 3] |= (byte) (1 << (rows & 7));
+            ips.writeBytes(ip6);
+        }
+        if (++rows == blockRows) {
+            flushBlock();
+        }
+    }
+
+    // Дописывает неполный блок и признак конца; без него читатель считает выгрузку оборванной
+    public void finish() throws IOException {
+        flushBlock();
+        header.writeVarint(0);
+        header.writeTo(out);
+        out.flush();
+    }
+
+    private static int index(Map<String, Integer> values, String value, Column newNames) {
+        Integer index = values.get(value);
+        if (index == null) {
+            index = values.size();
+            values.put(value, index);
+            newNames.writeString(value);
+        }
+        return index;
+    }
+
+    private void flushBlock() throws IOException {
+        if (rows == 0) {
+            return;
+        }
+        header.writeVarint(rows);
+        header.writeVarint(apps.size() - knownApps);
+        header.writeTo(out);
+        newAppNames.writeTo(out);
+        header.writeVarint(uris.size() - knownUris);
+        header.writeTo(out);
+        newUriNames.writeTo(out);
+        ids.writeTo(out);
+        times.writeTo(out);
+        appIndexes.writeTo(out);
+        uriIndexes.writeTo(out);
+        weights.writeTo(out);
+        out.write(ipv6Flags, 0, (rows + 7) / 8);
+        ips.writeTo(out);
+        Arrays.fill(ipv6Flags, (byte) 0);
+        knownApps = apps.size();
+        knownUris = uris.size();
+        rows = 0;
+    }
+
+    private static final class Column {
+        private byte[] buffer = new byte[256];
+        private int size;
+
+        private void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7fL) != 0) {
+                buffer[size++] = (byte) (value & 0x7f | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        private void writeZigzag(long value) {
+            writeVarint(value << 1 ^ value >> 63);
+        }
+
+        private void writeInt(int value) {
+            ensure(4);
+            buffer[size++] = (byte) (value >>> 24);
+            buffer[size++] = (byte) (value >>> 16);
+            buffer[size++] = (byte) (value >>> 8);
+            buffer[size++] = (byte) value;
+        }
+
+        private void writeBytes(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        private void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            writeBytes(bytes);
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+
+        private void writeTo(OutputStream out) throws IOException {
+            out.write(buffer, 0, size);
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package ru.practicum.ewm.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Просмотры uri за всё время и оценка числа уникальных посетителей
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CounterDto {
+    private String app;
+    private String uri;
+    private Long hits;
+    private Long uniques;
+}
@@ -27,7 +27,7 @@ public class HitDto {
     private String uri;
 
     @NotBlank(message = "IP не может быть пустым")
-    @Size(max = 16)
+    @Size(max = 45)
     private String ip;
 
     @NotNull
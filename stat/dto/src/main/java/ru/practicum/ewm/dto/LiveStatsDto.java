@@ -0,0 +1,17 @@
+package ru.practicum.ewm.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Просмотры за последние 1, 5 и 60 минут
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LiveStatsDto {
+    private String app;
+    private String uri;
+    private Long lastMinute;
+    private Long lastFiveMinutes;
+    private Long lastHour;
+}
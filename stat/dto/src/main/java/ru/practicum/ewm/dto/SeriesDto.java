@@ -0,0 +1,16 @@
+package ru.practicum.ewm.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Ряд хранится по столбцам и только для непустых интервалов: hits[k] относится к интервалу с номером index[k]
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SeriesDto {
+    private String app;
+    private String uri;
+    private int[] index;
+    private long[] hits;
+}
@@ -0,0 +1,15 @@
+package ru.practicum.ewm.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Скетч уникальных посетителей (HyperLogLog.toBytes) за окно; в JSON передаётся в base64
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SketchDto {
+    private String app;
+    private String uri;
+    private byte[] sketch;
+}
@@ -1,5 +1,6 @@
 package ru.practicum.ewm.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -11,4 +12,11 @@ public class StatsDto {
     private String app;
     private String uri;
     private Long hits;
+    // true - число оценено по скетчам уникальных посетителей или по прореженным сырым строкам; у точных не передаётся
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean estimated;
+
+    public StatsDto(String app, String uri, Long hits) {
+        this(app, uri, hits, null);
+    }
 }
@@ -0,0 +1,24 @@
+package ru.practicum.ewm.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Просмотры нескольких uri, каждый за своё окно [since, end]; end по умолчанию - текущий момент
+@Data
+@AllArgsConstructor
+@Builder
+@NoArgsConstructor
+public class StatsQueryDto {
+    private List<UriWindowDto> uris;
+
+    private Boolean unique;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime end;
+}
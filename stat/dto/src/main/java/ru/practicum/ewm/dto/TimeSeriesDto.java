@@ -0,0 +1,21 @@
+package ru.practicum.ewm.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Интервал с номером i начинается в start + i * step секунд
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TimeSeriesDto {
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime start;
+    private Long step;
+    private Integer buckets;
+    private List<SeriesDto> series;
+}
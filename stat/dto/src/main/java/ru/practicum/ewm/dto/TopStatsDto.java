@@ -0,0 +1,16 @@
+package ru.practicum.ewm.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TopStatsDto {
+    private String app;
+    private String uri;
+    private Long hits;
+    // Истинное число просмотров лежит в диапазоне [hits - error, hits]
+    private Long error;
+}
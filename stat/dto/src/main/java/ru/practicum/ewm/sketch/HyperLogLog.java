@@ -0,0 +1,136 @@
+package ru.practicum.ewm.sketch;
+
+import java.nio.ByteBuffer;
+
+// HyperLogLog с 2^12 регистрами (стандартная ошибка около 1.6%); малые множества считаются линейным счётом.
+// Объединение - поэлементный максимум регистров, поэтому повторное слияние одного и того же скетча безопасно
+public class HyperLogLog {
+    private static final int PRECISION = 12;
+    private static final int REGISTERS = 1 << PRECISION;
+    private static final byte FORMAT_DENSE = 0;
+    private static final byte FORMAT_SPARSE = 1;
+
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this.registers = new byte[REGISTERS];
+    }
+
+    private HyperLogLog(byte[] registers) {
+        this.registers = registers;
+    }
+
+    public void offer(byte[] value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        offerHash(mix(hash));
+    }
+
+    public void offer(long value) {
+        offerHash(mix(value));
+    }
+
+    public void merge(HyperLogLog other) {
+        for (int i = 0; i < REGISTERS; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha = 0.7213 / (1 + 1.079 / REGISTERS);
+        double estimate = alpha * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public boolean isEmpty() {
+        for (byte register : registers) {
+            if (register != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public HyperLogLog copy() {
+        return new HyperLogLog(registers.clone());
+    }
+
+    // Пока заполнено мало регистров, хранятся только пары (номер, значение)
+    public byte[] toBytes() {
+        int filled = 0;
+        for (byte register : registers) {
+            if (register != 0) {
+                filled++;
+            }
+        }
+        if (filled * 3 < REGISTERS) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 + 2 + filled * 3);
+            buffer.put(FORMAT_SPARSE);
+            buffer.putShort((short) filled);
+            for (int i = 0; i < REGISTERS; i++) {
+                if (registers[i] != 0) {
+                    buffer.putShort((short) i);
+                    buffer.put(registers[i]);
+                }
+            }
+            return buffer.array();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(1 + REGISTERS);
+        buffer.put(FORMAT_DENSE);
+        buffer.put(registers);
+        return buffer.array();
+    }
+
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        byte format = buffer.get();
+        byte[] registers = new byte[REGISTERS];
+        if (format == FORMAT_DENSE) {
+            buffer.get(registers);
+        } else if (format == FORMAT_SPARSE) {
+            int filled = buffer.getShort() & 0xffff;
+            for (int i = 0; i < filled; i++) {
+                int index = buffer.getShort() & 0xffff;
+                registers[index] = buffer.get();
+            }
+        } else {
+            throw new IllegalArgumentException("Неизвестный формат скетча: " + format);
+        }
+        return new HyperLogLog(registers);
+    }
+
+    private void offerHash(long hash) {
+        int index = (int) (hash >>> (Long.SIZE - PRECISION));
+        byte rank = (byte) Math.min(Long.numberOfLeadingZeros(hash << PRECISION) + 1, Long.SIZE - PRECISION + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    // Финализатор MurmurHash3 (fmix64) для равномерного распределения битов
+    private static long mix(long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,150 @@
+package ru.practicum.ewm.codec;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Запись HitExportWriter и чтение HitExportReader дают исходные строки при любом размере блока
+class HitExportCodecTest {
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 1000, 1 << 16})
+    void roundTripsRows(int blockRows) throws IOException {
+        List<Row> rows = rows(5000);
+
+        List<Row> read = read(write(rows, blockRows));
+
+        assertThat(read).isEqualTo(rows);
+    }
+
+    @Test
+    void readsEmptyExport() throws IOException {
+        assertThat(read(write(List.of(), 10))).isEmpty();
+    }
+
+    @Test
+    void formatsAddresses() throws IOException {
+        byte[] ip6 = new byte[16];
+        ip6[0] = 0x20;
+        ip6[1] = 0x01;
+        ip6[15] = 1;
+        List<Row> rows = List.of(new Row(1, START, "app", "/events", 0xc0a80001, null, 1),
+                new Row(2, START, "app", "/events", null, ip6, 1));
+        try (HitExportReader reader = new HitExportReader(new ByteArrayInputStream(write(rows, 10)))) {
+            assertThat(reader.next()).isTrue();
+            assertThat(reader.getIp()).isEqualTo("192.168.0.1");
+            assertThat(reader.next()).isTrue();
+            assertThat(reader.getIp()).isEqualTo("2001:0:0:0:0:0:0:1");
+            assertThat(reader.next()).isFalse();
+        }
+    }
+
+    // Оборванная выгрузка: прочитанные строки остаются доступны, затем next() бросает EOFException
+    @Test
+    void truncatedExportFailsAfterCompleteBlocks() throws IOException {
+        List<Row> rows = rows(100);
+        byte[] bytes = write(rows, 10);
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 5);
+
+        List<Row> read = new ArrayList<>();
+        try (HitExportReader reader = new HitExportReader(new ByteArrayInputStream(truncated))) {
+            assertThatThrownBy(() -> {
+                while (reader.next()) {
+                    read.add(Row.of(reader));
+                }
+            }).isInstanceOf(EOFException.class);
+        }
+
+        assertThat(read).hasSize(90).isEqualTo(rows.subList(0, 90));
+    }
+
+    @Test
+    void rejectsOtherStreams() {
+        assertThatThrownBy(() -> new HitExportReader(new ByteArrayInputStream("NDJSON".getBytes())))
+                .isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> new HitExportWriter(new ByteArrayOutputStream(), 0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new HitExportWriter(new ByteArrayOutputStream(), (1 << 16) + 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    // Время и id в основном растут, но не строго; IPv4 из верхней половины диапазона - отрицательные int
+    private static List<Row> rows(int count) {
+        Random random = new Random(5);
+        List<Row> rows = new ArrayList<>();
+        long id = 1000;
+        LocalDateTime time = START;
+        for (int i = 0; i < count; i++) {
+            id += random.nextInt(10) - 2;
+            time = time.plusSeconds(random.nextInt(100) - 10);
+            String app = "app" + random.nextInt(3);
+            String uri = "/events/" + random.nextInt(300) + (i % 50 == 0 ? "/сводка" : "");
+            int weight = 1 + (random.nextInt(10) == 0 ? random.nextInt(100_000) : 0);
+            if (random.nextInt(5) == 0) {
+                byte[] ip6 = new byte[16];
+                random.nextBytes(ip6);
+                rows.add(new Row(id, time, app, uri, null, ip6, weight));
+            } else {
+                rows.add(new Row(id, time, app, uri, random.nextInt(), null, weight));
+            }
+        }
+        return rows;
+    }
+
+    private static byte[] write(List<Row> rows, int blockRows) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HitExportWriter writer = new HitExportWriter(out, blockRows);
+        for (Row row : rows) {
+            writer.write(row.id(), row.timestamp(), row.app(), row.uri(), row.ip4(), row.ip6(), row.weight());
+        }
+        writer.finish();
+        return out.toByteArray();
+    }
+
+    private static List<Row> read(byte[] bytes) throws IOException {
+        List<Row> rows = new ArrayList<>();
+        try (HitExportReader reader = new HitExportReader(new ByteArrayInputStream(bytes))) {
+            while (reader.next()) {
+                rows.add(Row.of(reader));
+            }
+            assertThat(reader.next()).isFalse();
+        }
+        return rows;
+    }
+
+    private record Row(long id, LocalDateTime timestamp, String app, String uri, Integer ip4, byte[] ip6,
+                       int weight) {
+        static Row of(HitExportReader reader) {
+            return new Row(reader.getId(), reader.getTimestamp(), reader.getApp(), reader.getUri(),
+                    reader.isIpv6() ? null : reader.getIp4(), reader.isIpv6() ? reader.getIp6() : null,
+                    reader.getWeight());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Row other && id == other.id && weight == other.weight
+                    && timestamp.equals(other.timestamp) && app.equals(other.app) && uri.equals(other.uri)
+                    && Objects.equals(ip4, other.ip4) && Arrays.equals(ip6, other.ip6);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(id);
+        }
+    }
+}
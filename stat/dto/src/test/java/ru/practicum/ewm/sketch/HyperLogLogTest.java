@@ -0,0 +1,112 @@
+package ru.practicum.ewm.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class HyperLogLogTest {
+    @Test
+    void emptySketchEstimatesZero() {
+        HyperLogLog sketch = new HyperLogLog();
+
+        assertThat(sketch.isEmpty()).isTrue();
+        assertThat(sketch.estimate()).isZero();
+    }
+
+    // Малые множества считаются линейным счётом и почти точны; повторы оценку не меняют
+    @Test
+    void smallSetIsNearlyExact() {
+        HyperLogLog sketch = new HyperLogLog();
+        for (int repeat = 0; repeat < 3; repeat++) {
+            for (long value = 0; value < 200; value++) {
+                sketch.offer(value);
+            }
+        }
+
+        assertThat(sketch.isEmpty()).isFalse();
+        assertThat(sketch.estimate()).isCloseTo(200L, within(3L));
+    }
+
+    // Стандартная ошибка 1.6%, допуск - три стандартные ошибки
+    @Test
+    void largeSetWithinThreeStandardErrors() {
+        for (int n : new int[]{20_000, 1_000_000}) {
+            HyperLogLog sketch = new HyperLogLog();
+            for (long value = 0; value < n; value++) {
+                sketch.offer(value * 7919 + 13);
+            }
+
+            assertThat((double) sketch.estimate()).isCloseTo(n, within(n * 0.05));
+        }
+    }
+
+    @Test
+    void byteValuesAreCounted() {
+        HyperLogLog sketch = new HyperLogLog();
+        for (int i = 0; i < 50_000; i++) {
+            sketch.offer(ByteBuffer.allocate(16).putLong(0x20010db8L << 32).putLong(i).array());
+        }
+
+        assertThat((double) sketch.estimate()).isCloseTo(50_000, within(2_500.0));
+    }
+
+    // Объединение равно скетчу объединения множеств и не меняется от повторного слияния
+    @Test
+    void mergeEqualsSketchOfUnion() {
+        HyperLogLog first = new HyperLogLog();
+        HyperLogLog second = new HyperLogLog();
+        HyperLogLog union = new HyperLogLog();
+        for (long value = 0; value < 60_000; value++) {
+            if (value < 40_000) {
+                first.offer(value);
+            }
+            if (value >= 20_000) {
+                second.offer(value);
+            }
+            union.offer(value);
+        }
+
+        HyperLogLog merged = first.copy();
+        merged.merge(second);
+
+        assertThat(merged.toBytes()).isEqualTo(union.toBytes());
+        assertThat((double) merged.estimate()).isCloseTo(60_000, within(3_000.0));
+        merged.merge(second);
+        merged.merge(first);
+        assertThat(merged.toBytes()).isEqualTo(union.toBytes());
+        // copy не связан с исходным скетчем
+        assertThat((double) first.estimate()).isCloseTo(40_000, within(2_000.0));
+    }
+
+    @Test
+    void roundTripsSparseAndDenseBytes() {
+        HyperLogLog sparse = new HyperLogLog();
+        for (long value = 0; value < 100; value++) {
+            sparse.offer(value);
+        }
+        HyperLogLog dense = new HyperLogLog();
+        for (long value = 0; value < 100_000; value++) {
+            dense.offer(value);
+        }
+
+        byte[] sparseBytes = sparse.toBytes();
+        byte[] denseBytes = dense.toBytes();
+
+        assertThat(sparseBytes.length).isLessThan(400);
+        assertThat(denseBytes).hasSize(1 + 4096);
+        assertThat(HyperLogLog.fromBytes(sparseBytes).estimate()).isEqualTo(sparse.estimate());
+        assertThat(HyperLogLog.fromBytes(sparseBytes).toBytes()).isEqualTo(sparseBytes);
+        assertThat(HyperLogLog.fromBytes(denseBytes).toBytes()).isEqualTo(denseBytes);
+        assertThat(HyperLogLog.fromBytes(new HyperLogLog().toBytes()).isEmpty()).isTrue();
+    }
+
+    @Test
+    void rejectsUnknownFormat() {
+        assertThatThrownBy(() -> HyperLogLog.fromBytes(new byte[]{7}))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
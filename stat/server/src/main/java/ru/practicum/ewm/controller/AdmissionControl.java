@@ -0,0 +1,108 @@
+package ru.practicum.ewm.controller;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.exceptions.OverloadedException;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Ограничение числа одновременно обрабатываемых запросов. У записи и чтения отдельные бюджеты, поэтому поток
+// тяжёлых запросов статистики не занимает потоки Tomcat, нужные для записи, и наоборот. Запрос, не получивший
+// разрешения за queue-timeout-ms, сразу отклоняется с 429 вместо ожидания в очереди к базе. Потоковые ответы
+// держат соединение с базой всё время записи клиенту, поэтому дополнительно ограничены бюджетом STREAM, который
+// должен быть меньше размера пула соединений
+@Component
+@Slf4j
+public class AdmissionControl {
+    private final boolean enabled;
+    private final long queueTimeoutMs;
+    private final long retryAfterSeconds;
+    private final Map<Budget, Semaphore> permits = new EnumMap<>(Budget.class);
+    private final Map<Budget, Counter> rejected = new EnumMap<>(Budget.class);
+
+    @Autowired
+    public AdmissionControl(MeterRegistry meterRegistry,
+                            @Value("${stats.admission.enabled:true}") boolean enabled,
+                            @Value("${stats.admission.ingest.max-concurrent:100}") int ingestLimit,
+                            @Value("${stats.admission.query.max-concurrent:50}") int queryLimit,
+                            @Value("${stats.admission.stream.max-concurrent:4}") int streamLimit,
+                            @Value("${stats.admission.queue-timeout-ms:50}") long queueTimeoutMs,
+                            @Value("${stats.admission.retry-after-seconds:1}") long retryAfterSeconds) {
+        this.enabled = enabled;
+        this.queueTimeoutMs = queueTimeoutMs;
+        this.retryAfterSeconds = retryAfterSeconds;
+        register(meterRegistry, Budget.INGEST, ingestLimit);
+        register(meterRegistry, Budget.QUERY, queryLimit);
+        register(meterRegistry, Budget.STREAM, streamLimit);
+    }
+
+    public <T> T call(Budget budget, Supplier<T> action) {
+        acquire(budget);
+        try {
+            return action.get();
+        } finally {
+            release(budget);
+        }
+    }
+
+    public void run(Budget budget, Runnable action) {
+        call(budget, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    // Разрешение нужно вернуть через release; для ответов, которые пишутся уже после выхода из контроллера
+    public void acquire(Budget budget) {
+        if (!enabled) {
+            return;
+        }
+        boolean acquired;
+        try {
+            acquired = permits.get(budget).tryAcquire(queueTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            rejected.get(budget).increment();
+            log.debug("Запрос отклонён: исчерпан бюджет {}", budget);
+            throw new OverloadedException(budget.name().toLowerCase(), retryAfterSeconds);
+        }
+    }
+
+    public void release(Budget budget) {
+        if (enabled) {
+            permits.get(budget).release();
+        }
+    }
+
+    private void register(MeterRegistry meterRegistry, Budget budget, int limit) {
+        Semaphore semaphore = new Semaphore(limit);
+        permits.put(budget, semaphore);
+        String tag = budget.name().toLowerCase();
+        rejected.put(budget, meterRegistry.counter("stats.admission.rejected", "budget", tag));
+        Gauge.builder("stats.admission.in-flight", semaphore, s -> limit - s.availablePermits())
+                .description("Количество запросов, обрабатываемых в данный момент")
+                .tag("budget", tag)
+                .register(meterRegistry);
+        Gauge.builder("stats.admission.limit", () -> limit)
+                .tag("budget", tag)
+                .register(meterRegistry);
+    }
+
+    public enum Budget {
+        INGEST,
+        QUERY,
+        STREAM
+    }
+}
@@ -3,8 +3,11 @@ package ru.practicum.ewm.controller;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.DurationStyle;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -12,42 +15,213 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.practicum.ewm.codec.HitExportWriter;
+import ru.practicum.ewm.controller.AdmissionControl.Budget;
+import ru.practicum.ewm.dto.CounterDto;
 import ru.practicum.ewm.dto.HitDto;
+import ru.practicum.ewm.dto.LiveStatsDto;
+import ru.practicum.ewm.dto.SketchDto;
 import ru.practicum.ewm.dto.StatsDto;
+import ru.practicum.ewm.dto.StatsQueryDto;
+import ru.practicum.ewm.dto.TimeSeriesDto;
+import ru.practicum.ewm.dto.TopStatsDto;
 import ru.practicum.ewm.exceptions.ValidationException;
 import ru.practicum.ewm.service.StatsService;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping
 @Slf4j
 public class StatsController {
     private final StatsService statsService;
+    private final AdmissionControl admissionControl;
 
     @Autowired
-    public StatsController(StatsService statsService) {
+    public StatsController(StatsService statsService, AdmissionControl admissionControl) {
         this.statsService = statsService;
+        this.admissionControl = admissionControl;
     }
 
+    // uri, оканчивающийся на *, задаёт префикс: uris=/events/* - все uri событий
     @GetMapping("/stats")
     public List<StatsDto> getStats(@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
                                    @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
-                                   @RequestParam(defaultValue = "") List<String> uris,
-                                   @RequestParam(defaultValue = "false") Boolean unique) {
-        log.info("Начинается запрос статистики. Параметры поиска: start={}, end={}, uris={}, unique={}",
-                start, end, uris, unique);
+                                   @RequestParam(required = false) List<String> uris,
+                                   @RequestParam(defaultValue = "false") Boolean unique,
+                                   @RequestParam(defaultValue = "false") Boolean exact) {
+        log.info("Начинается запрос статистики. Параметры поиска: start={}, end={}, uris={}, unique={}, exact={}",
+                start, end, uris, unique, exact);
         if (start.isAfter(end)) {
             throw new ValidationException("dates", "Дата старта не может быть позже даты окончания");
         }
-        return statsService.getStats(start, end, uris, unique);
+        return admissionControl.call(Budget.QUERY,
+                () -> statsService.getStats(start, end, uris, unique, exact));
+    }
+
+    // Просмотры по шаблонам маршрутов (stats.routes.templates), например /events/{id}; без routes - по всем шаблонам
+    @GetMapping("/stats/routes")
+    public List<StatsDto> getRouteStats(@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+                                        @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
+                                        @RequestParam(required = false) List<String> routes) {
+        log.info("Начинается запрос статистики по шаблонам. Параметры поиска: start={}, end={}, routes={}",
+                start, end, routes);
+        if (start.isAfter(end)) {
+            throw new ValidationException("dates", "Дата старта не может быть позже даты окончания");
+        }
+        return admissionControl.call(Budget.QUERY, () -> statsService.getRouteStats(start, end, routes));
+    }
+
+    // Скетчи уникальных посетителей вместо оценок: клиент объединяет их, если uri лежит на нескольких шардах
+    @GetMapping("/stats/sketches")
+    public List<SketchDto> getSketches(@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+                                       @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
+                                       @RequestParam(required = false) List<String> uris) {
+        log.info("Начинается запрос скетчей. Параметры поиска: start={}, end={}, uris={}", start, end, uris);
+        if (start.isAfter(end)) {
+            throw new ValidationException("dates", "Дата старта не может быть позже даты окончания");
+        }
+        return admissionControl.call(Budget.QUERY, () -> statsService.getSketches(start, end, uris));
+    }
+
+    @PostMapping("/stats/query")
+    public List<StatsDto> queryStats(@RequestBody StatsQueryDto query) {
+        log.info("Начинается запрос статистики по окнам uri, количество: {}, unique={}, end={}",
+                query.getUris() == null ? 0 : query.getUris().size(), query.getUnique(), query.getEnd());
+        return admissionControl.call(Budget.QUERY, () -> statsService.queryStats(query));
+    }
+
+    // NDJSON по возрастанию (app, uri); следующая страница запрашивается с app и uri последней строки
+    @GetMapping(value = "/stats/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamStats(@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+                                                             @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
+                                                             @RequestParam(required = false) List<String> uris,
+                                                             @RequestParam(defaultValue = "false") Boolean unique,
+                                                             @RequestParam(required = false) Integer limit,
+                                                             @RequestParam(required = false) String afterApp,
+                                                             @RequestParam(required = false) String afterUri) {
+        log.info("Начинается потоковый запрос статистики. Параметры поиска: start={}, end={}, uris={}, unique={}, " +
+                "limit={}, afterApp={}, afterUri={}", start, end, uris, unique, limit, afterApp, afterUri);
+        if (start.isAfter(end)) {
+            throw new ValidationException("dates", "Дата старта не может быть позже даты окончания");
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(admitStream(() -> statsService.streamStats(start, end, uris, unique, limit, afterApp,
+                        afterUri)));
+    }
+
+    // Сырые запросы в столбцовом двоичном формате (читается HitExportReader из модуля dto) по возрастанию
+    // (время, id); оборванная выгрузка продолжается с afterTime и afterId последней прочитанной строки
+    @GetMapping(value = "/stats/export", produces = HitExportWriter.MEDIA_TYPE)
+    public ResponseEntity<StreamingResponseBody> exportHits(@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+                                                            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
+                                                            @RequestParam(required = false) String app,
+                                                            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime afterTime,
+                                                            @RequestParam(required = false) Long afterId) {
+        log.info("Начинается выгрузка сырых запросов. Параметры поиска: start={}, end={}, app={}, afterTime={}, " +
+                "afterId={}", start, end, app, afterTime, afterId);
+        if (start.isAfter(end)) {
+            throw new ValidationException("dates", "Дата старта не может быть позже даты окончания");
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(HitExportWriter.MEDIA_TYPE))
+                .body(admitStream(() -> statsService.exportHits(start, end, app, afterTime, afterId)));
+    }
+
+    @GetMapping("/stats/top")
+    public List<TopStatsDto> getTop(@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+                                    @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
+                                    @RequestParam(defaultValue = "10") Integer n,
+                                    @RequestParam(required = false) String app) {
+        log.info("Начинается запрос популярных uri. Параметры поиска: start={}, end={}, n={}, app={}",
+                start, end, n, app);
+        if (start.isAfter(end)) {
+            throw new ValidationException("dates", "Дата старта не может быть позже даты окончания");
+        }
+        return admissionControl.call(Budget.QUERY,
+                () -> statsService.getTop(start, end, app, n));
+    }
+
+    @GetMapping("/stats/timeseries")
+    public TimeSeriesDto getTimeSeries(@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+                                       @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
+                                       @RequestParam(required = false) List<String> uris,
+                                       @RequestParam String step,
+                                       @RequestParam(defaultValue = "false") Boolean unique) {
+        log.info("Начинается запрос временного ряда. Параметры поиска: start={}, end={}, uris={}, step={}, unique={}",
+                start, end, uris, step, unique);
+        if (start.isAfter(end)) {
+            throw new ValidationException("dates", "Дата старта не может быть позже даты окончания");
+        }
+        Duration duration;
+        try {
+            // Допускаются и ISO-8601 (PT15M), и краткая запись (15m, 1h, 1d)
+            duration = DurationStyle.detectAndParse(step);
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("step", "Некорректный шаг: " + step);
+        }
+        return admissionControl.call(Budget.QUERY,
+                () -> statsService.getTimeSeries(start, end, uris, duration, unique));
+    }
+
+    // Просмотры и уникальные посетители uri за всё время из таблицы счётчиков, без агрегации по периоду
+    @GetMapping("/stats/counters")
+    public List<CounterDto> getCounters(@RequestParam List<String> uris) {
+        log.info("Начинается запрос счётчиков uri, количество: {}", uris.size());
+        return admissionControl.call(Budget.QUERY, () -> statsService.getCounters(uris));
+    }
+
+    // Счётчики в памяти за последние 1, 5 и 60 минут; без uris - n самых просматриваемых за последнюю минуту
+    @GetMapping("/stats/live")
+    public List<LiveStatsDto> getLive(@RequestParam(required = false) List<String> uris,
+                                      @RequestParam(defaultValue = "10") Integer n) {
+        log.info("Начинается запрос текущих просмотров. Параметры поиска: uris={}, n={}", uris, n);
+        return admissionControl.call(Budget.QUERY, () -> statsService.getLive(uris, n));
     }
 
     @PostMapping("/hit")
     @ResponseStatus(HttpStatus.CREATED)
     public HitDto hit(@RequestBody HitDto hit) {
         log.info("Начинается добавление запроса {}", hit);
-        return statsService.saveHit(hit);
+        return admissionControl.call(Budget.INGEST, () -> statsService.saveHit(hit));
+    }
+
+    @PostMapping("/hit/batch")
+    @ResponseStatus(HttpStatus.CREATED)
+    public void hitBatch(@RequestBody List<HitDto> hits) {
+        log.info("Начинается пакетное добавление запросов, количество: {}", hits.size());
+        admissionControl.run(Budget.INGEST, () -> statsService.saveHits(hits));
+    }
+
+    // Потоковый ответ держит соединение с базой до конца записи клиенту, поэтому кроме QUERY занимает разрешение
+    // STREAM. Ответ пишется уже после выхода из метода, и разрешения возвращаются по окончании записи
+    private StreamingResponseBody admitStream(Supplier<StreamingResponseBody> prepare) {
+        admissionControl.acquire(Budget.QUERY);
+        StreamingResponseBody body;
+        try {
+            admissionControl.acquire(Budget.STREAM);
+            try {
+                body = prepare.get();
+            } catch (RuntimeException e) {
+                admissionControl.release(Budget.STREAM);
+                throw e;
+            }
+        } catch (RuntimeException e) {
+            admissionControl.release(Budget.QUERY);
+            throw e;
+        }
+        return out -> {
+            try {
+                body.writeTo(out);
+            } finally {
+                admissionControl.release(Budget.STREAM);
+                admissionControl.release(Budget.QUERY);
+            }
+        };
     }
 }
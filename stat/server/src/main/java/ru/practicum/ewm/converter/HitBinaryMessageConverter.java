@@ -0,0 +1,77 @@
+package ru.practicum.ewm.converter;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.codec.HitBinaryCodec;
+import ru.practicum.ewm.dto.HitDto;
+
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+
+// Приём HitDto и List<HitDto> в формате HitBinaryCodec на /hit и /hit/batch; ответы остаются в JSON
+@Component
+public class HitBinaryMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+    public HitBinaryMessageConverter() {
+        super(MediaType.parseMediaType(HitBinaryCodec.MEDIA_TYPE));
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return clazz == HitDto.class || List.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Type type, @Nullable Class<?> contextClass, @Nullable MediaType mediaType) {
+        return (isHit(type) || isHitList(type)) && canRead(mediaType);
+    }
+
+    @Override
+    public boolean canWrite(@Nullable Type type, Class<?> clazz, @Nullable MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public Object read(Type type, @Nullable Class<?> contextClass, HttpInputMessage inputMessage)
+            throws IOException {
+        List<HitDto> hits;
+        try {
+            hits = HitBinaryCodec.decode(inputMessage.getBody().readAllBytes());
+        } catch (IllegalArgumentException e) {
+            throw new HttpMessageNotReadableException(e.getMessage(), e, inputMessage);
+        }
+        if (isHitList(type)) {
+            return hits;
+        }
+        if (hits.size() != 1) {
+            throw new HttpMessageNotReadableException("Ожидался один запрос, получено: " + hits.size(), inputMessage);
+        }
+        return hits.get(0);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        return read(clazz, null, inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(Object object, @Nullable Type type, HttpOutputMessage outputMessage) {
+        throw new UnsupportedOperationException();
+    }
+
+    private static boolean isHit(Type type) {
+        return type == HitDto.class;
+    }
+
+    private static boolean isHitList(Type type) {
+        return type instanceof ParameterizedType parameterized
+                && parameterized.getRawType() == List.class
+                && parameterized.getActualTypeArguments()[0] == HitDto.class;
+    }
+}
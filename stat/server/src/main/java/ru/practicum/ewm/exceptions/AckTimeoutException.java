@@ -0,0 +1,13 @@
+package ru.practicum.ewm.exceptions;
+
+import lombok.Getter;
+
+@Getter
+public class AckTimeoutException extends RuntimeException {
+    private final long timeoutMs;
+
+    public AckTimeoutException(long timeoutMs) {
+        super("Запрос принят, но не записан в базу за " + timeoutMs + " мс");
+        this.timeoutMs = timeoutMs;
+    }
+}
@@ -0,0 +1,6 @@
+package ru.practicum.ewm.exceptions;
+
+import java.util.List;
+
+public record BatchErrorResponse(String error, String description, List<ItemError> errors) {
+}
@@ -0,0 +1,20 @@
+package ru.practicum.ewm.exceptions;
+
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+public class BatchValidationException extends IllegalArgumentException {
+    private final String description;
+    private final List<ItemError> errors;
+
+    public BatchValidationException(List<ItemError> errors) {
+        this("Пакет отклонён, ни один запрос не сохранён", errors);
+    }
+
+    public BatchValidationException(String description, List<ItemError> errors) {
+        this.description = description;
+        this.errors = errors;
+    }
+}
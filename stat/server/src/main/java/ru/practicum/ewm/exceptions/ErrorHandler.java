@@ -1,7 +1,9 @@
 package ru.practicum.ewm.exceptions;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.MissingServletRequestParameterException;
@@ -36,6 +38,30 @@ public class ErrorHandler {
         }
     }
 
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public BatchErrorResponse handleBatchValidation(final BatchValidationException e) {
+        log.debug("Ошибка валидации пакета. Некорректных элементов: {}", e.getErrors().size());
+        return new BatchErrorResponse(
+                "Некорректный пакет запросов",
+                e.getDescription(),
+                e.getErrors()
+        );
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<ErrorResponse> handleOverloaded(final OverloadedException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(new ErrorResponse("Сервер перегружен", e.getMessage()));
+    }
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public ErrorResponse handleAckTimeout(final AckTimeoutException e) {
+        return new ErrorResponse("Запись не подтверждена", e.getMessage());
+    }
+
     @ExceptionHandler
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     public ErrorResponse handleServerError(final Throwable e) {
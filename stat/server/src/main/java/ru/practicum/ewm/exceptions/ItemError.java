@@ -0,0 +1,4 @@
+package ru.practicum.ewm.exceptions;
+
+public record ItemError(int index, String parameter, String reason) {
+}
@@ -0,0 +1,15 @@
+package ru.practicum.ewm.exceptions;
+
+import lombok.Getter;
+
+@Getter
+public class OverloadedException extends RuntimeException {
+    private final String budget;
+    private final long retryAfterSeconds;
+
+    public OverloadedException(String budget, long retryAfterSeconds) {
+        super("Сервер перегружен, бюджет " + budget + " исчерпан");
+        this.budget = budget;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
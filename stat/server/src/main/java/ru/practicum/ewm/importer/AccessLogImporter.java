@@ -0,0 +1,275 @@
+package ru.practicum.ewm.importer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.model.Hit;
+import ru.practicum.ewm.model.ImportRange;
+import ru.practicum.ewm.repository.ImportRepository;
+import ru.practicum.ewm.service.DictionaryService;
+import ru.practicum.ewm.service.HitListener;
+import ru.practicum.ewm.service.PartitionManager;
+import ru.practicum.ewm.service.RouteService;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Загрузка исторических access-логов в обход HTTP, после которой приложение завершается:
+// java -jar server.jar --spring.main.web-application-type=none --stats.import.files=access.log,access.log.1
+// Каждый файл делится на threads диапазонов, которые читаются параллельно через отображение в память и
+// загружаются пакетами через COPY. Позиция диапазона сохраняется в транзакции пакета, поэтому повторный запуск
+// продолжает с места остановки без повторов. Агрегаты, скетчи и сводки пополняются так же, как при записи через /hit
+@Component
+@ConditionalOnProperty("stats.import.files")
+@Slf4j
+public class AccessLogImporter implements ApplicationRunner {
+    private static final double MB = 1 << 20;
+
+    private final ImportRepository importRepository;
+    private final DictionaryService dictionaryService;
+    private final PartitionManager partitionManager;
+    private final RouteService routeService;
+    private final List<HitListener> listeners;
+    private final TransactionTemplate transactionTemplate;
+    private final ConfigurableApplicationContext context;
+    private final List<Path> files;
+    private final String app;
+    private final int threads;
+    private final int batchSize;
+    private final long mapSize;
+    private final long minRangeSize;
+    private final ZoneId zone;
+    private final long progressIntervalMs;
+    private final AtomicLong bytesDone = new AtomicLong();
+    private final AtomicLong linesRead = new AtomicLong();
+    private final AtomicLong hitsLoaded = new AtomicLong();
+    private final AtomicLong linesSkipped = new AtomicLong();
+
+    @Autowired
+    public AccessLogImporter(ImportRepository importRepository,
+                             DictionaryService dictionaryService,
+                             PartitionManager partitionManager,
+                             RouteService routeService,
+                             List<HitListener> listeners,
+                             TransactionTemplate transactionTemplate,
+                             ConfigurableApplicationContext context,
+                             @Value("${stats.import.files}") String files,
+                             @Value("${stats.import.app:ewm-main-service}") String app,
+                             @Value("${stats.import.threads:4}") int threads,
+                             @Value("${stats.import.batch-size:10000}") int batchSize,
+                             @Value("${stats.import.map-size:268435456}") long mapSize,
+                             @Value("${stats.import.min-range-size:16777216}") long minRangeSize,
+                             @Value("${stats.import.zone:}") String zone,
+                             @Value("${stats.import.progress-interval-ms:5000}") long progressIntervalMs) {
+        this.importRepository = importRepository;
+        this.dictionaryService = dictionaryService;
+        this.partitionManager = partitionManager;
+        this.routeService = routeService;
+        this.listeners = listeners;
+        this.transactionTemplate = transactionTemplate;
+        this.context = context;
+        this.files = Arrays.stream(files.split(","))
+                .map(String::trim)
+                .filter(file -> !file.isEmpty())
+                .map(file -> Path.of(file).toAbsolutePath().normalize())
+                .toList();
+        this.app = app;
+        this.threads = threads;
+        this.batchSize = batchSize;
+        this.mapSize = Math.min(mapSize, Integer.MAX_VALUE);
+        this.minRangeSize = minRangeSize;
+        this.zone = zone.isBlank() ? ZoneId.systemDefault() : ZoneId.of(zone);
+        this.progressIntervalMs = progressIntervalMs;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        int exitCode = importFiles() ? 0 : 1;
+        System.exit(SpringApplication.exit(context, () -> exitCode));
+    }
+
+    // false, если хотя бы один диапазон не загружен до конца
+    boolean importFiles() throws IOException {
+        List<ImportRange> ranges = plan();
+        long total = ranges.stream().mapToLong(range -> range.end() - range.start()).sum();
+        bytesDone.set(ranges.stream().mapToLong(range -> Math.min(range.position(), range.end()) - range.start())
+                .sum());
+        long resumedBytes = bytesDone.get();
+        log.info("Импорт {} файлов, диапазонов: {}, объём {} МБ, уже загружено {} МБ", files.size(), ranges.size(),
+                format(total / MB), format(resumedBytes / MB));
+        long started = System.nanoTime();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor();
+        progress.scheduleAtFixedRate(() -> report(total, resumedBytes, started), progressIntervalMs,
+                progressIntervalMs, TimeUnit.MILLISECONDS);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (ImportRange range : ranges) {
+            if (range.position() < range.end()) {
+                tasks.add(workers.submit(() -> {
+                    importRange(range);
+                    return null;
+                }));
+            }
+        }
+        boolean failed = false;
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (Exception e) {
+                log.error("Ошибка импорта диапазона, повторный запуск продолжит с сохранённой позиции", e);
+                failed = true;
+            }
+        }
+        workers.shutdown();
+        progress.shutdownNow();
+        report(total, resumedBytes, started);
+        return !failed;
+    }
+
+    // Разбиение сохраняется при первом запуске, повторный запуск использует его, даже если изменилось число потоков
+    private List<ImportRange> plan() throws IOException {
+        List<ImportRange> ranges = new ArrayList<>();
+        for (Path file : files) {
+            List<ImportRange> saved = importRepository.findRanges(file.toString());
+            if (!saved.isEmpty()) {
+                ranges.addAll(saved);
+                continue;
+            }
+            long size = Files.size(file);
+            int parts = (int) Math.max(1, Math.min(threads, size / minRangeSize));
+            for (int i = 0; i < parts; i++) {
+                long start = size * i / parts;
+                ImportRange range = new ImportRange(file.toString(), start, size * (i + 1) / parts, start);
+                importRepository.saveRange(range);
+                ranges.add(range);
+            }
+        }
+        return ranges;
+    }
+
+    // Диапазону принадлежат строки, начинающиеся в [start, end); строка, начатая в предыдущем, пропускается
+    private void importRange(ImportRange range) throws IOException {
+        AccessLogParser parser = new AccessLogParser(zone);
+        try (FileChannel channel = FileChannel.open(Path.of(range.file()), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long end = Math.min(range.end(), size);
+            long position = range.position();
+            if (position == range.start() && position > 0) {
+                long aligned = nextLine(channel, position - 1, size);
+                bytesDone.addAndGet(aligned - position);
+                position = aligned;
+            }
+            long saved = position;
+            List<Hit> batch = new ArrayList<>(batchSize);
+            while (position < end) {
+                int limit = (int) Math.min(mapSize, size - position);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, limit);
+                int lineStart = 0;
+                while (lineStart < limit && position + lineStart < end) {
+                    int lineEnd = AccessLogParser.indexOf(buffer, (byte) '\n', lineStart, limit);
+                    if (lineEnd < 0) {
+                        if (position + limit < size) {
+                            // Строка продолжается за окном: окно сдвигается к её началу
+                            break;
+                        }
+                        lineEnd = limit;
+                    }
+                    linesRead.incrementAndGet();
+                    Hit hit = parser.parse(buffer, lineStart, lineEnd, app);
+                    if (hit == null) {
+                        linesSkipped.incrementAndGet();
+                    } else {
+                        batch.add(hit);
+                    }
+                    lineStart = Math.min(lineEnd + 1, limit);
+                    if (batch.size() >= batchSize) {
+                        flush(range, batch, saved, position + lineStart);
+                        saved = position + lineStart;
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+                if (lineStart == 0) {
+                    throw new IllegalStateException("Строка длиннее окна отображения в " + range.file() +
+                            " на позиции " + position);
+                }
+                position += lineStart;
+            }
+            flush(range, batch, saved, position);
+        }
+    }
+
+    // Пакет, его агрегаты и новая позиция диапазона фиксируются одной транзакцией;
+    // id справочников и привязки к шаблонам, как и в HitWriter, фиксируются до неё
+    private void flush(ImportRange range, List<Hit> batch, long from, long position) {
+        Set<LocalDate> days = new HashSet<>();
+        batch.forEach(hit -> days.add(hit.getTimestamp().toLocalDate()));
+        days.forEach(day -> partitionManager.ensurePartitionFor(day.atStartOfDay()));
+        dictionaryService.resolve(batch);
+        routeService.assign(batch);
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!batch.isEmpty()) {
+                importRepository.copy(batch);
+                listeners.forEach(listener -> listener.onHitsSaved(batch));
+            }
+            importRepository.savePosition(range.file(), range.start(), position);
+        });
+        bytesDone.addAndGet(position - from);
+        hitsLoaded.addAndGet(batch.size());
+    }
+
+    private static long nextLine(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long position = from;
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            int newline = AccessLogParser.indexOf(buffer, (byte) '\n', 0, read);
+            if (newline >= 0) {
+                return position + newline + 1;
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private void report(long total, long resumedBytes, long started) {
+        double seconds = Math.max((System.nanoTime() - started) / 1e9, 1e-3);
+        long done = bytesDone.get();
+        log.info("Импорт: {}% ({} из {} МБ), строк {}, загружено {}, пропущено {}; {} МБ/с, {} запросов/с",
+                format(total == 0 ? 100 : done * 100.0 / total), format(done / MB), format(total / MB),
+                linesRead.get(), hitsLoaded.get(), linesSkipped.get(), format((done - resumedBytes) / MB / seconds),
+                format(hitsLoaded.get() / seconds));
+    }
+
+    private static String format(double value) {
+        return String.format("%.1f", value);
+    }
+}
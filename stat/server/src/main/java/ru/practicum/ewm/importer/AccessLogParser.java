@@ -0,0 +1,176 @@
+package ru.practicum.ewm.importer;
+
+import ru.practicum.ewm.mapper.IpAddressMapper;
+import ru.practicum.ewm.model.Hit;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+// Разбор строки access-лога nginx (combined) или Tomcat (common) прямо в отображённом буфере:
+// host ident user [10/Oct/2000:13:55:36 -0700] "GET /events/1?from=feed HTTP/1.1" 200 2326 ...
+// Новой строкой становится только uri, адрес и время разбираются по байтам. Учитываются только GET с кодом
+// ответа меньше 400, query-часть uri отбрасывается. Экземпляр хранит кэши и не потокобезопасен
+public class AccessLogParser {
+    private static final int MAX_URI_LENGTH = 64;
+    private static final String MONTHS = "JanFebMarAprMayJunJulAugSepOctNovDec";
+    private static final int TIMESTAMP_LENGTH = 26;
+
+    private final ZoneId zone;
+    private final AsciiSlice slice = new AsciiSlice();
+    private int cachedDate = -1;
+    private long cachedEpochDay;
+    private long cachedHour = Long.MIN_VALUE;
+    private int cachedOffset;
+
+    public AccessLogParser(ZoneId zone) {
+        this.zone = zone;
+    }
+
+    // Запрос со временем в поясе zone либо null, если строка не разобрана или не подходит
+    public Hit parse(ByteBuffer buffer, int from, int to, String app) {
+        int hostEnd = indexOf(buffer, (byte) ' ', from, to);
+        if (hostEnd <= from) {
+            return null;
+        }
+        int timeStart = indexOf(buffer, (byte) '[', hostEnd, to) + 1;
+        if (timeStart <= 0 || timeStart + TIMESTAMP_LENGTH + 3 > to
+                || buffer.get(timeStart + TIMESTAMP_LENGTH) != ']') {
+            return null;
+        }
+        int requestStart = timeStart + TIMESTAMP_LENGTH + 3;
+        if (buffer.get(requestStart - 1) != '"' || !isGet(buffer, requestStart, to)) {
+            return null;
+        }
+        int uriStart = requestStart + 4;
+        int uriEnd = uriStart;
+        int pathEnd = -1;
+        while (uriEnd < to && buffer.get(uriEnd) != ' ' && buffer.get(uriEnd) != '"') {
+            if (pathEnd < 0 && buffer.get(uriEnd) == '?') {
+                pathEnd = uriEnd;
+            }
+            uriEnd++;
+        }
+        int statusStart = indexOf(buffer, (byte) '"', uriEnd, to) + 2;
+        if (statusStart <= 1 || statusStart + 3 > to) {
+            return null;
+        }
+        int status = digits(buffer, statusStart, 3);
+        if (status < 100 || status >= 400) {
+            return null;
+        }
+        if (pathEnd < 0) {
+            pathEnd = uriEnd;
+        }
+        if (pathEnd == uriStart || pathEnd - uriStart > MAX_URI_LENGTH) {
+            return null;
+        }
+        LocalDateTime timestamp = timestamp(buffer, timeStart);
+        if (timestamp == null) {
+            return null;
+        }
+        Hit hit = new Hit();
+        if (!ip(buffer, from, hostEnd, hit)) {
+            return null;
+        }
+        byte[] uri = new byte[pathEnd - uriStart];
+        buffer.get(uriStart, uri);
+        hit.setApp(app);
+        hit.setUri(new String(uri, StandardCharsets.UTF_8));
+        hit.setTimestamp(timestamp);
+        return hit;
+    }
+
+    public static int indexOf(ByteBuffer buffer, byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean ip(ByteBuffer buffer, int from, int to, Hit hit) {
+        slice.set(buffer, from, to);
+        long ip4 = IpAddressMapper.parseIpv4(slice);
+        if (ip4 == IpAddressMapper.INVALID) {
+            byte[] ip6 = IpAddressMapper.parseIpv6(slice);
+            if (ip6 == null) {
+                return false;
+            }
+            ip4 = IpAddressMapper.mappedIpv4(ip6);
+            if (ip4 == IpAddressMapper.INVALID) {
+                hit.setIp6(ip6);
+                return true;
+            }
+        }
+        hit.setIp4((int) ip4);
+        return true;
+    }
+
+    // dd/MMM/yyyy:HH:mm:ss +hhmm; дата и смещение пояса кэшируются, строки лога идут почти по порядку
+    private LocalDateTime timestamp(ByteBuffer buffer, int at) {
+        int day = digits(buffer, at, 2);
+        int month = month(buffer, at + 3);
+        int year = digits(buffer, at + 7, 4);
+        int hour = digits(buffer, at + 12, 2);
+        int minute = digits(buffer, at + 15, 2);
+        int second = digits(buffer, at + 18, 2);
+        int offsetHours = digits(buffer, at + 22, 2);
+        int offsetMinutes = digits(buffer, at + 24, 2);
+        byte sign = buffer.get(at + 21);
+        if (day < 1 || day > 31 || month < 1 || year < 0 || hour < 0 || hour > 23 || minute < 0 || minute > 59
+                || second < 0 || second > 60 || offsetHours < 0 || offsetMinutes < 0 || sign != '+' && sign != '-') {
+            return null;
+        }
+        int date = year * 10000 + month * 100 + day;
+        if (date != cachedDate) {
+            try {
+                cachedEpochDay = LocalDate.of(year, month, day).toEpochDay();
+            } catch (RuntimeException e) {
+                return null;
+            }
+            cachedDate = date;
+        }
+        long offset = (offsetHours * 3600L + offsetMinutes * 60L) * (sign == '-' ? -1 : 1);
+        long epochSecond = cachedEpochDay * 86400 + hour * 3600L + minute * 60L + Math.min(second, 59) - offset;
+        long epochHour = Math.floorDiv(epochSecond, 3600);
+        if (epochHour != cachedHour) {
+            cachedOffset = zone.getRules().getOffset(Instant.ofEpochSecond(epochSecond)).getTotalSeconds();
+            cachedHour = epochHour;
+        }
+        return LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.ofTotalSeconds(cachedOffset));
+    }
+
+    private static boolean isGet(ByteBuffer buffer, int at, int to) {
+        return at + 4 < to && buffer.get(at) == 'G' && buffer.get(at + 1) == 'E' && buffer.get(at + 2) == 'T'
+                && buffer.get(at + 3) == ' ';
+    }
+
+    private static int month(ByteBuffer buffer, int at) {
+        for (int i = 0; i < 12; i++) {
+            if (buffer.get(at) == MONTHS.charAt(i * 3) && buffer.get(at + 1) == MONTHS.charAt(i * 3 + 1)
+                    && buffer.get(at + 2) == MONTHS.charAt(i * 3 + 2)) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    // -1, если среди count байт есть не цифра
+    private static int digits(ByteBuffer buffer, int at, int count) {
+        int value = 0;
+        for (int i = at; i < at + count; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
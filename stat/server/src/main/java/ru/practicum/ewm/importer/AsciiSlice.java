@@ -0,0 +1,40 @@
+package ru.practicum.ewm.importer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Представление участка буфера как строки ASCII без копирования; переиспользуется для каждой строки лога
+class AsciiSlice implements CharSequence {
+    private ByteBuffer buffer;
+    private int offset;
+    private int length;
+
+    AsciiSlice set(ByteBuffer buffer, int from, int to) {
+        this.buffer = buffer;
+        this.offset = from;
+        this.length = to - from;
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (buffer.get(offset + index) & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new AsciiSlice().set(buffer, offset + start, offset + end);
+    }
+
+    @Override
+    public String toString() {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -1,8 +1,11 @@
 package ru.practicum.ewm.mapper;
 
 import ru.practicum.ewm.dto.HitDto;
+import ru.practicum.ewm.exceptions.ValidationException;
 import ru.practicum.ewm.model.Hit;
 
+import java.time.temporal.ChronoUnit;
+
 public class HitMapper {
     public static HitDto mapToDto(Hit hit) {
         return new HitDto(
@@ -15,12 +18,31 @@ public class HitMapper {
     }
 
     public static Hit mapFromDto(HitDto dto) {
+        String ip = dto.getIp();
+        long ip4 = IpAddressMapper.parseIpv4(ip);
+        byte[] ip6 = null;
+        if (ip4 == IpAddressMapper.INVALID) {
+            ip6 = IpAddressMapper.parseIpv6(ip);
+            if (ip6 == null) {
+                throw new ValidationException("ip", "Некорректный IP-адрес: " + ip);
+            }
+            ip4 = IpAddressMapper.mappedIpv4(ip6);
+            if (ip4 != IpAddressMapper.INVALID) {
+                ip6 = null;
+            }
+        }
         return new Hit(
                 dto.getId(),
                 dto.getApp(),
                 dto.getUri(),
-                dto.getIp(),
-                dto.getTimestamp()
+                ip,
+                // Агрегаты по периодам рассчитаны на время с точностью до секунды
+                dto.getTimestamp().truncatedTo(ChronoUnit.SECONDS),
+                null,
+                null,
+                ip6 == null ? (int) ip4 : null,
+                ip6,
+                1
         );
     }
 }
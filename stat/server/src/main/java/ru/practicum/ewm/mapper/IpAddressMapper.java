@@ -0,0 +1,153 @@
+package ru.practicum.ewm.mapper;
+
+import java.util.Arrays;
+
+// Разбор IP-адресов без промежуточных строк: IPv4 упаковывается в 32-битное число, IPv6 - в 16 байт
+public class IpAddressMapper {
+    public static final long INVALID = -1;
+
+    public static boolean isValid(String ip) {
+        return parseIpv4(ip) != INVALID || parseIpv6(ip) != null;
+    }
+
+    // Адрес как беззнаковое 32-битное число либо INVALID
+    public static long parseIpv4(CharSequence ip) {
+        return parseIpv4(ip, 0, ip.length());
+    }
+
+    // 16 байт адреса либо null; поддерживаются сокращение "::", IPv4-хвост и зона (fe80::1%eth0)
+    public static byte[] parseIpv6(CharSequence ip) {
+        int to = ip.length();
+        for (int i = 0; i < to; i++) {
+            if (ip.charAt(i) == '%') {
+                to = i;
+                break;
+            }
+        }
+        if (to < 2) {
+            return null;
+        }
+        byte[] bytes = new byte[16];
+        int pos = 0;
+        int gap = -1;
+        int i = 0;
+        if (ip.charAt(0) == ':') {
+            if (ip.charAt(1) != ':') {
+                return null;
+            }
+            gap = 0;
+            i = 2;
+        }
+        while (i < to) {
+            int start = i;
+            int group = 0;
+            int digit;
+            while (i < to && i - start < 4 && (digit = Character.digit(ip.charAt(i), 16)) >= 0) {
+                group = group << 4 | digit;
+                i++;
+            }
+            if (i < to && ip.charAt(i) == '.') {
+                long ipv4 = pos <= 12 ? parseIpv4(ip, start, to) : INVALID;
+                if (ipv4 == INVALID) {
+                    return null;
+                }
+                bytes[pos++] = (byte) (ipv4 >>> 24);
+                bytes[pos++] = (byte) (ipv4 >>> 16);
+                bytes[pos++] = (byte) (ipv4 >>> 8);
+                bytes[pos++] = (byte) ipv4;
+                break;
+            }
+            if (i == start || pos == 16) {
+                return null;
+            }
+            bytes[pos++] = (byte) (group >>> 8);
+            bytes[pos++] = (byte) group;
+            if (i == to) {
+                break;
+            }
+            if (ip.charAt(i++) != ':' || i == to) {
+                return null;
+            }
+            if (ip.charAt(i) == ':') {
+                if (gap >= 0) {
+                    return null;
+                }
+                gap = pos;
+                i++;
+            }
+        }
+        if (gap >= 0) {
+            // "::" заменяет как минимум одну группу нулей
+            if (pos == 16) {
+                return null;
+            }
+            int tail = pos - gap;
+            System.arraycopy(bytes, gap, bytes, 16 - tail, tail);
+            Arrays.fill(bytes, gap, 16 - tail, (byte) 0);
+        } else if (pos != 16) {
+            return null;
+        }
+        return bytes;
+    }
+
+    // Для адресов вида ::ffff:a.b.c.d - исходный IPv4, иначе INVALID
+    public static long mappedIpv4(byte[] ipv6) {
+        for (int i = 0; i < 10; i++) {
+            if (ipv6[i] != 0) {
+                return INVALID;
+            }
+        }
+        if (ipv6[10] != (byte) 0xff || ipv6[11] != (byte) 0xff) {
+            return INVALID;
+        }
+        return (ipv6[12] & 0xffL) << 24 | (ipv6[13] & 0xffL) << 16 | (ipv6[14] & 0xffL) << 8 | (ipv6[15] & 0xffL);
+    }
+
+    // Обратное преобразование разобранного адреса: IPv4 в точечной записи, IPv6 - восемь групп без сокращения
+    public static String format(Integer ip4, byte[] ip6) {
+        StringBuilder result = new StringBuilder(39);
+        if (ip6 == null) {
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                result.append(ip4 >>> shift & 0xff);
+                if (shift > 0) {
+                    result.append('.');
+                }
+            }
+            return result.toString();
+        }
+        for (int i = 0; i < 16; i += 2) {
+            result.append(Integer.toHexString((ip6[i] & 0xff) << 8 | (ip6[i + 1] & 0xff)));
+            if (i < 14) {
+                result.append(':');
+            }
+        }
+        return result.toString();
+    }
+
+    private static long parseIpv4(CharSequence ip, int from, int to) {
+        long result = 0;
+        int octets = 0;
+        int octet = 0;
+        int digits = 0;
+        for (int i = from; i < to; i++) {
+            char c = ip.charAt(i);
+            if (c >= '0' && c <= '9') {
+                octet = octet * 10 + (c - '0');
+                if (++digits > 3 || octet > 255) {
+                    return INVALID;
+                }
+            } else if (c == '.' && digits > 0 && octets < 3) {
+                result = result << 8 | octet;
+                octets++;
+                octet = 0;
+                digits = 0;
+            } else {
+                return INVALID;
+            }
+        }
+        if (digits == 0 || octets != 3) {
+            return INVALID;
+        }
+        return result << 8 | octet;
+    }
+}
@@ -6,6 +6,7 @@ import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -26,12 +27,30 @@ public class Hit {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    // Строки app и uri хранятся в справочниках, в таблице stats - только их id
+    @Transient
     private String app;
 
+    @Transient
     private String uri;
 
+    // Исходная строка нужна только для ответа; хранится разобранный адрес в ip4 либо ip6
+    @Transient
     private String ip;
 
     @Column(name = "datetime")
     private LocalDateTime timestamp;
+
+    @Column(name = "app_id")
+    private Integer appId;
+
+    @Column(name = "uri_id")
+    private Integer uriId;
+
+    private Integer ip4;
+
+    private byte[] ip6;
+
+    // Сколько запросов представляет строка: больше 1, если остальные отброшены прореживанием
+    private int weight = 1;
 }
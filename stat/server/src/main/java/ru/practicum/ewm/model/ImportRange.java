@@ -0,0 +1,5 @@
+package ru.practicum.ewm.model;
+
+// Диапазон байт [start, end) файла лога; position - начало первой ещё не загруженной строки
+public record ImportRange(String file, long start, long end, long position) {
+}
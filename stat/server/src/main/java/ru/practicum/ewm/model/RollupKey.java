@@ -0,0 +1,15 @@
+package ru.practicum.ewm.model;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+
+public record RollupKey(int appId, int uriId, LocalDateTime bucket) implements Comparable<RollupKey> {
+    private static final Comparator<RollupKey> ORDER = Comparator.comparingInt(RollupKey::appId)
+            .thenComparingInt(RollupKey::uriId)
+            .thenComparing(RollupKey::bucket);
+
+    @Override
+    public int compareTo(RollupKey other) {
+        return ORDER.compare(this, other);
+    }
+}
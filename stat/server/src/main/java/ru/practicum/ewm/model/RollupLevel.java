@@ -0,0 +1,53 @@
+package ru.practicum.ewm.model;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+public enum RollupLevel {
+    MINUTE(ChronoUnit.MINUTES, "stats_rollup_minute", "minute"),
+    HOUR(ChronoUnit.HOURS, "stats_rollup_hour", "hour"),
+    DAY(ChronoUnit.DAYS, "stats_rollup_day", "day");
+
+    private final ChronoUnit unit;
+    private final String table;
+    private final String truncField;
+
+    RollupLevel(ChronoUnit unit, String table, String truncField) {
+        this.unit = unit;
+        this.table = table;
+        this.truncField = truncField;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public String getRouteTable() {
+        return "stats_route_rollup_" + truncField;
+    }
+
+    public String getSketchTable() {
+        return "stats_sketch_" + truncField;
+    }
+
+    public String getTopTable() {
+        return "stats_top_" + truncField;
+    }
+
+    public long getSeconds() {
+        return unit.getDuration().getSeconds();
+    }
+
+    public String getTruncField() {
+        return truncField;
+    }
+
+    public LocalDateTime floor(LocalDateTime time) {
+        return time.truncatedTo(unit);
+    }
+
+    public LocalDateTime ceil(LocalDateTime time) {
+        LocalDateTime floor = floor(time);
+        return floor.equals(time) ? time : floor.plus(1, unit);
+    }
+}
@@ -0,0 +1,6 @@
+package ru.practicum.ewm.model;
+
+import java.time.LocalDateTime;
+
+public record SketchEntry(int appId, int uriId, LocalDateTime bucket, byte[] sketch) {
+}
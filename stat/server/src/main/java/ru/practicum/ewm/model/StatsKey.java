@@ -0,0 +1,4 @@
+package ru.practicum.ewm.model;
+
+public record StatsKey(int appId, int uriId) {
+}
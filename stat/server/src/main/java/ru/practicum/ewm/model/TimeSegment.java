@@ -0,0 +1,10 @@
+package ru.practicum.ewm.model;
+
+import java.time.LocalDateTime;
+
+// Полуинтервал [from, to); level == null означает чтение сырых строк из stats
+public record TimeSegment(RollupLevel level, LocalDateTime from, LocalDateTime to) {
+    public boolean isRaw() {
+        return level == null;
+    }
+}
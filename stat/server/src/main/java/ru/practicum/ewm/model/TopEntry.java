@@ -0,0 +1,6 @@
+package ru.practicum.ewm.model;
+
+import java.time.LocalDateTime;
+
+public record TopEntry(int appId, LocalDateTime bucket, byte[] summary) {
+}
@@ -0,0 +1,4 @@
+package ru.practicum.ewm.model;
+
+public record UriCounter(int appId, int uriId, long hits, long uniques) {
+}
@@ -0,0 +1,39 @@
+package ru.practicum.ewm.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+// Отметки stats_backfill: с какого id сырые строки не попали в выключенную производную таблицу
+@Repository
+public class BackfillRepository {
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public BackfillRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // Отметка ставится по последнему id stats; уже поставленная не сдвигается, пока пропуск не дозаписан
+    public void open(String name) {
+        jdbcTemplate.update("INSERT INTO stats_backfill (name, last_id) " +
+                "SELECT ?, (SELECT COALESCE(MAX(id), 0) FROM stats) " +
+                "WHERE NOT EXISTS (SELECT 1 FROM stats_backfill WHERE name = ?)", name, name);
+    }
+
+    public Optional<Long> find(String name) {
+        return jdbcTemplate.queryForList("SELECT last_id FROM stats_backfill WHERE name = ?", Long.class, name)
+                .stream()
+                .findFirst();
+    }
+
+    public void close(String name) {
+        jdbcTemplate.update("DELETE FROM stats_backfill WHERE name = ?", name);
+    }
+
+    public long maxStatsId() {
+        return jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM stats", Long.class);
+    }
+}
@@ -0,0 +1,43 @@
+package ru.practicum.ewm.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public class CompactionRepository {
+    private final JdbcTemplate jdbcTemplate;
+    private final DatabaseDialect dialect;
+
+    @Autowired
+    public CompactionRepository(JdbcTemplate jdbcTemplate, DatabaseDialect dialect) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dialect = dialect;
+    }
+
+    public Optional<LocalDateTime> findMaxWatermark() {
+        return Optional.ofNullable(jdbcTemplate.queryForObject("SELECT MAX(compacted_before) FROM stats_compaction",
+                LocalDateTime.class));
+    }
+
+    public void saveWatermark(int appId, LocalDateTime compactedBefore) {
+        String sql = dialect.isPostgres()
+                ? "INSERT INTO stats_compaction (app_id, compacted_before) VALUES (?, ?) " +
+                "ON CONFLICT (app_id) DO UPDATE SET compacted_before = " +
+                "GREATEST(stats_compaction.compacted_before, EXCLUDED.compacted_before)"
+                : "MERGE INTO stats_compaction t USING (VALUES (CAST(? AS INTEGER), CAST(? AS TIMESTAMP))) " +
+                "AS s(app_id, compacted_before) ON t.app_id = s.app_id " +
+                "WHEN MATCHED THEN UPDATE SET compacted_before = GREATEST(t.compacted_before, s.compacted_before) " +
+                "WHEN NOT MATCHED THEN INSERT (app_id, compacted_before) VALUES (s.app_id, s.compacted_before)";
+        jdbcTemplate.update(sql, appId, compactedBefore);
+    }
+
+    // Удаляет не больше limit сырых строк приложения старше before; каждый вызов - отдельная короткая транзакция
+    public int deleteBatch(int appId, LocalDateTime before, int limit) {
+        return jdbcTemplate.update("DELETE FROM stats WHERE datetime < ? AND id IN " +
+                "(SELECT id FROM stats WHERE app_id = ? AND datetime < ? LIMIT ?)", before, appId, before, limit);
+    }
+}
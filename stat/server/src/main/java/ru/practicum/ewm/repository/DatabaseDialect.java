@@ -0,0 +1,31 @@
+package ru.practicum.ewm.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+@Component
+public class DatabaseDialect {
+    private final boolean postgres;
+
+    @Autowired
+    public DatabaseDialect(JdbcTemplate jdbcTemplate) {
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        this.postgres = product != null && product.toLowerCase(Locale.ROOT).contains("postgres");
+    }
+
+    public boolean isPostgres() {
+        return postgres;
+    }
+
+    // Номер интервала длиной step секунд, в который попадает column; параметры: начало отсчёта, step
+    public String stepIndex(String column) {
+        return postgres
+                ? "CAST(FLOOR(EXTRACT(EPOCH FROM (" + column + " - CAST(? AS TIMESTAMP))) / ?) AS BIGINT)"
+                : "DATEDIFF('SECOND', CAST(? AS TIMESTAMP), " + column + ") / ?";
+    }
+}
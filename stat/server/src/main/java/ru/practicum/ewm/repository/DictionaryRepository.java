@@ -0,0 +1,73 @@
+package ru.practicum.ewm.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+@Repository
+public class DictionaryRepository {
+    public static final String APPS = "stats_apps";
+    public static final String URIS = "stats_uris";
+    public static final String ROUTES = "stats_routes";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DatabaseDialect dialect;
+
+    @Autowired
+    public DictionaryRepository(JdbcTemplate jdbcTemplate, DatabaseDialect dialect) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dialect = dialect;
+    }
+
+    // Вызывается вне транзакции записи запросов: id попадает в кэш и не должен пропасть при её откате
+    public int getOrCreate(String table, String name) {
+        String insert = dialect.isPostgres()
+                ? "INSERT INTO " + table + " (name) VALUES (?) ON CONFLICT (name) DO NOTHING"
+                : "MERGE INTO " + table + " (name) KEY (name) VALUES (?)";
+        jdbcTemplate.update(insert, name);
+        return findId(table, name).orElseThrow();
+    }
+
+    public Optional<Integer> findId(String table, String name) {
+        List<Integer> ids = jdbcTemplate.queryForList("SELECT id FROM " + table + " WHERE name = ?",
+                Integer.class, name);
+        return ids.stream().findFirst();
+    }
+
+    // Поиск по началу имени идёт по индексу: на Postgres нужен индекс с varchar_pattern_ops, см. createPrefixIndex
+    public Map<Integer, String> findByPrefix(String table, String prefix) {
+        String pattern = prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        Map<Integer, String> names = new HashMap<>();
+        jdbcTemplate.query("SELECT id, name FROM " + table + " WHERE name LIKE ? ESCAPE '\\'", rs -> {
+            names.put(rs.getInt(1), rs.getString(2));
+        }, pattern);
+        return names;
+    }
+
+    // Индекс ограничения UNIQUE на Postgres использует языковую сортировку и для LIKE 'префикс%' не подходит
+    public void createPrefixIndex(String table) {
+        if (dialect.isPostgres()) {
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + table + "_prefix_idx ON " + table +
+                    " (name varchar_pattern_ops)");
+        }
+    }
+
+    public Map<Integer, String> findAll(String table) {
+        Map<Integer, String> names = new HashMap<>();
+        jdbcTemplate.query("SELECT id, name FROM " + table, rs -> {
+            names.put(rs.getInt(1), rs.getString(2));
+        });
+        return names;
+    }
+
+    public Optional<String> findName(String table, int id) {
+        List<String> names = jdbcTemplate.queryForList("SELECT name FROM " + table + " WHERE id = ?",
+                String.class, id);
+        return names.stream().findFirst();
+    }
+}
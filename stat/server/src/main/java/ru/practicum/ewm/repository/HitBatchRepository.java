@@ -0,0 +1,42 @@
+package ru.practicum.ewm.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.ewm.model.Hit;
+
+import java.sql.Types;
+import java.util.List;
+
+@Repository
+public class HitBatchRepository {
+    private static final String INSERT_SQL = "INSERT INTO stats (app_id, uri_id, ip4, ip6, datetime, weight) " +
+            "VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+
+    @Autowired
+    public HitBatchRepository(JdbcTemplate jdbcTemplate,
+                              @Value("${stats.hit.jdbc-batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+    }
+
+    // Пакетная вставка через JDBC: IDENTITY-ключ не даёт Hibernate объединять insert'ы в пакеты
+    public void saveAll(List<Hit> hits) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, hits, batchSize, (ps, hit) -> {
+            ps.setInt(1, hit.getAppId());
+            ps.setInt(2, hit.getUriId());
+            if (hit.getIp4() != null) {
+                ps.setInt(3, hit.getIp4());
+            } else {
+                ps.setNull(3, Types.INTEGER);
+            }
+            ps.setBytes(4, hit.getIp6());
+            ps.setObject(5, hit.getTimestamp());
+            ps.setInt(6, hit.getWeight());
+        });
+    }
+}
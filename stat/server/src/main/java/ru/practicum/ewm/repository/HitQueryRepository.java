@@ -0,0 +1,143 @@
+package ru.practicum.ewm.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Запросы к сырым строкам stats за полуинтервал [from, to)
+@Repository
+public class HitQueryRepository {
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate scanTemplate;
+    private final DatabaseDialect dialect;
+    private final UriFilterBuilder uriFilterBuilder;
+
+    @Autowired
+    public HitQueryRepository(JdbcTemplate jdbcTemplate, DatabaseDialect dialect, UriFilterBuilder uriFilterBuilder,
+                              @Value("${stats.scan.fetch-size:10000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dialect = dialect;
+        this.uriFilterBuilder = uriFilterBuilder;
+        // Отдельный шаблон для построчного чтения больших выборок курсором
+        this.scanTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.scanTemplate.setFetchSize(fetchSize);
+    }
+
+    // Колонки: app_id, uri_id, количество
+    public void count(LocalDateTime from, LocalDateTime to, List<Integer> uriIds, boolean unique,
+                      RowCallbackHandler handler) {
+        List<Object> args = new ArrayList<>();
+        args.add(from);
+        args.add(to);
+        String sql = "SELECT app_id, uri_id, " + countExpression(unique) + " FROM stats " +
+                "WHERE datetime >= ? AND datetime < ?" + uriFilterBuilder.build("uri_id", uriIds, args) +
+                " GROUP BY app_id, uri_id";
+        jdbcTemplate.query(sql, handler, args.toArray());
+    }
+
+    // Колонки: app_id, uri_id, количество; каждый uri считается за своё окно [since, to) за один проход
+    public void countSince(Map<Integer, LocalDateTime> since, LocalDateTime to, boolean unique,
+                           RowCallbackHandler handler) {
+        List<Object> args = new ArrayList<>();
+        StringBuilder windows = new StringBuilder();
+        for (Map.Entry<Integer, LocalDateTime> window : since.entrySet()) {
+            if (!windows.isEmpty()) {
+                windows.append(", ");
+            }
+            windows.append("(CAST(? AS INTEGER), CAST(? AS TIMESTAMP))");
+            args.add(window.getKey());
+            args.add(window.getValue());
+        }
+        // Общая нижняя граница ограничивает сканирование индекса и секций самым ранним окном
+        args.add(since.values().stream().min(LocalDateTime::compareTo).orElseThrow());
+        args.add(to);
+        String sql = "SELECT s.app_id, s.uri_id, " + countExpression(unique) + " FROM stats s " +
+                "JOIN (VALUES " + windows + ") AS w(uri_id, since) ON s.uri_id = w.uri_id AND s.datetime >= w.since " +
+                "WHERE s.datetime >= ? AND s.datetime < ? GROUP BY s.app_id, s.uri_id";
+        jdbcTemplate.query(sql, handler, args.toArray());
+    }
+
+    // Колонки: app_id, uri_id, номер интервала, количество; строки упорядочены по ключу и интервалу
+    public void countByStep(LocalDateTime from, LocalDateTime to, LocalDateTime origin, long stepSeconds,
+                            List<Integer> uriIds, boolean unique, RowCallbackHandler handler) {
+        List<Object> args = new ArrayList<>();
+        args.add(origin);
+        args.add(stepSeconds);
+        args.add(from);
+        args.add(to);
+        String sql = "SELECT app_id, uri_id, idx, " + countExpression(unique) +
+                " FROM (SELECT app_id, uri_id, " + dialect.stepIndex("datetime") + " AS idx, ip4, ip6, weight FROM stats " +
+                "WHERE datetime >= ? AND datetime < ?" + uriFilterBuilder.build("uri_id", uriIds, args) + ") s " +
+                "GROUP BY app_id, uri_id, idx ORDER BY app_id, uri_id, idx";
+        jdbcTemplate.query(sql, handler, args.toArray());
+    }
+
+    // Колонки: app_id, uri_id, ip4, ip6
+    public void scanIps(LocalDateTime from, LocalDateTime to, List<Integer> uriIds, RowCallbackHandler handler) {
+        List<Object> args = new ArrayList<>();
+        args.add(from);
+        args.add(to);
+        String sql = "SELECT app_id, uri_id, ip4, ip6 FROM stats WHERE datetime >= ? AND datetime < ?" +
+                uriFilterBuilder.build("uri_id", uriIds, args);
+        scanTemplate.query(sql, handler, args.toArray());
+    }
+
+    // Колонки: id, datetime, app_id, uri_id, ip4, ip6, weight; строки упорядочены по (datetime, id).
+    // afterTime и afterId - позиция последней выгруженной строки, с которой продолжается докачка
+    public void scanExport(LocalDateTime from, LocalDateTime to, Integer appId, LocalDateTime afterTime, Long afterId,
+                           RowCallbackHandler handler) {
+        List<Object> args = new ArrayList<>();
+        args.add(from);
+        args.add(to);
+        StringBuilder sql = new StringBuilder("SELECT id, datetime, app_id, uri_id, ip4, ip6, weight FROM stats " +
+                "WHERE datetime >= ? AND datetime < ?");
+        if (appId != null) {
+            sql.append(" AND app_id = ?");
+            args.add(appId);
+        }
+        if (afterTime != null) {
+            sql.append(" AND (datetime, id) > (?, ?)");
+            args.add(afterTime);
+            args.add(afterId);
+        }
+        sql.append(" ORDER BY datetime, id");
+        scanTemplate.query(sql.toString(), handler, args.toArray());
+    }
+
+    // Колонки: app_id, uri_id, ip4, ip6, datetime; строки упорядочены по времени
+    public void scanAll(RowCallbackHandler handler) {
+        scanTemplate.query("SELECT app_id, uri_id, ip4, ip6, datetime FROM stats ORDER BY datetime", handler);
+    }
+
+    // Колонки: app_id, uri_id, час, количество; строки упорядочены по часу
+    public void scanHourlyCounts(RowCallbackHandler handler) {
+        scanTemplate.query("SELECT app_id, uri_id, DATE_TRUNC('hour', datetime) AS b, SUM(weight) FROM stats " +
+                "GROUP BY app_id, uri_id, DATE_TRUNC('hour', datetime) ORDER BY b", handler);
+    }
+
+    // То же для строк с id из (afterId, toId]
+    public void scanHourlyCounts(long afterId, long toId, RowCallbackHandler handler) {
+        scanTemplate.query("SELECT app_id, uri_id, DATE_TRUNC('hour', datetime) AS b, SUM(weight) FROM stats " +
+                "WHERE id > ? AND id <= ? GROUP BY app_id, uri_id, DATE_TRUNC('hour', datetime) ORDER BY b",
+                handler, afterId, toId);
+    }
+
+    // Часы, в которые попадают строки с id из (afterId, toId]
+    public List<LocalDateTime> findHours(long afterId, long toId) {
+        return jdbcTemplate.queryForList("SELECT DISTINCT DATE_TRUNC('hour', datetime) FROM stats " +
+                "WHERE id > ? AND id <= ?", LocalDateTime.class, afterId, toId);
+    }
+
+    // Адрес хранится либо в ip4, либо в ip6, поэтому уникальные считаются по каждой колонке отдельно.
+    // Прореженная строка представляет weight запросов; уникальные по прореженным строкам занижены
+    static String countExpression(boolean unique) {
+        return unique ? "COUNT(DISTINCT ip4) + COUNT(DISTINCT ip6)" : "SUM(weight)";
+    }
+}
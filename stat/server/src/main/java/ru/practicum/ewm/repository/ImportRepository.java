@@ -0,0 +1,126 @@
+package ru.practicum.ewm.repository;
+
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.ewm.model.Hit;
+import ru.practicum.ewm.model.ImportRange;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public class ImportRepository {
+    private static final String COPY_SQL = "COPY stats (app_id, uri_id, ip4, ip6, datetime, weight) FROM STDIN";
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "\\N".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BYTEA_PREFIX = "\\\\x".getBytes(StandardCharsets.US_ASCII);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DatabaseDialect dialect;
+    private final HitBatchRepository hitBatchRepository;
+
+    @Autowired
+    public ImportRepository(JdbcTemplate jdbcTemplate, DatabaseDialect dialect,
+                            HitBatchRepository hitBatchRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dialect = dialect;
+        this.hitBatchRepository = hitBatchRepository;
+    }
+
+    public List<ImportRange> findRanges(String file) {
+        return jdbcTemplate.query("SELECT file, range_start, range_end, position FROM stats_import " +
+                        "WHERE file = ? ORDER BY range_start",
+                (rs, rowNum) -> new ImportRange(rs.getString(1), rs.getLong(2), rs.getLong(3), rs.getLong(4)), file);
+    }
+
+    public void saveRange(ImportRange range) {
+        jdbcTemplate.update("INSERT INTO stats_import (file, range_start, range_end, position) VALUES (?, ?, ?, ?)",
+                range.file(), range.start(), range.end(), range.position());
+    }
+
+    public void savePosition(String file, long rangeStart, long position) {
+        jdbcTemplate.update("UPDATE stats_import SET position = ? WHERE file = ? AND range_start = ?",
+                position, file, rangeStart);
+    }
+
+    // В текущей транзакции: на Postgres одним COPY в текстовом формате, на остальных базах - пакетной вставкой.
+    // id app и uri должны быть уже известны
+    public void copy(List<Hit> hits) {
+        if (!dialect.isPostgres()) {
+            hitBatchRepository.saveAll(hits);
+            return;
+        }
+        byte[] rows = encode(hits);
+        jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            try {
+                return connection.unwrap(PGConnection.class).getCopyAPI()
+                        .copyIn(COPY_SQL, new ByteArrayInputStream(rows));
+            } catch (IOException e) {
+                throw new DataAccessResourceFailureException("Не удалось передать строки в COPY", e);
+            }
+        });
+    }
+
+    private static byte[] encode(List<Hit> hits) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(hits.size() * 48);
+        for (Hit hit : hits) {
+            writeNumber(out, hit.getAppId());
+            out.write('\t');
+            writeNumber(out, hit.getUriId());
+            out.write('\t');
+            if (hit.getIp4() != null) {
+                writeNumber(out, hit.getIp4());
+                out.write('\t');
+                out.writeBytes(NULL);
+            } else {
+                out.writeBytes(NULL);
+                out.write('\t');
+                // bytea в шестнадцатеричном виде; обратная косая черта в текстовом формате COPY удваивается
+                out.writeBytes(BYTEA_PREFIX);
+                for (byte b : hit.getIp6()) {
+                    out.write(HEX[(b >> 4) & 0xf]);
+                    out.write(HEX[b & 0xf]);
+                }
+            }
+            out.write('\t');
+            writeTimestamp(out, hit.getTimestamp());
+            out.write('\t');
+            writeNumber(out, hit.getWeight());
+            out.write('\n');
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeNumber(ByteArrayOutputStream out, long value) {
+        out.writeBytes(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    // yyyy-MM-dd HH:mm:ss: LocalDateTime.toString опускает нулевые секунды
+    private static void writeTimestamp(ByteArrayOutputStream out, LocalDateTime time) {
+        writeDigits(out, time.getYear(), 4);
+        out.write('-');
+        writeDigits(out, time.getMonthValue(), 2);
+        out.write('-');
+        writeDigits(out, time.getDayOfMonth(), 2);
+        out.write(' ');
+        writeDigits(out, time.getHour(), 2);
+        out.write(':');
+        writeDigits(out, time.getMinute(), 2);
+        out.write(':');
+        writeDigits(out, time.getSecond(), 2);
+    }
+
+    private static void writeDigits(ByteArrayOutputStream out, int value, int count) {
+        for (int divisor = (int) Math.pow(10, count - 1); divisor > 0; divisor /= 10) {
+            out.write('0' + value / divisor % 10);
+        }
+    }
+}
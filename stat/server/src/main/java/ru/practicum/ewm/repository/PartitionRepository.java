@@ -0,0 +1,50 @@
+package ru.practicum.ewm.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@Repository
+public class PartitionRepository {
+    private static final String PARENT = "stats";
+    private static final String DEFAULT_PARTITION = "stats_default";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public PartitionRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public boolean isParentPartitioned() {
+        Boolean partitioned = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM pg_partitioned_table p JOIN pg_class c ON c.oid = p.partrelid " +
+                        "WHERE c.relname = ? AND pg_table_is_visible(c.oid))", Boolean.class, PARENT);
+        return Boolean.TRUE.equals(partitioned);
+    }
+
+    public boolean exists(String name) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, name));
+    }
+
+    // Индексы родительской таблицы создаются на новой секции автоматически, как при CREATE, так и при ATTACH
+    @Transactional
+    public void create(String name, LocalDateTime from, LocalDateTime to) {
+        Boolean hasDefaultRows = jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM " + DEFAULT_PARTITION +
+                " WHERE datetime >= ? AND datetime < ?)", Boolean.class, from, to);
+        String bounds = " FOR VALUES FROM ('" + from + "') TO ('" + to + "')";
+        if (!Boolean.TRUE.equals(hasDefaultRows)) {
+            jdbcTemplate.execute("CREATE TABLE " + name + " PARTITION OF " + PARENT + bounds);
+            return;
+        }
+        // Строки из секции по умолчанию нужно перенести, иначе Postgres не даст создать пересекающуюся секцию
+        jdbcTemplate.execute("CREATE TABLE " + name + " (LIKE " + PARENT + " INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+        jdbcTemplate.update("INSERT INTO " + name + " SELECT * FROM " + DEFAULT_PARTITION +
+                " WHERE datetime >= ? AND datetime < ?", from, to);
+        jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION + " WHERE datetime >= ? AND datetime < ?", from, to);
+        jdbcTemplate.execute("ALTER TABLE " + PARENT + " ATTACH PARTITION " + name + bounds);
+    }
+}
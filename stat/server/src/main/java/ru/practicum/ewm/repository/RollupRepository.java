@@ -0,0 +1,127 @@
+package ru.practicum.ewm.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.ewm.model.RollupKey;
+import ru.practicum.ewm.model.RollupLevel;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+public class RollupRepository {
+    private final JdbcTemplate jdbcTemplate;
+    private final DatabaseDialect dialect;
+    private final UriFilterBuilder uriFilterBuilder;
+
+    @Autowired
+    public RollupRepository(JdbcTemplate jdbcTemplate, DatabaseDialect dialect, UriFilterBuilder uriFilterBuilder) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dialect = dialect;
+        this.uriFilterBuilder = uriFilterBuilder;
+    }
+
+    // Ключи должны приходить отсортированными, чтобы параллельные транзакции блокировали строки в одном порядке
+    public void increment(RollupLevel level, Map<RollupKey, Long> deltas) {
+        List<Map.Entry<RollupKey, Long>> entries = new ArrayList<>(deltas.entrySet());
+        jdbcTemplate.batchUpdate(upsertSql(level), entries, entries.size(), (ps, entry) -> {
+            ps.setInt(1, entry.getKey().appId());
+            ps.setInt(2, entry.getKey().uriId());
+            ps.setObject(3, entry.getKey().bucket());
+            ps.setLong(4, entry.getValue());
+        });
+    }
+
+    // Колонки: app_id, uri_id, сумма hits
+    public void sumHits(RollupLevel level, LocalDateTime from, LocalDateTime to, List<Integer> uriIds,
+                        RowCallbackHandler handler) {
+        List<Object> args = new ArrayList<>();
+        args.add(from);
+        args.add(to);
+        StringBuilder sql = new StringBuilder("SELECT app_id, uri_id, SUM(hits) FROM ")
+                .append(level.getTable())
+                .append(" WHERE bucket >= ? AND bucket < ?");
+        sql.append(uriFilterBuilder.build("uri_id", uriIds, args));
+        sql.append(" GROUP BY app_id, uri_id");
+        jdbcTemplate.query(sql.toString(), handler, args.toArray());
+    }
+
+    // Колонки: app_id, uri_id, номер интервала, сумма hits; строки упорядочены по ключу и интервалу
+    public void sumHitsByStep(RollupLevel level, LocalDateTime from, LocalDateTime to, LocalDateTime origin,
+                              long stepSeconds, List<Integer> uriIds, RowCallbackHandler handler) {
+        List<Object> args = new ArrayList<>();
+        args.add(origin);
+        args.add(stepSeconds);
+        args.add(from);
+        args.add(to);
+        StringBuilder sql = new StringBuilder("SELECT app_id, uri_id, idx, SUM(hits) FROM (SELECT app_id, uri_id, ")
+                .append(dialect.stepIndex("bucket"))
+                .append(" AS idx, hits FROM ")
+                .append(level.getTable())
+                .append(" WHERE bucket >= ? AND bucket < ?");
+        sql.append(uriFilterBuilder.build("uri_id", uriIds, args));
+        sql.append(") r GROUP BY app_id, uri_id, idx ORDER BY app_id, uri_id, idx");
+        jdbcTemplate.query(sql.toString(), handler, args.toArray());
+    }
+
+    public boolean isEmpty() {
+        return jdbcTemplate.queryForList("SELECT 1 FROM stats_rollup_minute LIMIT 1").isEmpty();
+    }
+
+    // Полный пересчёт агрегатов из сырых строк: минутные из stats, остальные из минутных
+    @Transactional
+    public void rebuild() {
+        RollupLevel previous = null;
+        for (RollupLevel level : RollupLevel.values()) {
+            jdbcTemplate.update("DELETE FROM " + level.getTable());
+            String source = previous == null
+                    ? "SELECT app_id, uri_id, DATE_TRUNC('minute', datetime) AS b, SUM(weight) AS h FROM stats " +
+                    "GROUP BY app_id, uri_id, DATE_TRUNC('minute', datetime)"
+                    : "SELECT app_id, uri_id, DATE_TRUNC('" + level.getTruncField() + "', bucket) AS b, " +
+                    "SUM(hits) AS h FROM " + previous.getTable() + " " +
+                    "GROUP BY app_id, uri_id, DATE_TRUNC('" + level.getTruncField() + "', bucket)";
+            jdbcTemplate.update("INSERT INTO " + level.getTable() + " (app_id, uri_id, bucket, hits) " +
+                    "SELECT app_id, uri_id, b, h FROM (" + source + ") agg");
+            previous = level;
+        }
+    }
+
+    // Добавляет к агрегатам сырые строки с id из (afterId, toId], пропущенные, пока агрегаты были выключены
+    public void addFromStats(long afterId, long toId) {
+        for (RollupLevel level : RollupLevel.values()) {
+            String table = level.getTable();
+            String source = "SELECT app_id, uri_id, DATE_TRUNC('" + level.getTruncField() + "', datetime) AS bucket, " +
+                    "SUM(weight) AS hits FROM stats WHERE id > ? AND id <= ? " +
+                    "GROUP BY app_id, uri_id, DATE_TRUNC('" + level.getTruncField() + "', datetime)";
+            String sql = dialect.isPostgres()
+                    ? "INSERT INTO " + table + " (app_id, uri_id, bucket, hits) " + source + " " +
+                    "ON CONFLICT (app_id, uri_id, bucket) DO UPDATE SET hits = " + table + ".hits + EXCLUDED.hits"
+                    : "MERGE INTO " + table + " t USING (" + source + ") s " +
+                    "ON t.app_id = s.app_id AND t.uri_id = s.uri_id AND t.bucket = s.bucket " +
+                    "WHEN MATCHED THEN UPDATE SET hits = t.hits + s.hits " +
+                    "WHEN NOT MATCHED THEN INSERT (app_id, uri_id, bucket, hits) " +
+                    "VALUES (s.app_id, s.uri_id, s.bucket, s.hits)";
+            jdbcTemplate.update(sql, afterId, toId);
+        }
+    }
+
+    private String upsertSql(RollupLevel level) {
+        String table = level.getTable();
+        if (dialect.isPostgres()) {
+            return "INSERT INTO " + table + " (app_id, uri_id, bucket, hits) VALUES (?, ?, ?, ?) " +
+                    "ON CONFLICT (app_id, uri_id, bucket) DO UPDATE SET hits = " + table + ".hits + EXCLUDED.hits";
+        }
+        return "MERGE INTO " + table + " t " +
+                "USING (VALUES (CAST(? AS INTEGER), CAST(? AS INTEGER), CAST(? AS TIMESTAMP), CAST(? AS BIGINT))) " +
+                "AS s(app_id, uri_id, bucket, hits) " +
+                "ON t.app_id = s.app_id AND t.uri_id = s.uri_id AND t.bucket = s.bucket " +
+                "WHEN MATCHED THEN UPDATE SET hits = t.hits + s.hits " +
+                "WHEN NOT MATCHED THEN INSERT (app_id, uri_id, bucket, hits) " +
+                "VALUES (s.app_id, s.uri_id, s.bucket, s.hits)";
+    }
+}
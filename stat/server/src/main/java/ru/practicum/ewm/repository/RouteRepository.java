@@ -0,0 +1,114 @@
+package ru.practicum.ewm.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.ewm.model.RollupKey;
+import ru.practicum.ewm.model.RollupLevel;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Агрегаты по шаблонам маршрутов: те же уровни, что у агрегатов по uri, но ключ - (app_id, route_id)
+@Repository
+public class RouteRepository {
+    private final JdbcTemplate jdbcTemplate;
+    private final DatabaseDialect dialect;
+    private final UriFilterBuilder uriFilterBuilder;
+
+    @Autowired
+    public RouteRepository(JdbcTemplate jdbcTemplate, DatabaseDialect dialect, UriFilterBuilder uriFilterBuilder) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dialect = dialect;
+        this.uriFilterBuilder = uriFilterBuilder;
+    }
+
+    // Вызывается вне транзакции записи запросов, как и пополнение справочников
+    public void assign(int uriId, int routeId) {
+        jdbcTemplate.update("UPDATE stats_uris SET route_id = ? WHERE id = ? AND route_id IS NULL", routeId, uriId);
+    }
+
+    // uri_id -> route_id
+    public Map<Integer, Integer> findAssigned() {
+        Map<Integer, Integer> routes = new HashMap<>();
+        jdbcTemplate.query("SELECT id, route_id FROM stats_uris WHERE route_id IS NOT NULL", rs -> {
+            routes.put(rs.getInt(1), rs.getInt(2));
+        });
+        return routes;
+    }
+
+    // uri_id -> uri
+    public Map<Integer, String> findUnassigned() {
+        Map<Integer, String> uris = new HashMap<>();
+        jdbcTemplate.query("SELECT id, name FROM stats_uris WHERE route_id IS NULL", rs -> {
+            uris.put(rs.getInt(1), rs.getString(2));
+        });
+        return uris;
+    }
+
+    // Ключ RollupKey.uriId здесь - id шаблона; ключи должны приходить отсортированными
+    public void increment(RollupLevel level, Map<RollupKey, Long> deltas) {
+        List<Map.Entry<RollupKey, Long>> entries = new ArrayList<>(deltas.entrySet());
+        jdbcTemplate.batchUpdate(upsertSql(level), entries, entries.size(), (ps, entry) -> {
+            ps.setInt(1, entry.getKey().appId());
+            ps.setInt(2, entry.getKey().uriId());
+            ps.setObject(3, entry.getKey().bucket());
+            ps.setLong(4, entry.getValue());
+        });
+    }
+
+    // Колонки: app_id, route_id, сумма hits
+    public void sumHits(RollupLevel level, LocalDateTime from, LocalDateTime to, List<Integer> routeIds,
+                        RowCallbackHandler handler) {
+        List<Object> args = new ArrayList<>();
+        args.add(from);
+        args.add(to);
+        String sql = "SELECT app_id, route_id, SUM(hits) FROM " + level.getRouteTable() +
+                " WHERE bucket >= ? AND bucket < ?" + uriFilterBuilder.build("route_id", routeIds, args) +
+                " GROUP BY app_id, route_id";
+        jdbcTemplate.query(sql, handler, args.toArray());
+    }
+
+    // Колонки: app_id, route_id, количество; края окна короче минуты, поэтому соединение со справочником дёшево
+    public void countRaw(LocalDateTime from, LocalDateTime to, List<Integer> routeIds, RowCallbackHandler handler) {
+        List<Object> args = new ArrayList<>();
+        args.add(from);
+        args.add(to);
+        String sql = "SELECT s.app_id, u.route_id, SUM(s.weight) FROM stats s JOIN stats_uris u ON u.id = s.uri_id " +
+                "WHERE s.datetime >= ? AND s.datetime < ? AND u.route_id IS NOT NULL" +
+                uriFilterBuilder.build("u.route_id", routeIds, args) + " GROUP BY s.app_id, u.route_id";
+        jdbcTemplate.query(sql, handler, args.toArray());
+    }
+
+    // Пересчёт из агрегатов по uri по текущим привязкам; сырые строки для этого не нужны
+    @Transactional
+    public void rebuild() {
+        for (RollupLevel level : RollupLevel.values()) {
+            jdbcTemplate.update("DELETE FROM " + level.getRouteTable());
+            jdbcTemplate.update("INSERT INTO " + level.getRouteTable() + " (app_id, route_id, bucket, hits) " +
+                    "SELECT r.app_id, u.route_id, r.bucket, SUM(r.hits) FROM " + level.getTable() + " r " +
+                    "JOIN stats_uris u ON u.id = r.uri_id WHERE u.route_id IS NOT NULL " +
+                    "GROUP BY r.app_id, u.route_id, r.bucket");
+        }
+    }
+
+    private String upsertSql(RollupLevel level) {
+        String table = level.getRouteTable();
+        if (dialect.isPostgres()) {
+            return "INSERT INTO " + table + " (app_id, route_id, bucket, hits) VALUES (?, ?, ?, ?) " +
+                    "ON CONFLICT (app_id, route_id, bucket) DO UPDATE SET hits = " + table + ".hits + EXCLUDED.hits";
+        }
+        return "MERGE INTO " + table + " t " +
+                "USING (VALUES (CAST(? AS INTEGER), CAST(? AS INTEGER), CAST(? AS TIMESTAMP), CAST(? AS BIGINT))) " +
+                "AS s(app_id, route_id, bucket, hits) " +
+                "ON t.app_id = s.app_id AND t.route_id = s.route_id AND t.bucket = s.bucket " +
+                "WHEN MATCHED THEN UPDATE SET hits = t.hits + s.hits " +
+                "WHEN NOT MATCHED THEN INSERT (app_id, route_id, bucket, hits) " +
+                "VALUES (s.app_id, s.route_id, s.bucket, s.hits)";
+    }
+}
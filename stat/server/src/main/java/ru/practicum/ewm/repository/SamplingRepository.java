@@ -0,0 +1,43 @@
+package ru.practicum.ewm.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+@Repository
+public class SamplingRepository {
+    private final JdbcTemplate jdbcTemplate;
+    private final DatabaseDialect dialect;
+
+    @Autowired
+    public SamplingRepository(JdbcTemplate jdbcTemplate, DatabaseDialect dialect) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dialect = dialect;
+    }
+
+    // uri_id -> время самого раннего прореженного запроса
+    public Map<Integer, LocalDateTime> findAll() {
+        Map<Integer, LocalDateTime> since = new HashMap<>();
+        jdbcTemplate.query("SELECT uri_id, sampled_since FROM stats_sampling", rs -> {
+            since.put(rs.getInt(1), rs.getObject(2, LocalDateTime.class));
+        });
+        return since;
+    }
+
+    // Вызывается вне транзакции записи запросов: отметка попадает в кэш и не должна пропасть при её откате
+    public void save(int uriId, LocalDateTime sampledSince) {
+        String sql = dialect.isPostgres()
+                ? "INSERT INTO stats_sampling (uri_id, sampled_since) VALUES (?, ?) " +
+                "ON CONFLICT (uri_id) DO UPDATE SET sampled_since = " +
+                "LEAST(stats_sampling.sampled_since, EXCLUDED.sampled_since)"
+                : "MERGE INTO stats_sampling t USING (VALUES (CAST(? AS INTEGER), CAST(? AS TIMESTAMP))) " +
+                "AS s(uri_id, sampled_since) ON t.uri_id = s.uri_id " +
+                "WHEN MATCHED THEN UPDATE SET sampled_since = LEAST(t.sampled_since, s.sampled_since) " +
+                "WHEN NOT MATCHED THEN INSERT (uri_id, sampled_since) VALUES (s.uri_id, s.sampled_since)";
+        jdbcTemplate.update(sql, uriId, sampledSince);
+    }
+}
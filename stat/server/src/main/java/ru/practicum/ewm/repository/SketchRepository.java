@@ -0,0 +1,87 @@
+package ru.practicum.ewm.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.ewm.model.RollupLevel;
+import ru.practicum.ewm.model.SketchEntry;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public class SketchRepository {
+    private final JdbcTemplate jdbcTemplate;
+    private final DatabaseDialect dialect;
+    private final UriFilterBuilder uriFilterBuilder;
+
+    @Autowired
+    public SketchRepository(JdbcTemplate jdbcTemplate, DatabaseDialect dialect, UriFilterBuilder uriFilterBuilder) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dialect = dialect;
+        this.uriFilterBuilder = uriFilterBuilder;
+    }
+
+    public List<SketchEntry> find(RollupLevel level, LocalDateTime from, LocalDateTime to, List<Integer> uriIds) {
+        List<Object> args = new ArrayList<>();
+        args.add(from);
+        args.add(to);
+        String sql = "SELECT app_id, uri_id, bucket, sketch FROM " + level.getSketchTable() +
+                " WHERE bucket >= ? AND bucket < ?" + uriFilterBuilder.build("uri_id", uriIds, args);
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new SketchEntry(rs.getInt(1), rs.getInt(2),
+                rs.getObject(3, LocalDateTime.class), rs.getBytes(4)), args.toArray());
+    }
+
+    public Optional<byte[]> findOne(RollupLevel level, int appId, int uriId, LocalDateTime bucket) {
+        List<byte[]> found = jdbcTemplate.query("SELECT sketch FROM " + level.getSketchTable() +
+                        " WHERE app_id = ? AND uri_id = ? AND bucket = ?",
+                (rs, rowNum) -> rs.getBytes(1), appId, uriId, bucket);
+        return found.stream().findFirst();
+    }
+
+    public void save(RollupLevel level, int appId, int uriId, LocalDateTime bucket, byte[] sketch) {
+        String table = level.getSketchTable();
+        String sql = dialect.isPostgres()
+                ? "INSERT INTO " + table + " (app_id, uri_id, bucket, sketch) VALUES (?, ?, ?, ?) " +
+                "ON CONFLICT (app_id, uri_id, bucket) DO UPDATE SET sketch = EXCLUDED.sketch"
+                : "MERGE INTO " + table + " (app_id, uri_id, bucket, sketch) KEY (app_id, uri_id, bucket) " +
+                "VALUES (?, ?, ?, ?)";
+        jdbcTemplate.update(sql, appId, uriId, bucket, sketch);
+    }
+
+    // Часы, запросы которых могли ещё не попасть в сохранённые скетчи; generation - поколение сброса,
+    // которое их сохранит
+    public void markDirty(Collection<LocalDateTime> buckets, long generation) {
+        if (buckets.isEmpty()) {
+            return;
+        }
+        String sql = dialect.isPostgres()
+                ? "INSERT INTO stats_sketch_dirty (bucket, generation) VALUES (?, ?) " +
+                "ON CONFLICT (bucket) DO UPDATE SET generation = " +
+                "GREATEST(stats_sketch_dirty.generation, EXCLUDED.generation)"
+                : "MERGE INTO stats_sketch_dirty t USING (VALUES (CAST(? AS TIMESTAMP), CAST(? AS BIGINT))) " +
+                "AS s(bucket, generation) ON t.bucket = s.bucket " +
+                "WHEN MATCHED THEN UPDATE SET generation = GREATEST(t.generation, s.generation) " +
+                "WHEN NOT MATCHED THEN INSERT (bucket, generation) VALUES (s.bucket, s.generation)";
+        List<LocalDateTime> sorted = buckets.stream().sorted().toList();
+        jdbcTemplate.batchUpdate(sql, sorted, sorted.size(), (ps, bucket) -> {
+            ps.setObject(1, bucket);
+            ps.setLong(2, generation);
+        });
+    }
+
+    public List<LocalDateTime> findDirty() {
+        return jdbcTemplate.queryForList("SELECT bucket FROM stats_sketch_dirty ORDER BY bucket", LocalDateTime.class);
+    }
+
+    public void clearDirty(long generation) {
+        jdbcTemplate.update("DELETE FROM stats_sketch_dirty WHERE generation <= ?", generation);
+    }
+
+    public boolean isEmpty() {
+        return jdbcTemplate.queryForList("SELECT 1 FROM stats_sketch_hour LIMIT 1").isEmpty();
+    }
+}
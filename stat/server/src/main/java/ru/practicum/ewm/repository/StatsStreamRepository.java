@@ -0,0 +1,63 @@
+package ru.practicum.ewm.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import ru.practicum.ewm.model.StatsKey;
+import ru.practicum.ewm.model.TimeSegment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Построчное чтение /stats курсором: сегменты окна суммируются в базе, строки идут по возрастанию (app_id, uri_id)
+@Repository
+public class StatsStreamRepository {
+    private final JdbcTemplate scanTemplate;
+    private final UriFilterBuilder uriFilterBuilder;
+
+    @Autowired
+    public StatsStreamRepository(JdbcTemplate jdbcTemplate, UriFilterBuilder uriFilterBuilder,
+                                 @Value("${stats.scan.fetch-size:10000}") int fetchSize) {
+        this.uriFilterBuilder = uriFilterBuilder;
+        this.scanTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.scanTemplate.setFetchSize(fetchSize);
+    }
+
+    // Колонки: app_id, uri_id, количество. after - ключ последней строки предыдущей страницы, limit == null - без
+    // ограничения. Уникальные считаются только по сырым строкам, поэтому для них допустим один сырой сегмент
+    public void count(List<TimeSegment> segments, List<Integer> uriIds, boolean unique, StatsKey after, Integer limit,
+                      RowCallbackHandler handler) {
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT app_id, uri_id, SUM(c) FROM (");
+        for (int i = 0; i < segments.size(); i++) {
+            TimeSegment segment = segments.get(i);
+            if (i > 0) {
+                sql.append(" UNION ALL ");
+            }
+            if (segment.isRaw()) {
+                sql.append("SELECT app_id, uri_id, ").append(HitQueryRepository.countExpression(unique))
+                        .append(" AS c FROM stats WHERE datetime >= ? AND datetime < ?");
+            } else {
+                sql.append("SELECT app_id, uri_id, SUM(hits) AS c FROM ").append(segment.level().getTable())
+                        .append(" WHERE bucket >= ? AND bucket < ?");
+            }
+            args.add(segment.from());
+            args.add(segment.to());
+            sql.append(uriFilterBuilder.build("uri_id", uriIds, args));
+            if (after != null) {
+                sql.append(" AND (app_id, uri_id) > (?, ?)");
+                args.add(after.appId());
+                args.add(after.uriId());
+            }
+            sql.append(" GROUP BY app_id, uri_id");
+        }
+        sql.append(") s GROUP BY app_id, uri_id ORDER BY app_id, uri_id");
+        if (limit != null) {
+            sql.append(" LIMIT ?");
+            args.add(limit);
+        }
+        scanTemplate.query(sql.toString(), handler, args.toArray());
+    }
+}
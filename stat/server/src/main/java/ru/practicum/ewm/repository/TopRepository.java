@@ -0,0 +1,57 @@
+package ru.practicum.ewm.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.ewm.model.RollupLevel;
+import ru.practicum.ewm.model.TopEntry;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public class TopRepository {
+    private final JdbcTemplate jdbcTemplate;
+    private final DatabaseDialect dialect;
+
+    @Autowired
+    public TopRepository(JdbcTemplate jdbcTemplate, DatabaseDialect dialect) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dialect = dialect;
+    }
+
+    public List<TopEntry> find(RollupLevel level, LocalDateTime from, LocalDateTime to, Integer appId) {
+        List<Object> args = new ArrayList<>();
+        args.add(from);
+        args.add(to);
+        String sql = "SELECT app_id, bucket, summary FROM " + level.getTopTable() + " WHERE bucket >= ? AND bucket < ?";
+        if (appId != null) {
+            sql += " AND app_id = ?";
+            args.add(appId);
+        }
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new TopEntry(rs.getInt(1),
+                rs.getObject(2, LocalDateTime.class), rs.getBytes(3)), args.toArray());
+    }
+
+    public Optional<byte[]> findOne(RollupLevel level, int appId, LocalDateTime bucket) {
+        List<byte[]> found = jdbcTemplate.query("SELECT summary FROM " + level.getTopTable() +
+                        " WHERE app_id = ? AND bucket = ?",
+                (rs, rowNum) -> rs.getBytes(1), appId, bucket);
+        return found.stream().findFirst();
+    }
+
+    public void save(RollupLevel level, int appId, LocalDateTime bucket, byte[] summary) {
+        String table = level.getTopTable();
+        String sql = dialect.isPostgres()
+                ? "INSERT INTO " + table + " (app_id, bucket, summary) VALUES (?, ?, ?) " +
+                "ON CONFLICT (app_id, bucket) DO UPDATE SET summary = EXCLUDED.summary"
+                : "MERGE INTO " + table + " (app_id, bucket, summary) KEY (app_id, bucket) VALUES (?, ?, ?)";
+        jdbcTemplate.update(sql, appId, bucket, summary);
+    }
+
+    public boolean isEmpty() {
+        return jdbcTemplate.queryForList("SELECT 1 FROM stats_top_hour LIMIT 1").isEmpty();
+    }
+}
@@ -0,0 +1,125 @@
+package ru.practicum.ewm.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import ru.practicum.ewm.model.RollupLevel;
+import ru.practicum.ewm.model.StatsKey;
+import ru.practicum.ewm.model.UriCounter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+@Repository
+public class UriCounterRepository {
+    private static final Comparator<StatsKey> KEY_ORDER = Comparator.comparingInt(StatsKey::uriId)
+            .thenComparingInt(StatsKey::appId);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate scanTemplate;
+    private final DatabaseDialect dialect;
+    private final UriFilterBuilder uriFilterBuilder;
+
+    @Autowired
+    public UriCounterRepository(JdbcTemplate jdbcTemplate, DatabaseDialect dialect, UriFilterBuilder uriFilterBuilder,
+                                @Value("${stats.scan.fetch-size:10000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dialect = dialect;
+        this.uriFilterBuilder = uriFilterBuilder;
+        this.scanTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.scanTemplate.setFetchSize(fetchSize);
+    }
+
+    // Ключи сортируются, чтобы параллельные транзакции блокировали строки в одном порядке
+    public void increment(Map<StatsKey, Long> deltas) {
+        List<Map.Entry<StatsKey, Long>> entries = new ArrayList<>(deltas.entrySet());
+        entries.sort(Map.Entry.comparingByKey(KEY_ORDER));
+        String sql = dialect.isPostgres()
+                ? "INSERT INTO stats_uri_counters (uri_id, app_id, hits) VALUES (?, ?, ?) " +
+                "ON CONFLICT (uri_id, app_id) DO UPDATE SET hits = stats_uri_counters.hits + EXCLUDED.hits"
+                : "MERGE INTO stats_uri_counters t " +
+                "USING (VALUES (CAST(? AS INTEGER), CAST(? AS INTEGER), CAST(? AS BIGINT))) AS s(uri_id, app_id, hits) " +
+                "ON t.uri_id = s.uri_id AND t.app_id = s.app_id " +
+                "WHEN MATCHED THEN UPDATE SET hits = t.hits + s.hits " +
+                "WHEN NOT MATCHED THEN INSERT (uri_id, app_id, hits) VALUES (s.uri_id, s.app_id, s.hits)";
+        jdbcTemplate.batchUpdate(sql, entries, entries.size(), (ps, entry) -> {
+            ps.setInt(1, entry.getKey().uriId());
+            ps.setInt(2, entry.getKey().appId());
+            ps.setLong(3, entry.getValue());
+        });
+    }
+
+    // Поиск по первичному ключу: строки uri лежат рядом в начале индекса
+    public List<UriCounter> find(List<Integer> uriIds) {
+        List<Object> args = new ArrayList<>();
+        String sql = "SELECT app_id, uri_id, hits, uniques FROM stats_uri_counters WHERE 1 = 1" +
+                uriFilterBuilder.build("uri_id", uriIds, args);
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new UriCounter(rs.getInt(1), rs.getInt(2), rs.getLong(3),
+                rs.getLong(4)), args.toArray());
+    }
+
+    public Optional<byte[]> findSketch(StatsKey key) {
+        List<byte[]> found = jdbcTemplate.query("SELECT sketch FROM stats_uri_counters WHERE uri_id = ? AND app_id = ?",
+                (rs, rowNum) -> rs.getBytes(1), key.uriId(), key.appId());
+        return found.stream().filter(sketch -> sketch != null).findFirst();
+    }
+
+    // Строка счётчика уже создана в транзакции записи запросов; если её удалил пересчёт, сохранять нечего
+    public void saveSketch(StatsKey key, byte[] sketch, long uniques) {
+        jdbcTemplate.update("UPDATE stats_uri_counters SET sketch = ?, uniques = ? WHERE uri_id = ? AND app_id = ?",
+                sketch, uniques, key.uriId(), key.appId());
+    }
+
+    public void saveSketches(Map<StatsKey, byte[]> sketches, Map<StatsKey, Long> uniques) {
+        List<Map.Entry<StatsKey, byte[]>> entries = new ArrayList<>(sketches.entrySet());
+        jdbcTemplate.batchUpdate("UPDATE stats_uri_counters SET sketch = ?, uniques = ? WHERE uri_id = ? AND app_id = ?",
+                entries, entries.size(), (ps, entry) -> {
+                    ps.setBytes(1, entry.getValue());
+                    ps.setLong(2, uniques.get(entry.getKey()));
+                    ps.setInt(3, entry.getKey().uriId());
+                    ps.setInt(4, entry.getKey().appId());
+                });
+    }
+
+    public boolean isEmpty() {
+        return jdbcTemplate.queryForList("SELECT 1 FROM stats_uri_counters LIMIT 1").isEmpty();
+    }
+
+    // До конца транзакции запись счётчиков ждёт: пересчёт не должен затереть приращения, не вошедшие в его снимок.
+    // В H2 блокировки нет, там пересчёт выполняется без параллельной записи
+    public void lock() {
+        if (dialect.isPostgres()) {
+            jdbcTemplate.execute("LOCK TABLE stats_uri_counters IN SHARE ROW EXCLUSIVE MODE");
+        }
+    }
+
+    // Просмотры заново из суточных агрегатов (fromRollups) либо из сырых строк; счётчики без данных удаляются
+    public void rebuildHits(boolean fromRollups) {
+        String source = fromRollups
+                ? "SELECT uri_id, app_id, SUM(hits) AS h FROM " + RollupLevel.DAY.getTable() + " GROUP BY uri_id, app_id"
+                : "SELECT uri_id, app_id, SUM(weight) AS h FROM stats GROUP BY uri_id, app_id";
+        jdbcTemplate.update("UPDATE stats_uri_counters SET hits = 0");
+        if (dialect.isPostgres()) {
+            jdbcTemplate.update("INSERT INTO stats_uri_counters (uri_id, app_id, hits) " +
+                    "SELECT uri_id, app_id, h FROM (" + source + ") s " +
+                    "ON CONFLICT (uri_id, app_id) DO UPDATE SET hits = EXCLUDED.hits");
+        } else {
+            jdbcTemplate.update("MERGE INTO stats_uri_counters t USING (" + source + ") s " +
+                    "ON t.uri_id = s.uri_id AND t.app_id = s.app_id " +
+                    "WHEN MATCHED THEN UPDATE SET hits = s.h " +
+                    "WHEN NOT MATCHED THEN INSERT (uri_id, app_id, hits) VALUES (s.uri_id, s.app_id, s.h)");
+        }
+        jdbcTemplate.update("DELETE FROM stats_uri_counters WHERE hits = 0");
+    }
+
+    // Колонки: uri_id, app_id, sketch; строки упорядочены по ключу счётчика
+    public void scanDaySketches(RowCallbackHandler handler) {
+        scanTemplate.query("SELECT uri_id, app_id, sketch FROM " + RollupLevel.DAY.getSketchTable() +
+                " ORDER BY uri_id, app_id", handler);
+    }
+}
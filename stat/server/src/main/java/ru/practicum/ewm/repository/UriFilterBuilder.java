@@ -0,0 +1,42 @@
+package ru.practicum.ewm.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+
+// Условие по uri_id своей формы для каждого случая, чтобы план запроса использовал индекс и переиспользовался:
+// без фильтра условия нет; короткий список - IN, дополненный до степени двойки повтором последнего id
+// (форм запроса получается логарифмически мало); длинный список - один параметр-массив
+@Component
+public class UriFilterBuilder {
+    private final int inListMax;
+
+    @Autowired
+    public UriFilterBuilder(@Value("${stats.query.in-list-max:32}") int inListMax) {
+        this.inListMax = inListMax;
+    }
+
+    // uriIds == null - фильтр не задан; параметры условия добавляются в args
+    public String build(String column, List<Integer> uriIds, List<Object> args) {
+        if (uriIds == null) {
+            return "";
+        }
+        if (uriIds.isEmpty()) {
+            return " AND 1 = 0";
+        }
+        if (uriIds.size() > inListMax) {
+            args.add(uriIds.toArray(new Integer[0]));
+            return " AND " + column + " = ANY(?)";
+        }
+        int size = Integer.highestOneBit(uriIds.size());
+        if (size < uriIds.size()) {
+            size <<= 1;
+        }
+        args.addAll(uriIds);
+        args.addAll(Collections.nCopies(size - uriIds.size(), uriIds.get(uriIds.size() - 1)));
+        return " AND " + column + " IN (" + String.join(", ", Collections.nCopies(size, "?")) + ")";
+    }
+}
@@ -0,0 +1,43 @@
+package ru.practicum.ewm.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.repository.CompactionRepository;
+
+import java.time.LocalDateTime;
+
+// Граница уплотнения: сырые строки старше неё могли быть удалены, такие периоды читаются только из агрегатов.
+// Граница общая для всех приложений - самая поздняя из их границ; всегда выровнена по суткам
+@Component
+public class CompactionWatermark {
+    private final CompactionRepository compactionRepository;
+    private volatile LocalDateTime value;
+
+    @Autowired
+    public CompactionWatermark(CompactionRepository compactionRepository) {
+        this.compactionRepository = compactionRepository;
+    }
+
+    @PostConstruct
+    public void init() {
+        value = compactionRepository.findMaxWatermark().orElse(null);
+    }
+
+    // null - уплотнение ещё не выполнялось
+    public LocalDateTime get() {
+        return value;
+    }
+
+    public boolean covers(LocalDateTime time) {
+        LocalDateTime current = value;
+        return current != null && time.isBefore(current);
+    }
+
+    public synchronized void advance(int appId, LocalDateTime compactedBefore) {
+        compactionRepository.saveWatermark(appId, compactedBefore);
+        if (value == null || compactedBefore.isAfter(value)) {
+            value = compactedBefore;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package ru.practicum.ewm.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import ru.practicum.ewm.dto.StatsDto;
+import ru.practicum.ewm.model.Hit;
+import ru.practicum.ewm.model.StatsKey;
+import ru.practicum.ewm.repository.DictionaryRepository;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Справочники app, uri и шаблонов маршрутов: строка <-> целочисленный id, с кэшем в памяти в обе стороны
+@Service
+public class DictionaryService {
+    private static final String WILDCARD = "*";
+
+    private final DictionaryRepository dictionaryRepository;
+    private final Map<String, Integer> appIds = new ConcurrentHashMap<>();
+    private final Map<Integer, String> appNames = new ConcurrentHashMap<>();
+    private final Map<String, Integer> uriIds = new ConcurrentHashMap<>();
+    private final Map<Integer, String> uriNames = new ConcurrentHashMap<>();
+    private final Map<String, Integer> routeIds = new ConcurrentHashMap<>();
+    private final Map<Integer, String> routeNames = new ConcurrentHashMap<>();
+
+    @Autowired
+    public DictionaryService(DictionaryRepository dictionaryRepository) {
+        this.dictionaryRepository = dictionaryRepository;
+    }
+
+    @PostConstruct
+    public void init() {
+        dictionaryRepository.createPrefixIndex(DictionaryRepository.URIS);
+    }
+
+    public void resolve(List<Hit> hits) {
+        for (Hit hit : hits) {
+            if (hit.getAppId() == null) {
+                hit.setAppId(appId(hit.getApp()));
+            }
+            if (hit.getUriId() == null) {
+                hit.setUriId(uriId(hit.getUri()));
+            }
+        }
+    }
+
+    public int appId(String app) {
+        return intern(DictionaryRepository.APPS, app, appIds, appNames);
+    }
+
+    public int uriId(String uri) {
+        return intern(DictionaryRepository.URIS, uri, uriIds, uriNames);
+    }
+
+    public int routeId(String route) {
+        return intern(DictionaryRepository.ROUTES, route, routeIds, routeNames);
+    }
+
+    public String appName(int id) {
+        return name(DictionaryRepository.APPS, id, appIds, appNames);
+    }
+
+    public String uriName(int id) {
+        return name(DictionaryRepository.URIS, id, uriIds, uriNames);
+    }
+
+    public String routeName(int id) {
+        return name(DictionaryRepository.ROUTES, id, routeIds, routeNames);
+    }
+
+    public Optional<Integer> findAppId(String app) {
+        return find(DictionaryRepository.APPS, app, appIds, appNames);
+    }
+
+    public Optional<Integer> findUriId(String uri) {
+        return find(DictionaryRepository.URIS, uri, uriIds, uriNames);
+    }
+
+    public Optional<Integer> findRouteId(String route) {
+        return find(DictionaryRepository.ROUTES, route, routeIds, routeNames);
+    }
+
+    // null - фильтр не задан; пустой список - ни один из uri ещё не встречался.
+    // uri, оканчивающийся на *, - префикс: подставляются все известные uri с этим началом
+    public List<Integer> findUriIds(List<String> uris) {
+        if (uris == null || uris.isEmpty()) {
+            return null;
+        }
+        Set<Integer> ids = new LinkedHashSet<>();
+        for (String uri : uris) {
+            if (uri.endsWith(WILDCARD)) {
+                dictionaryRepository.findByPrefix(DictionaryRepository.URIS,
+                        uri.substring(0, uri.length() - WILDCARD.length())).forEach((id, name) -> {
+                            cache(name, id, uriIds, uriNames);
+                            ids.add(id);
+                        });
+            } else {
+                findUriId(uri).ifPresent(ids::add);
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+
+
+    public Map<Integer, String> findAllApps() {
+        return dictionaryRepository.findAll(DictionaryRepository.APPS);
+    }
+
+    public StatsDto toStatsDto(StatsKey key, long hits) {
+        return new StatsDto(appName(key.appId()), uriName(key.uriId()), hits);
+    }
+
+    private int intern(String table, String name, Map<String, Integer> ids, Map<Integer, String> names) {
+        Integer cached = ids.get(name);
+        if (cached != null) {
+            return cached;
+        }
+        int id = dictionaryRepository.getOrCreate(table, name);
+        cache(name, id, ids, names);
+        return id;
+    }
+
+    private Optional<Integer> find(String table, String name, Map<String, Integer> ids, Map<Integer, String> names) {
+        Integer cached = ids.get(name);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        Optional<Integer> found = dictionaryRepository.findId(table, name);
+        found.ifPresent(id -> cache(name, id, ids, names));
+        return found;
+    }
+
+    private String name(String table, int id, Map<String, Integer> ids, Map<Integer, String> names) {
+        String cached = names.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        String name = dictionaryRepository.findName(table, id)
+                .orElseThrow(() -> new IllegalStateException("Нет записи с id = " + id + " в справочнике " + table));
+        cache(name, id, ids, names);
+        return name;
+    }
+
+    private static void cache(String name, int id, Map<String, Integer> ids, Map<Integer, String> names) {
+        ids.put(name, id);
+        names.put(id, name);
+    }
+}
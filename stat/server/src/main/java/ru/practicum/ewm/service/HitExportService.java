@@ -0,0 +1,66 @@
+package ru.practicum.ewm.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionTimedOutException;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.codec.HitExportWriter;
+import ru.practicum.ewm.repository.HitQueryRepository;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+// Выгрузка сырых запросов для аналитиков: строки читаются курсором и пишутся в ответ блоками по block-rows,
+// поэтому память не зависит от размера окна
+@Service
+public class HitExportService {
+    private final HitQueryRepository hitQueryRepository;
+    private final DictionaryService dictionaryService;
+    private final TransactionTemplate transactionTemplate;
+    private final int blockRows;
+    private final int timeoutSeconds;
+
+    @Autowired
+    public HitExportService(HitQueryRepository hitQueryRepository,
+                            DictionaryService dictionaryService,
+                            TransactionTemplate transactionTemplate,
+                            @Value("${stats.export.block-rows:8192}") int blockRows,
+                            @Value("${stats.stream.timeout-seconds:300}") int timeoutSeconds) {
+        this.hitQueryRepository = hitQueryRepository;
+        this.dictionaryService = dictionaryService;
+        // Как и в StatsStreamService, выгрузка держит соединение, пока клиент читает ответ, и ограничена по времени
+        this.transactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.transactionTemplate.setTimeout(timeoutSeconds);
+        this.blockRows = blockRows;
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    // appId == null - все приложения; afterTime == null - с начала окна
+    public void write(LocalDateTime start, LocalDateTime endExclusive, Integer appId, LocalDateTime afterTime,
+                      Long afterId, OutputStream out) throws IOException {
+        HitExportWriter writer = new HitExportWriter(out, blockRows);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        // PostgreSQL читает курсором с fetch size только внутри транзакции
+        transactionTemplate.executeWithoutResult(status ->
+                hitQueryRepository.scanExport(start, endExclusive, appId, afterTime, afterId, rs -> {
+                    if (System.nanoTime() > deadline) {
+                        throw new TransactionTimedOutException("Выгрузка не уложилась в " + timeoutSeconds
+                                + " с, продолжение - с afterTime и afterId последней строки");
+                    }
+                    int ip4 = rs.getInt(5);
+                    boolean ipv6 = rs.wasNull();
+                    try {
+                        writer.write(rs.getLong(1), rs.getObject(2, LocalDateTime.class),
+                                dictionaryService.appName(rs.getInt(3)), dictionaryService.uriName(rs.getInt(4)),
+                                ipv6 ? null : ip4, ipv6 ? rs.getBytes(6) : null, rs.getInt(7));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+        writer.finish();
+    }
+}
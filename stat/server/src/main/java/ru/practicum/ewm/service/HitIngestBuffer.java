@@ -0,0 +1,443 @@
+package ru.practicum.ewm.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionException;
+import ru.practicum.ewm.exceptions.AckTimeoutException;
+import ru.practicum.ewm.model.Hit;
+import ru.practicum.ewm.wal.DeadLetterLog;
+import ru.practicum.ewm.wal.HitLog;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+@Component
+@Slf4j
+public class HitIngestBuffer {
+    private final HitWriter hitWriter;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final AckMode ackMode;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final int flushThreads;
+    private final int flushRetries;
+    private final long shutdownTimeoutMs;
+    private final long ackTimeoutMs;
+    private final BlockingQueue<PendingHit> queue;
+    private final List<Thread> flushers = new ArrayList<>();
+    private final Counter flushedCounter;
+    private final Counter droppedCounter;
+    private final Counter overflowCounter;
+    private final Counter deadLetterCounter;
+    private final Counter ackTimeoutCounter;
+    private final boolean walEnabled;
+    private final String walDir;
+    private final int walSegmentSize;
+    private final boolean walFsync;
+    private final long walMaxPendingBytes;
+    private final String deadLetterDir;
+    // Подтверждения режима FLUSH по позиции конца записи в журнале
+    private final ConcurrentNavigableMap<Long, CompletableFuture<Void>> walAcks = new ConcurrentSkipListMap<>();
+    // Проверка running и постановка в очередь или журнал - под read-lock, остановка - под write-lock:
+    // после stop() ни один запрос уже не попадёт туда, откуда его некому забрать
+    private final ReadWriteLock submitLock = new ReentrantReadWriteLock();
+
+    private volatile boolean running;
+    private volatile HitLog hitLog;
+    private DeadLetterLog deadLetterLog;
+
+    @Autowired
+    public HitIngestBuffer(HitWriter hitWriter,
+                           ObjectMapper objectMapper,
+                           MeterRegistry meterRegistry,
+                           @Value("${stats.ingest.async:false}") boolean enabled,
+                           @Value("${stats.ingest.ack:ENQUEUE}") AckMode ackMode,
+                           @Value("${stats.ingest.queue-capacity:100000}") int queueCapacity,
+                           @Value("${stats.ingest.flush-batch-size:1000}") int batchSize,
+                           @Value("${stats.ingest.flush-interval-ms:200}") long flushIntervalMs,
+                           @Value("${stats.ingest.flush-threads:1}") int flushThreads,
+                           @Value("${stats.ingest.flush-retries:3}") int flushRetries,
+                           @Value("${stats.ingest.shutdown-timeout-ms:30000}") long shutdownTimeoutMs,
+                           @Value("${stats.ingest.ack-timeout-ms:10000}") long ackTimeoutMs,
+                           @Value("${stats.ingest.dead-letter.dir:dead-letter}") String deadLetterDir,
+                           @Value("${stats.ingest.wal.enabled:false}") boolean walEnabled,
+                           @Value("${stats.ingest.wal.dir:wal}") String walDir,
+                           @Value("${stats.ingest.wal.segment-size:67108864}") int walSegmentSize,
+                           @Value("${stats.ingest.wal.fsync:false}") boolean walFsync,
+                           @Value("${stats.ingest.wal.max-pending-bytes:1073741824}") long walMaxPendingBytes) {
+        this.hitWriter = hitWriter;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.ackMode = ackMode;
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.flushThreads = flushThreads;
+        this.flushRetries = flushRetries;
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        this.ackTimeoutMs = ackTimeoutMs;
+        this.deadLetterDir = deadLetterDir;
+        this.walEnabled = walEnabled;
+        this.walDir = walDir;
+        this.walSegmentSize = walSegmentSize;
+        this.walFsync = walFsync;
+        this.walMaxPendingBytes = walMaxPendingBytes;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        Gauge.builder("stats.ingest.queue.depth", queue, BlockingQueue::size)
+                .description("Количество запросов, ожидающих записи в базу")
+                .register(meterRegistry);
+        Gauge.builder("stats.ingest.queue.capacity", () -> queueCapacity)
+                .register(meterRegistry);
+        this.flushedCounter = meterRegistry.counter("stats.ingest.flushed");
+        this.droppedCounter = meterRegistry.counter("stats.ingest.dropped");
+        this.overflowCounter = meterRegistry.counter("stats.ingest.overflow");
+        this.deadLetterCounter = meterRegistry.counter("stats.ingest.dead-letter");
+        this.ackTimeoutCounter = meterRegistry.counter("stats.ingest.ack-timeout");
+        Gauge.builder("stats.ingest.wal.pending-bytes", this,
+                        buffer -> buffer.hitLog == null ? 0 : buffer.hitLog.pending())
+                .description("Объём журнала запросов, ещё не применённого к базе")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isAckAfterFlush() {
+        return ackMode == AckMode.FLUSH;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        deadLetterLog = new DeadLetterLog(Path.of(deadLetterDir), objectMapper);
+        if (walEnabled) {
+            // Журнал применяется одним потоком: позиция контрольной точки должна расти без пропусков
+            hitLog = new HitLog(Path.of(walDir), walSegmentSize, walFsync);
+            if (hitLog.pending() > 0) {
+                log.info("В журнале запросов найдено неприменённых данных: {} байт, они будут записаны в базу",
+                        hitLog.pending());
+            }
+            Thread thread = new Thread(this::applyLoop, "hit-log-applier");
+            thread.setDaemon(true);
+            thread.start();
+            flushers.add(thread);
+            log.info("Асинхронная запись запросов через журнал {} включена, режим подтверждения {}", walDir, ackMode);
+            return;
+        }
+        for (int i = 0; i < flushThreads; i++) {
+            Thread thread = new Thread(this::flushLoop, "hit-flusher-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            flushers.add(thread);
+        }
+        log.info("Асинхронная запись запросов включена: потоков {}, режим подтверждения {}", flushThreads, ackMode);
+    }
+
+    // Возвращаемый future завершается после записи в базу; в режиме ENQUEUE его можно не ждать
+    public CompletableFuture<Void> submit(Hit hit) {
+        PendingHit pending = new PendingHit(hit, new CompletableFuture<>());
+        submitLock.readLock().lock();
+        try {
+            HitLog walLog = hitLog;
+            if (running && walLog != null) {
+                // С журналом очередь не используется: её некому разбирать
+                if (walLog.pending() < walMaxPendingBytes) {
+                    return append(walLog, hit);
+                }
+            } else if (running && queue.offer(pending)) {
+                return pending.flushed();
+            }
+        } finally {
+            submitLock.readLock().unlock();
+        }
+        // Очередь или журнал переполнены либо буфер останавливается: пишем в потоке запроса,
+        // это и есть обратное давление
+        overflowCounter.increment();
+        hitWriter.writeAll(List.of(hit));
+        pending.flushed().complete(null);
+        return pending.flushed();
+    }
+
+    // Ожидание подтверждения режима FLUSH. Запрос, не записанный за ackTimeoutMs, остаётся в очереди или журнале
+    // и будет записан позже, но клиент получает 503 и не держит соединение бесконечно
+    public void awaitFlushed(CompletableFuture<?> flushed) {
+        try {
+            flushed.get(ackTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            ackTimeoutCounter.increment();
+            throw new AckTimeoutException(ackTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AckTimeoutException(ackTimeoutMs);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        submitLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            submitLock.writeLock().unlock();
+        }
+        long deadline = System.currentTimeMillis() + shutdownTimeoutMs;
+        for (Thread thread : flushers) {
+            thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+        }
+        // Остаток, который потоки записи не успели забрать до истечения таймаута, пишется здесь же
+        List<PendingHit> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            flush(batch);
+        }
+        if (hitLog == null) {
+            log.info("Очередь запросов записана в базу перед остановкой");
+            return;
+        }
+        hitLog.close();
+        if (hitLog.pending() > 0) {
+            log.warn("Журнал запросов применён не полностью ({} байт), остаток будет записан при следующем запуске",
+                    hitLog.pending());
+        } else {
+            log.info("Журнал запросов полностью применён перед остановкой");
+        }
+    }
+
+    // Запрос считается принятым после записи в журнал; в режиме FLUSH - после применения его позиции
+    private CompletableFuture<Void> append(HitLog walLog, Hit hit) {
+        long end = walLog.append(hit);
+        if (ackMode != AckMode.FLUSH) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> applied = new CompletableFuture<>();
+        walAcks.put(end, applied);
+        if (walLog.getCheckpoint() >= end) {
+            // Поток применения мог пройти эту позицию до регистрации подтверждения
+            walAcks.remove(end);
+            applied.complete(null);
+        }
+        return applied;
+    }
+
+    // Пакет повторяется flushRetries раз, затем запросы применяются по одному: запрос, отклонённый базой,
+    // уходит в dead-letter, а недоступность базы пережидается, пока сервер работает. При остановке
+    // неприменённый остаток остаётся в журнале до следующего запуска
+    private void applyLoop() {
+        long position = hitLog.getCheckpoint();
+        while (running || position < hitLog.getWritePosition()) {
+            HitLog.Batch batch = hitLog.read(position, batchSize);
+            long applied = batch.hits().isEmpty() ? batch.next() : apply(batch, position);
+            if (applied != position) {
+                advance(applied);
+                position = applied;
+            }
+            if (applied != batch.next()) {
+                return;
+            }
+            if (batch.hits().size() < batchSize && running) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(flushIntervalMs));
+            }
+        }
+    }
+
+    private void advance(long position) {
+        try {
+            hitLog.checkpoint(position);
+        } catch (IOException e) {
+            log.warn("Не удалось сохранить контрольную точку журнала запросов", e);
+        }
+        Map<Long, CompletableFuture<Void>> acknowledged = walAcks.headMap(position, true);
+        acknowledged.values().forEach(applied -> applied.complete(null));
+        acknowledged.clear();
+    }
+
+    // Возвращает позицию, до которой журнал применён
+    private long apply(HitLog.Batch batch, long from) {
+        List<Hit> hits = batch.hits();
+        for (int attempt = 1; attempt <= flushRetries + 1; attempt++) {
+            try {
+                hitWriter.writeAll(hits);
+                flushedCounter.increment(hits.size());
+                return batch.next();
+            } catch (RuntimeException e) {
+                log.warn("Ошибка применения пакета журнала из {} запросов, попытка {}", hits.size(), attempt, e);
+                if (attempt <= flushRetries) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(flushIntervalMs * attempt));
+                }
+            }
+        }
+        long position = from;
+        for (int i = 0; i < hits.size(); i++) {
+            if (!applyOne(hits.get(i), batch.ends().get(i))) {
+                return position;
+            }
+            position = batch.ends().get(i);
+        }
+        return batch.next();
+    }
+
+    private boolean applyOne(Hit hit, long end) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                hitWriter.writeAll(List.of(hit));
+                flushedCounter.increment();
+                return true;
+            } catch (RuntimeException e) {
+                if (isRejected(e) && deadLetter(List.of(hit), e)) {
+                    CompletableFuture<Void> applied = walAcks.remove(end);
+                    if (applied != null) {
+                        applied.completeExceptionally(e);
+                    }
+                    return true;
+                }
+                if (!running) {
+                    return false;
+                }
+                log.warn("Ошибка применения запроса из журнала, попытка {}", attempt, e);
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(flushIntervalMs * Math.min(attempt, 50)));
+            }
+        }
+    }
+
+    // Ошибка в самих данных: повтор не поможет. Недоступность базы и ошибки транзакции - временные
+    private static boolean isRejected(RuntimeException e) {
+        return e instanceof DataIntegrityViolationException
+                || !(e instanceof DataAccessException || e instanceof TransactionException);
+    }
+
+    private boolean deadLetter(List<Hit> hits, RuntimeException cause) {
+        try {
+            deadLetterLog.write(hits);
+        } catch (IOException e) {
+            log.error("Не удалось записать {} запросов в {}", hits.size(), deadLetterLog.getFile(), e);
+            return false;
+        }
+        deadLetterCounter.increment(hits.size());
+        log.error("{} запросов отклонены базой и записаны в {}", hits.size(), deadLetterLog.getFile(), cause);
+        return true;
+    }
+
+    private void flushLoop() {
+        List<PendingHit> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                collectBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                queue.drainTo(batch, batchSize - batch.size());
+                flush(batch);
+                return;
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+            }
+        }
+    }
+
+    // Пакет отправляется при наборе batchSize элементов или по истечении интервала с момента первого
+    private void collectBatch(List<PendingHit> batch) throws InterruptedException {
+        PendingHit first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                break;
+            }
+            PendingHit next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+    }
+
+    // Без журнала очередь живёт только в памяти, а в режиме ENQUEUE клиент уже получил ответ. Поэтому пакет,
+    // не записанный за flushRetries повторов, записывается по одному, а отказавшие запросы сохраняются
+    // в dead-letter на диске для повторной отправки. Их future завершаются с ошибкой: в режиме FLUSH клиент
+    // получает её в ответе. Запросы теряются, только если не удалась и запись в dead-letter
+    private void flush(List<PendingHit> batch) {
+        List<Hit> hits = batch.stream().map(PendingHit::hit).toList();
+        for (int attempt = 0; attempt <= flushRetries; attempt++) {
+            try {
+                hitWriter.writeAll(hits);
+                flushedCounter.increment(hits.size());
+                batch.forEach(pending -> pending.flushed().complete(null));
+                batch.clear();
+                return;
+            } catch (RuntimeException e) {
+                log.warn("Ошибка записи пакета из {} запросов, попытка {}", hits.size(), attempt + 1, e);
+            }
+        }
+        List<PendingHit> failed = new ArrayList<>();
+        RuntimeException lastError = null;
+        for (PendingHit pending : batch) {
+            try {
+                hitWriter.writeAll(List.of(pending.hit()));
+                flushedCounter.increment();
+                pending.flushed().complete(null);
+            } catch (RuntimeException e) {
+                failed.add(pending);
+                lastError = e;
+            }
+        }
+        batch.clear();
+        if (failed.isEmpty()) {
+            return;
+        }
+        if (!deadLetter(failed.stream().map(PendingHit::hit).toList(), lastError)) {
+            log.error("Пакет из {} запросов не записан и отброшен", failed.size(), lastError);
+            droppedCounter.increment(failed.size());
+        }
+        for (PendingHit pending : failed) {
+            pending.flushed().completeExceptionally(lastError);
+        }
+    }
+
+    public enum AckMode {
+        ENQUEUE,
+        FLUSH
+    }
+
+    private record PendingHit(Hit hit, CompletableFuture<Void> flushed) {
+    }
+}
@@ -0,0 +1,10 @@
+package ru.practicum.ewm.service;
+
+import ru.practicum.ewm.model.Hit;
+
+import java.util.List;
+
+public interface HitListener {
+    // Вызывается в транзакции записи сразу после вставки запросов в таблицу stats
+    void onHitsSaved(List<Hit> hits);
+}
@@ -0,0 +1,72 @@
+package ru.practicum.ewm.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.model.Hit;
+import ru.practicum.ewm.repository.HitBatchRepository;
+import ru.practicum.ewm.repository.StatsRepository;
+
+import java.util.List;
+
+@Component
+public class HitWriter {
+    private final StatsRepository statsRepository;
+    private final HitBatchRepository hitBatchRepository;
+    private final DictionaryService dictionaryService;
+    private final SamplingService samplingService;
+    private final RouteService routeService;
+    private final TransactionTemplate transactionTemplate;
+    private final List<HitListener> listeners;
+
+    @Autowired
+    public HitWriter(StatsRepository statsRepository, HitBatchRepository hitBatchRepository,
+                     DictionaryService dictionaryService, SamplingService samplingService,
+                     RouteService routeService, TransactionTemplate transactionTemplate,
+                     List<HitListener> listeners) {
+        this.statsRepository = statsRepository;
+        this.hitBatchRepository = hitBatchRepository;
+        this.dictionaryService = dictionaryService;
+        this.samplingService = samplingService;
+        this.routeService = routeService;
+        this.transactionTemplate = transactionTemplate;
+        this.listeners = listeners;
+    }
+
+    // Одиночный синхронный запрос не прореживается: клиент получает id сохранённой строки
+    public Hit write(Hit hit) {
+        resolve(List.of(hit));
+        return transactionTemplate.execute(status -> {
+            Hit saved = statsRepository.save(hit);
+            notifyListeners(List.of(saved));
+            return saved;
+        });
+    }
+
+    // Отброшенные прореживанием запросы не сохраняются в stats, но, как и остальные, учитываются в агрегатах.
+    // Отметки прореживания, как и id справочников, фиксируются до транзакции записи
+    public void writeAll(List<Hit> hits) {
+        resolve(hits);
+        List<Hit> kept = samplingService.sample(hits);
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!kept.isEmpty()) {
+                hitBatchRepository.saveAll(kept);
+            }
+            notifyListeners(hits);
+        });
+    }
+
+    // До транзакции записи: id справочников и привязки к шаблонам попадают в кэши
+    // в памяти и фиксируются сразу, чтобы не пропасть при её откате. Внутри неё для них понадобилась бы
+    // отдельная транзакция, то есть второе соединение пула на каждую запись
+    private void resolve(List<Hit> hits) {
+        dictionaryService.resolve(hits);
+        routeService.assign(hits);
+    }
+
+    private void notifyListeners(List<Hit> hits) {
+        for (HitListener listener : listeners) {
+            listener.onHitsSaved(hits);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package ru.practicum.ewm.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.ewm.dto.LiveStatsDto;
+import ru.practicum.ewm.model.Hit;
+import ru.practicum.ewm.model.StatsKey;
+import ru.practicum.ewm.sketch.SlidingWindowCounter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Просмотры за последние 1, 5 и 60 минут без обращения к базе. Счётчики живут в памяти, ключи без запросов
+// дольше часа вытесняются, состояние периодически сохраняется в файл и восстанавливается при старте
+@Service
+@Slf4j
+public class LiveCounterService implements HitListener {
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final long HOUR = SlidingWindowCounter.MINUTES * 60L;
+
+    private final DictionaryService dictionaryService;
+    private final boolean enabled;
+    private final int maxKeys;
+    private final String snapshotFile;
+    private final Map<StatsKey, SlidingWindowCounter> counters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public LiveCounterService(DictionaryService dictionaryService,
+                              @Value("${stats.live.enabled:true}") boolean enabled,
+                              @Value("${stats.live.max-keys:10000}") int maxKeys,
+                              @Value("${stats.live.snapshot-file:}") String snapshotFile) {
+        this.dictionaryService = dictionaryService;
+        this.enabled = enabled;
+        this.maxKeys = maxKeys;
+        this.snapshotFile = snapshotFile;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (enabled && !snapshotFile.isBlank() && Files.exists(Path.of(snapshotFile))) {
+            restore();
+        }
+    }
+
+    @Override
+    public void onHitsSaved(List<Hit> hits) {
+        if (!enabled) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    record(hits);
+                }
+            });
+        } else {
+            record(hits);
+        }
+    }
+
+    // uriIds == null - n ключей с наибольшим числом просмотров за последнюю минуту
+    public List<LiveStatsDto> live(List<Integer> uriIds, int n) {
+        long now = now();
+        List<LiveStatsDto> result = new ArrayList<>();
+        counters.forEach((key, counter) -> {
+            if (uriIds == null || uriIds.contains(key.uriId())) {
+                result.add(new LiveStatsDto(dictionaryService.appName(key.appId()),
+                        dictionaryService.uriName(key.uriId()), counter.sumSeconds(now, 60),
+                        counter.sumSeconds(now, 5 * 60), counter.sumMinutes(now, SlidingWindowCounter.MINUTES)));
+            }
+        });
+        result.sort(Comparator.comparing(LiveStatsDto::getLastMinute)
+                .thenComparing(LiveStatsDto::getLastFiveMinutes)
+                .thenComparing(LiveStatsDto::getLastHour)
+                .reversed());
+        return uriIds == null && result.size() > n ? result.subList(0, n) : result;
+    }
+
+    // Ключ без запросов больше часа уже ничего не добавляет ни в одно окно и удаляется без потерь;
+    // сверх max-keys вытесняются давно не обновлявшиеся ключи
+    @Scheduled(fixedDelayString = "${stats.live.evict-interval-ms:60000}")
+    public void evict() {
+        long idleBefore = now() - HOUR;
+        counters.entrySet().removeIf(entry -> entry.getValue().getLastSecond() <= idleBefore);
+        int excess = counters.size() - maxKeys;
+        if (excess > 0) {
+            counters.entrySet().stream()
+                    .sorted(Comparator.comparingLong(entry -> entry.getValue().getLastSecond()))
+                    .limit(excess)
+                    .map(Map.Entry::getKey)
+                    .toList()
+                    .forEach(counters::remove);
+            log.debug("Вытеснено счётчиков сверх предела: {}", excess);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${stats.live.snapshot-interval-ms:10000}")
+    public void snapshot() {
+        if (!enabled || snapshotFile.isBlank()) {
+            return;
+        }
+        Path target = Path.of(snapshotFile);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        long now = now();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            List<Map.Entry<StatsKey, SlidingWindowCounter>> entries = new ArrayList<>(counters.entrySet());
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(now);
+            out.writeInt(entries.size());
+            for (Map.Entry<StatsKey, SlidingWindowCounter> entry : entries) {
+                // Имена вместо id: снимок остаётся верным, даже если справочники пересозданы
+                out.writeUTF(dictionaryService.appName(entry.getKey().appId()));
+                out.writeUTF(dictionaryService.uriName(entry.getKey().uriId()));
+                entry.getValue().writeTo(out, now);
+            }
+        } catch (IOException e) {
+            log.warn("Не удалось сохранить снимок счётчиков в {}", temp, e);
+            return;
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Не удалось заменить снимок счётчиков {}", target, e);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        snapshot();
+    }
+
+    private void record(List<Hit> hits) {
+        long now = now();
+        for (Hit hit : hits) {
+            // Запросы из будущего относим к текущей секунде, запросы старше часа в окна не попадают
+            long second = Math.min(hit.getTimestamp().toEpochSecond(ZoneOffset.UTC), now);
+            if (second <= now - HOUR) {
+                continue;
+            }
+            counters.computeIfAbsent(new StatsKey(hit.getAppId(), hit.getUriId()), key -> new SlidingWindowCounter())
+                    .add(second, 1);
+        }
+    }
+
+    private void restore() {
+        long now = now();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(Path.of(snapshotFile))))) {
+            if (in.readInt() != SNAPSHOT_VERSION) {
+                log.warn("Снимок счётчиков {} другой версии, пропускается", snapshotFile);
+                return;
+            }
+            long snapshotNow = in.readLong();
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                Optional<Integer> appId = dictionaryService.findAppId(in.readUTF());
+                Optional<Integer> uriId = dictionaryService.findUriId(in.readUTF());
+                SlidingWindowCounter counter = SlidingWindowCounter.readFrom(in, snapshotNow, now);
+                if (appId.isPresent() && uriId.isPresent()) {
+                    counters.put(new StatsKey(appId.get(), uriId.get()), counter);
+                }
+            }
+            log.info("Восстановлено счётчиков из снимка {}: {}", snapshotFile, counters.size());
+        } catch (IOException e) {
+            log.warn("Не удалось прочитать снимок счётчиков {}, счёт начинается с нуля", snapshotFile, e);
+            counters.clear();
+        }
+    }
+
+    // Время запросов хранится без зоны, поэтому и текущий момент берётся в локальном времени сервера
+    private static long now() {
+        return LocalDateTime.now().toEpochSecond(ZoneOffset.UTC);
+    }
+}
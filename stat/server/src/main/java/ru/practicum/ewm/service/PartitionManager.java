@@ -0,0 +1,118 @@
+package ru.practicum.ewm.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.repository.DatabaseDialect;
+import ru.practicum.ewm.repository.PartitionRepository;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Component
+@Slf4j
+public class PartitionManager {
+    private final PartitionRepository partitionRepository;
+    private final boolean enabled;
+    private final Granularity granularity;
+    private final int createAhead;
+    // Секции, существование которых уже проверено
+    private final Set<String> known = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public PartitionManager(PartitionRepository partitionRepository,
+                            DatabaseDialect dialect,
+                            @Value("${stats.partition.enabled:false}") boolean enabled,
+                            @Value("${stats.partition.granularity:MONTH}") Granularity granularity,
+                            @Value("${stats.partition.create-ahead:3}") int createAhead) {
+        this.partitionRepository = partitionRepository;
+        // Декларативное секционирование есть только в Postgres, на H2 таблица stats остаётся обычной
+        this.enabled = enabled && dialect.isPostgres();
+        this.granularity = granularity;
+        this.createAhead = createAhead;
+    }
+
+    @PostConstruct
+    public void init() {
+        ensurePartitions();
+    }
+
+    // Секции создаются заранее: текущий период и createAhead следующих
+    @Scheduled(cron = "${stats.partition.cron:0 0 * * * *}")
+    public void ensurePartitions() {
+        if (!enabled) {
+            return;
+        }
+        if (!partitionRepository.isParentPartitioned()) {
+            log.warn("Таблица stats не секционирована, создание секций пропущено");
+            return;
+        }
+        LocalDateTime current = granularity.floor(LocalDateTime.now());
+        for (int i = 0; i <= createAhead; i++) {
+            LocalDateTime from = granularity.plus(current, i);
+            LocalDateTime to = granularity.plus(from, 1);
+            String name = granularity.partitionName(from);
+            if (partitionRepository.exists(name)) {
+                continue;
+            }
+            try {
+                partitionRepository.create(name, from, to);
+                log.info("Создана секция {} для периода [{}, {})", name, from, to);
+            } catch (DataAccessException e) {
+                log.error("Не удалось создать секцию {}", name, e);
+            }
+        }
+    }
+
+    // Секция для периода, в который попадает time, - для загрузки запросов задним числом
+    public void ensurePartitionFor(LocalDateTime time) {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime from = granularity.floor(time);
+        String name = granularity.partitionName(from);
+        if (known.contains(name)) {
+            return;
+        }
+        synchronized (this) {
+            if (!known.contains(name) && partitionRepository.isParentPartitioned()
+                    && !partitionRepository.exists(name)) {
+                LocalDateTime to = granularity.plus(from, 1);
+                partitionRepository.create(name, from, to);
+                log.info("Создана секция {} для периода [{}, {})", name, from, to);
+            }
+            known.add(name);
+        }
+    }
+
+    public enum Granularity {
+        DAY(DateTimeFormatter.ofPattern("yyyyMMdd")),
+        MONTH(DateTimeFormatter.ofPattern("yyyyMM"));
+
+        private final DateTimeFormatter suffix;
+
+        Granularity(DateTimeFormatter suffix) {
+            this.suffix = suffix;
+        }
+
+        LocalDateTime floor(LocalDateTime time) {
+            LocalDateTime day = time.truncatedTo(ChronoUnit.DAYS);
+            return this == DAY ? day : day.withDayOfMonth(1);
+        }
+
+        LocalDateTime plus(LocalDateTime time, long periods) {
+            return this == DAY ? time.plusDays(periods) : time.plusMonths(periods);
+        }
+
+        String partitionName(LocalDateTime from) {
+            return "stats_p" + from.format(suffix);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package ru.practicum.ewm.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.model.RollupLevel;
+import ru.practicum.ewm.repository.CompactionRepository;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+// Уплотнение: сырые строки старше срока хранения удаляются, их периоды дальше отвечают агрегаты и скетчи
+@Component
+@Slf4j
+public class RetentionService {
+    private final CompactionRepository compactionRepository;
+    private final CompactionWatermark compactionWatermark;
+    private final DictionaryService dictionaryService;
+    private final RollupService rollupService;
+    private final SketchService sketchService;
+    private final TopService topService;
+    private final boolean enabled;
+    private final int defaultDays;
+    private final Map<String, Integer> appDays;
+    private final int batchSize;
+
+    @Autowired
+    public RetentionService(CompactionRepository compactionRepository,
+                            CompactionWatermark compactionWatermark,
+                            DictionaryService dictionaryService,
+                            RollupService rollupService,
+                            SketchService sketchService,
+                            TopService topService,
+                            @Value("${stats.retention.enabled:false}") boolean enabled,
+                            @Value("${stats.retention.default-days:0}") int defaultDays,
+                            @Value("${stats.retention.apps:}") String apps,
+                            @Value("${stats.retention.batch-size:5000}") int batchSize) {
+        this.compactionRepository = compactionRepository;
+        this.compactionWatermark = compactionWatermark;
+        this.dictionaryService = dictionaryService;
+        this.rollupService = rollupService;
+        this.sketchService = sketchService;
+        this.topService = topService;
+        this.enabled = enabled;
+        this.defaultDays = defaultDays;
+        this.appDays = parseAppDays(apps);
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(cron = "${stats.retention.cron:0 30 3 * * *}")
+    public void compact() {
+        if (!enabled) {
+            return;
+        }
+        if (!rollupService.isEnabled() || !sketchService.isEnabled()) {
+            log.warn("Уплотнение пропущено: без агрегатов и скетчей удалённые строки будет нечем заменить");
+            return;
+        }
+        // Всё накопленное в памяти должно попасть в таблицы до удаления сырых строк
+        sketchService.flush();
+        topService.flush();
+        LocalDateTime today = RollupLevel.DAY.floor(LocalDateTime.now());
+        dictionaryService.findAllApps().forEach((appId, app) -> {
+            int days = appDays.getOrDefault(app, defaultDays);
+            if (days <= 0) {
+                return;
+            }
+            LocalDateTime before = today.minusDays(days);
+            // Граница сдвигается до удаления: запросы перестают читать эти строки раньше, чем они исчезнут
+            compactionWatermark.advance(appId, before);
+            long deleted = 0;
+            int batch;
+            do {
+                batch = compactionRepository.deleteBatch(appId, before, batchSize);
+                deleted += batch;
+            } while (batch == batchSize);
+            log.info("Уплотнение приложения {}: удалено сырых запросов старше {}: {}", app, before, deleted);
+        });
+    }
+
+    // Формат: app1:30,app2:90 - срок хранения сырых строк в сутках
+    private static Map<String, Integer> parseAppDays(String apps) {
+        Map<String, Integer> result = new HashMap<>();
+        for (String entry : apps.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            int separator = entry.lastIndexOf(':');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Некорректная настройка stats.retention.apps: " + entry);
+            }
+            result.put(entry.substring(0, separator).trim(), Integer.parseInt(entry.substring(separator + 1).trim()));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,127 @@
+package ru.practicum.ewm.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.model.Hit;
+import ru.practicum.ewm.model.RollupKey;
+import ru.practicum.ewm.model.RollupLevel;
+import ru.practicum.ewm.model.StatsKey;
+import ru.practicum.ewm.model.TimeSegment;
+import ru.practicum.ewm.repository.BackfillRepository;
+import ru.practicum.ewm.repository.HitQueryRepository;
+import ru.practicum.ewm.repository.RollupRepository;
+import ru.practicum.ewm.repository.StatsRepository;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+@Service
+@Slf4j
+public class RollupService implements HitListener {
+    private static final List<RollupLevel> LEVELS = List.of(RollupLevel.DAY, RollupLevel.HOUR, RollupLevel.MINUTE);
+    private static final String BACKFILL = "rollup";
+
+    private final RollupRepository rollupRepository;
+    private final StatsRepository statsRepository;
+    private final HitQueryRepository hitQueryRepository;
+    private final BackfillRepository backfillRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final CompactionWatermark compactionWatermark;
+    private final boolean enabled;
+
+    @Autowired
+    public RollupService(RollupRepository rollupRepository,
+                         StatsRepository statsRepository,
+                         HitQueryRepository hitQueryRepository,
+                         BackfillRepository backfillRepository,
+                         TransactionTemplate transactionTemplate,
+                         CompactionWatermark compactionWatermark,
+                         @Value("${stats.rollup.enabled:true}") boolean enabled) {
+        this.rollupRepository = rollupRepository;
+        this.statsRepository = statsRepository;
+        this.hitQueryRepository = hitQueryRepository;
+        this.backfillRepository = backfillRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.compactionWatermark = compactionWatermark;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Выключенные агрегаты не получают запросов: отметка в stats_backfill запоминает, с какой строки stats
+    // их нужно дописать, когда агрегаты снова включат
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            backfillRepository.open(BACKFILL);
+            return;
+        }
+        if (rollupRepository.isEmpty() && statsRepository.existsAny()) {
+            log.info("Таблицы агрегатов пусты, выполняется пересчёт из сырых данных");
+            transactionTemplate.executeWithoutResult(status -> {
+                rollupRepository.rebuild();
+                backfillRepository.close(BACKFILL);
+            });
+            return;
+        }
+        backfillRepository.find(BACKFILL).ifPresent(lastId -> {
+            long toId = backfillRepository.maxStatsId();
+            log.info("Агрегаты были выключены, дописываются сырые строки с id из ({}, {}]", lastId, toId);
+            transactionTemplate.executeWithoutResult(status -> {
+                rollupRepository.addFromStats(lastId, toId);
+                backfillRepository.close(BACKFILL);
+            });
+        });
+    }
+
+    @Override
+    public void onHitsSaved(List<Hit> hits) {
+        if (!enabled) {
+            return;
+        }
+        for (RollupLevel level : RollupLevel.values()) {
+            Map<RollupKey, Long> deltas = new TreeMap<>();
+            for (Hit hit : hits) {
+                RollupKey key = new RollupKey(hit.getAppId(), hit.getUriId(), level.floor(hit.getTimestamp()));
+                deltas.merge(key, 1L, Long::sum);
+            }
+            rollupRepository.increment(level, deltas);
+        }
+    }
+
+    // Выровненная часть окна читается из самых крупных подходящих агрегатов, края - из сырых строк
+    public Map<StatsKey, Long> countHits(LocalDateTime start, LocalDateTime endExclusive, List<Integer> uriIds) {
+        Map<StatsKey, Long> totals = new HashMap<>();
+        RowCallbackHandler accumulate = rs -> totals.merge(new StatsKey(rs.getInt(1), rs.getInt(2)), rs.getLong(3),
+                Long::sum);
+        List<TimeSegment> segments = TimeSegmentPlanner.plan(start, endExclusive, LEVELS, compactionWatermark.get());
+        for (TimeSegment segment : segments) {
+            if (segment.isRaw()) {
+                hitQueryRepository.count(segment.from(), segment.to(), uriIds, false, accumulate);
+            } else {
+                rollupRepository.sumHits(segment.level(), segment.from(), segment.to(), uriIds, accumulate);
+            }
+        }
+        return totals;
+    }
+
+    // Суммы по каждым суткам из [from, to) отдельно; границы выровнены по суткам
+    public Map<LocalDateTime, Map<StatsKey, Long>> countDays(LocalDateTime from, LocalDateTime to,
+                                                              List<Integer> uriIds) {
+        Map<LocalDateTime, Map<StatsKey, Long>> days = new HashMap<>();
+        rollupRepository.sumHitsByStep(RollupLevel.DAY, from, to, from, RollupLevel.DAY.getSeconds(), uriIds, rs ->
+                days.computeIfAbsent(from.plusDays(rs.getLong(3)), day -> new HashMap<>())
+                        .put(new StatsKey(rs.getInt(1), rs.getInt(2)), rs.getLong(4)));
+        return days;
+    }
+}
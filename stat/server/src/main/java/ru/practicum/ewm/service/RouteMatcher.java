@@ -0,0 +1,50 @@
+package ru.practicum.ewm.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+// Шаблоны маршрутов вида /events/{id}: сегмент в фигурных скобках совпадает с любым непустым сегментом пути,
+// остальные - только с самими собой. Если подходят несколько шаблонов, выбирается первый из списка
+public class RouteMatcher {
+    private final List<String> templates;
+    private final List<String[]> segments = new ArrayList<>();
+
+    public RouteMatcher(List<String> templates) {
+        this.templates = List.copyOf(templates);
+        for (String template : templates) {
+            segments.add(template.split("/", -1));
+        }
+    }
+
+    public List<String> getTemplates() {
+        return templates;
+    }
+
+    public boolean isEmpty() {
+        return templates.isEmpty();
+    }
+
+    public Optional<String> match(String uri) {
+        String[] parts = uri.split("/", -1);
+        for (int i = 0; i < segments.size(); i++) {
+            if (matches(segments.get(i), parts)) {
+                return Optional.of(templates.get(i));
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static boolean matches(String[] template, String[] parts) {
+        if (template.length != parts.length) {
+            return false;
+        }
+        for (int i = 0; i < template.length; i++) {
+            boolean variable = template[i].startsWith("{") && template[i].endsWith("}");
+            if (variable ? parts[i].isEmpty() : !template[i].equals(parts[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
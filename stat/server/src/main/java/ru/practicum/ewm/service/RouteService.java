@@ -0,0 +1,146 @@
+package ru.practicum.ewm.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import ru.practicum.ewm.model.Hit;
+import ru.practicum.ewm.model.RollupKey;
+import ru.practicum.ewm.model.RollupLevel;
+import ru.practicum.ewm.model.StatsKey;
+import ru.practicum.ewm.model.TimeSegment;
+import ru.practicum.ewm.repository.RouteRepository;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Каждый uri при первой встрече относится к первому подходящему шаблону из stats.routes.templates, и его запросы
+// дополнительно суммируются в агрегаты шаблона. Привязка постоянна: при смене шаблонов переназначаются только
+// uri без шаблона, после чего агрегаты шаблонов пересчитываются из агрегатов по uri
+@Service
+@Slf4j
+public class RouteService implements HitListener {
+    private static final List<RollupLevel> LEVELS = List.of(RollupLevel.DAY, RollupLevel.HOUR, RollupLevel.MINUTE);
+    private static final int NO_ROUTE = 0;
+
+    private final RouteRepository routeRepository;
+    private final DictionaryService dictionaryService;
+    private final RollupService rollupService;
+    private final CompactionWatermark compactionWatermark;
+    private final RouteMatcher matcher;
+    // uri_id -> id шаблона; NO_ROUTE - ни один шаблон не подошёл
+    private final Map<Integer, Integer> routes = new ConcurrentHashMap<>();
+
+    @Autowired
+    public RouteService(RouteRepository routeRepository,
+                        DictionaryService dictionaryService,
+                        RollupService rollupService,
+                        CompactionWatermark compactionWatermark,
+                        @Value("${stats.routes.templates:}") String templates) {
+        this.routeRepository = routeRepository;
+        this.dictionaryService = dictionaryService;
+        this.rollupService = rollupService;
+        this.compactionWatermark = compactionWatermark;
+        this.matcher = new RouteMatcher(Arrays.stream(templates.split(","))
+                .map(String::trim)
+                .filter(template -> !template.isEmpty())
+                .toList());
+    }
+
+    public boolean isEnabled() {
+        return !matcher.isEmpty();
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        routes.putAll(routeRepository.findAssigned());
+        int assigned = 0;
+        for (Map.Entry<Integer, String> uri : routeRepository.findUnassigned().entrySet()) {
+            if (resolve(uri.getKey(), uri.getValue()) != NO_ROUTE) {
+                assigned++;
+            }
+        }
+        if (assigned > 0 && rollupService.isEnabled()) {
+            log.info("К шаблонам маршрутов отнесено ранее записанных uri: {}, агрегаты шаблонов пересчитываются",
+                    assigned);
+            routeRepository.rebuild();
+        }
+        log.info("Агрегация по шаблонам маршрутов включена: {}", matcher.getTemplates());
+    }
+
+    // Привязка новых uri к шаблонам; вызывается до транзакции записи, как и разрешение id справочников
+    public void assign(List<Hit> hits) {
+        if (!isEnabled()) {
+            return;
+        }
+        for (Hit hit : hits) {
+            routeOf(hit);
+        }
+    }
+
+    @Override
+    public void onHitsSaved(List<Hit> hits) {
+        if (!isEnabled()) {
+            return;
+        }
+        for (RollupLevel level : RollupLevel.values()) {
+            Map<RollupKey, Long> deltas = new TreeMap<>();
+            for (Hit hit : hits) {
+                int routeId = routeOf(hit);
+                if (routeId != NO_ROUTE) {
+                    deltas.merge(new RollupKey(hit.getAppId(), routeId, level.floor(hit.getTimestamp())), 1L,
+                            Long::sum);
+                }
+            }
+            if (!deltas.isEmpty()) {
+                routeRepository.increment(level, deltas);
+            }
+        }
+    }
+
+    // Ключ StatsKey.uriId здесь - id шаблона; routeIds == null - все шаблоны
+    public Map<StatsKey, Long> countHits(LocalDateTime start, LocalDateTime endExclusive, List<Integer> routeIds) {
+        Map<StatsKey, Long> totals = new HashMap<>();
+        RowCallbackHandler accumulate = rs -> totals.merge(new StatsKey(rs.getInt(1), rs.getInt(2)), rs.getLong(3),
+                Long::sum);
+        List<TimeSegment> segments = TimeSegmentPlanner.plan(start, endExclusive, LEVELS, compactionWatermark.get());
+        for (TimeSegment segment : segments) {
+            if (segment.isRaw()) {
+                routeRepository.countRaw(segment.from(), segment.to(), routeIds, accumulate);
+            } else {
+                routeRepository.sumHits(segment.level(), segment.from(), segment.to(), routeIds, accumulate);
+            }
+        }
+        return totals;
+    }
+
+    private int routeOf(Hit hit) {
+        Integer cached = routes.get(hit.getUriId());
+        if (cached != null) {
+            return cached;
+        }
+        String uri = hit.getUri() != null ? hit.getUri() : dictionaryService.uriName(hit.getUriId());
+        return resolve(hit.getUriId(), uri);
+    }
+
+    private int resolve(int uriId, String uri) {
+        Optional<String> template = matcher.match(uri);
+        int routeId = template.map(dictionaryService::routeId).orElse(NO_ROUTE);
+        if (routeId != NO_ROUTE) {
+            routeRepository.assign(uriId, routeId);
+        }
+        routes.put(uriId, routeId);
+        return routeId;
+    }
+}
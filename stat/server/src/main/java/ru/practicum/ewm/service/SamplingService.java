@@ -0,0 +1,161 @@
+package ru.practicum.ewm.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.practicum.ewm.model.Hit;
+import ru.practicum.ewm.repository.SamplingRepository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+// Адаптивное прореживание сырых строк горячих uri. Если uri получает больше threshold запросов в секунду,
+// сохраняется примерно каждый N-й, где N - наименьшая степень двойки, приводящая поток к порогу. Вес строки -
+// число запросов, представленных ею: она сама и отброшенные после предыдущей сохранённой строки uri,
+// поэтому SUM(weight) не теряет запросов на смене секунды или шага; не учтён только хвост, ещё не
+// закрытый следующей сохранённой строкой, - меньше max-weight запросов на uri.
+// Прореживается только таблица stats: агрегаты, скетчи и счётчики в памяти получают все запросы.
+// Прореживаются пакеты и асинхронная запись; одиночный синхронный /hit сохраняется всегда,
+// так как ответ несёт id сохранённой строки
+@Service
+@Slf4j
+public class SamplingService {
+    private final SamplingRepository samplingRepository;
+    private final DictionaryService dictionaryService;
+    private final boolean enabled;
+    private final long threshold;
+    private final int maxWeight;
+    // Пустое множество - прореживать можно любой uri
+    private final Set<String> uris;
+    private final Map<Integer, RateWindow> windows = new ConcurrentHashMap<>();
+    private final Map<Integer, LocalDateTime> sampledSince = new ConcurrentHashMap<>();
+    private final Counter droppedCounter;
+
+    @Autowired
+    public SamplingService(SamplingRepository samplingRepository,
+                           DictionaryService dictionaryService,
+                           MeterRegistry meterRegistry,
+                           @Value("${stats.sampling.enabled:false}") boolean enabled,
+                           @Value("${stats.sampling.threshold-per-second:100}") long threshold,
+                           @Value("${stats.sampling.max-weight:1024}") int maxWeight,
+                           @Value("${stats.sampling.uris:}") String uris) {
+        this.samplingRepository = samplingRepository;
+        this.dictionaryService = dictionaryService;
+        this.enabled = enabled;
+        this.threshold = threshold;
+        this.maxWeight = maxWeight;
+        this.uris = Arrays.stream(uris.split(","))
+                .map(String::trim)
+                .filter(uri -> !uri.isEmpty())
+                .collect(Collectors.toSet());
+        this.droppedCounter = meterRegistry.counter("stats.sampling.dropped");
+    }
+
+    // Отметки загружаются и при выключенном прореживании: строки, прореженные раньше, остаются оценкой
+    @PostConstruct
+    public void init() {
+        sampledSince.putAll(samplingRepository.findAll());
+    }
+
+    // Запросы, которые нужно сохранить, с проставленным весом; id app и uri уже должны быть известны
+    public List<Hit> sample(List<Hit> hits) {
+        return sample(hits, System.currentTimeMillis() / 1000);
+    }
+
+    List<Hit> sample(List<Hit> hits, long second) {
+        if (!enabled) {
+            return hits;
+        }
+        List<Hit> kept = new ArrayList<>(hits.size());
+        for (Hit hit : hits) {
+            int weight = isEligible(hit)
+                    ? windows.computeIfAbsent(hit.getUriId(), id -> new RateWindow()).offer(second)
+                    : 1;
+            if (weight == 0) {
+                continue;
+            }
+            if (weight > 1) {
+                markSampled(hit.getUriId(), hit.getTimestamp());
+            }
+            hit.setWeight(weight);
+            kept.add(hit);
+        }
+        if (kept.size() < hits.size()) {
+            droppedCounter.increment(hits.size() - kept.size());
+        }
+        return kept;
+    }
+
+    // Сырые строки uri в окне, заканчивающемся endExclusive, могут быть прорежены, и число по ним - оценка
+    public boolean isSampled(int uriId, LocalDateTime endExclusive) {
+        LocalDateTime since = sampledSince.get(uriId);
+        return since != null && since.isBefore(endExclusive);
+    }
+
+    private boolean isEligible(Hit hit) {
+        if (uris.isEmpty()) {
+            return true;
+        }
+        String uri = hit.getUri() != null ? hit.getUri() : dictionaryService.uriName(hit.getUriId());
+        return uris.contains(uri);
+    }
+
+    private void markSampled(int uriId, LocalDateTime timestamp) {
+        LocalDateTime since = sampledSince.get(uriId);
+        if (since != null && !timestamp.isBefore(since)) {
+            return;
+        }
+        sampledSince.merge(uriId, timestamp, (a, b) -> a.isBefore(b) ? a : b);
+        samplingRepository.save(uriId, timestamp);
+        if (since == null) {
+            log.info("Включено прореживание запросов uri {}", dictionaryService.uriName(uriId));
+        }
+    }
+
+    // Поток запросов uri за текущую и прошлую секунду; вес считается по большей из них, чтобы прореживание
+    // включалось сразу в начале секунды после всплеска
+    private class RateWindow {
+        private long second;
+        private long count;
+        private long previous;
+        // Запросы, отброшенные после последней сохранённой строки; переносятся через границу секунды
+        private long skipped;
+
+        // 0 - запрос отбрасывается, иначе вес сохраняемой строки
+        synchronized int offer(long now) {
+            if (now != second) {
+                previous = now == second + 1 ? count : 0;
+                second = now;
+                count = 0;
+            }
+            count++;
+            long rate = Math.max(count, previous);
+            long step = 1;
+            if (rate > threshold) {
+                long ratio = (rate + threshold - 1) / threshold;
+                step = Long.highestOneBit(ratio);
+                if (step < ratio) {
+                    step <<= 1;
+                }
+                step = Math.min(step, maxWeight);
+            }
+            if (skipped + 1 < step) {
+                skipped++;
+                return 0;
+            }
+            int weight = (int) (skipped + 1);
+            skipped = 0;
+            return weight;
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package ru.practicum.ewm.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.model.Hit;
+import ru.practicum.ewm.model.RollupLevel;
+import ru.practicum.ewm.model.SketchEntry;
+import ru.practicum.ewm.model.StatsKey;
+import ru.practicum.ewm.model.TimeSegment;
+import ru.practicum.ewm.repository.BackfillRepository;
+import ru.practicum.ewm.repository.HitQueryRepository;
+import ru.practicum.ewm.repository.SketchRepository;
+import ru.practicum.ewm.repository.StatsRepository;
+import ru.practicum.ewm.sketch.HyperLogLog;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+@Service
+@Slf4j
+public class SketchService implements HitListener {
+    private static final List<RollupLevel> LEVELS = List.of(RollupLevel.DAY, RollupLevel.HOUR);
+    private static final String BACKFILL = "sketch";
+
+    private final SketchRepository sketchRepository;
+    private final StatsRepository statsRepository;
+    private final HitQueryRepository hitQueryRepository;
+    private final BackfillRepository backfillRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final CompactionWatermark compactionWatermark;
+    private final boolean enabled;
+    // Запись в pending идёт под read-lock, подмена карты при сбросе - под write-lock
+    private final ReadWriteLock pendingLock = new ReentrantReadWriteLock();
+
+    private volatile Map<SketchKey, HyperLogLog> pending = new ConcurrentHashMap<>();
+    private volatile Map<SketchKey, HyperLogLog> flushing = Map.of();
+    // Поколение pending: растёт при каждой подмене карты, читается и меняется под pendingLock
+    private long generation = 1;
+    // Час -> поколение, для которого в stats_sketch_dirty уже зафиксирована отметка часа
+    private final Map<LocalDateTime, Long> marked = new ConcurrentHashMap<>();
+
+    @Autowired
+    public SketchService(SketchRepository sketchRepository,
+                         StatsRepository statsRepository,
+                         HitQueryRepository hitQueryRepository,
+                         BackfillRepository backfillRepository,
+                         TransactionTemplate transactionTemplate,
+                         CompactionWatermark compactionWatermark,
+                         @Value("${stats.sketch.enabled:true}") boolean enabled) {
+        this.sketchRepository = sketchRepository;
+        this.statsRepository = statsRepository;
+        this.hitQueryRepository = hitQueryRepository;
+        this.backfillRepository = backfillRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.compactionWatermark = compactionWatermark;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Часы из stats_sketch_dirty накоплены в памяти прошлым запуском и могли не дойти до таблиц скетчей.
+    // Пересчёт объединяет скетч из сырых строк с сохранённым, поэтому повторная обработка часа безвредна.
+    // Часы строк, записанных, пока скетчи были выключены (отметка в stats_backfill), пересчитываются так же
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            backfillRepository.open(BACKFILL);
+            return;
+        }
+        if (sketchRepository.isEmpty() && statsRepository.existsAny()) {
+            log.info("Таблицы скетчей пусты, выполняется пересчёт из сырых данных");
+            transactionTemplate.executeWithoutResult(status -> {
+                rebuild();
+                sketchRepository.clearDirty(Long.MAX_VALUE);
+                backfillRepository.close(BACKFILL);
+            });
+            return;
+        }
+        backfillRepository.find(BACKFILL).ifPresent(lastId -> {
+            long toId = backfillRepository.maxStatsId();
+            log.info("Скетчи были выключены, отмечаются часы сырых строк с id из ({}, {}]", lastId, toId);
+            transactionTemplate.executeWithoutResult(status -> {
+                sketchRepository.markDirty(hitQueryRepository.findHours(lastId, toId), 0);
+                backfillRepository.close(BACKFILL);
+            });
+        });
+        List<LocalDateTime> dirty = sketchRepository.findDirty();
+        if (!dirty.isEmpty()) {
+            log.info("Скетчи часов, не сброшенные до остановки, пересчитываются из сырых данных: {}", dirty.size());
+            transactionTemplate.executeWithoutResult(status -> {
+                dirty.forEach(this::rebuildHour);
+                sketchRepository.clearDirty(Long.MAX_VALUE);
+            });
+        }
+    }
+
+    @Override
+    public void onHitsSaved(List<Hit> hits) {
+        if (!enabled) {
+            return;
+        }
+        // Скетчи пополняются перед фиксацией, а часы отмечаются в той же транзакции, что и запись запросов:
+        // отметка снимается только сбросом, сохранившим эти скетчи. Если фиксация после этого всё же
+        // не удалась, в скетче останутся ip несохранённых запросов - оценка лишь немного завышается
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                private long recordedIn;
+                private Set<LocalDateTime> hours = Set.of();
+
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    recordedIn = record(hits);
+                    hours = markDirty(hits, recordedIn);
+                }
+
+                @Override
+                public void afterCommit() {
+                    hours.forEach(hour -> marked.merge(hour, recordedIn, Math::max));
+                }
+            });
+        } else {
+            long recordedIn = record(hits);
+            markDirty(hits, recordedIn).forEach(hour -> marked.merge(hour, recordedIn, Math::max));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${stats.sketch.flush-interval-ms:5000}")
+    public synchronized void flush() {
+        long flushed;
+        pendingLock.writeLock().lock();
+        try {
+            flushing = pending;
+            pending = new ConcurrentHashMap<>();
+            flushed = generation++;
+        } finally {
+            pendingLock.writeLock().unlock();
+        }
+        if (flushing.isEmpty()) {
+            return;
+        }
+        try {
+            // Отметки поколения снимаются вместе с сохранением его скетчей; более поздние отметки остаются
+            transactionTemplate.executeWithoutResult(status -> {
+                flushing.forEach(this::mergeIntoStore);
+                sketchRepository.clearDirty(flushed);
+            });
+            marked.values().removeIf(markedIn -> markedIn <= flushed);
+            log.debug("Сброшено скетчей: {}", flushing.size());
+        } catch (RuntimeException e) {
+            log.warn("Не удалось сбросить скетчи, повторная попытка при следующем сбросе", e);
+            flushing.forEach(this::mergePending);
+        } finally {
+            flushing = Map.of();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (enabled) {
+            flush();
+        }
+    }
+
+    // Уникальные посетители за [start, endExclusive): объединение скетчей выровненных периодов и ip с краёв окна
+    public Map<StatsKey, Long> countUnique(LocalDateTime start, LocalDateTime endExclusive, List<Integer> uriIds) {
+        return estimate(collect(start, endExclusive, uriIds));
+    }
+
+    public Map<StatsKey, HyperLogLog> collect(LocalDateTime start, LocalDateTime endExclusive, List<Integer> uriIds) {
+        Map<StatsKey, HyperLogLog> sketches = new HashMap<>();
+        List<TimeSegment> segments = TimeSegmentPlanner.plan(start, endExclusive, LEVELS, compactionWatermark.get());
+        for (TimeSegment segment : segments) {
+            if (segment.isRaw()) {
+                hitQueryRepository.scanIps(segment.from(), segment.to(), uriIds, rs -> {
+                    StatsKey key = new StatsKey(rs.getInt(1), rs.getInt(2));
+                    offerIp(sketches.computeIfAbsent(key, k -> new HyperLogLog()), rs, 3);
+                });
+            } else {
+                for (SketchEntry entry : sketchRepository.find(segment.level(), segment.from(), segment.to(), uriIds)) {
+                    merge(sketches, new StatsKey(entry.appId(), entry.uriId()), HyperLogLog.fromBytes(entry.sketch()));
+                }
+                mergeInMemory(segment.level(), segment.from(), segment.to(), uriIds, bucket -> sketches);
+            }
+        }
+        return sketches;
+    }
+
+    // Скетчи каждых суток из [from, to) отдельно; границы выровнены по суткам
+    public Map<LocalDateTime, Map<StatsKey, HyperLogLog>> collectDays(LocalDateTime from, LocalDateTime to,
+                                                                       List<Integer> uriIds) {
+        Map<LocalDateTime, Map<StatsKey, HyperLogLog>> days = new HashMap<>();
+        Function<LocalDateTime, Map<StatsKey, HyperLogLog>> day = bucket -> days.computeIfAbsent(bucket,
+                b -> new HashMap<>());
+        for (SketchEntry entry : sketchRepository.find(RollupLevel.DAY, from, to, uriIds)) {
+            merge(day.apply(entry.bucket()), new StatsKey(entry.appId(), entry.uriId()),
+                    HyperLogLog.fromBytes(entry.sketch()));
+        }
+        mergeInMemory(RollupLevel.DAY, from, to, uriIds, day);
+        return days;
+    }
+
+    public static Map<StatsKey, Long> estimate(Map<StatsKey, HyperLogLog> sketches) {
+        Map<StatsKey, Long> estimates = new HashMap<>();
+        sketches.forEach((key, sketch) -> estimates.put(key, sketch.estimate()));
+        return estimates;
+    }
+
+    // Возвращает поколение pending, в которое попали запросы
+    private long record(List<Hit> hits) {
+        pendingLock.readLock().lock();
+        try {
+            long recordedIn = generation;
+            for (Hit hit : hits) {
+                for (RollupLevel level : LEVELS) {
+                    SketchKey key = new SketchKey(level, hit.getAppId(), hit.getUriId(), level.floor(hit.getTimestamp()));
+                    pending.compute(key, (k, sketch) -> {
+                        HyperLogLog result = sketch == null ? new HyperLogLog() : sketch;
+                        if (hit.getIp4() != null) {
+                            result.offer(hit.getIp4());
+                        } else {
+                            result.offer(hit.getIp6());
+                        }
+                        return result;
+                    });
+                }
+            }
+            return recordedIn;
+        } finally {
+            pendingLock.readLock().unlock();
+        }
+    }
+
+    // Часы, отметка которых для поколения ещё не зафиксирована; отметка пишется в текущей транзакции
+    private Set<LocalDateTime> markDirty(List<Hit> hits, long recordedIn) {
+        Set<LocalDateTime> hours = new HashSet<>();
+        for (Hit hit : hits) {
+            LocalDateTime hour = RollupLevel.HOUR.floor(hit.getTimestamp());
+            Long markedIn = marked.get(hour);
+            if (markedIn == null || markedIn < recordedIn) {
+                hours.add(hour);
+            }
+        }
+        sketchRepository.markDirty(hours, recordedIn);
+        return hours;
+    }
+
+    private void mergePending(SketchKey key, HyperLogLog sketch) {
+        pendingLock.readLock().lock();
+        try {
+            pending.compute(key, (k, existing) -> {
+                if (existing == null) {
+                    return sketch;
+                }
+                existing.merge(sketch);
+                return existing;
+            });
+        } finally {
+            pendingLock.readLock().unlock();
+        }
+    }
+
+    // Ещё не сброшенные скетчи; повторное объединение с уже сохранёнными ничего не портит
+    private void mergeInMemory(RollupLevel level, LocalDateTime from, LocalDateTime to, List<Integer> uriIds,
+                               Function<LocalDateTime, Map<StatsKey, HyperLogLog>> target) {
+        for (Map<SketchKey, HyperLogLog> source : List.of(flushing, pending)) {
+            source.forEach((key, sketch) -> {
+                if (key.level() == level && !key.bucket().isBefore(from) && key.bucket().isBefore(to)
+                        && (uriIds == null || uriIds.contains(key.uriId()))) {
+                    merge(target.apply(key.bucket()), new StatsKey(key.appId(), key.uriId()), sketch);
+                }
+            });
+        }
+    }
+
+    private static void merge(Map<StatsKey, HyperLogLog> sketches, StatsKey key, HyperLogLog sketch) {
+        sketches.computeIfAbsent(key, k -> new HyperLogLog()).merge(sketch);
+    }
+
+    private void mergeIntoStore(SketchKey key, HyperLogLog sketch) {
+        HyperLogLog merged = sketch.copy();
+        sketchRepository.findOne(key.level(), key.appId(), key.uriId(), key.bucket())
+                .ifPresent(stored -> merged.merge(HyperLogLog.fromBytes(stored)));
+        sketchRepository.save(key.level(), key.appId(), key.uriId(), key.bucket(), merged.toBytes());
+    }
+
+    // Строки идут по возрастанию времени, поэтому в памяти держим скетчи только одних суток
+    private void rebuild() {
+        Map<SketchKey, HyperLogLog> day = new HashMap<>();
+        LocalDateTime[] currentDay = new LocalDateTime[1];
+        hitQueryRepository.scanAll(rs -> {
+            LocalDateTime timestamp = rs.getObject(5, LocalDateTime.class);
+            LocalDateTime dayBucket = RollupLevel.DAY.floor(timestamp);
+            if (currentDay[0] != null && !currentDay[0].equals(dayBucket)) {
+                day.forEach(this::mergeIntoStore);
+                day.clear();
+            }
+            currentDay[0] = dayBucket;
+            for (RollupLevel level : LEVELS) {
+                SketchKey key = new SketchKey(level, rs.getInt(1), rs.getInt(2), level.floor(timestamp));
+                offerIp(day.computeIfAbsent(key, k -> new HyperLogLog()), rs, 3);
+            }
+        });
+        day.forEach(this::mergeIntoStore);
+    }
+
+    // Скетчи часа и его суток дополняются ip сырых строк часа
+    private void rebuildHour(LocalDateTime hour) {
+        Map<SketchKey, HyperLogLog> sketches = new HashMap<>();
+        hitQueryRepository.scanIps(hour, hour.plusHours(1), null, rs -> {
+            for (RollupLevel level : LEVELS) {
+                SketchKey key = new SketchKey(level, rs.getInt(1), rs.getInt(2), level.floor(hour));
+                offerIp(sketches.computeIfAbsent(key, k -> new HyperLogLog()), rs, 3);
+            }
+        });
+        sketches.forEach(this::mergeIntoStore);
+    }
+
+    // IPv4 и IPv6 лежат в соседних колонках, заполнена ровно одна из них
+    private static void offerIp(HyperLogLog sketch, ResultSet rs, int ip4Column) throws SQLException {
+        int ip4 = rs.getInt(ip4Column);
+        if (rs.wasNull()) {
+            sketch.offer(rs.getBytes(ip4Column + 1));
+        } else {
+            sketch.offer(ip4);
+        }
+    }
+
+    private record SketchKey(RollupLevel level, int appId, int uriId, LocalDateTime bucket) {
+    }
+}
@@ -0,0 +1,229 @@
+package ru.practicum.ewm.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.ewm.model.Hit;
+import ru.practicum.ewm.model.RollupLevel;
+import ru.practicum.ewm.model.StatsKey;
+import ru.practicum.ewm.sketch.HyperLogLog;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+// Кэш результатов /stats по закрытым суткам (до начала текущих). Окно делится на закрытые сутки из кэша
+// и открытые края, которые пересчитываются при каждом запросе. Запись живёт не дольше ttl
+// и сбрасывается, когда за её сутки приходит опоздавший запрос. Объём кэша ограничен и числом записей,
+// и их оценочным размером: сутки без фильтра по uri или со скетчами могут занимать мегабайты
+@Service
+public class StatsQueryCache implements HitListener {
+    // Оценка памяти на элемент результата: ключ, значение и узел HashMap; для скетча - плюс его регистры
+    private static final long HITS_ITEM_BYTES = 96;
+    private static final long SKETCH_ITEM_BYTES = HITS_ITEM_BYTES + 4096;
+
+    private final RollupService rollupService;
+    private final SketchService sketchService;
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final long ttlMs;
+    private final Map<CacheKey, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    // Меняется при каждом сбросе: результат, прочитанный до сброса, в кэш не кладётся
+    private final AtomicLong generation = new AtomicLong();
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter evictionCounter;
+    private final Counter oversizeCounter;
+
+    @Autowired
+    public StatsQueryCache(RollupService rollupService,
+                           SketchService sketchService,
+                           MeterRegistry meterRegistry,
+                           @Value("${stats.cache.enabled:true}") boolean enabled,
+                           @Value("${stats.cache.max-entries:5000}") int maxEntries,
+                           @Value("${stats.cache.max-bytes:67108864}") long maxBytes,
+                           @Value("${stats.cache.max-entry-bytes:4194304}") long maxEntryBytes,
+                           @Value("${stats.cache.ttl-ms:60000}") long ttlMs) {
+        this.rollupService = rollupService;
+        this.sketchService = sketchService;
+        this.enabled = enabled;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxEntryBytes;
+        this.ttlMs = ttlMs;
+        this.hitCounter = meterRegistry.counter("stats.cache.hits");
+        this.missCounter = meterRegistry.counter("stats.cache.misses");
+        this.evictionCounter = meterRegistry.counter("stats.cache.evictions");
+        this.oversizeCounter = meterRegistry.counter("stats.cache.oversize");
+        Gauge.builder("stats.cache.size", this, StatsQueryCache::size)
+                .description("Количество закэшированных суток")
+                .register(meterRegistry);
+        Gauge.builder("stats.cache.bytes", this, StatsQueryCache::bytes)
+                .description("Оценка памяти, занятой закэшированными сутками")
+                .register(meterRegistry);
+    }
+
+    public Map<StatsKey, Long> countHits(LocalDateTime start, LocalDateTime endExclusive, List<Integer> uriIds) {
+        LocalDateTime closedFrom = RollupLevel.DAY.ceil(start);
+        LocalDateTime closedTo = closedTo(endExclusive);
+        if (!enabled || !closedFrom.isBefore(closedTo)) {
+            return rollupService.countHits(start, endExclusive, uriIds);
+        }
+        Map<StatsKey, Long> totals = new HashMap<>();
+        for (Map<StatsKey, Long> day : closedDays(false, closedFrom, closedTo, uriIds,
+                (from, to) -> rollupService.countDays(from, to, uriIds))) {
+            day.forEach((key, hits) -> totals.merge(key, hits, Long::sum));
+        }
+        rollupService.countHits(start, closedFrom, uriIds).forEach((key, hits) -> totals.merge(key, hits, Long::sum));
+        rollupService.countHits(closedTo, endExclusive, uriIds).forEach((key, hits) -> totals.merge(key, hits, Long::sum));
+        return totals;
+    }
+
+    public Map<StatsKey, Long> countUnique(LocalDateTime start, LocalDateTime endExclusive, List<Integer> uriIds) {
+        LocalDateTime closedFrom = RollupLevel.DAY.ceil(start);
+        LocalDateTime closedTo = closedTo(endExclusive);
+        if (!enabled || !closedFrom.isBefore(closedTo)) {
+            return sketchService.countUnique(start, endExclusive, uriIds);
+        }
+        // Закэшированные скетчи не изменяются: объединение идёт в новые
+        Map<StatsKey, HyperLogLog> sketches = new HashMap<>();
+        List<Map<StatsKey, HyperLogLog>> parts = new ArrayList<>(closedDays(true, closedFrom, closedTo, uriIds,
+                (from, to) -> sketchService.collectDays(from, to, uriIds)));
+        parts.add(sketchService.collect(start, closedFrom, uriIds));
+        parts.add(sketchService.collect(closedTo, endExclusive, uriIds));
+        for (Map<StatsKey, HyperLogLog> part : parts) {
+            part.forEach((key, sketch) -> sketches.computeIfAbsent(key, k -> new HyperLogLog()).merge(sketch));
+        }
+        return SketchService.estimate(sketches);
+    }
+
+    @Override
+    public void onHitsSaved(List<Hit> hits) {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime today = RollupLevel.DAY.floor(LocalDateTime.now());
+        Set<LocalDateTime> days = new HashSet<>();
+        for (Hit hit : hits) {
+            LocalDateTime day = RollupLevel.DAY.floor(hit.getTimestamp());
+            if (day.isBefore(today)) {
+                days.add(day);
+            }
+        }
+        if (days.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidate(days);
+                }
+            });
+        } else {
+            invalidate(days);
+        }
+    }
+
+    private LocalDateTime closedTo(LocalDateTime endExclusive) {
+        LocalDateTime today = RollupLevel.DAY.floor(LocalDateTime.now());
+        LocalDateTime floor = RollupLevel.DAY.floor(endExclusive);
+        return floor.isBefore(today) ? floor : today;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> List<T> closedDays(boolean unique, LocalDateTime from, LocalDateTime to, List<Integer> uriIds,
+                                   BiFunction<LocalDateTime, LocalDateTime, Map<LocalDateTime, T>> loader) {
+        List<Integer> filter = uriIds == null ? null : uriIds.stream().sorted().toList();
+        List<T> result = new ArrayList<>();
+        List<LocalDateTime> missing = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            for (LocalDateTime day = from; day.isBefore(to); day = day.plusDays(1)) {
+                CacheEntry entry = entries.get(new CacheKey(day, unique, filter));
+                if (entry != null && now - entry.createdAt() <= ttlMs) {
+                    result.add((T) entry.value());
+                } else {
+                    missing.add(day);
+                }
+            }
+        }
+        hitCounter.increment(result.size());
+        missCounter.increment(missing.size());
+        if (missing.isEmpty()) {
+            return result;
+        }
+        long loadedGeneration = generation.get();
+        // Все промахи читаются одним запросом от первых до последних отсутствующих суток
+        Map<LocalDateTime, T> loaded = loader.apply(missing.get(0), missing.get(missing.size() - 1).plusDays(1));
+        synchronized (this) {
+            for (LocalDateTime day : missing) {
+                T value = loaded.getOrDefault(day, (T) Map.of());
+                result.add(value);
+                if (generation.get() == loadedGeneration) {
+                    put(new CacheKey(day, unique, filter), value, now);
+                }
+            }
+        }
+        return result;
+    }
+
+    // Вызывается под монитором кэша; записи сверх лимитов вытесняются, начиная с давно не читанных
+    private void put(CacheKey key, Object value, long now) {
+        long size = ((Map<?, ?>) value).size() * (key.unique() ? SKETCH_ITEM_BYTES : HITS_ITEM_BYTES);
+        if (size > maxEntryBytes) {
+            oversizeCounter.increment();
+            return;
+        }
+        CacheEntry previous = entries.put(key, new CacheEntry(value, now, size));
+        bytes += size - (previous == null ? 0 : previous.bytes());
+        Iterator<CacheEntry> eldest = entries.values().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+            bytes -= eldest.next().bytes();
+            eldest.remove();
+            evictionCounter.increment();
+        }
+    }
+
+    private synchronized void invalidate(Set<LocalDateTime> days) {
+        generation.incrementAndGet();
+        Iterator<Map.Entry<CacheKey, CacheEntry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<CacheKey, CacheEntry> entry = iterator.next();
+            if (days.contains(entry.getKey().day())) {
+                bytes -= entry.getValue().bytes();
+                iterator.remove();
+            }
+        }
+    }
+
+    private synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized long bytes() {
+        return bytes;
+    }
+
+    private record CacheKey(LocalDateTime day, boolean unique, List<Integer> uriIds) {
+    }
+
+    private record CacheEntry(Object value, long createdAt, long bytes) {
+    }
+}
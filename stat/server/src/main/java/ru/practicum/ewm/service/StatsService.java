@@ -1,13 +1,44 @@
 package ru.practicum.ewm.service;
 
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.practicum.ewm.dto.CounterDto;
 import ru.practicum.ewm.dto.HitDto;
+import ru.practicum.ewm.dto.LiveStatsDto;
+import ru.practicum.ewm.dto.SketchDto;
 import ru.practicum.ewm.dto.StatsDto;
+import ru.practicum.ewm.dto.StatsQueryDto;
+import ru.practicum.ewm.dto.TimeSeriesDto;
+import ru.practicum.ewm.dto.TopStatsDto;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
 
 public interface StatsService {
-    List<StatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique);
+    List<StatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique, Boolean exact);
+
+    List<StatsDto> getRouteStats(LocalDateTime start, LocalDateTime end, List<String> routes);
+
+    List<SketchDto> getSketches(LocalDateTime start, LocalDateTime end, List<String> uris);
+
+    List<StatsDto> queryStats(StatsQueryDto query);
+
+    StreamingResponseBody streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique,
+                                      Integer limit, String afterApp, String afterUri);
+
+    StreamingResponseBody exportHits(LocalDateTime start, LocalDateTime end, String app, LocalDateTime afterTime,
+                                     Long afterId);
+
+    List<TopStatsDto> getTop(LocalDateTime start, LocalDateTime end, String app, Integer n);
+
+    TimeSeriesDto getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris, Duration step,
+                                Boolean unique);
+
+    List<CounterDto> getCounters(List<String> uris);
+
+    List<LiveStatsDto> getLive(List<String> uris, Integer n);
 
     HitDto saveHit(HitDto hit);
+
+    void saveHits(List<HitDto> hits);
 }
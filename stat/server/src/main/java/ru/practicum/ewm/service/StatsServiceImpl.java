@@ -1,53 +1,448 @@
 package ru.practicum.ewm.service;
 
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.practicum.ewm.codec.HitExportWriter;
+import ru.practicum.ewm.dto.CounterDto;
 import ru.practicum.ewm.dto.HitDto;
+import ru.practicum.ewm.dto.LiveStatsDto;
+import ru.practicum.ewm.dto.SketchDto;
 import ru.practicum.ewm.dto.StatsDto;
+import ru.practicum.ewm.dto.StatsQueryDto;
+import ru.practicum.ewm.dto.TimeSeriesDto;
+import ru.practicum.ewm.dto.TopStatsDto;
+import ru.practicum.ewm.dto.UriWindowDto;
+import ru.practicum.ewm.exceptions.BatchValidationException;
+import ru.practicum.ewm.exceptions.ItemError;
+import ru.practicum.ewm.exceptions.ValidationException;
 import ru.practicum.ewm.mapper.HitMapper;
+import ru.practicum.ewm.mapper.IpAddressMapper;
 import ru.practicum.ewm.model.Hit;
-import ru.practicum.ewm.repository.StatsRepository;
+import ru.practicum.ewm.model.RollupLevel;
+import ru.practicum.ewm.model.StatsKey;
+import ru.practicum.ewm.repository.HitQueryRepository;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class StatsServiceImpl implements StatsService {
-    private final StatsRepository statsRepository;
+    private final HitQueryRepository hitQueryRepository;
+    private final DictionaryService dictionaryService;
+    private final HitWriter hitWriter;
+    private final HitIngestBuffer hitIngestBuffer;
+    private final RollupService rollupService;
+    private final SketchService sketchService;
+    private final TopService topService;
+    private final TimeSeriesService timeSeriesService;
+    private final CompactionWatermark compactionWatermark;
+    private final StatsQueryCache statsQueryCache;
+    private final StatsStreamService statsStreamService;
+    private final HitExportService hitExportService;
+    private final LiveCounterService liveCounterService;
+    private final UriCounterService uriCounterService;
+    private final RouteService routeService;
+    private final SamplingService samplingService;
+    private final Validator validator;
+    private final int maxBatchSize;
+    private final int maxTimeSeriesBuckets;
+    private final int maxQueryUris;
 
     @Autowired
-    public StatsServiceImpl(StatsRepository statsRepository) {
-        this.statsRepository = statsRepository;
+    public StatsServiceImpl(HitQueryRepository hitQueryRepository,
+                            DictionaryService dictionaryService,
+                            HitWriter hitWriter,
+                            HitIngestBuffer hitIngestBuffer,
+                            RollupService rollupService,
+                            SketchService sketchService,
+                            TopService topService,
+                            TimeSeriesService timeSeriesService,
+                            CompactionWatermark compactionWatermark,
+                            StatsQueryCache statsQueryCache,
+                            StatsStreamService statsStreamService,
+                            HitExportService hitExportService,
+                            LiveCounterService liveCounterService,
+                            UriCounterService uriCounterService,
+                            RouteService routeService,
+                            SamplingService samplingService,
+                            Validator validator,
+                            @Value("${stats.hit.batch-max-size:10000}") int maxBatchSize,
+                            @Value("${stats.timeseries.max-buckets:100000}") int maxTimeSeriesBuckets,
+                            @Value("${stats.query.max-uris:1000}") int maxQueryUris) {
+        this.hitQueryRepository = hitQueryRepository;
+        this.dictionaryService = dictionaryService;
+        this.hitWriter = hitWriter;
+        this.hitIngestBuffer = hitIngestBuffer;
+        this.rollupService = rollupService;
+        this.sketchService = sketchService;
+        this.topService = topService;
+        this.timeSeriesService = timeSeriesService;
+        this.compactionWatermark = compactionWatermark;
+        this.statsQueryCache = statsQueryCache;
+        this.statsStreamService = statsStreamService;
+        this.hitExportService = hitExportService;
+        this.liveCounterService = liveCounterService;
+        this.uriCounterService = uriCounterService;
+        this.routeService = routeService;
+        this.samplingService = samplingService;
+        this.validator = validator;
+        this.maxBatchSize = maxBatchSize;
+        this.maxTimeSeriesBuckets = maxTimeSeriesBuckets;
+        this.maxQueryUris = maxQueryUris;
     }
 
     @Override
     public List<StatsDto> getStats(LocalDateTime start, LocalDateTime end,
-                                   List<String> uris, Boolean unique) {
-        List<Object[]> results;
-
-        if (Boolean.TRUE.equals(unique)) {
-            results = statsRepository.findUniqueStats(start, end, uris);
+                                   List<String> uris, Boolean unique, Boolean exact) {
+        List<Integer> uriIds = dictionaryService.findUriIds(uris);
+        if (uriIds != null && uriIds.isEmpty()) {
+            // Ни один из запрошенных uri ещё не встречался
+            return List.of();
+        }
+        // Время запросов хранится с точностью до секунды, поэтому [start, end] == [start, end + 1с)
+        LocalDateTime endExclusive = end.plusSeconds(1);
+        Map<StatsKey, Long> counts;
+        // Сырые строки участвуют в подсчёте, только если окно не выровнено по минутам или агрегаты отключены
+        boolean raw = true;
+        boolean sketched = false;
+        if (!Boolean.TRUE.equals(unique) && rollupService.isEnabled()) {
+            counts = statsQueryCache.countHits(start, endExclusive, uriIds);
+            raw = !RollupLevel.MINUTE.floor(start).equals(start)
+                    || !RollupLevel.MINUTE.floor(endExclusive).equals(endExclusive);
+        } else if (Boolean.TRUE.equals(unique) && sketchService.isEnabled()
+                && (!Boolean.TRUE.equals(exact) || compactionWatermark.covers(start))) {
+            // Точный подсчёт невозможен, если часть сырых строк окна уже удалена уплотнением
+            counts = statsQueryCache.countUnique(start, endExclusive, uriIds);
+            sketched = true;
         } else {
-            results = statsRepository.findStats(start, end, uris);
+            Map<StatsKey, Long> rows = new HashMap<>();
+            hitQueryRepository.count(start, endExclusive, uriIds, Boolean.TRUE.equals(unique),
+                    rs -> rows.put(new StatsKey(rs.getInt(1), rs.getInt(2)), rs.getLong(3)));
+            counts = rows;
+        }
+
+        boolean rawRows = raw;
+        boolean estimated = sketched;
+        return counts.entrySet().stream()
+                .map(entry -> toStatsDto(entry.getKey(), entry.getValue(),
+                        estimated || rawRows && samplingService.isSampled(entry.getKey().uriId(), endExclusive)))
+                .sorted(Comparator.comparing(StatsDto::getHits).reversed())
+                .collect(Collectors.toList());
+    }
+
+    // В ответе вместо uri - шаблон маршрута; запросы, записанные до настройки шаблона, учитываются, только если
+    // для их периода сохранились агрегаты по uri
+    @Override
+    public List<StatsDto> getRouteStats(LocalDateTime start, LocalDateTime end, List<String> routes) {
+        if (!routeService.isEnabled()) {
+            throw new ValidationException("routes", "Шаблоны маршрутов не настроены");
+        }
+        List<Integer> routeIds = null;
+        if (routes != null && !routes.isEmpty()) {
+            routeIds = new ArrayList<>();
+            for (String route : routes) {
+                dictionaryService.findRouteId(route).ifPresent(routeIds::add);
+            }
+            if (routeIds.isEmpty()) {
+                return List.of();
+            }
+        }
+        return routeService.countHits(start, end.plusSeconds(1), routeIds).entrySet().stream()
+                .map(entry -> new StatsDto(dictionaryService.appName(entry.getKey().appId()),
+                        dictionaryService.routeName(entry.getKey().uriId()), entry.getValue()))
+                .sorted(Comparator.comparing(StatsDto::getHits).reversed())
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<SketchDto> getSketches(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        if (!sketchService.isEnabled()) {
+            throw new ValidationException("unique", "Скетчи уникальных посетителей отключены");
+        }
+        List<Integer> uriIds = dictionaryService.findUriIds(uris);
+        if (uriIds != null && uriIds.isEmpty()) {
+            return List.of();
         }
+        return sketchService.collect(start, end.plusSeconds(1), uriIds).entrySet().stream()
+                .map(entry -> new SketchDto(dictionaryService.appName(entry.getKey().appId()),
+                        dictionaryService.uriName(entry.getKey().uriId()), entry.getValue().toBytes()))
+                .collect(Collectors.toList());
+    }
 
-        // Преобразование Object[] в StatsDto
-        return results.stream()
-                .map(result -> new StatsDto(
-                        (String) result[0],        // app
-                        (String) result[1],        // uri
-                        ((Number) result[2]).longValue()  // hits
-                ))
+    @Override
+    public List<StatsDto> queryStats(StatsQueryDto query) {
+        List<UriWindowDto> windows = query.getUris();
+        if (windows == null || windows.isEmpty()) {
+            throw new ValidationException("uris", "Список uri не может быть пустым");
+        }
+        if (windows.size() > maxQueryUris) {
+            throw new ValidationException("uris", "Количество uri не может превышать " + maxQueryUris);
+        }
+        validateWindows(windows);
+        boolean unique = Boolean.TRUE.equals(query.getUnique());
+        LocalDateTime end = query.getEnd() != null
+                ? query.getEnd()
+                : LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        LocalDateTime endExclusive = end.plusSeconds(1);
+        Map<StatsKey, Long> counts = new HashMap<>();
+        Map<Integer, LocalDateTime> since = new HashMap<>();
+        Set<Integer> sketched = new HashSet<>();
+        for (UriWindowDto window : windows) {
+            Optional<Integer> uriId = dictionaryService.findUriId(window.getUri());
+            if (uriId.isEmpty() || !window.getSince().isBefore(endExclusive)) {
+                continue;
+            }
+            if (compactionWatermark.covers(window.getSince())) {
+                // Сырые строки начала окна уже удалены уплотнением, такой uri считается по агрегатам отдельно
+                List<Integer> uriIds = List.of(uriId.get());
+                if (unique) {
+                    sketched.add(uriId.get());
+                }
+                counts.putAll(unique
+                        ? statsQueryCache.countUnique(window.getSince(), endExclusive, uriIds)
+                        : statsQueryCache.countHits(window.getSince(), endExclusive, uriIds));
+            } else {
+                since.put(uriId.get(), window.getSince());
+            }
+        }
+        if (!since.isEmpty()) {
+            hitQueryRepository.countSince(since, endExclusive, unique,
+                    rs -> counts.put(new StatsKey(rs.getInt(1), rs.getInt(2)), rs.getLong(3)));
+        }
+        return counts.entrySet().stream()
+                .map(entry -> toStatsDto(entry.getKey(), entry.getValue(), sketched.contains(entry.getKey().uriId())
+                        || samplingService.isSampled(entry.getKey().uriId(), endExclusive)))
+                .sorted(Comparator.comparing(StatsDto::getHits).reversed())
                 .collect(Collectors.toList());
     }
 
+    // Все проверки выполняются до начала выдачи, пока ошибку ещё можно вернуть статусом ответа
+    @Override
+    public StreamingResponseBody streamStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                             Boolean unique, Integer limit, String afterApp, String afterUri) {
+        if (limit != null && limit < 1) {
+            throw new ValidationException("limit", "Значение должно быть положительным");
+        }
+        if ((afterApp == null) != (afterUri == null)) {
+            throw new ValidationException("after", "Параметры afterApp и afterUri задаются только вместе");
+        }
+        if (Boolean.TRUE.equals(unique) && compactionWatermark.covers(start)) {
+            throw new ValidationException("unique",
+                    "Часть окна уже уплотнена, уникальные просмотры за него доступны только через /stats");
+        }
+        StatsKey after = null;
+        if (afterApp != null) {
+            Optional<Integer> appId = dictionaryService.findAppId(afterApp);
+            Optional<Integer> uriId = dictionaryService.findUriId(afterUri);
+            if (appId.isEmpty() || uriId.isEmpty()) {
+                throw new ValidationException("after", "Неизвестная позиция: " + afterApp + " " + afterUri);
+            }
+            after = new StatsKey(appId.get(), uriId.get());
+        }
+        List<Integer> uriIds = dictionaryService.findUriIds(uris);
+        if (uriIds != null && uriIds.isEmpty()) {
+            return out -> {
+            };
+        }
+        StatsKey position = after;
+        return out -> statsStreamService.write(start, end.plusSeconds(1), uriIds, Boolean.TRUE.equals(unique),
+                position, limit, out);
+    }
+
+    @Override
+    public StreamingResponseBody exportHits(LocalDateTime start, LocalDateTime end, String app,
+                                            LocalDateTime afterTime, Long afterId) {
+        if ((afterTime == null) != (afterId == null)) {
+            throw new ValidationException("after", "Параметры afterTime и afterId задаются только вместе");
+        }
+        if (compactionWatermark.covers(start)) {
+            throw new ValidationException("start", "Сырые запросы до " + compactionWatermark.get() +
+                    " уже уплотнены и не выгружаются");
+        }
+        Integer appId = null;
+        if (app != null) {
+            Optional<Integer> found = dictionaryService.findAppId(app);
+            if (found.isEmpty()) {
+                // Пустая, но завершённая выгрузка
+                return out -> new HitExportWriter(out, 1).finish();
+            }
+            appId = found.get();
+        }
+        Integer exportAppId = appId;
+        return out -> hitExportService.write(start, end.plusSeconds(1), exportAppId, afterTime, afterId, out);
+    }
+
+    @Override
+    public List<TopStatsDto> getTop(LocalDateTime start, LocalDateTime end, String app, Integer n) {
+        if (n < 1 || n > topService.getCapacity()) {
+            throw new ValidationException("n", "Значение должно быть от 1 до " + topService.getCapacity());
+        }
+        Integer appId = null;
+        if (app != null) {
+            Optional<Integer> found = dictionaryService.findAppId(app);
+            if (found.isEmpty()) {
+                return List.of();
+            }
+            appId = found.get();
+        }
+        return topService.top(start, end.plusSeconds(1), appId, n);
+    }
+
+    @Override
+    public TimeSeriesDto getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris, Duration step,
+                                       Boolean unique) {
+        long stepSeconds = step.getSeconds();
+        if (stepSeconds < 1 || step.getNano() != 0) {
+            throw new ValidationException("step", "Шаг должен быть положительным целым числом секунд");
+        }
+        LocalDateTime endExclusive = end.plusSeconds(1);
+        long buckets = (ChronoUnit.SECONDS.between(start, endExclusive) + stepSeconds - 1) / stepSeconds;
+        if (buckets > maxTimeSeriesBuckets) {
+            throw new ValidationException("step", "Число интервалов не может превышать " + maxTimeSeriesBuckets);
+        }
+        List<Integer> uriIds = dictionaryService.findUriIds(uris);
+        if (uriIds != null && uriIds.isEmpty()) {
+            return new TimeSeriesDto(start, stepSeconds, (int) buckets, List.of());
+        }
+        return timeSeriesService.series(start, endExclusive, stepSeconds, (int) buckets, uriIds,
+                Boolean.TRUE.equals(unique));
+    }
+
+    @Override
+    public List<CounterDto> getCounters(List<String> uris) {
+        if (!uriCounterService.isEnabled()) {
+            throw new ValidationException("counters", "Счётчики uri отключены");
+        }
+        if (uris == null || uris.isEmpty()) {
+            throw new ValidationException("uris", "Список uri не может быть пустым");
+        }
+        if (uris.size() > maxQueryUris) {
+            throw new ValidationException("uris", "Количество uri не может превышать " + maxQueryUris);
+        }
+        List<Integer> uriIds = dictionaryService.findUriIds(uris);
+        if (uriIds.isEmpty()) {
+            return List.of();
+        }
+        return uriCounterService.counters(uriIds);
+    }
+
+    @Override
+    public List<LiveStatsDto> getLive(List<String> uris, Integer n) {
+        if (n < 1) {
+            throw new ValidationException("n", "Значение должно быть положительным");
+        }
+        List<Integer> uriIds = dictionaryService.findUriIds(uris);
+        if (uriIds != null && uriIds.isEmpty()) {
+            return List.of();
+        }
+        return liveCounterService.live(uriIds, n);
+    }
+
     @Override
     public HitDto saveHit(HitDto dto) {
         Hit hit = HitMapper.mapFromDto(dto);
-        Hit saved = statsRepository.save(hit);
+        if (hitIngestBuffer.isEnabled()) {
+            // В асинхронном режиме id ещё не присвоен, возвращаем запрос без него
+            CompletableFuture<Void> flushed = hitIngestBuffer.submit(hit);
+            if (hitIngestBuffer.isAckAfterFlush()) {
+                hitIngestBuffer.awaitFlushed(flushed);
+            }
+            return HitMapper.mapToDto(hit);
+        }
+        Hit saved = hitWriter.write(hit);
         return HitMapper.mapToDto(saved);
     }
+
+    @Override
+    public void saveHits(List<HitDto> dtos) {
+        if (dtos.isEmpty()) {
+            throw new ValidationException("hits", "Пакет запросов не может быть пустым");
+        }
+        if (dtos.size() > maxBatchSize) {
+            throw new ValidationException("hits", "Размер пакета не может превышать " + maxBatchSize);
+        }
+        validateBatch(dtos);
+        List<Hit> hits = dtos.stream()
+                .map(HitMapper::mapFromDto)
+                .collect(Collectors.toList());
+        if (hitIngestBuffer.isEnabled()) {
+            CompletableFuture<?>[] flushed = hits.stream()
+                    .map(hitIngestBuffer::submit)
+                    .toArray(CompletableFuture[]::new);
+            if (hitIngestBuffer.isAckAfterFlush()) {
+                hitIngestBuffer.awaitFlushed(CompletableFuture.allOf(flushed));
+            }
+        } else {
+            hitWriter.writeAll(hits);
+        }
+        log.debug("Сохранён пакет запросов, количество: {}", hits.size());
+    }
+
+    private StatsDto toStatsDto(StatsKey key, long hits, boolean estimated) {
+        StatsDto dto = dictionaryService.toStatsDto(key, hits);
+        if (estimated) {
+            dto.setEstimated(true);
+        }
+        return dto;
+    }
+
+    private void validateWindows(List<UriWindowDto> windows) {
+        List<ItemError> errors = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < windows.size(); i++) {
+            UriWindowDto window = windows.get(i);
+            if (window == null) {
+                errors.add(new ItemError(i, "uri", "Окно не может быть пустым"));
+                continue;
+            }
+            Set<ConstraintViolation<UriWindowDto>> violations = validator.validate(window);
+            for (ConstraintViolation<UriWindowDto> violation : violations) {
+                errors.add(new ItemError(i, violation.getPropertyPath().toString(), violation.getMessage()));
+            }
+            if (violations.isEmpty() && !seen.add(window.getUri())) {
+                errors.add(new ItemError(i, "uri", "URI повторяется: " + window.getUri()));
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new BatchValidationException("Запрос отклонён, исправьте окна uri", errors);
+        }
+    }
+
+    private void validateBatch(List<HitDto> dtos) {
+        List<ItemError> errors = new ArrayList<>();
+        for (int i = 0; i < dtos.size(); i++) {
+            HitDto dto = dtos.get(i);
+            if (dto == null) {
+                errors.add(new ItemError(i, "hit", "Запрос не может быть пустым"));
+                continue;
+            }
+            Set<ConstraintViolation<HitDto>> violations = validator.validate(dto);
+            for (ConstraintViolation<HitDto> violation : violations) {
+                errors.add(new ItemError(i, violation.getPropertyPath().toString(), violation.getMessage()));
+            }
+            if (violations.isEmpty() && !IpAddressMapper.isValid(dto.getIp())) {
+                errors.add(new ItemError(i, "ip", "Некорректный IP-адрес: " + dto.getIp()));
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new BatchValidationException(errors);
+        }
+    }
 }
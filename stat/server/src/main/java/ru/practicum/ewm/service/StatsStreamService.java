@@ -0,0 +1,95 @@
+package ru.practicum.ewm.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionTimedOutException;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.dto.StatsDto;
+import ru.practicum.ewm.model.RollupLevel;
+import ru.practicum.ewm.model.StatsKey;
+import ru.practicum.ewm.model.TimeSegment;
+import ru.practicum.ewm.repository.StatsStreamRepository;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Потоковая выдача /stats в формате NDJSON: строка результата сразу пишется в ответ и в памяти не копится
+@Service
+public class StatsStreamService {
+    private static final List<RollupLevel> LEVELS = List.of(RollupLevel.DAY, RollupLevel.HOUR, RollupLevel.MINUTE);
+
+    private final StatsStreamRepository statsStreamRepository;
+    private final RollupService rollupService;
+    private final DictionaryService dictionaryService;
+    private final SamplingService samplingService;
+    private final CompactionWatermark compactionWatermark;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final int timeoutSeconds;
+
+    @Autowired
+    public StatsStreamService(StatsStreamRepository statsStreamRepository,
+                              RollupService rollupService,
+                              DictionaryService dictionaryService,
+                              SamplingService samplingService,
+                              CompactionWatermark compactionWatermark,
+                              TransactionTemplate transactionTemplate,
+                              ObjectMapper objectMapper,
+                              @Value("${stats.stream.timeout-seconds:300}") int timeoutSeconds) {
+        this.statsStreamRepository = statsStreamRepository;
+        this.rollupService = rollupService;
+        this.dictionaryService = dictionaryService;
+        this.samplingService = samplingService;
+        this.compactionWatermark = compactionWatermark;
+        // Транзакция и соединение заняты, пока медленный клиент читает ответ, поэтому время выдачи ограничено:
+        // таймаут транзакции становится таймаутом запроса, а между строками проверяется общий срок
+        this.transactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.transactionTemplate.setTimeout(timeoutSeconds);
+        this.objectMapper = objectMapper;
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    public void write(LocalDateTime start, LocalDateTime endExclusive, List<Integer> uriIds, boolean unique,
+                      StatsKey after, Integer limit, OutputStream out) throws IOException {
+        List<TimeSegment> segments = unique || !rollupService.isEnabled()
+                ? List.of(new TimeSegment(null, start, endExclusive))
+                : TimeSegmentPlanner.plan(start, endExclusive, LEVELS, compactionWatermark.get());
+        long[] written = new long[1];
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        try (SequenceWriter writer = objectMapper.writerFor(StatsDto.class).withRootValueSeparator("\n")
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET).writeValues(out)) {
+            // PostgreSQL читает курсором с fetch size только внутри транзакции
+            transactionTemplate.executeWithoutResult(status ->
+                    statsStreamRepository.count(segments, uriIds, unique, after, limit, rs -> {
+                        if (System.nanoTime() > deadline) {
+                            throw new TransactionTimedOutException("Потоковая выдача /stats не уложилась в "
+                                    + timeoutSeconds + " с, продолжение - со следующей страницы");
+                        }
+                        try {
+                            StatsKey key = new StatsKey(rs.getInt(1), rs.getInt(2));
+                            StatsDto dto = dictionaryService.toStatsDto(key, rs.getLong(3));
+                            if (samplingService.isSampled(key.uriId(), endExclusive)) {
+                                dto.setEstimated(true);
+                            }
+                            writer.write(dto);
+                            written[0]++;
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }));
+            // Разделитель пишется только между строками, последнюю строку завершаем сами
+            if (written[0] > 0) {
+                writer.flush();
+                out.write('\n');
+            }
+        }
+    }
+}
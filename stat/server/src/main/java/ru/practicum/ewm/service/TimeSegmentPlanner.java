@@ -0,0 +1,58 @@
+package ru.practicum.ewm.service;
+
+import ru.practicum.ewm.model.RollupLevel;
+import ru.practicum.ewm.model.TimeSegment;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TimeSegmentPlanner {
+    private TimeSegmentPlanner() {
+    }
+
+    // Разбивает [from, to) на выровненные по периодам отрезки, начиная с самого крупного уровня;
+    // невыровненные края остаются сырыми отрезками. Уровни передаются от крупного к мелкому
+    public static List<TimeSegment> plan(LocalDateTime from, LocalDateTime to, List<RollupLevel> levels) {
+        List<TimeSegment> segments = new ArrayList<>();
+        plan(from, to, levels, 0, segments);
+        return segments;
+    }
+
+    // До границы уплотнения сырых строк может не быть: края окна в этой области расширяются до периодов
+    // самого мелкого уровня, и их целиком покрывают агрегаты. Граница выровнена по суткам, поэтому не пересекается
+    public static List<TimeSegment> plan(LocalDateTime from, LocalDateTime to, List<RollupLevel> levels,
+                                         LocalDateTime watermark) {
+        if (watermark != null) {
+            RollupLevel finest = levels.get(levels.size() - 1);
+            if (from.isBefore(watermark)) {
+                from = finest.floor(from);
+            }
+            if (to.isBefore(watermark)) {
+                to = finest.ceil(to);
+            }
+        }
+        return plan(from, to, levels);
+    }
+
+    private static void plan(LocalDateTime from, LocalDateTime to, List<RollupLevel> levels, int index,
+                             List<TimeSegment> segments) {
+        if (!from.isBefore(to)) {
+            return;
+        }
+        if (index == levels.size()) {
+            segments.add(new TimeSegment(null, from, to));
+            return;
+        }
+        RollupLevel level = levels.get(index);
+        LocalDateTime alignedFrom = level.ceil(from);
+        LocalDateTime alignedTo = level.floor(to);
+        if (alignedFrom.isBefore(alignedTo)) {
+            plan(from, alignedFrom, levels, index + 1, segments);
+            segments.add(new TimeSegment(level, alignedFrom, alignedTo));
+            plan(alignedTo, to, levels, index + 1, segments);
+        } else {
+            plan(from, to, levels, index + 1, segments);
+        }
+    }
+}
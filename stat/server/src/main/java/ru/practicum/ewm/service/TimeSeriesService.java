@@ -0,0 +1,125 @@
+package ru.practicum.ewm.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import ru.practicum.ewm.dto.SeriesDto;
+import ru.practicum.ewm.dto.TimeSeriesDto;
+import ru.practicum.ewm.exceptions.ValidationException;
+import ru.practicum.ewm.model.RollupLevel;
+import ru.practicum.ewm.model.StatsKey;
+import ru.practicum.ewm.repository.HitQueryRepository;
+import ru.practicum.ewm.repository.RollupRepository;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Service
+public class TimeSeriesService {
+    private static final List<RollupLevel> LEVELS = List.of(RollupLevel.DAY, RollupLevel.HOUR, RollupLevel.MINUTE);
+
+    private final RollupRepository rollupRepository;
+    private final HitQueryRepository hitQueryRepository;
+    private final RollupService rollupService;
+    private final DictionaryService dictionaryService;
+    private final CompactionWatermark compactionWatermark;
+
+    @Autowired
+    public TimeSeriesService(RollupRepository rollupRepository,
+                             HitQueryRepository hitQueryRepository,
+                             RollupService rollupService,
+                             DictionaryService dictionaryService,
+                             CompactionWatermark compactionWatermark) {
+        this.rollupRepository = rollupRepository;
+        this.hitQueryRepository = hitQueryRepository;
+        this.rollupService = rollupService;
+        this.dictionaryService = dictionaryService;
+        this.compactionWatermark = compactionWatermark;
+    }
+
+    // Окно [start, endExclusive) читается по порядку: сначала из самых крупных агрегатов, чей период кратен
+    // шагу и совпадает с началом окна, затем из более мелких, остаток - из сырых строк; каждый источник один раз
+    public TimeSeriesDto series(LocalDateTime start, LocalDateTime endExclusive, long stepSeconds, int buckets,
+                                List<Integer> uriIds, boolean unique) {
+        Map<StatsKey, SeriesBuilder> series = new HashMap<>();
+        RowCallbackHandler append = rs -> series.computeIfAbsent(new StatsKey(rs.getInt(1), rs.getInt(2)),
+                key -> new SeriesBuilder()).add((int) rs.getLong(3), rs.getLong(4));
+        // Остаток из сырых строк не должен заходить за границу уплотнения: там строки могли быть удалены
+        LocalDateTime rawFrom = rawFrom(start, endExclusive, stepSeconds, unique);
+        if (rawFrom.isBefore(endExclusive) && compactionWatermark.covers(rawFrom)) {
+            if (unique) {
+                throw new ValidationException("unique",
+                        "Часть окна уже уплотнена, уникальные просмотры по интервалам за него недоступны");
+            }
+            throw new ValidationException("step", "Сырые запросы до " + compactionWatermark.get() +
+                    " уже уплотнены: начало окна и шаг должны быть кратны минуте, чтобы ряд строился из агрегатов");
+        }
+        LocalDateTime cursor = start;
+        if (!unique && rollupService.isEnabled()) {
+            for (RollupLevel level : LEVELS) {
+                if (stepSeconds % level.getSeconds() != 0 || !level.floor(start).equals(start)) {
+                    continue;
+                }
+                LocalDateTime to = level.floor(endExclusive);
+                if (to.isAfter(cursor)) {
+                    rollupRepository.sumHitsByStep(level, cursor, to, start, stepSeconds, uriIds, append);
+                    cursor = to;
+                }
+            }
+        }
+        if (cursor.isBefore(endExclusive)) {
+            hitQueryRepository.countByStep(cursor, endExclusive, start, stepSeconds, uriIds, unique, append);
+        }
+        List<SeriesDto> result = series.entrySet().stream()
+                .map(entry -> entry.getValue().build(dictionaryService.appName(entry.getKey().appId()),
+                        dictionaryService.uriName(entry.getKey().uriId())))
+                .sorted(Comparator.comparing(SeriesDto::getApp).thenComparing(SeriesDto::getUri))
+                .toList();
+        return new TimeSeriesDto(start, stepSeconds, buckets, result);
+    }
+
+    // Начало части окна, которая будет прочитана из сырых строк; выбор агрегатов тот же, что в series
+    private LocalDateTime rawFrom(LocalDateTime start, LocalDateTime endExclusive, long stepSeconds, boolean unique) {
+        LocalDateTime cursor = start;
+        if (!unique && rollupService.isEnabled()) {
+            for (RollupLevel level : LEVELS) {
+                if (stepSeconds % level.getSeconds() != 0 || !level.floor(start).equals(start)) {
+                    continue;
+                }
+                LocalDateTime to = level.floor(endExclusive);
+                if (to.isAfter(cursor)) {
+                    cursor = to;
+                }
+            }
+        }
+        return cursor;
+    }
+
+    // Интервалы приходят по возрастанию; на стыке источников один интервал может прийти дважды
+    private static class SeriesBuilder {
+        private int[] index = new int[16];
+        private long[] hits = new long[16];
+        private int size;
+
+        void add(int bucket, long count) {
+            if (size > 0 && index[size - 1] == bucket) {
+                hits[size - 1] += count;
+                return;
+            }
+            if (size == index.length) {
+                index = Arrays.copyOf(index, size * 2);
+                hits = Arrays.copyOf(hits, size * 2);
+            }
+            index[size] = bucket;
+            hits[size++] = count;
+        }
+
+        SeriesDto build(String app, String uri) {
+            return new SeriesDto(app, uri, Arrays.copyOf(index, size), Arrays.copyOf(hits, size));
+        }
+    }
+}
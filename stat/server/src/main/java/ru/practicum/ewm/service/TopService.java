@@ -0,0 +1,311 @@
+package ru.practicum.ewm.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.dto.TopStatsDto;
+import ru.practicum.ewm.model.Hit;
+import ru.practicum.ewm.model.RollupLevel;
+import ru.practicum.ewm.model.StatsKey;
+import ru.practicum.ewm.model.TimeSegment;
+import ru.practicum.ewm.model.TopEntry;
+import ru.practicum.ewm.repository.BackfillRepository;
+import ru.practicum.ewm.repository.HitQueryRepository;
+import ru.practicum.ewm.repository.StatsRepository;
+import ru.practicum.ewm.repository.TopRepository;
+import ru.practicum.ewm.sketch.SpaceSaving;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+// Самые популярные uri: сводки Space-Saving по приложению и часу/дню, края окна считаются точно
+@Service
+@Slf4j
+public class TopService implements HitListener {
+    private static final List<RollupLevel> LEVELS = List.of(RollupLevel.DAY, RollupLevel.HOUR);
+    private static final String BACKFILL = "top";
+
+    private final TopRepository topRepository;
+    private final StatsRepository statsRepository;
+    private final HitQueryRepository hitQueryRepository;
+    private final BackfillRepository backfillRepository;
+    private final RollupService rollupService;
+    private final DictionaryService dictionaryService;
+    private final TransactionTemplate transactionTemplate;
+    private final CompactionWatermark compactionWatermark;
+    private final boolean enabled;
+    private final int capacity;
+    // Запись в pending идёт под read-lock, подмена карты при сбросе - под write-lock
+    private final ReadWriteLock pendingLock = new ReentrantReadWriteLock();
+    // Счётчики, в отличие от скетчей, нельзя объединять повторно: запрос не должен видеть
+    // одну и ту же сводку и в таблице, и в памяти
+    private final ReadWriteLock storeLock = new ReentrantReadWriteLock();
+
+    private volatile Map<TopKey, SpaceSaving> pending = new ConcurrentHashMap<>();
+    private volatile Map<TopKey, SpaceSaving> flushing = Map.of();
+
+    @Autowired
+    public TopService(TopRepository topRepository,
+                      StatsRepository statsRepository,
+                      HitQueryRepository hitQueryRepository,
+                      BackfillRepository backfillRepository,
+                      RollupService rollupService,
+                      DictionaryService dictionaryService,
+                      TransactionTemplate transactionTemplate,
+                      CompactionWatermark compactionWatermark,
+                      @Value("${stats.top.enabled:true}") boolean enabled,
+                      @Value("${stats.top.capacity:1000}") int capacity) {
+        this.topRepository = topRepository;
+        this.statsRepository = statsRepository;
+        this.hitQueryRepository = hitQueryRepository;
+        this.backfillRepository = backfillRepository;
+        this.rollupService = rollupService;
+        this.dictionaryService = dictionaryService;
+        this.transactionTemplate = transactionTemplate;
+        this.compactionWatermark = compactionWatermark;
+        this.enabled = enabled;
+        this.capacity = capacity;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // Строки, записанные, пока сводки были выключены (отметка в stats_backfill), дописываются в них при старте
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            backfillRepository.open(BACKFILL);
+            return;
+        }
+        if (topRepository.isEmpty() && statsRepository.existsAny()) {
+            log.info("Таблицы популярных uri пусты, выполняется пересчёт из сырых данных");
+            transactionTemplate.executeWithoutResult(status -> {
+                replay(hitQueryRepository::scanHourlyCounts);
+                backfillRepository.close(BACKFILL);
+            });
+            return;
+        }
+        backfillRepository.find(BACKFILL).ifPresent(lastId -> {
+            long toId = backfillRepository.maxStatsId();
+            log.info("Сводки популярных uri были выключены, дописываются сырые строки с id из ({}, {}]", lastId, toId);
+            transactionTemplate.executeWithoutResult(status -> {
+                replay(handler -> hitQueryRepository.scanHourlyCounts(lastId, toId, handler));
+                backfillRepository.close(BACKFILL);
+            });
+        });
+    }
+
+    @Override
+    public void onHitsSaved(List<Hit> hits) {
+        if (!enabled) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    record(hits);
+                }
+            });
+        } else {
+            record(hits);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${stats.top.flush-interval-ms:5000}")
+    public synchronized void flush() {
+        pendingLock.writeLock().lock();
+        try {
+            flushing = pending;
+            pending = new ConcurrentHashMap<>();
+        } finally {
+            pendingLock.writeLock().unlock();
+        }
+        if (flushing.isEmpty()) {
+            return;
+        }
+        storeLock.writeLock().lock();
+        try {
+            transactionTemplate.executeWithoutResult(status -> flushing.forEach(this::mergeIntoStore));
+            log.debug("Сброшено сводок популярных uri: {}", flushing.size());
+        } catch (RuntimeException e) {
+            log.warn("Не удалось сбросить сводки популярных uri, повторная попытка при следующем сбросе", e);
+            flushing.forEach(this::mergePending);
+        } finally {
+            flushing = Map.of();
+            storeLock.writeLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (enabled) {
+            flush();
+        }
+    }
+
+    // n самых просматриваемых uri за [start, endExclusive), appId == null - по всем приложениям
+    public List<TopStatsDto> top(LocalDateTime start, LocalDateTime endExclusive, Integer appId, int n) {
+        SpaceSaving result;
+        if (enabled) {
+            result = new SpaceSaving(capacity);
+            storeLock.readLock().lock();
+            try {
+                List<TimeSegment> segments = TimeSegmentPlanner.plan(start, endExclusive, LEVELS, compactionWatermark.get());
+                for (TimeSegment segment : segments) {
+                    if (segment.isRaw()) {
+                        result.merge(exact(segment.from(), segment.to(), appId));
+                    } else {
+                        for (TopEntry entry : topRepository.find(segment.level(), segment.from(), segment.to(), appId)) {
+                            result.merge(SpaceSaving.fromBytes(entry.summary()));
+                        }
+                        mergeInMemory(segment, appId, result);
+                    }
+                }
+            } finally {
+                storeLock.readLock().unlock();
+            }
+        } else {
+            result = exact(start, endExclusive, appId);
+        }
+        return result.top(n).stream()
+                .map(counter -> new TopStatsDto(dictionaryService.appName((int) (counter.item() >>> 32)),
+                        dictionaryService.uriName((int) counter.item()), counter.count(), counter.error()))
+                .toList();
+    }
+
+    // Точные счётчики из агрегатов (или сырых строк), оформленные как сводка без погрешности
+    private SpaceSaving exact(LocalDateTime from, LocalDateTime to, Integer appId) {
+        Map<StatsKey, Long> counts;
+        if (rollupService.isEnabled()) {
+            counts = rollupService.countHits(from, to, null);
+        } else {
+            Map<StatsKey, Long> rows = new HashMap<>();
+            hitQueryRepository.count(from, to, null, false,
+                    rs -> rows.put(new StatsKey(rs.getInt(1), rs.getInt(2)), rs.getLong(3)));
+            counts = rows;
+        }
+        SpaceSaving summary = new SpaceSaving(Math.max(counts.size(), 1));
+        counts.forEach((key, hits) -> {
+            if (appId == null || appId == key.appId()) {
+                summary.offer(item(key.appId(), key.uriId()), hits);
+            }
+        });
+        return summary;
+    }
+
+    private void record(List<Hit> hits) {
+        pendingLock.readLock().lock();
+        try {
+            for (Hit hit : hits) {
+                long item = item(hit.getAppId(), hit.getUriId());
+                for (RollupLevel level : LEVELS) {
+                    TopKey key = new TopKey(level, hit.getAppId(), level.floor(hit.getTimestamp()));
+                    pending.compute(key, (k, summary) -> {
+                        SpaceSaving result = summary == null ? new SpaceSaving(capacity) : summary;
+                        result.offer(item, 1);
+                        return result;
+                    });
+                }
+            }
+        } finally {
+            pendingLock.readLock().unlock();
+        }
+    }
+
+    private void mergePending(TopKey key, SpaceSaving summary) {
+        pendingLock.readLock().lock();
+        try {
+            pending.compute(key, (k, existing) -> {
+                if (existing == null) {
+                    return summary;
+                }
+                existing.merge(summary);
+                return existing;
+            });
+        } finally {
+            pendingLock.readLock().unlock();
+        }
+    }
+
+    private void mergeInMemory(TimeSegment segment, Integer appId, SpaceSaving result) {
+        pendingLock.readLock().lock();
+        try {
+            flushing.forEach((key, summary) -> {
+                if (matches(key, segment, appId)) {
+                    result.merge(summary);
+                }
+            });
+            // Сводки в pending продолжают пополняться, читаем их под блокировкой ключа
+            for (TopKey key : pending.keySet()) {
+                if (matches(key, segment, appId)) {
+                    pending.computeIfPresent(key, (k, summary) -> {
+                        result.merge(summary);
+                        return summary;
+                    });
+                }
+            }
+        } finally {
+            pendingLock.readLock().unlock();
+        }
+    }
+
+    private void mergeIntoStore(TopKey key, SpaceSaving summary) {
+        SpaceSaving merged = summary.copy();
+        topRepository.findOne(key.level(), key.appId(), key.bucket())
+                .ifPresent(stored -> merged.merge(SpaceSaving.fromBytes(stored)));
+        topRepository.save(key.level(), key.appId(), key.bucket(), merged.toBytes());
+    }
+
+    // Дополняет сохранённые сводки почасовыми счётчиками app_id, uri_id, час, количество.
+    // Строки идут по возрастанию часа, поэтому в памяти держим сводки только одних суток
+    private void replay(Consumer<RowCallbackHandler> scan) {
+        Map<TopKey, SpaceSaving> day = new HashMap<>();
+        LocalDateTime[] currentDay = new LocalDateTime[1];
+        scan.accept(rs -> {
+            LocalDateTime hour = rs.getObject(3, LocalDateTime.class);
+            LocalDateTime dayBucket = RollupLevel.DAY.floor(hour);
+            if (currentDay[0] != null && !currentDay[0].equals(dayBucket)) {
+                day.forEach(this::mergeIntoStore);
+                day.clear();
+            }
+            currentDay[0] = dayBucket;
+            int appId = rs.getInt(1);
+            long item = item(appId, rs.getInt(2));
+            long hits = rs.getLong(4);
+            for (RollupLevel level : LEVELS) {
+                TopKey key = new TopKey(level, appId, level.floor(hour));
+                day.computeIfAbsent(key, k -> new SpaceSaving(capacity)).offer(item, hits);
+            }
+        });
+        day.forEach(this::mergeIntoStore);
+    }
+
+    private static boolean matches(TopKey key, TimeSegment segment, Integer appId) {
+        return key.level() == segment.level()
+                && !key.bucket().isBefore(segment.from()) && key.bucket().isBefore(segment.to())
+                && (appId == null || appId == key.appId());
+    }
+
+    private static long item(int appId, int uriId) {
+        return (long) appId << 32 | (uriId & 0xffffffffL);
+    }
+
+    private record TopKey(RollupLevel level, int appId, LocalDateTime bucket) {
+    }
+}
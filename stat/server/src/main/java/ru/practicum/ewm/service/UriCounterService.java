@@ -0,0 +1,226 @@
+package ru.practicum.ewm.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.dto.CounterDto;
+import ru.practicum.ewm.model.Hit;
+import ru.practicum.ewm.model.StatsKey;
+import ru.practicum.ewm.repository.StatsRepository;
+import ru.practicum.ewm.repository.UriCounterRepository;
+import ru.practicum.ewm.sketch.HyperLogLog;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Счётчики uri за всё время для ответа без агрегации: просмотры пополняются в транзакции записи запросов,
+// уникальные - скетчами, которые копятся в памяти и сбрасываются раз в flush-interval-ms.
+// Периодический пересчёт из суточных агрегатов и скетчей исправляет накопившееся расхождение
+@Service
+@Slf4j
+public class UriCounterService implements HitListener {
+    private static final int RECONCILE_BATCH = 1000;
+
+    private final UriCounterRepository uriCounterRepository;
+    private final StatsRepository statsRepository;
+    private final RollupService rollupService;
+    private final SketchService sketchService;
+    private final DictionaryService dictionaryService;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    // Запись в pending идёт под read-lock, подмена карты при сбросе - под write-lock
+    private final ReadWriteLock pendingLock = new ReentrantReadWriteLock();
+
+    private volatile Map<StatsKey, HyperLogLog> pending = new ConcurrentHashMap<>();
+
+    @Autowired
+    public UriCounterService(UriCounterRepository uriCounterRepository,
+                             StatsRepository statsRepository,
+                             RollupService rollupService,
+                             SketchService sketchService,
+                             DictionaryService dictionaryService,
+                             TransactionTemplate transactionTemplate,
+                             @Value("${stats.counters.enabled:true}") boolean enabled) {
+        this.uriCounterRepository = uriCounterRepository;
+        this.statsRepository = statsRepository;
+        this.rollupService = rollupService;
+        this.sketchService = sketchService;
+        this.dictionaryService = dictionaryService;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (enabled && uriCounterRepository.isEmpty() && statsRepository.existsAny()) {
+            log.info("Таблица счётчиков uri пуста, выполняется пересчёт");
+            reconcile();
+        }
+    }
+
+    @Override
+    public void onHitsSaved(List<Hit> hits) {
+        if (!enabled) {
+            return;
+        }
+        Map<StatsKey, Long> deltas = new HashMap<>();
+        for (Hit hit : hits) {
+            deltas.merge(new StatsKey(hit.getAppId(), hit.getUriId()), 1L, Long::sum);
+        }
+        uriCounterRepository.increment(deltas);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    record(hits);
+                }
+            });
+        } else {
+            record(hits);
+        }
+    }
+
+    public List<CounterDto> counters(List<Integer> uriIds) {
+        return uriCounterRepository.find(uriIds).stream()
+                .map(counter -> new CounterDto(dictionaryService.appName(counter.appId()),
+                        dictionaryService.uriName(counter.uriId()), counter.hits(), counter.uniques()))
+                .toList();
+    }
+
+    @Scheduled(fixedDelayString = "${stats.counters.flush-interval-ms:5000}")
+    public synchronized void flush() {
+        Map<StatsKey, HyperLogLog> flushing;
+        pendingLock.writeLock().lock();
+        try {
+            flushing = pending;
+            pending = new ConcurrentHashMap<>();
+        } finally {
+            pendingLock.writeLock().unlock();
+        }
+        if (flushing.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> flushing.forEach((key, sketch) -> {
+                HyperLogLog merged = sketch.copy();
+                uriCounterRepository.findSketch(key).ifPresent(stored -> merged.merge(HyperLogLog.fromBytes(stored)));
+                uriCounterRepository.saveSketch(key, merged.toBytes(), merged.estimate());
+            }));
+            log.debug("Сброшено скетчей счётчиков uri: {}", flushing.size());
+        } catch (RuntimeException e) {
+            log.warn("Не удалось сбросить скетчи счётчиков uri, повторная попытка при следующем сбросе", e);
+            flushing.forEach(this::mergePending);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (enabled) {
+            flush();
+        }
+    }
+
+    // Просмотры берутся из суточных агрегатов, которые пишутся в той же транзакции, что и сырые строки, и точны
+    // даже для прореженных uri; без агрегатов - из сырых строк. Уникальные - объединение суточных скетчей
+    @Scheduled(cron = "${stats.counters.reconcile-cron:0 0 4 * * *}")
+    public synchronized void reconcile() {
+        if (!enabled) {
+            return;
+        }
+        // Скетчи в памяти сначала попадают в таблицы, иначе пересчёт их не увидит
+        flush();
+        if (sketchService.isEnabled()) {
+            sketchService.flush();
+        }
+        long started = System.currentTimeMillis();
+        transactionTemplate.executeWithoutResult(status -> {
+            uriCounterRepository.lock();
+            uriCounterRepository.rebuildHits(rollupService.isEnabled());
+            if (sketchService.isEnabled()) {
+                rebuildUniques();
+            }
+        });
+        log.info("Счётчики uri пересчитаны за {} мс", System.currentTimeMillis() - started);
+    }
+
+    // Скетчи идут по ключу счётчика, поэтому в памяти держим объединение только одного ключа
+    private void rebuildUniques() {
+        Map<StatsKey, byte[]> sketches = new HashMap<>();
+        Map<StatsKey, Long> uniques = new HashMap<>();
+        StatsKey[] currentKey = new StatsKey[1];
+        HyperLogLog[] current = new HyperLogLog[1];
+        uriCounterRepository.scanDaySketches(rs -> {
+            StatsKey key = new StatsKey(rs.getInt(2), rs.getInt(1));
+            if (!key.equals(currentKey[0])) {
+                if (currentKey[0] != null) {
+                    sketches.put(currentKey[0], current[0].toBytes());
+                    uniques.put(currentKey[0], current[0].estimate());
+                    if (sketches.size() == RECONCILE_BATCH) {
+                        uriCounterRepository.saveSketches(sketches, uniques);
+                        sketches.clear();
+                        uniques.clear();
+                    }
+                }
+                currentKey[0] = key;
+                current[0] = new HyperLogLog();
+            }
+            current[0].merge(HyperLogLog.fromBytes(rs.getBytes(3)));
+        });
+        if (currentKey[0] != null) {
+            sketches.put(currentKey[0], current[0].toBytes());
+            uniques.put(currentKey[0], current[0].estimate());
+        }
+        if (!sketches.isEmpty()) {
+            uriCounterRepository.saveSketches(sketches, uniques);
+        }
+    }
+
+    private void record(List<Hit> hits) {
+        pendingLock.readLock().lock();
+        try {
+            for (Hit hit : hits) {
+                pending.compute(new StatsKey(hit.getAppId(), hit.getUriId()), (k, sketch) -> {
+                    HyperLogLog result = sketch == null ? new HyperLogLog() : sketch;
+                    if (hit.getIp4() != null) {
+                        result.offer(hit.getIp4());
+                    } else {
+                        result.offer(hit.getIp6());
+                    }
+                    return result;
+                });
+            }
+        } finally {
+            pendingLock.readLock().unlock();
+        }
+    }
+
+    private void mergePending(StatsKey key, HyperLogLog sketch) {
+        pendingLock.readLock().lock();
+        try {
+            pending.compute(key, (k, existing) -> {
+                if (existing == null) {
+                    return sketch;
+                }
+                existing.merge(sketch);
+                return existing;
+            });
+        } finally {
+            pendingLock.readLock().unlock();
+        }
+    }
+}
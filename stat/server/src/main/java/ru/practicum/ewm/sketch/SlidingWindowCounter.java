@@ -0,0 +1,153 @@
+package ru.practicum.ewm.sketch;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Скользящие счётчики одного ключа: кольцо посекундных ячеек за последние SECONDS секунд и кольцо поминутных
+// за последние MINUTES минут. Ячейка - упакованные номер периода (старшие 32 бита) и счёт (младшие 32 бита),
+// поэтому устаревшая ячейка обнуляется тем же CAS, что и увеличивается. Как в LongAdder, при конкуренции
+// за ячейку добавляются полосы, и потоки расходятся по разным копиям колец
+public class SlidingWindowCounter {
+    public static final int SECONDS = 300;
+    public static final int MINUTES = 60;
+    private static final int SLOTS = SECONDS + MINUTES;
+    private static final int MAX_STRIPES =
+            Math.min(8, Integer.highestOneBit(Runtime.getRuntime().availableProcessors()));
+
+    private volatile AtomicLongArray[] stripes = {new AtomicLongArray(SLOTS)};
+    private volatile long lastSecond;
+
+    public void add(long second, long count) {
+        addSecond(second, count);
+        addMinute(second / 60, count);
+        if (second > lastSecond) {
+            lastSecond = second;
+        }
+    }
+
+    // Сумма за секунды (now - window, now]; window не больше SECONDS
+    public long sumSeconds(long now, int window) {
+        long sum = 0;
+        for (AtomicLongArray slots : stripes) {
+            for (long second = now - window + 1; second <= now; second++) {
+                sum += count(slots.get((int) (second % SECONDS)), second);
+            }
+        }
+        return sum;
+    }
+
+    // Сумма за минуты (minute - window, minute], текущая минута учитывается частично
+    public long sumMinutes(long now, int window) {
+        long minuteNow = now / 60;
+        long sum = 0;
+        for (AtomicLongArray slots : stripes) {
+            for (long minute = minuteNow - window + 1; minute <= minuteNow; minute++) {
+                sum += count(slots.get(SECONDS + (int) (minute % MINUTES)), minute);
+            }
+        }
+        return sum;
+    }
+
+    public long getLastSecond() {
+        return lastSecond;
+    }
+
+    // Пишутся только непустые ячейки в виде (сдвиг от now, счёт)
+    public void writeTo(DataOutput out, long now) throws IOException {
+        long minuteNow = now / 60;
+        out.writeLong(lastSecond);
+        long[] seconds = new long[SECONDS];
+        long[] minutes = new long[MINUTES];
+        for (int offset = 0; offset < SECONDS; offset++) {
+            seconds[offset] = sumSeconds(now - offset, 1);
+        }
+        for (int offset = 0; offset < MINUTES; offset++) {
+            minutes[offset] = sumMinutes((minuteNow - offset) * 60, 1);
+        }
+        writeSlots(out, seconds);
+        writeSlots(out, minutes);
+    }
+
+    // Ячейки снимка, сделанного в snapshotNow, которые к now уже выпали из окон, отбрасываются
+    public static SlidingWindowCounter readFrom(DataInput in, long snapshotNow, long now) throws IOException {
+        SlidingWindowCounter counter = new SlidingWindowCounter();
+        counter.lastSecond = in.readLong();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            long second = snapshotNow - in.readInt();
+            long count = in.readLong();
+            if (second > now - SECONDS && second <= now) {
+                counter.addSecond(second, count);
+            }
+        }
+        size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            long minute = snapshotNow / 60 - in.readInt();
+            long count = in.readLong();
+            if (minute > now / 60 - MINUTES && minute <= now / 60) {
+                counter.addMinute(minute, count);
+            }
+        }
+        return counter;
+    }
+
+    private void addSecond(long second, long count) {
+        add((int) (second % SECONDS), second, count);
+    }
+
+    private void addMinute(long minute, long count) {
+        add(SECONDS + (int) (minute % MINUTES), minute, count);
+    }
+
+    private void add(int index, long period, long count) {
+        while (true) {
+            AtomicLongArray[] current = stripes;
+            AtomicLongArray slots = current[(int) (Thread.currentThread().threadId() & (current.length - 1))];
+            long value = slots.get(index);
+            long slotPeriod = value >>> 32;
+            if (slotPeriod > period) {
+                // Ячейка уже занята более поздним периодом, значит этот период выпал из окна
+                return;
+            }
+            long next = slotPeriod == period ? value + count : period << 32 | count;
+            if (slots.compareAndSet(index, value, next)) {
+                return;
+            }
+            grow(current);
+        }
+    }
+
+    private synchronized void grow(AtomicLongArray[] seen) {
+        if (stripes != seen || seen.length >= MAX_STRIPES) {
+            return;
+        }
+        AtomicLongArray[] grown = new AtomicLongArray[seen.length * 2];
+        System.arraycopy(seen, 0, grown, 0, seen.length);
+        for (int i = seen.length; i < grown.length; i++) {
+            grown[i] = new AtomicLongArray(SLOTS);
+        }
+        stripes = grown;
+    }
+
+    private static long count(long value, long period) {
+        return value >>> 32 == period ? value & 0xffffffffL : 0;
+    }
+
+    private static void writeSlots(DataOutput out, long[] counts) throws IOException {
+        int size = 0;
+        for (long count : counts) {
+            if (count > 0) {
+                size++;
+            }
+        }
+        out.writeInt(size);
+        for (int offset = 0; offset < counts.length; offset++) {
+            if (counts[offset] > 0) {
+                out.writeInt(offset);
+                out.writeLong(counts[offset]);
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package ru.practicum.ewm.sketch;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Space-Saving: не больше capacity счётчиков, для отслеживаемого элемента count - error <= истина <= count,
+// для неотслеживаемого истина <= untracked. Счётчики лежат в min-куче, поэтому вытеснение стоит O(log capacity)
+public class SpaceSaving {
+    private final int capacity;
+    private final long[] items;
+    private final long[] counts;
+    private final long[] errors;
+    private final Map<Long, Integer> positions;
+    private int size;
+    private long untracked;
+
+    public SpaceSaving(int capacity) {
+        this.capacity = capacity;
+        this.items = new long[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        this.positions = new HashMap<>(capacity * 2);
+    }
+
+    public void offer(long item, long weight) {
+        Integer position = positions.get(item);
+        if (position != null) {
+            counts[position] += weight;
+            siftDown(position);
+            return;
+        }
+        if (size < capacity) {
+            put(size, item, weight, 0);
+            siftUp(size++);
+            return;
+        }
+        // Вытесняем самый редкий элемент: новый мог встречаться раньше не чаще, чем вытесненный
+        untracked = Math.max(untracked, counts[0]);
+        positions.remove(items[0]);
+        put(0, item, untracked + weight, untracked);
+        siftDown(0);
+    }
+
+    // Объединение по Agarwal et al.: элементу, которого нет в одной из сводок, добавляется её граница untracked
+    public void merge(SpaceSaving other) {
+        Map<Long, long[]> union = new HashMap<>((size + other.size) * 2);
+        for (int i = 0; i < size; i++) {
+            union.put(items[i], new long[]{counts[i] + other.untracked, errors[i] + other.untracked});
+        }
+        for (int i = 0; i < other.size; i++) {
+            long[] counter = union.get(other.items[i]);
+            if (counter == null) {
+                union.put(other.items[i], new long[]{other.counts[i] + untracked, other.errors[i] + untracked});
+            } else {
+                counter[0] += other.counts[i] - other.untracked;
+                counter[1] += other.errors[i] - other.untracked;
+            }
+        }
+        List<Map.Entry<Long, long[]>> sorted = new ArrayList<>(union.entrySet());
+        sorted.sort(Comparator.comparingLong((Map.Entry<Long, long[]> entry) -> entry.getValue()[0]).reversed());
+        long bound = untracked + other.untracked;
+        positions.clear();
+        size = 0;
+        for (Map.Entry<Long, long[]> entry : sorted) {
+            if (size < capacity) {
+                put(size, entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+                siftUp(size++);
+            } else {
+                bound = Math.max(bound, entry.getValue()[0]);
+            }
+        }
+        untracked = bound;
+    }
+
+    public List<Counter> top(int n) {
+        List<Counter> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(new Counter(items[i], counts[i], errors[i]));
+        }
+        result.sort(Comparator.comparingLong(Counter::count).reversed());
+        return result.size() > n ? result.subList(0, n) : result;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public SpaceSaving copy() {
+        SpaceSaving copy = new SpaceSaving(capacity);
+        copy.merge(this);
+        return copy;
+    }
+
+    public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 8 + 4 + size * 24);
+        buffer.putInt(capacity);
+        buffer.putLong(untracked);
+        buffer.putInt(size);
+        for (int i = 0; i < size; i++) {
+            buffer.putLong(items[i]);
+            buffer.putLong(counts[i]);
+            buffer.putLong(errors[i]);
+        }
+        return buffer.array();
+    }
+
+    public static SpaceSaving fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        SpaceSaving summary = new SpaceSaving(buffer.getInt());
+        summary.untracked = buffer.getLong();
+        int size = buffer.getInt();
+        for (int i = 0; i < size; i++) {
+            summary.put(i, buffer.getLong(), buffer.getLong(), buffer.getLong());
+            summary.siftUp(summary.size++);
+        }
+        return summary;
+    }
+
+    private void put(int position, long item, long count, long error) {
+        items[position] = item;
+        counts[position] = count;
+        errors[position] = error;
+        positions.put(item, position);
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (counts[parent] <= counts[position]) {
+                return;
+            }
+            swap(position, parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int smallest = position;
+            int left = 2 * position + 1;
+            int right = left + 1;
+            if (left < size && counts[left] < counts[smallest]) {
+                smallest = left;
+            }
+            if (right < size && counts[right] < counts[smallest]) {
+                smallest = right;
+            }
+            if (smallest == position) {
+                return;
+            }
+            swap(position, smallest);
+            position = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        long item = items[a];
+        long count = counts[a];
+        long error = errors[a];
+        put(a, items[b], counts[b], errors[b]);
+        put(b, item, count, error);
+    }
+
+    public record Counter(long item, long count, long error) {
+    }
+}
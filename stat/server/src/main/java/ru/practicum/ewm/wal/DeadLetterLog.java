@@ -0,0 +1,56 @@
+package ru.practicum.ewm.wal;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ru.practicum.ewm.dto.HitDto;
+import ru.practicum.ewm.mapper.IpAddressMapper;
+import ru.practicum.ewm.model.Hit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+// Запросы, которые не удалось записать в базу после всех попыток. Каждая строка файла - тело POST /hit,
+// поэтому после устранения причины строки можно отправить повторно через POST /hit/batch
+public class DeadLetterLog {
+    private static final String FILE = "hits.jsonl";
+
+    private final Path file;
+    private final ObjectMapper objectMapper;
+
+    public DeadLetterLog(Path dir, ObjectMapper objectMapper) throws IOException {
+        Files.createDirectories(dir);
+        this.file = dir.resolve(FILE);
+        this.objectMapper = objectMapper;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    // Файл сбрасывается на диск до возврата: записанные сюда запросы не теряются и при сбое
+    public synchronized void write(List<Hit> hits) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (Hit hit : hits) {
+            lines.append(toJson(hit)).append('\n');
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    private String toJson(Hit hit) throws JsonProcessingException {
+        String ip = hit.getIp() != null ? hit.getIp() : IpAddressMapper.format(hit.getIp4(), hit.getIp6());
+        return objectMapper.writeValueAsString(new HitDto(null, hit.getApp(), hit.getUri(), ip, hit.getTimestamp()));
+    }
+}
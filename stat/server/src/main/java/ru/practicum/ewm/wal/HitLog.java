@@ -0,0 +1,255 @@
+package ru.practicum.ewm.wal;
+
+import ru.practicum.ewm.model.Hit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Журнал принятых запросов из отображённых в память сегментов. Позиция сквозная: сегмент называется позицией
+// своего начала. Запись - длина тела, CRC32 тела и само тело; длина пишется последней, а читатель в том же
+// процессе не заходит дальше опубликованной writePosition. После сбоя хвост с неверной CRC отбрасывается
+public class HitLog implements Closeable {
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int HEADER = 8;
+    private static final int END_OF_SEGMENT = -1;
+    private static final byte IPV4 = 4;
+    private static final byte IPV6 = 6;
+
+    private final Path dir;
+    private final int segmentSize;
+    private final boolean fsync;
+    private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+
+    private MappedByteBuffer current;
+    private long currentBase;
+    private volatile long writePosition;
+    private volatile long checkpoint;
+
+    public HitLog(Path dir, int segmentSize, boolean fsync) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.fsync = fsync;
+        Files.createDirectories(dir);
+        Path checkpointFile = dir.resolve(CHECKPOINT_FILE);
+        checkpoint = Files.exists(checkpointFile) ? ByteBuffer.wrap(Files.readAllBytes(checkpointFile)).getLong() : 0;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.filter(path -> path.toString().endsWith(SEGMENT_SUFFIX)).toList()) {
+                String name = file.getFileName().toString();
+                segments.put(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())),
+                        map(file, Files.size(file)));
+            }
+        }
+        if (segments.isEmpty()) {
+            open(checkpoint);
+            writePosition = checkpoint;
+        } else {
+            currentBase = segments.lastKey();
+            current = segments.lastEntry().getValue();
+            writePosition = recover();
+            checkpoint = Math.max(checkpoint, segments.firstKey());
+        }
+    }
+
+    // Позиция сразу за записью: запрос применён, когда checkpoint дошёл до неё
+    public synchronized long append(Hit hit) {
+        byte[] body = encode(hit);
+        int length = HEADER + body.length;
+        int offset = (int) (writePosition - currentBase);
+        if (offset + length > current.capacity()) {
+            if (current.capacity() - offset >= Integer.BYTES) {
+                current.putInt(offset, END_OF_SEGMENT);
+            }
+            try {
+                open(currentBase + current.capacity());
+            } catch (IOException e) {
+                throw new IllegalStateException("Не удалось создать сегмент журнала запросов", e);
+            }
+            offset = 0;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        current.put(offset + HEADER, body);
+        current.putInt(offset + Integer.BYTES, (int) crc.getValue());
+        current.putInt(offset, body.length);
+        if (fsync) {
+            current.force(offset, length);
+        }
+        writePosition = currentBase + offset + length;
+        return writePosition;
+    }
+
+    // Не больше max запросов начиная с from; вызывается одним потоком применения
+    public Batch read(long from, int max) {
+        List<Hit> hits = new ArrayList<>();
+        List<Long> ends = new ArrayList<>();
+        long position = from;
+        long end = writePosition;
+        while (hits.size() < max && position < end) {
+            Map.Entry<Long, MappedByteBuffer> segment;
+            synchronized (this) {
+                segment = segments.floorEntry(position);
+            }
+            MappedByteBuffer buffer = segment.getValue();
+            int offset = (int) (position - segment.getKey());
+            if (buffer.capacity() - offset < HEADER || buffer.getInt(offset) == END_OF_SEGMENT) {
+                position = segment.getKey() + buffer.capacity();
+                continue;
+            }
+            byte[] body = readBody(buffer, offset);
+            if (body == null) {
+                throw new IllegalStateException("Повреждена запись журнала запросов в позиции " + position);
+            }
+            hits.add(decode(body));
+            position += HEADER + body.length;
+            ends.add(position);
+        }
+        return new Batch(hits, ends, position);
+    }
+
+    // Фиксирует применённую позицию и удаляет сегменты, целиком лежащие до неё
+    public void checkpoint(long position) throws IOException {
+        Path temp = dir.resolve(CHECKPOINT_FILE + ".tmp");
+        Files.write(temp, ByteBuffer.allocate(Long.BYTES).putLong(position).array());
+        Files.move(temp, dir.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        checkpoint = position;
+        synchronized (this) {
+            while (segments.firstKey() != currentBase) {
+                long base = segments.firstKey();
+                if (base + segments.firstEntry().getValue().capacity() > position) {
+                    break;
+                }
+                segments.remove(base);
+                Files.deleteIfExists(segmentPath(base));
+            }
+        }
+    }
+
+    public long getCheckpoint() {
+        return checkpoint;
+    }
+
+    public long getWritePosition() {
+        return writePosition;
+    }
+
+    // Объём принятых, но ещё не применённых записей в байтах
+    public long pending() {
+        return writePosition - checkpoint;
+    }
+
+    @Override
+    public synchronized void close() {
+        current.force();
+    }
+
+    private void open(long base) throws IOException {
+        current = map(segmentPath(base), segmentSize);
+        currentBase = base;
+        segments.put(base, current);
+    }
+
+    // Конец данных последнего сегмента: первая пустая или повреждённая запись. Всё после неё обнуляется,
+    // чтобы остатки оборванной записи не приняли за данные при следующем восстановлении
+    private long recover() {
+        int offset = 0;
+        while (current.capacity() - offset >= HEADER) {
+            int length = current.getInt(offset);
+            if (length <= 0) {
+                break;
+            }
+            byte[] body = readBody(current, offset);
+            if (body == null) {
+                break;
+            }
+            offset += HEADER + length;
+        }
+        for (int i = offset; i < current.capacity(); i++) {
+            current.put(i, (byte) 0);
+        }
+        return currentBase + offset;
+    }
+
+    private Path segmentPath(long base) {
+        return dir.resolve(String.format("%020d%s", base, SEGMENT_SUFFIX));
+    }
+
+    private static MappedByteBuffer map(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private static byte[] readBody(MappedByteBuffer buffer, int offset) {
+        int length = buffer.getInt(offset);
+        if (length <= 0 || length > buffer.capacity() - offset - HEADER) {
+            return null;
+        }
+        byte[] body = new byte[length];
+        buffer.get(offset + HEADER, body);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue() == buffer.getInt(offset + Integer.BYTES) ? body : null;
+    }
+
+    // Время в секундах, адрес в разобранном виде, app и uri - UTF-8 с длиной
+    private static byte[] encode(Hit hit) {
+        byte[] app = hit.getApp().getBytes(StandardCharsets.UTF_8);
+        byte[] uri = hit.getUri().getBytes(StandardCharsets.UTF_8);
+        int ipLength = hit.getIp6() == null ? 4 : 16;
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES + 1 + ipLength + 2 + app.length + 2 + uri.length);
+        buffer.putLong(hit.getTimestamp().toEpochSecond(ZoneOffset.UTC));
+        if (hit.getIp6() == null) {
+            buffer.put(IPV4).putInt(hit.getIp4());
+        } else {
+            buffer.put(IPV6).put(hit.getIp6());
+        }
+        buffer.putShort((short) app.length).put(app);
+        buffer.putShort((short) uri.length).put(uri);
+        return buffer.array();
+    }
+
+    private static Hit decode(byte[] body) {
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        Hit hit = new Hit();
+        hit.setTimestamp(LocalDateTime.ofEpochSecond(buffer.getLong(), 0, ZoneOffset.UTC));
+        if (buffer.get() == IPV4) {
+            hit.setIp4(buffer.getInt());
+        } else {
+            byte[] ip6 = new byte[16];
+            buffer.get(ip6);
+            hit.setIp6(ip6);
+        }
+        hit.setApp(readString(buffer));
+        hit.setUri(readString(buffer));
+        return hit;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // ends - позиция сразу за каждым запросом, next - начало следующего пакета
+    public record Batch(List<Hit> hits, List<Long> ends, long next) {
+    }
+}
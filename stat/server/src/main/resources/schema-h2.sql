@@ -0,0 +1,17 @@
+CREATE TABLE IF NOT EXISTS stats (
+  id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY NOT NULL,
+  app_id INTEGER NOT NULL,
+  uri_id INTEGER NOT NULL,
+  ip4 INTEGER,
+  ip6 BINARY(16),
+  datetime TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+  weight INTEGER DEFAULT 1 NOT NULL,
+  CHECK ((ip4 IS NULL) <> (ip6 IS NULL))
+);
+
+-- Вес строки при прореживании: сколько запросов она представляет
+ALTER TABLE stats ADD COLUMN IF NOT EXISTS weight INTEGER DEFAULT 1 NOT NULL;
+
+CREATE INDEX IF NOT EXISTS stats_datetime_idx ON stats (datetime);
+CREATE INDEX IF NOT EXISTS stats_uri_datetime_idx ON stats (uri_id, datetime);
+CREATE INDEX IF NOT EXISTS stats_app_datetime_idx ON stats (app_id, datetime);
@@ -0,0 +1,90 @@
+-- Таблица stats прежних версий не секционирована, и CREATE TABLE IF NOT EXISTS ниже её бы не заменил.
+-- Она переименовывается в stats_legacy, а её строки переносятся в секционированную таблицу после её создания.
+-- Тело DO записано строкой в апострофах: скрипт инициализации делит команды по ";" вне кавычек
+DO '
+BEGIN
+  IF to_regclass(''stats'') IS NULL
+      OR EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass(''stats'')) THEN
+    RETURN;
+  END IF;
+  ALTER TABLE stats RENAME TO stats_legacy;
+  ALTER INDEX IF EXISTS stats_pkey RENAME TO stats_legacy_pkey;
+  DROP INDEX IF EXISTS stats_datetime_idx;
+  DROP INDEX IF EXISTS stats_uri_datetime_idx;
+  DROP INDEX IF EXISTS stats_app_datetime_idx;
+END';
+
+CREATE TABLE IF NOT EXISTS stats (
+  id BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+  app_id INTEGER NOT NULL,
+  uri_id INTEGER NOT NULL,
+  ip4 INTEGER,
+  ip6 BYTEA,
+  datetime TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+  weight INTEGER DEFAULT 1 NOT NULL,
+  CHECK ((ip4 IS NULL) <> (ip6 IS NULL)),
+  PRIMARY KEY (id, datetime)
+) PARTITION BY RANGE (datetime);
+
+-- Вес строки при прореживании: сколько запросов она представляет
+ALTER TABLE stats ADD COLUMN IF NOT EXISTS weight INTEGER DEFAULT 1 NOT NULL;
+
+CREATE TABLE IF NOT EXISTS stats_default PARTITION OF stats DEFAULT;
+
+
+-- Перенос строк из stats_legacy. Строки исходной схемы (app, uri, ip строками) кодируются через словари,
+-- которые поэтому создаются здесь так же, как в schema.sql. Строки с адресом, который не разбирается
+-- как inet, не переносятся - их не принял бы и приём запросов.
+-- Всё попадает в stats_default; PartitionManager переносит строки в секции при их создании
+DO '
+DECLARE
+  skipped BIGINT;
+BEGIN
+  IF to_regclass(''stats_legacy'') IS NULL THEN
+    RETURN;
+  END IF;
+  IF EXISTS (SELECT 1 FROM information_schema.columns
+             WHERE table_schema = current_schema() AND table_name = ''stats_legacy'' AND column_name = ''app_id'') THEN
+    ALTER TABLE stats_legacy ADD COLUMN IF NOT EXISTS weight INTEGER DEFAULT 1 NOT NULL;
+    INSERT INTO stats (id, app_id, uri_id, ip4, ip6, datetime, weight)
+    SELECT id, app_id, uri_id, ip4, ip6, datetime, weight FROM stats_legacy;
+  ELSE
+    CREATE TABLE IF NOT EXISTS stats_apps (
+      id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY NOT NULL,
+      name VARCHAR(255) NOT NULL UNIQUE
+    );
+    CREATE TABLE IF NOT EXISTS stats_uris (
+      id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY NOT NULL,
+      name VARCHAR(64) NOT NULL UNIQUE
+    );
+    INSERT INTO stats_apps (name) SELECT DISTINCT app FROM stats_legacy ON CONFLICT (name) DO NOTHING;
+    INSERT INTO stats_uris (name) SELECT DISTINCT uri FROM stats_legacy ON CONFLICT (name) DO NOTHING;
+    -- inet_send: семейство, длина маски, признак cidr, длина адреса, затем байты адреса.
+    -- IPv4, отображённый в IPv6, хранится как IPv4 - так же, как его разбирает HitMapper
+    INSERT INTO stats (id, app_id, uri_id, ip4, ip6, datetime)
+    SELECT id, app_id, uri_id,
+           CASE WHEN length(addr) = 4 THEN (''x'' || encode(addr, ''hex''))::BIT(32)::INTEGER END,
+           CASE WHEN length(addr) = 16 THEN addr END,
+           datetime
+    FROM (SELECT l.id, a.id AS app_id, u.id AS uri_id, l.datetime,
+                 CASE WHEN l.ip::INET << ''::ffff:0:0/96''::INET THEN substring(inet_send(l.ip::INET) FROM 17)
+                      ELSE substring(inet_send(l.ip::INET) FROM 5) END AS addr
+          FROM stats_legacy l
+          JOIN stats_apps a ON a.name = l.app
+          JOIN stats_uris u ON u.name = l.uri
+          WHERE pg_input_is_valid(l.ip, ''inet'')) m;
+    SELECT count(*) INTO skipped FROM stats_legacy WHERE NOT pg_input_is_valid(ip, ''inet'');
+    IF skipped > 0 THEN
+      RAISE WARNING ''Строки stats_legacy с некорректным ip не перенесены: %'', skipped;
+    END IF;
+  END IF;
+  -- Идентификаторы сохранены, поэтому последовательность продолжает нумерацию после них
+  PERFORM setval(pg_get_serial_sequence(''stats'', ''id''), (SELECT max(id) FROM stats));
+  DROP TABLE stats_legacy;
+END';
+
+-- INCLUDE рассчитан на сканирование только индекса в запросах статистики; план этим не гарантируется:
+-- index-only scan возможен лишь для страниц, уже отмеченных VACUUM в карте видимости
+CREATE INDEX IF NOT EXISTS stats_datetime_idx ON stats (datetime) INCLUDE (app_id, uri_id, ip4, ip6, weight);
+CREATE INDEX IF NOT EXISTS stats_uri_datetime_idx ON stats (uri_id, datetime) INCLUDE (app_id, ip4, ip6, weight);
+CREATE INDEX IF NOT EXISTS stats_app_datetime_idx ON stats (app_id, datetime);
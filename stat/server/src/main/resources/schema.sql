@@ -1,7 +1,157 @@
-CREATE TABLE IF NOT EXISTS stats (
-  id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY NOT NULL,
-  app VARCHAR(255) NOT NULL,
-  uri VARCHAR(64) NOT NULL,
-  ip VARCHAR(16) NOT NULL,
-  datetime TIMESTAMP WITHOUT TIME ZONE NOT NULL
-);
\ No newline at end of file
+CREATE TABLE IF NOT EXISTS stats_apps (
+  id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY NOT NULL,
+  name VARCHAR(255) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS stats_uris (
+  id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY NOT NULL,
+  name VARCHAR(64) NOT NULL UNIQUE
+);
+
+-- Шаблон маршрута, к которому отнесён uri при первой записи; NULL - ни один шаблон не подошёл
+ALTER TABLE stats_uris ADD COLUMN IF NOT EXISTS route_id INTEGER;
+
+CREATE TABLE IF NOT EXISTS stats_routes (
+  id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY NOT NULL,
+  name VARCHAR(255) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS stats_rollup_minute (
+  app_id INTEGER NOT NULL,
+  uri_id INTEGER NOT NULL,
+  bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+  hits BIGINT NOT NULL,
+  PRIMARY KEY (app_id, uri_id, bucket)
+);
+
+CREATE TABLE IF NOT EXISTS stats_rollup_hour (
+  app_id INTEGER NOT NULL,
+  uri_id INTEGER NOT NULL,
+  bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+  hits BIGINT NOT NULL,
+  PRIMARY KEY (app_id, uri_id, bucket)
+);
+
+CREATE TABLE IF NOT EXISTS stats_rollup_day (
+  app_id INTEGER NOT NULL,
+  uri_id INTEGER NOT NULL,
+  bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+  hits BIGINT NOT NULL,
+  PRIMARY KEY (app_id, uri_id, bucket)
+);
+
+CREATE TABLE IF NOT EXISTS stats_route_rollup_minute (
+  app_id INTEGER NOT NULL,
+  route_id INTEGER NOT NULL,
+  bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+  hits BIGINT NOT NULL,
+  PRIMARY KEY (app_id, route_id, bucket)
+);
+
+CREATE TABLE IF NOT EXISTS stats_route_rollup_hour (
+  app_id INTEGER NOT NULL,
+  route_id INTEGER NOT NULL,
+  bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+  hits BIGINT NOT NULL,
+  PRIMARY KEY (app_id, route_id, bucket)
+);
+
+CREATE TABLE IF NOT EXISTS stats_route_rollup_day (
+  app_id INTEGER NOT NULL,
+  route_id INTEGER NOT NULL,
+  bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+  hits BIGINT NOT NULL,
+  PRIMARY KEY (app_id, route_id, bucket)
+);
+
+CREATE TABLE IF NOT EXISTS stats_sketch_hour (
+  app_id INTEGER NOT NULL,
+  uri_id INTEGER NOT NULL,
+  bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+  sketch BYTEA NOT NULL,
+  PRIMARY KEY (app_id, uri_id, bucket)
+);
+
+CREATE TABLE IF NOT EXISTS stats_sketch_day (
+  app_id INTEGER NOT NULL,
+  uri_id INTEGER NOT NULL,
+  bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+  sketch BYTEA NOT NULL,
+  PRIMARY KEY (app_id, uri_id, bucket)
+);
+
+-- Часы, скетчи которых накоплены в памяти и ещё не сохранены; при старте пересчитываются из сырых строк
+CREATE TABLE IF NOT EXISTS stats_sketch_dirty (
+  bucket TIMESTAMP WITHOUT TIME ZONE PRIMARY KEY NOT NULL,
+  generation BIGINT NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS stats_top_hour (
+  app_id INTEGER NOT NULL,
+  bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+  summary BYTEA NOT NULL,
+  PRIMARY KEY (app_id, bucket)
+);
+
+CREATE TABLE IF NOT EXISTS stats_top_day (
+  app_id INTEGER NOT NULL,
+  bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+  summary BYTEA NOT NULL,
+  PRIMARY KEY (app_id, bucket)
+);
+
+-- Самое раннее время прореженного запроса uri: начиная с него сырые строки uri дают только оценку
+CREATE TABLE IF NOT EXISTS stats_sampling (
+  uri_id INTEGER PRIMARY KEY NOT NULL,
+  sampled_since TIMESTAMP WITHOUT TIME ZONE NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS stats_compaction (
+  app_id INTEGER PRIMARY KEY NOT NULL,
+  compacted_before TIMESTAMP WITHOUT TIME ZONE NOT NULL
+);
+
+-- Просмотры uri за всё время и оценка уникальных посетителей; скетч хранится, чтобы пополнять оценку.
+-- Ключ начинается с uri_id: счётчики всегда запрашиваются по uri
+CREATE TABLE IF NOT EXISTS stats_uri_counters (
+  uri_id INTEGER NOT NULL,
+  app_id INTEGER NOT NULL,
+  hits BIGINT NOT NULL,
+  uniques BIGINT DEFAULT 0 NOT NULL,
+  sketch BYTEA,
+  PRIMARY KEY (uri_id, app_id)
+);
+
+-- Фильтр по uri без app_id и выборка периода без фильтра не могут использовать первичные ключи агрегатов
+CREATE INDEX IF NOT EXISTS stats_rollup_minute_uri_idx ON stats_rollup_minute (uri_id, bucket);
+CREATE INDEX IF NOT EXISTS stats_rollup_minute_bucket_idx ON stats_rollup_minute (bucket);
+CREATE INDEX IF NOT EXISTS stats_rollup_hour_uri_idx ON stats_rollup_hour (uri_id, bucket);
+CREATE INDEX IF NOT EXISTS stats_rollup_hour_bucket_idx ON stats_rollup_hour (bucket);
+CREATE INDEX IF NOT EXISTS stats_rollup_day_uri_idx ON stats_rollup_day (uri_id, bucket);
+CREATE INDEX IF NOT EXISTS stats_rollup_day_bucket_idx ON stats_rollup_day (bucket);
+CREATE INDEX IF NOT EXISTS stats_route_rollup_minute_route_idx ON stats_route_rollup_minute (route_id, bucket);
+CREATE INDEX IF NOT EXISTS stats_route_rollup_hour_route_idx ON stats_route_rollup_hour (route_id, bucket);
+CREATE INDEX IF NOT EXISTS stats_route_rollup_day_route_idx ON stats_route_rollup_day (route_id, bucket);
+CREATE INDEX IF NOT EXISTS stats_uris_route_idx ON stats_uris (route_id);
+CREATE INDEX IF NOT EXISTS stats_sketch_hour_uri_idx ON stats_sketch_hour (uri_id, bucket);
+CREATE INDEX IF NOT EXISTS stats_sketch_hour_bucket_idx ON stats_sketch_hour (bucket);
+CREATE INDEX IF NOT EXISTS stats_sketch_day_uri_idx ON stats_sketch_day (uri_id, bucket);
+CREATE INDEX IF NOT EXISTS stats_sketch_day_bucket_idx ON stats_sketch_day (bucket);
+CREATE INDEX IF NOT EXISTS stats_top_hour_bucket_idx ON stats_top_hour (bucket);
+CREATE INDEX IF NOT EXISTS stats_top_day_bucket_idx ON stats_top_day (bucket);
+
+-- Производные таблицы (rollup, sketch, top), выключенные в одном из прошлых запусков: строки stats с id больше
+-- last_id в них не попали и дописываются при первом запуске, в котором таблицы снова включены
+CREATE TABLE IF NOT EXISTS stats_backfill (
+  name VARCHAR(32) PRIMARY KEY NOT NULL,
+  last_id BIGINT NOT NULL
+);
+
+-- Позиции загрузки диапазонов файлов access-логов импортёром
+CREATE TABLE IF NOT EXISTS stats_import (
+  file VARCHAR(1024) NOT NULL,
+  range_start BIGINT NOT NULL,
+  range_end BIGINT NOT NULL,
+  position BIGINT NOT NULL,
+  PRIMARY KEY (file, range_start)
+);
@@ -0,0 +1,49 @@
+package ru.practicum.ewm;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Один встроенный PostgreSQL на запуск тестов, каждому тесту - своя пустая база.
+// initdb не запускается от root, поэтому тесты с PostgreSQL выполняются от обычного пользователя
+public final class PostgresTestDatabase {
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+    private static EmbeddedPostgres postgres;
+
+    private PostgresTestDatabase() {
+    }
+
+    public static DataSource create() {
+        String name = "stats_test_" + DATABASES.incrementAndGet();
+        EmbeddedPostgres server = server();
+        new JdbcTemplate(server.getPostgresDatabase()).execute("CREATE DATABASE " + name);
+        return server.getDatabase("postgres", name);
+    }
+
+    public static void initSchema(DataSource dataSource) {
+        TestDatabase.initSchema(dataSource, TestDatabase.POSTGRESQL);
+    }
+
+    private static synchronized EmbeddedPostgres server() {
+        if (postgres == null) {
+            try {
+                postgres = EmbeddedPostgres.start();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось запустить встроенный PostgreSQL", e);
+            }
+            EmbeddedPostgres started = postgres;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    started.close();
+                } catch (IOException ignored) {
+                    // Процесс и так завершается
+                }
+            }));
+        }
+        return postgres;
+    }
+}
@@ -0,0 +1,37 @@
+package ru.practicum.ewm;
+
+import org.springframework.boot.autoconfigure.sql.init.SqlDataSourceScriptDatabaseInitializer;
+import org.springframework.boot.autoconfigure.sql.init.SqlInitializationProperties;
+import org.springframework.boot.sql.init.DatabaseInitializationMode;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Пустая база со схемой сервера для платформы spring.sql.init.platform: h2 или postgresql
+public final class TestDatabase {
+    public static final String H2 = "h2";
+    public static final String POSTGRESQL = "postgresql";
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private TestDatabase() {
+    }
+
+    public static DataSource create(String platform) {
+        DataSource dataSource = POSTGRESQL.equals(platform)
+                ? PostgresTestDatabase.create()
+                : new DriverManagerDataSource("jdbc:h2:mem:stats_test_" + DATABASES.incrementAndGet()
+                + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1", "sa", "");
+        initSchema(dataSource, platform);
+        return dataSource;
+    }
+
+    // Скрипты schema-<platform>.sql и schema.sql в том порядке и с тем разбором, что и при старте сервера
+    public static void initSchema(DataSource dataSource, String platform) {
+        SqlInitializationProperties properties = new SqlInitializationProperties();
+        properties.setMode(DatabaseInitializationMode.ALWAYS);
+        properties.setPlatform(platform);
+        new SqlDataSourceScriptDatabaseInitializer(dataSource, properties).initializeDatabase();
+    }
+}
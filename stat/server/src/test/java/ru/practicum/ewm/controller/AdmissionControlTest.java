@@ -0,0 +1,32 @@
+package ru.practicum.ewm.controller;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.practicum.ewm.controller.AdmissionControl.Budget;
+import ru.practicum.ewm.exceptions.OverloadedException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdmissionControlTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AdmissionControl admissionControl = new AdmissionControl(meterRegistry, true, 2, 10, 1, 5, 1);
+
+    // Потоки ограничены своим бюджетом, даже когда бюджет QUERY ещё не исчерпан
+    @Test
+    void streamBudgetIsSeparateFromQueryBudget() {
+        admissionControl.acquire(Budget.STREAM);
+
+        assertThatThrownBy(() -> admissionControl.acquire(Budget.STREAM))
+                .isInstanceOf(OverloadedException.class)
+                .extracting("budget").isEqualTo("stream");
+        admissionControl.run(Budget.QUERY, () -> { });
+        assertThat(meterRegistry.get("stats.admission.rejected").tag("budget", "stream").counter().count())
+                .isEqualTo(1);
+
+        admissionControl.release(Budget.STREAM);
+        admissionControl.acquire(Budget.STREAM);
+        assertThat(meterRegistry.get("stats.admission.in-flight").tag("budget", "stream").gauge().value())
+                .isEqualTo(1);
+    }
+}
@@ -0,0 +1,152 @@
+package ru.practicum.ewm.importer;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.TestDatabase;
+import ru.practicum.ewm.repository.BackfillRepository;
+import ru.practicum.ewm.repository.CompactionRepository;
+import ru.practicum.ewm.repository.DatabaseDialect;
+import ru.practicum.ewm.repository.DictionaryRepository;
+import ru.practicum.ewm.repository.HitBatchRepository;
+import ru.practicum.ewm.repository.HitQueryRepository;
+import ru.practicum.ewm.repository.ImportRepository;
+import ru.practicum.ewm.repository.PartitionRepository;
+import ru.practicum.ewm.repository.RollupRepository;
+import ru.practicum.ewm.repository.SketchRepository;
+import ru.practicum.ewm.repository.UriFilterBuilder;
+import ru.practicum.ewm.service.CompactionWatermark;
+import ru.practicum.ewm.service.DictionaryService;
+import ru.practicum.ewm.service.HitListener;
+import ru.practicum.ewm.service.PartitionManager;
+import ru.practicum.ewm.service.RollupService;
+import ru.practicum.ewm.service.RouteService;
+import ru.practicum.ewm.service.SketchService;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+// Замер пропускной способности импорта на синтетическом логе заданного размера во встроенный PostgreSQL.
+// Не входит в обычный прогон: mvn test -Dtest=AccessLogImportThroughputTest -Dstats.import.throughput-mb=2048
+// [-Dstats.import.throughput-listeners=false - без агрегатов и скетчей, только COPY]
+@EnabledIfSystemProperty(named = "stats.import.throughput-mb", matches = "\\d+")
+class AccessLogImportThroughputTest {
+    private static final DateTimeFormatter LOG_TIME =
+            DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss", Locale.ENGLISH);
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final String[] AGENTS = {
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0 Safari/537.36",
+            "Mozilla/5.0 (iPhone; CPU iPhone OS 17_2 like Mac OS X) AppleWebKit/605.1.15 Mobile/15E148",
+            "curl/8.4.0"
+    };
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void importsSyntheticLog() throws IOException {
+        long targetBytes = Long.getLong("stats.import.throughput-mb") << 20;
+        boolean withListeners = Boolean.parseBoolean(System.getProperty("stats.import.throughput-listeners", "true"));
+        Path log = dir.resolve("access.log");
+        long[] lines = generate(log, targetBytes);
+
+        try (HikariDataSource dataSource = new HikariDataSource()) {
+            dataSource.setDataSource(TestDatabase.create(TestDatabase.POSTGRESQL));
+            dataSource.setMaximumPoolSize(8);
+            JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+            DatabaseDialect dialect = new DatabaseDialect(jdbc);
+            TransactionTemplate transactionTemplate =
+                    new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+            DictionaryService dictionaryService = new DictionaryService(new DictionaryRepository(jdbc, dialect));
+            List<HitListener> listeners = new ArrayList<>();
+            if (withListeners) {
+                UriFilterBuilder uriFilterBuilder = new UriFilterBuilder(32);
+                HitQueryRepository hitQueryRepository = new HitQueryRepository(jdbc, dialect, uriFilterBuilder, 10_000);
+                BackfillRepository backfillRepository = new BackfillRepository(jdbc);
+                CompactionWatermark compactionWatermark =
+                        new CompactionWatermark(new CompactionRepository(jdbc, dialect));
+                listeners.add(new RollupService(new RollupRepository(jdbc, dialect, uriFilterBuilder), null,
+                        hitQueryRepository, backfillRepository, transactionTemplate, compactionWatermark, true));
+                listeners.add(new SketchService(new SketchRepository(jdbc, dialect, uriFilterBuilder), null,
+                        hitQueryRepository, backfillRepository, transactionTemplate, compactionWatermark, true));
+            }
+            AccessLogImporter importer = new AccessLogImporter(
+                    new ImportRepository(jdbc, dialect, new HitBatchRepository(jdbc, 500)), dictionaryService,
+                    new PartitionManager(new PartitionRepository(jdbc), dialect, true,
+                            PartitionManager.Granularity.DAY, 0),
+                    // stubOnly: обычный mock хранил бы аргументы всех вызовов, то есть все загруженные строки
+                    mock(RouteService.class, withSettings().stubOnly()), listeners, transactionTemplate, null,
+                    log.toString(), "ewm-main-service", Integer.getInteger("stats.import.throughput-threads", 4),
+                    10_000, 256L << 20, 16L << 20, "UTC", 10_000);
+
+            long started = System.nanoTime();
+            assertThat(importer.importFiles()).isTrue();
+            double seconds = (System.nanoTime() - started) / 1e9;
+            // Сэмплы в SketchService сбрасываются отдельно; на замер загрузки это не влияет
+            long loaded = jdbc.queryForObject("SELECT COUNT(*) FROM stats", Long.class);
+
+            assertThat(loaded).isEqualTo(lines[1]);
+            System.out.printf(Locale.ROOT, "Импорт %.1f МБ, строк %d, загружено %d за %.1f с: %.1f МБ/с, "
+                            + "%.0f запросов/с, агрегаты и скетчи: %s, процессоров: %d%n",
+                    Files.size(log) / (double) (1 << 20), lines[0], loaded, seconds,
+                    Files.size(log) / (double) (1 << 20) / seconds, loaded / seconds, withListeners,
+                    Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    // Строки формата combined: 10 тысяч uri с query-частью, IPv4 и IPv6, 5% POST и 5% ответов 404.
+    // Возвращает число строк и число строк, которые должны загрузиться
+    private static long[] generate(Path log, long targetBytes) throws IOException {
+        Random random = new Random(1);
+        long written = 0;
+        long lines = 0;
+        long valid = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(log, StandardCharsets.US_ASCII)) {
+            StringBuilder line = new StringBuilder(256);
+            while (written < targetBytes) {
+                line.setLength(0);
+                int client = random.nextInt(1_000_000);
+                if (client % 10 == 0) {
+                    line.append("2001:db8::").append(Integer.toHexString(client >> 16)).append(':')
+                            .append(Integer.toHexString(client & 0xffff));
+                } else {
+                    line.append(10 + client % 200).append('.').append(client >> 16 & 0xff).append('.')
+                            .append(client >> 8 & 0xff).append('.').append(client & 0xff);
+                }
+                int roll = random.nextInt(100);
+                boolean post = roll < 5;
+                int status = roll >= 95 ? 404 : 200;
+                if (!post && status == 200) {
+                    valid++;
+                }
+                line.append(" - - [").append(START.plusSeconds(lines / 20).format(LOG_TIME)).append(" +0000] \"")
+                        .append(post ? "POST" : "GET").append(" /events/").append(random.nextInt(10_000))
+                        .append("?from=feed&size=").append(random.nextInt(50)).append(" HTTP/1.1\" ")
+                        .append(status).append(' ').append(200 + random.nextInt(5000))
+                        .append(" \"https://ewm.example/events\" \"").append(AGENTS[random.nextInt(AGENTS.length)])
+                        .append("\"\n");
+                out.append(line);
+                written += line.length();
+                lines++;
+            }
+        }
+        return new long[]{lines, valid};
+    }
+}
@@ -0,0 +1,137 @@
+package ru.practicum.ewm.importer;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.TestDatabase;
+import ru.practicum.ewm.model.Hit;
+import ru.practicum.ewm.model.ImportRange;
+import ru.practicum.ewm.repository.DatabaseDialect;
+import ru.practicum.ewm.repository.DictionaryRepository;
+import ru.practicum.ewm.repository.HitBatchRepository;
+import ru.practicum.ewm.repository.ImportRepository;
+import ru.practicum.ewm.repository.PartitionRepository;
+import ru.practicum.ewm.service.DictionaryService;
+import ru.practicum.ewm.service.HitListener;
+import ru.practicum.ewm.service.PartitionManager;
+import ru.practicum.ewm.service.RouteService;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+// Маленькие окна отображения и диапазоны, чтобы строки пересекали их границы
+class AccessLogImporterTest {
+    private static final DateTimeFormatter LOG_TIME =
+            DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss", Locale.ENGLISH);
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final int LINES = 3000;
+
+    @TempDir
+    Path dir;
+
+    private JdbcTemplate jdbc;
+    private DatabaseDialect dialect;
+    private DictionaryService dictionaryService;
+    private ImportRepository importRepository;
+    private TransactionTemplate transactionTemplate;
+    private Path log;
+    private int expected;
+
+    @ParameterizedTest
+    @ValueSource(strings = {TestDatabase.H2, TestDatabase.POSTGRESQL})
+    void loadsEveryMatchingLineOnce(String platform) throws IOException {
+        setUp(platform);
+        AtomicInteger listened = new AtomicInteger();
+
+        assertThat(importer(3, hits -> listened.addAndGet(hits.size())).importFiles()).isTrue();
+
+        assertThat(importRepository.findRanges(log.toString())).hasSize(3)
+                .allMatch(range -> range.position() >= range.end());
+        assertLoadedOnce();
+        assertThat(listened.get()).isEqualTo(expected);
+        assertThat(jdbc.queryForObject("SELECT MIN(datetime) FROM stats", LocalDateTime.class)).isEqualTo(START);
+    }
+
+    // Пакет, упавший в транзакции, откатывается вместе с позицией; повторный запуск догружает остаток без повторов
+    @ParameterizedTest
+    @ValueSource(strings = {TestDatabase.H2, TestDatabase.POSTGRESQL})
+    void resumesAfterFailedBatch(String platform) throws IOException {
+        setUp(platform);
+        AtomicInteger batches = new AtomicInteger();
+
+        boolean completed = importer(3, hits -> {
+            if (batches.incrementAndGet() == 7) {
+                throw new IllegalStateException("Сбой на седьмом пакете");
+            }
+        }).importFiles();
+
+        assertThat(completed).isFalse();
+        int loaded = count();
+        assertThat(loaded).isPositive().isLessThan(expected);
+        assertThat(importRepository.findRanges(log.toString())).anyMatch(range -> range.position() < range.end());
+
+        // Разбиение сохранено при первом запуске и не меняется вместе с числом потоков
+        assertThat(importer(1, hits -> { }).importFiles()).isTrue();
+
+        assertThat(importRepository.findRanges(log.toString())).hasSize(3);
+        assertLoadedOnce();
+        // Завершённый файл повторно не загружается
+        assertThat(importer(2, hits -> { }).importFiles()).isTrue();
+        assertLoadedOnce();
+    }
+
+    private void setUp(String platform) throws IOException {
+        DataSource dataSource = TestDatabase.create(platform);
+        jdbc = new JdbcTemplate(dataSource);
+        dialect = new DatabaseDialect(jdbc);
+        dictionaryService = new DictionaryService(new DictionaryRepository(jdbc, dialect));
+        importRepository = new ImportRepository(jdbc, dialect, new HitBatchRepository(jdbc, 100));
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        log = dir.resolve("access.log");
+        expected = 0;
+        try (Writer out = Files.newBufferedWriter(log, StandardCharsets.US_ASCII)) {
+            for (int i = 0; i < LINES; i++) {
+                // Каждый десятый запрос не GET и пропускается; у остальных адрес i, поэтому повтор строки заметен
+                String method = i % 10 == 9 ? "POST" : "GET";
+                if (i % 10 != 9) {
+                    expected++;
+                }
+                out.write("10.0." + i / 256 + "." + i % 256 + " - - [" + START.plusSeconds(i * 97L).format(LOG_TIME)
+                        + " +0000] \"" + method + " /events/" + i % 40 + "?from=feed HTTP/1.1\" 200 " + i
+                        + " \"-\" \"test\"\n");
+            }
+        }
+    }
+
+    private AccessLogImporter importer(int threads, HitListener listener) {
+        PartitionManager partitionManager = new PartitionManager(new PartitionRepository(jdbc), dialect, true,
+                PartitionManager.Granularity.DAY, 0);
+        return new AccessLogImporter(importRepository, dictionaryService, partitionManager,
+                mock(RouteService.class), List.of(listener), transactionTemplate, null, log.toString(),
+                "ewm-main-service", threads, 50, 4096, 1024, "UTC", 60_000);
+    }
+
+    private void assertLoadedOnce() {
+        assertThat(count()).isEqualTo(expected);
+        assertThat(jdbc.queryForObject("SELECT COUNT(DISTINCT ip4) FROM stats", Integer.class)).isEqualTo(expected);
+    }
+
+    private int count() {
+        return jdbc.queryForObject("SELECT COUNT(*) FROM stats", Integer.class);
+    }
+}
@@ -0,0 +1,106 @@
+package ru.practicum.ewm.importer;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.ewm.model.Hit;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AccessLogParserTest {
+    private static final String APP = "ewm-main-service";
+
+    private final AccessLogParser parser = new AccessLogParser(ZoneOffset.UTC);
+
+    @Test
+    void parsesCombinedLine() {
+        Hit hit = parse("192.168.0.1 - frank [10/Oct/2000:13:55:36 -0700] \"GET /events/1 HTTP/1.1\" 200 2326 "
+                + "\"http://example.com/\" \"Mozilla/5.0\"");
+
+        assertThat(hit.getApp()).isEqualTo(APP);
+        assertThat(hit.getUri()).isEqualTo("/events/1");
+        assertThat(hit.getIp4()).isEqualTo(0xc0a80001);
+        assertThat(hit.getIp6()).isNull();
+        assertThat(hit.getTimestamp()).isEqualTo(LocalDateTime.of(2000, 10, 10, 20, 55, 36));
+    }
+
+    @Test
+    void parsesCommonLineAndDropsQuery() {
+        Hit hit = parse("10.0.0.7 - - [01/Jan/2024:00:00:05 +0300] \"GET /events?from=feed&size=10 HTTP/1.1\" 304 -");
+
+        assertThat(hit.getUri()).isEqualTo("/events");
+        assertThat(hit.getIp4()).isEqualTo(0x0a000007);
+        assertThat(hit.getTimestamp()).isEqualTo(LocalDateTime.of(2023, 12, 31, 21, 0, 5));
+    }
+
+    @Test
+    void parsesIpv6AndMappedIpv4() {
+        Hit ipv6 = parse("2001:db8::1 - - [01/Jan/2024:10:00:00 +0000] \"GET /events/2 HTTP/1.1\" 200 10");
+        Hit mapped = parse("::ffff:10.0.0.2 - - [01/Jan/2024:10:00:00 +0000] \"GET /events/2 HTTP/1.1\" 200 10");
+
+        assertThat(ipv6.getIp4()).isNull();
+        assertThat(ipv6.getIp6()).hasSize(16).startsWith(0x20, 0x01, 0x0d, 0xb8).endsWith(0x01);
+        assertThat(mapped.getIp4()).isEqualTo(0x0a000002);
+        assertThat(mapped.getIp6()).isNull();
+    }
+
+    @Test
+    void skipsLinesThatAreNotSuccessfulGets() {
+        assertThat(parse("10.0.0.1 - - [01/Jan/2024:10:00:00 +0000] \"POST /events HTTP/1.1\" 201 10")).isNull();
+        assertThat(parse("10.0.0.1 - - [01/Jan/2024:10:00:00 +0000] \"GET /events/9 HTTP/1.1\" 404 10")).isNull();
+        assertThat(parse("10.0.0.1 - - [01/Jan/2024:10:00:00 +0000] \"GET /events/9 HTTP/1.1\" 500 10")).isNull();
+        assertThat(parse("10.0.0.1 - - [01/Jan/2024:10:00:00 +0000] \"GET ?a=1 HTTP/1.1\" 200 10")).isNull();
+        assertThat(parse("10.0.0.1 - - [01/Jan/2024:10:00:00 +0000] \"GET /" + "e".repeat(64) + " HTTP/1.1\" 200 1"))
+                .isNull();
+    }
+
+    @Test
+    void skipsMalformedLines() {
+        assertThat(parse("")).isNull();
+        assertThat(parse("garbage")).isNull();
+        assertThat(parse("not-an-ip - - [01/Jan/2024:10:00:00 +0000] \"GET /events HTTP/1.1\" 200 10")).isNull();
+        assertThat(parse("10.0.0.1 - - [01/Foo/2024:10:00:00 +0000] \"GET /events HTTP/1.1\" 200 10")).isNull();
+        assertThat(parse("10.0.0.1 - - [31/Feb/2024:10:00:00 +0000] \"GET /events HTTP/1.1\" 200 10")).isNull();
+        assertThat(parse("10.0.0.1 - - [01/Jan/2024:25:00:00 +0000] \"GET /events HTTP/1.1\" 200 10")).isNull();
+        assertThat(parse("10.0.0.1 - - [01/Jan/2024:10:00:00 +0000] \"GET /events HTTP/1.1\"")).isNull();
+        assertThat(parse("10.0.0.1 - - [01/Jan/2024:10:00:00] \"GET /events HTTP/1.1\" 200 10")).isNull();
+    }
+
+    // Кэш смещения пояса обновляется при смене часа, поэтому переход на летнее время учитывается
+    @Test
+    void convertsToZoneAcrossDaylightSavingChange() {
+        AccessLogParser berlin = new AccessLogParser(ZoneId.of("Europe/Berlin"));
+
+        Hit before = parse(berlin, "10.0.0.1 - - [31/Mar/2024:00:59:59 +0000] \"GET /events HTTP/1.1\" 200 1");
+        Hit after = parse(berlin, "10.0.0.1 - - [31/Mar/2024:01:00:00 +0000] \"GET /events HTTP/1.1\" 200 1");
+
+        assertThat(before.getTimestamp()).isEqualTo(LocalDateTime.of(2024, 3, 31, 1, 59, 59));
+        assertThat(after.getTimestamp()).isEqualTo(LocalDateTime.of(2024, 3, 31, 3, 0, 0));
+    }
+
+    // Строка разбирается на месте внутри общего буфера, соседние строки не затрагиваются
+    @Test
+    void parsesLineInsideLargerBuffer() {
+        String first = "10.0.0.1 - - [01/Jan/2024:10:00:00 +0000] \"GET /events/1 HTTP/1.1\" 200 1";
+        String second = "10.0.0.2 - - [01/Jan/2024:10:00:01 +0000] \"GET /events/2 HTTP/1.1\" 200 1";
+        ByteBuffer buffer = ByteBuffer.wrap((first + "\n" + second + "\n").getBytes(StandardCharsets.US_ASCII));
+
+        Hit hit = parser.parse(buffer, first.length() + 1, first.length() + 1 + second.length(), APP);
+
+        assertThat(hit.getUri()).isEqualTo("/events/2");
+        assertThat(hit.getIp4()).isEqualTo(0x0a000002);
+    }
+
+    private Hit parse(String line) {
+        return parse(parser, line);
+    }
+
+    private static Hit parse(AccessLogParser parser, String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return parser.parse(ByteBuffer.wrap(bytes), 0, bytes.length, APP);
+    }
+}
@@ -0,0 +1,88 @@
+package ru.practicum.ewm.mapper;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IpAddressMapperTest {
+    @Test
+    void parsesIpv4() {
+        assertThat(IpAddressMapper.parseIpv4("0.0.0.0")).isZero();
+        assertThat(IpAddressMapper.parseIpv4("10.0.0.1")).isEqualTo(0x0a000001L);
+        assertThat(IpAddressMapper.parseIpv4("255.255.255.255")).isEqualTo(0xffffffffL);
+        for (String invalid : new String[]{"", "1.2.3", "1.2.3.4.5", "256.1.1.1", "1..2.3", "1.2.3.", ".1.2.3",
+                "1.2.3.4 ", "0001.2.3.4", "a.b.c.d", "::1"}) {
+            assertThat(IpAddressMapper.parseIpv4(invalid)).as(invalid).isEqualTo(IpAddressMapper.INVALID);
+        }
+    }
+
+    // Разбор совпадает с InetAddress для полных, сокращённых и смешанных с IPv4 записей
+    @Test
+    void parsesIpv6LikeInetAddress() throws UnknownHostException {
+        for (String ip : new String[]{"::", "::1", "1::", "2001:db8::1", "2001:DB8:0:0:8:800:200C:417A",
+                "fe80::1:2", "1:2:3:4:5:6:7:8", "1:2:3:4:5:6:7::", "::2:3:4:5:6:7:8", "1::8",
+                "::ffff:10.0.0.2", "64:ff9b::192.0.2.33", "1:2:3:4:5:6:1.2.3.4"}) {
+            assertThat(IpAddressMapper.parseIpv6(ip)).as(ip).isEqualTo(address16(ip));
+        }
+        assertThat(IpAddressMapper.parseIpv6("fe80::1%eth0")).isEqualTo(IpAddressMapper.parseIpv6("fe80::1"));
+    }
+
+    @Test
+    void rejectsInvalidIpv6() {
+        for (String invalid : new String[]{"", ":", ":1", "1:", "1:2:3:4:5:6:7", "1:2:3:4:5:6:7:8:9",
+                "1::2::3", "12345::", "1:2:3:4:5:6:7:8::", "::g", "1:::2", "::1.2.3", "::1.2.3.4.5",
+                "1:2:3:4:5:6:7:1.2.3.4", "10.0.0.1"}) {
+            assertThat(IpAddressMapper.parseIpv6(invalid)).as(invalid).isNull();
+        }
+        assertThat(IpAddressMapper.isValid("not-an-ip")).isFalse();
+        assertThat(IpAddressMapper.isValid("10.0.0.1")).isTrue();
+        assertThat(IpAddressMapper.isValid("2001:db8::1")).isTrue();
+    }
+
+    @Test
+    void detectsMappedIpv4() {
+        assertThat(IpAddressMapper.mappedIpv4(IpAddressMapper.parseIpv6("::ffff:10.0.0.2"))).isEqualTo(0x0a000002L);
+        assertThat(IpAddressMapper.mappedIpv4(IpAddressMapper.parseIpv6("::ffff:a00:2"))).isEqualTo(0x0a000002L);
+        assertThat(IpAddressMapper.mappedIpv4(IpAddressMapper.parseIpv6("::10.0.0.2")))
+                .isEqualTo(IpAddressMapper.INVALID);
+        assertThat(IpAddressMapper.mappedIpv4(IpAddressMapper.parseIpv6("1::ffff:10.0.0.2")))
+                .isEqualTo(IpAddressMapper.INVALID);
+    }
+
+    // format обратен разбору: IPv4 из упакованного int, в том числе отрицательного, и IPv6 из 16 байт
+    @Test
+    void formatRoundTrips() {
+        assertThat(IpAddressMapper.format(0x0a000001, null)).isEqualTo("10.0.0.1");
+        assertThat(IpAddressMapper.format(0xc0a80001, null)).isEqualTo("192.168.0.1");
+        assertThat(IpAddressMapper.format((int) IpAddressMapper.parseIpv4("255.255.255.255"), null))
+                .isEqualTo("255.255.255.255");
+        assertThat(IpAddressMapper.format(null, IpAddressMapper.parseIpv6("2001:db8::1")))
+                .isEqualTo("2001:db8:0:0:0:0:0:1");
+        Random random = new Random(9);
+        for (int i = 0; i < 1000; i++) {
+            int ip4 = random.nextInt();
+            assertThat(IpAddressMapper.parseIpv4(IpAddressMapper.format(ip4, null))).isEqualTo(ip4 & 0xffffffffL);
+            byte[] ip6 = new byte[16];
+            random.nextBytes(ip6);
+            assertThat(IpAddressMapper.parseIpv6(IpAddressMapper.format(null, ip6))).isEqualTo(ip6);
+        }
+    }
+
+    // InetAddress возвращает ::ffff:a.b.c.d как Inet4Address, поэтому такие адреса дополняются до 16 байт
+    private static byte[] address16(String ip) throws UnknownHostException {
+        InetAddress address = InetAddress.getByName(ip);
+        if (!(address instanceof Inet4Address)) {
+            return address.getAddress();
+        }
+        byte[] bytes = new byte[16];
+        bytes[10] = (byte) 0xff;
+        bytes[11] = (byte) 0xff;
+        System.arraycopy(address.getAddress(), 0, bytes, 12, 4);
+        return bytes;
+    }
+}
@@ -0,0 +1,74 @@
+package ru.practicum.ewm.repository;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.practicum.ewm.TestDatabase;
+import ru.practicum.ewm.model.Hit;
+import ru.practicum.ewm.model.StatsKey;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HitQueryRepositoryTest {
+    private static final LocalDateTime DAY = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final LocalDateTime END = DAY.plusDays(10);
+    private static final int URIS = 50;
+
+    private HitQueryRepository hitQueryRepository;
+
+    // Окна из VALUES: каждый uri считается только за своё [since, end), как отдельным запросом
+    @ParameterizedTest
+    @ValueSource(strings = {TestDatabase.H2, TestDatabase.POSTGRESQL})
+    void countSinceMatchesPerUriCounts(String platform) {
+        setUp(platform);
+        Random random = new Random(3);
+        Map<Integer, LocalDateTime> since = new HashMap<>();
+        for (int uriId = 1; uriId <= URIS; uriId += 2) {
+            since.put(uriId, DAY.plusMinutes(random.nextInt(10 * 24 * 60)));
+        }
+        // uri без строк в своём окне в результат не попадает
+        since.put(URIS + 1, DAY);
+
+        for (boolean unique : new boolean[]{false, true}) {
+            Map<StatsKey, Long> joined = new HashMap<>();
+            hitQueryRepository.countSince(since, END, unique,
+                    rs -> joined.put(new StatsKey(rs.getInt(1), rs.getInt(2)), rs.getLong(3)));
+
+            Map<StatsKey, Long> separate = new HashMap<>();
+            since.forEach((uriId, from) -> hitQueryRepository.count(from, END, List.of(uriId), unique,
+                    rs -> separate.put(new StatsKey(rs.getInt(1), rs.getInt(2)), rs.getLong(3))));
+            assertThat(joined).isNotEmpty().isEqualTo(separate);
+        }
+    }
+
+    private void setUp(String platform) {
+        JdbcTemplate jdbc = new JdbcTemplate(TestDatabase.create(platform));
+        DatabaseDialect dialect = new DatabaseDialect(jdbc);
+        hitQueryRepository = new HitQueryRepository(jdbc, dialect, new UriFilterBuilder(32), 100);
+        Random random = new Random(11);
+        List<Hit> hits = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            Hit hit = new Hit();
+            hit.setAppId(1 + random.nextInt(2));
+            hit.setUriId(1 + random.nextInt(URIS));
+            if (random.nextBoolean()) {
+                hit.setIp4(random.nextInt(200));
+            } else {
+                byte[] ip6 = new byte[16];
+                ip6[0] = 0x20;
+                ip6[15] = (byte) random.nextInt(200);
+                hit.setIp6(ip6);
+            }
+            hit.setTimestamp(DAY.plusSeconds(random.nextInt(10 * 24 * 3600)));
+            hits.add(hit);
+        }
+        new HitBatchRepository(jdbc, 500).saveAll(hits);
+    }
+}
@@ -0,0 +1,103 @@
+package ru.practicum.ewm.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.practicum.ewm.PostgresTestDatabase;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Блоки DO из schema-postgresql.sql: замена несекционированной таблицы stats прежних версий
+class PostgresSchemaMigrationTest {
+    private DataSource dataSource;
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = PostgresTestDatabase.create();
+        jdbc = new JdbcTemplate(dataSource);
+    }
+
+    @Test
+    void createsPartitionedTableOnEmptyDatabase() {
+        PostgresTestDatabase.initSchema(dataSource);
+
+        assertThat(isPartitioned()).isTrue();
+        assertThat(tableExists("stats_legacy")).isFalse();
+    }
+
+    @Test
+    void migratesOriginalSchemaWithStringColumns() {
+        jdbc.execute("CREATE TABLE stats (id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY NOT NULL, "
+                + "app VARCHAR(255) NOT NULL, uri VARCHAR(64) NOT NULL, ip VARCHAR(16) NOT NULL, "
+                + "datetime TIMESTAMP WITHOUT TIME ZONE NOT NULL)");
+        jdbc.update("INSERT INTO stats (id, app, uri, ip, datetime) VALUES "
+                + "(1, 'ewm', '/events', '10.0.0.1', '2024-01-01 10:00:00'), "
+                + "(2, 'ewm', '/events/1', '::ffff:10.0.0.2', '2024-01-01 11:00:00'), "
+                + "(3, 'other', '/events', '2001:db8::1', '2024-01-02 10:00:00'), "
+                + "(4, 'ewm', '/events', 'not-an-ip', '2024-01-02 11:00:00')");
+
+        PostgresTestDatabase.initSchema(dataSource);
+
+        assertThat(isPartitioned()).isTrue();
+        assertThat(tableExists("stats_legacy")).isFalse();
+        List<Map<String, Object>> rows = jdbc.queryForList("SELECT s.id, a.name AS app, u.name AS uri, s.ip4, "
+                + "encode(s.ip6, 'hex') AS ip6, s.weight FROM stats s "
+                + "JOIN stats_apps a ON a.id = s.app_id JOIN stats_uris u ON u.id = s.uri_id ORDER BY s.id");
+        assertThat(rows).hasSize(3);
+        assertThat(rows.get(0)).containsEntry("app", "ewm").containsEntry("uri", "/events")
+                .containsEntry("ip4", 0x0a000001).containsEntry("ip6", null).containsEntry("weight", 1);
+        // IPv4, отображённый в IPv6, хранится как IPv4
+        assertThat(rows.get(1)).containsEntry("uri", "/events/1").containsEntry("ip4", 0x0a000002);
+        assertThat(rows.get(2)).containsEntry("app", "other").containsEntry("ip4", null)
+                .containsEntry("ip6", "20010db8000000000000000000000001");
+        // Нумерация продолжается после перенесённых идентификаторов
+        assertThat(jdbc.queryForObject("SELECT nextval(pg_get_serial_sequence('stats', 'id'))", Long.class))
+                .isEqualTo(4L);
+    }
+
+    @Test
+    void migratesUnpartitionedDictionaryEncodedTable() {
+        jdbc.execute("CREATE TABLE stats (id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY NOT NULL, "
+                + "app_id INTEGER NOT NULL, uri_id INTEGER NOT NULL, ip4 INTEGER, ip6 BYTEA, "
+                + "datetime TIMESTAMP WITHOUT TIME ZONE NOT NULL)");
+        jdbc.execute("CREATE INDEX stats_datetime_idx ON stats (datetime)");
+        jdbc.update("INSERT INTO stats (id, app_id, uri_id, ip4, datetime) VALUES "
+                + "(10, 1, 1, 1, '2024-01-01 10:00:00'), (11, 1, 2, 2, '2024-01-01 11:00:00')");
+
+        PostgresTestDatabase.initSchema(dataSource);
+
+        assertThat(isPartitioned()).isTrue();
+        assertThat(tableExists("stats_legacy")).isFalse();
+        assertThat(jdbc.queryForList("SELECT id FROM stats ORDER BY id", Long.class)).containsExactly(10L, 11L);
+        assertThat(jdbc.queryForList("SELECT DISTINCT weight FROM stats", Integer.class)).containsExactly(1);
+        // Индекс прежней таблицы удалён и создан заново на секционированной
+        assertThat(jdbc.queryForObject("SELECT count(*) FROM pg_partitioned_table p "
+                + "JOIN pg_index i ON i.indrelid = p.partrelid "
+                + "WHERE i.indexrelid = 'stats_datetime_idx'::regclass", Integer.class)).isEqualTo(1);
+    }
+
+    @Test
+    void repeatedStartLeavesPartitionedTableUntouched() {
+        PostgresTestDatabase.initSchema(dataSource);
+        jdbc.update("INSERT INTO stats (app_id, uri_id, ip4, datetime) VALUES (1, 1, 1, '2024-01-01 10:00:00')");
+
+        PostgresTestDatabase.initSchema(dataSource);
+
+        assertThat(isPartitioned()).isTrue();
+        assertThat(jdbc.queryForObject("SELECT count(*) FROM stats", Integer.class)).isEqualTo(1);
+    }
+
+    private boolean isPartitioned() {
+        return jdbc.queryForObject("SELECT EXISTS (SELECT 1 FROM pg_partitioned_table "
+                + "WHERE partrelid = 'stats'::regclass)", Boolean.class);
+    }
+
+    private boolean tableExists(String table) {
+        return jdbc.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, table);
+    }
+}
@@ -0,0 +1,119 @@
+package ru.practicum.ewm.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import ru.practicum.ewm.PostgresTestDatabase;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Планы запросов HitQueryRepository на PostgreSQL: выборки по периоду и по uri идут через индексы stats,
+// а не полным сканированием. Проверяются тексты запросов, которые строит сам репозиторий
+class StatsIndexPlanTest {
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final int URIS = 2000;
+
+    private static JdbcTemplate jdbc;
+    private static ExplainingJdbcTemplate explaining;
+    private static HitQueryRepository repository;
+
+    @BeforeAll
+    static void setUp() {
+        DataSource dataSource = PostgresTestDatabase.create();
+        PostgresTestDatabase.initSchema(dataSource);
+        jdbc = new JdbcTemplate(dataSource);
+        // 400 тысяч строк за 100 дней, равномерно по uri
+        jdbc.update("INSERT INTO stats (app_id, uri_id, ip4, datetime) "
+                + "SELECT 1, g % " + URIS + ", g, TIMESTAMP '2024-01-01' + g * INTERVAL '21.6 second' "
+                + "FROM generate_series(1, 400000) g");
+        jdbc.execute("VACUUM ANALYZE stats");
+        explaining = new ExplainingJdbcTemplate(dataSource);
+        repository = new HitQueryRepository(explaining, new DatabaseDialect(jdbc), new UriFilterBuilder(32), 1000);
+    }
+
+    @Test
+    void shortPeriodWithoutUriFilterUsesDatetimeIndex() {
+        repository.count(START.plusDays(10), START.plusDays(11), null, false, row -> { });
+
+        assertThat(indexesOf(explaining.plan)).contains("stats_datetime_idx");
+        assertThat(nodeTypes(explaining.plan)).doesNotContain("Seq Scan");
+    }
+
+    @Test
+    void shortInListUsesUriIndex() {
+        repository.count(START, START.plusDays(90), List.of(5, 7, 11), false, row -> { });
+
+        assertThat(explaining.sql).contains("uri_id IN (?, ?, ?, ?)");
+        assertThat(indexesOf(explaining.plan)).contains("stats_uri_datetime_idx");
+        assertThat(nodeTypes(explaining.plan)).doesNotContain("Seq Scan");
+    }
+
+    @Test
+    void longUriListBoundAsArrayUsesUriIndex() {
+        List<Integer> uriIds = IntStream.range(100, 140).boxed().toList();
+
+        repository.count(START, START.plusDays(90), uriIds, true, row -> { });
+
+        assertThat(explaining.sql).contains("uri_id = ANY(?)");
+        assertThat(indexesOf(explaining.plan)).contains("stats_uri_datetime_idx");
+        assertThat(nodeTypes(explaining.plan)).doesNotContain("Seq Scan");
+    }
+
+    @Test
+    void perUriWindowsJoinUsesUriIndex() {
+        repository.countSince(Map.of(3, START.plusDays(20), 4, START.plusDays(50)), START.plusDays(90), false,
+                row -> { });
+
+        assertThat(indexesOf(explaining.plan)).contains("stats_uri_datetime_idx");
+        assertThat(nodeTypes(explaining.plan)).doesNotContain("Seq Scan");
+    }
+
+    // Индексы секций создаются PostgreSQL со своими именами; в результат попадает имя индекса stats
+    private static List<String> indexesOf(JsonNode plan) {
+        List<String> indexes = new ArrayList<>();
+        for (JsonNode name : plan.findValues("Index Name")) {
+            String parent = jdbc.queryForList("SELECT inhparent::regclass::text FROM pg_inherits "
+                    + "WHERE inhrelid = to_regclass(?)", String.class, name.asText()).stream().findFirst()
+                    .orElse(name.asText());
+            indexes.add(parent);
+        }
+        return indexes;
+    }
+
+    private static List<String> nodeTypes(JsonNode plan) {
+        return plan.findValues("Node Type").stream().map(JsonNode::asText).toList();
+    }
+
+    // Вместо выполнения запроса репозитория получает его план с теми же параметрами
+    private static class ExplainingJdbcTemplate extends JdbcTemplate {
+        private final ObjectMapper objectMapper = new ObjectMapper();
+        private String sql;
+        private JsonNode plan;
+
+        ExplainingJdbcTemplate(DataSource dataSource) {
+            super(dataSource);
+        }
+
+        @Override
+        public void query(String sql, RowCallbackHandler rch, Object... args) {
+            this.sql = sql;
+            String json = queryForObject("EXPLAIN (FORMAT JSON) " + sql, String.class, args);
+            try {
+                this.plan = objectMapper.readTree(json);
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
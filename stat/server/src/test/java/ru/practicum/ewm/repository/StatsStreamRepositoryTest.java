@@ -0,0 +1,136 @@
+package ru.practicum.ewm.repository;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.practicum.ewm.TestDatabase;
+import ru.practicum.ewm.model.Hit;
+import ru.practicum.ewm.model.RollupLevel;
+import ru.practicum.ewm.model.StatsKey;
+import ru.practicum.ewm.model.TimeSegment;
+import ru.practicum.ewm.service.TimeSegmentPlanner;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Потоковый /stats на H2 и PostgreSQL сверяется с точным подсчётом по сырым строкам
+class StatsStreamRepositoryTest {
+    private static final LocalDateTime DAY = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final List<RollupLevel> LEVELS = List.of(RollupLevel.DAY, RollupLevel.HOUR, RollupLevel.MINUTE);
+    // Окно с невыровненными краями: план содержит сырые, минутные, часовые и суточные отрезки
+    private static final LocalDateTime START = DAY.plusHours(3).plusMinutes(17).plusSeconds(5);
+    private static final LocalDateTime END = DAY.plusDays(2).plusHours(20).plusMinutes(41);
+    private static final int URIS = 60;
+
+    private HitQueryRepository hitQueryRepository;
+    private StatsStreamRepository statsStreamRepository;
+
+    @ParameterizedTest
+    @ValueSource(strings = {TestDatabase.H2, TestDatabase.POSTGRESQL})
+    void segmentSumsMatchRawCount(String platform) {
+        setUp(platform);
+        List<TimeSegment> segments = TimeSegmentPlanner.plan(START, END, LEVELS);
+        assertThat(segments).extracting(TimeSegment::level).contains(null, RollupLevel.MINUTE, RollupLevel.HOUR,
+                RollupLevel.DAY);
+
+        Map<StatsKey, Long> streamed = stream(segments, null, false, null, null);
+
+        assertThat(streamed).isEqualTo(exact(null, false));
+        assertThat(new ArrayList<>(streamed.keySet())).isSortedAccordingTo(StatsStreamRepositoryTest::compare);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {TestDatabase.H2, TestDatabase.POSTGRESQL})
+    void uniqueCountedFromRawRows(String platform) {
+        setUp(platform);
+
+        Map<StatsKey, Long> streamed = stream(List.of(new TimeSegment(null, START, END)), null, true, null, null);
+
+        assertThat(streamed).isEqualTo(exact(null, true));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {TestDatabase.H2, TestDatabase.POSTGRESQL})
+    void keysetPagesConcatenateToFullResult(String platform) {
+        setUp(platform);
+        List<TimeSegment> segments = TimeSegmentPlanner.plan(START, END, LEVELS);
+        Map<StatsKey, Long> paged = new LinkedHashMap<>();
+        StatsKey after = null;
+        int pages = 0;
+        while (true) {
+            Map<StatsKey, Long> page = stream(segments, null, false, after, 7);
+            if (page.isEmpty()) {
+                break;
+            }
+            assertThat(page.size()).isLessThanOrEqualTo(7);
+            paged.putAll(page);
+            after = new ArrayList<>(page.keySet()).get(page.size() - 1);
+            pages++;
+        }
+
+        assertThat(pages).isGreaterThan(1);
+        assertThat(paged).isEqualTo(stream(segments, null, false, null, null));
+    }
+
+    // Короткий фильтр идёт списком IN, длинный - одним параметром-массивом "= ANY(?)"
+    @ParameterizedTest
+    @ValueSource(strings = {TestDatabase.H2, TestDatabase.POSTGRESQL})
+    void uriFilterAsInListAndAsArray(String platform) {
+        setUp(platform);
+        List<TimeSegment> segments = TimeSegmentPlanner.plan(START, END, LEVELS);
+        List<Integer> few = List.of(2, 3, 5);
+        List<Integer> many = IntStream.rangeClosed(1, 40).boxed().toList();
+
+        assertThat(stream(segments, few, false, null, null)).isEqualTo(exact(few, false)).isNotEmpty();
+        assertThat(stream(segments, many, false, null, null)).isEqualTo(exact(many, false)).isNotEmpty();
+        assertThat(stream(List.of(new TimeSegment(null, START, END)), many, true, null, null))
+                .isEqualTo(exact(many, true));
+    }
+
+    private void setUp(String platform) {
+        JdbcTemplate jdbc = new JdbcTemplate(TestDatabase.create(platform));
+        DatabaseDialect dialect = new DatabaseDialect(jdbc);
+        UriFilterBuilder uriFilterBuilder = new UriFilterBuilder(32);
+        hitQueryRepository = new HitQueryRepository(jdbc, dialect, uriFilterBuilder, 100);
+        statsStreamRepository = new StatsStreamRepository(jdbc, uriFilterBuilder, 100);
+        Random random = new Random(7);
+        List<Hit> hits = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            Hit hit = new Hit();
+            hit.setAppId(1 + random.nextInt(2));
+            hit.setUriId(1 + random.nextInt(URIS));
+            hit.setIp4(random.nextInt(300));
+            hit.setTimestamp(DAY.plusSeconds(random.nextInt(3 * 24 * 3600)));
+            hits.add(hit);
+        }
+        new HitBatchRepository(jdbc, 500).saveAll(hits);
+        new RollupRepository(jdbc, dialect, uriFilterBuilder).rebuild();
+    }
+
+    private Map<StatsKey, Long> stream(List<TimeSegment> segments, List<Integer> uriIds, boolean unique,
+                                       StatsKey after, Integer limit) {
+        Map<StatsKey, Long> result = new LinkedHashMap<>();
+        statsStreamRepository.count(segments, uriIds, unique, after, limit,
+                rs -> result.put(new StatsKey(rs.getInt(1), rs.getInt(2)), rs.getLong(3)));
+        return result;
+    }
+
+    private Map<StatsKey, Long> exact(List<Integer> uriIds, boolean unique) {
+        Map<StatsKey, Long> result = new HashMap<>();
+        hitQueryRepository.count(START, END, uriIds, unique,
+                rs -> result.put(new StatsKey(rs.getInt(1), rs.getInt(2)), rs.getLong(3)));
+        return result;
+    }
+
+    private static int compare(StatsKey a, StatsKey b) {
+        return a.appId() != b.appId() ? Integer.compare(a.appId(), b.appId()) : Integer.compare(a.uriId(), b.uriId());
+    }
+}
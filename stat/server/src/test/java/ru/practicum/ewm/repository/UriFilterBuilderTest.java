@@ -0,0 +1,57 @@
+package ru.practicum.ewm.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UriFilterBuilderTest {
+    private final UriFilterBuilder builder = new UriFilterBuilder(32);
+
+    @Test
+    void noFilterAndEmptyFilter() {
+        List<Object> args = new ArrayList<>();
+
+        assertThat(builder.build("uri_id", null, args)).isEmpty();
+        assertThat(builder.build("uri_id", List.of(), args)).isEqualTo(" AND 1 = 0");
+        assertThat(args).isEmpty();
+    }
+
+    // Список дополняется до степени двойки повтором последнего id
+    @Test
+    void padsInListToPowerOfTwo() {
+        List<Object> args = new ArrayList<>(List.of("before"));
+
+        String sql = builder.build("s.uri_id", List.of(4, 9, 2, 7, 5), args);
+
+        assertThat(sql).isEqualTo(" AND s.uri_id IN (?, ?, ?, ?, ?, ?, ?, ?)");
+        assertThat(args).containsExactly("before", 4, 9, 2, 7, 5, 5, 5, 5);
+        assertThat(builder.build("uri_id", List.of(3), new ArrayList<>())).isEqualTo(" AND uri_id IN (?)");
+    }
+
+    // От 1 до in-list-max id - шесть форм IN, дальше - одна форма с массивом
+    @Test
+    void limitsNumberOfQueryShapes() {
+        Set<String> shapes = new HashSet<>();
+        for (int size = 1; size <= 32; size++) {
+            shapes.add(builder.build("uri_id", ids(size), new ArrayList<>()));
+        }
+
+        assertThat(shapes).hasSize(6);
+        for (int size : new int[]{33, 100, 5000}) {
+            List<Object> args = new ArrayList<>();
+            assertThat(builder.build("uri_id", ids(size), args)).isEqualTo(" AND uri_id = ANY(?)");
+            assertThat(args).singleElement().isInstanceOf(Integer[].class);
+            assertThat((Integer[]) args.get(0)).containsExactlyElementsOf(ids(size));
+        }
+    }
+
+    private static List<Integer> ids(int size) {
+        return IntStream.rangeClosed(1, size).boxed().toList();
+    }
+}
@@ -0,0 +1,152 @@
+package ru.practicum.ewm.service;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.TestDatabase;
+import ru.practicum.ewm.dto.TopStatsDto;
+import ru.practicum.ewm.model.Hit;
+import ru.practicum.ewm.model.StatsKey;
+import ru.practicum.ewm.repository.BackfillRepository;
+import ru.practicum.ewm.repository.CompactionRepository;
+import ru.practicum.ewm.repository.DatabaseDialect;
+import ru.practicum.ewm.repository.DictionaryRepository;
+import ru.practicum.ewm.repository.HitBatchRepository;
+import ru.practicum.ewm.repository.HitQueryRepository;
+import ru.practicum.ewm.repository.RollupRepository;
+import ru.practicum.ewm.repository.SketchRepository;
+import ru.practicum.ewm.repository.StatsRepository;
+import ru.practicum.ewm.repository.TopRepository;
+import ru.practicum.ewm.repository.UriFilterBuilder;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Агрегаты, скетчи и сводки популярных uri выключаются на один запуск и включаются снова:
+// строки, записанные в выключенном запуске, дописываются в них при старте
+class DerivedTablesBackfillTest {
+    private static final LocalDateTime DAY = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    private JdbcTemplate jdbc;
+    private DatabaseDialect dialect;
+    private UriFilterBuilder uriFilterBuilder;
+    private TransactionTemplate transactionTemplate;
+    private HitQueryRepository hitQueryRepository;
+    private HitBatchRepository hitBatchRepository;
+    private BackfillRepository backfillRepository;
+    private DictionaryService dictionaryService;
+    private StatsRepository statsRepository;
+    private int appId;
+    private int uriId;
+
+    @ParameterizedTest
+    @ValueSource(strings = {TestDatabase.H2, TestDatabase.POSTGRESQL})
+    void backfillsRowsWrittenWhileDisabled(String platform) {
+        setUp(TestDatabase.create(platform));
+
+        Services enabled = start(true);
+        write(enabled, 0, 30);
+        enabled.stop();
+
+        Services disabled = start(false);
+        write(disabled, 30, 80);
+        disabled.stop();
+        assertThat(backfillRepository.find("rollup")).isPresent();
+
+        Services reenabled = start(true);
+
+        assertThat(backfillRepository.find("rollup")).isEmpty();
+        assertThat(backfillRepository.find("sketch")).isEmpty();
+        assertThat(backfillRepository.find("top")).isEmpty();
+        StatsKey key = new StatsKey(appId, uriId);
+        assertThat(reenabled.rollup.countHits(DAY, DAY.plusDays(1), null)).containsEntry(key, 80L);
+        // 80 разных адресов; на малых множествах оценка HyperLogLog почти точна
+        assertThat(reenabled.sketch.countUnique(DAY, DAY.plusDays(1), null).get(key)).isBetween(78L, 82L);
+        List<TopStatsDto> top = reenabled.top.top(DAY, DAY.plusDays(1), appId, 1);
+        assertThat(top).singleElement().extracting(TopStatsDto::getHits).isEqualTo(80L);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {TestDatabase.H2, TestDatabase.POSTGRESQL})
+    void repeatedDisabledStartKeepsEarliestMark(String platform) {
+        setUp(TestDatabase.create(platform));
+        Services enabled = start(true);
+        write(enabled, 0, 10);
+        enabled.stop();
+
+        start(false).stop();
+        long mark = backfillRepository.find("rollup").orElseThrow();
+        write(start(false), 10, 20);
+
+        assertThat(backfillRepository.find("rollup")).contains(mark);
+        Services reenabled = start(true);
+        assertThat(reenabled.rollup.countHits(DAY, DAY.plusDays(1), null))
+                .containsEntry(new StatsKey(appId, uriId), 20L);
+    }
+
+    private void setUp(DataSource dataSource) {
+        jdbc = new JdbcTemplate(dataSource);
+        dialect = new DatabaseDialect(jdbc);
+        uriFilterBuilder = new UriFilterBuilder(32);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        hitQueryRepository = new HitQueryRepository(jdbc, dialect, uriFilterBuilder, 1000);
+        hitBatchRepository = new HitBatchRepository(jdbc, 500);
+        backfillRepository = new BackfillRepository(jdbc);
+        dictionaryService = new DictionaryService(new DictionaryRepository(jdbc, dialect));
+        statsRepository = mock(StatsRepository.class);
+        when(statsRepository.existsAny()).thenAnswer(invocation ->
+                jdbc.queryForObject("SELECT COUNT(*) FROM stats", Long.class) > 0);
+        appId = dictionaryService.appId("ewm-main-service");
+        uriId = dictionaryService.uriId("/events/1");
+    }
+
+    // Как при старте сервера: компоненты с заданным stats.*.enabled и их инициализация
+    private Services start(boolean enabled) {
+        CompactionWatermark compactionWatermark = new CompactionWatermark(new CompactionRepository(jdbc, dialect));
+        compactionWatermark.init();
+        RollupService rollup = new RollupService(new RollupRepository(jdbc, dialect, uriFilterBuilder),
+                statsRepository, hitQueryRepository, backfillRepository, transactionTemplate, compactionWatermark,
+                enabled);
+        SketchService sketch = new SketchService(new SketchRepository(jdbc, dialect, uriFilterBuilder),
+                statsRepository, hitQueryRepository, backfillRepository, transactionTemplate, compactionWatermark,
+                enabled);
+        TopService top = new TopService(new TopRepository(jdbc, dialect), statsRepository, hitQueryRepository,
+                backfillRepository, rollup, dictionaryService, transactionTemplate, compactionWatermark, enabled, 100);
+        rollup.init();
+        sketch.init();
+        top.init();
+        return new Services(rollup, sketch, top);
+    }
+
+    // Запросы с адресами from..to-1 в пределах суток DAY, записанные так же, как HitWriter
+    private void write(Services services, int from, int to) {
+        List<Hit> hits = new ArrayList<>();
+        for (int ip = from; ip < to; ip++) {
+            Hit hit = new Hit();
+            hit.setAppId(appId);
+            hit.setUriId(uriId);
+            hit.setIp4(ip);
+            hit.setTimestamp(DAY.plusMinutes(ip * 7L));
+            hits.add(hit);
+        }
+        hitBatchRepository.saveAll(hits);
+        services.rollup.onHitsSaved(hits);
+        services.sketch.onHitsSaved(hits);
+        services.top.onHitsSaved(hits);
+    }
+
+    private record Services(RollupService rollup, SketchService sketch, TopService top) {
+        void stop() {
+            sketch.stop();
+            top.stop();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package ru.practicum.ewm.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.practicum.ewm.model.Hit;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+// Остановка буфера во время приёма: каждый принятый запрос записывается ровно один раз,
+// из очереди или журнала, либо синхронно в потоке запроса
+class HitIngestBufferTest {
+    private static final LocalDateTime TIME = LocalDateTime.of(2024, 1, 1, 12, 0);
+    private static final int SENDERS = 4;
+    private static final int PER_SENDER = 2_000;
+
+    @TempDir
+    Path dir;
+
+    private final ConcurrentLinkedQueue<Integer> written = new ConcurrentLinkedQueue<>();
+
+    @Test
+    void stopWhileSubmittingFlushesQueue() throws Exception {
+        HitIngestBuffer buffer = buffer(HitIngestBuffer.AckMode.ENQUEUE, false);
+        buffer.start();
+
+        List<CompletableFuture<Void>> acks = submitWhileStopping(buffer);
+
+        assertThat(acks).allMatch(CompletableFuture::isDone);
+        assertWrittenOnce(SENDERS * PER_SENDER);
+    }
+
+    @Test
+    void stopWhileSubmittingAppliesLog() throws Exception {
+        HitIngestBuffer buffer = buffer(HitIngestBuffer.AckMode.FLUSH, true);
+        buffer.start();
+
+        List<CompletableFuture<Void>> acks = submitWhileStopping(buffer);
+
+        // Подтверждения режима FLUSH завершены: журнал применён до конца
+        assertThat(acks).allMatch(ack -> ack.isDone() && !ack.isCompletedExceptionally());
+        assertWrittenOnce(SENDERS * PER_SENDER);
+
+        // Повторный запуск на том же журнале ничего не пишет заново
+        HitIngestBuffer restarted = buffer(HitIngestBuffer.AckMode.FLUSH, true);
+        restarted.start();
+        restarted.stop();
+        assertWrittenOnce(SENDERS * PER_SENDER);
+    }
+
+    @Test
+    void submitAfterStopWritesSynchronously() throws Exception {
+        HitIngestBuffer buffer = buffer(HitIngestBuffer.AckMode.ENQUEUE, false);
+        buffer.start();
+        buffer.stop();
+
+        CompletableFuture<Void> ack = buffer.submit(hit(1));
+
+        assertThat(ack).isCompleted();
+        assertThat(written).containsExactly(1);
+    }
+
+    // Отправители пишут без пауз, stop() вызывается, когда принята примерно половина запросов
+    private List<CompletableFuture<Void>> submitWhileStopping(HitIngestBuffer buffer) throws Exception {
+        List<CompletableFuture<Void>> acks = new ArrayList<>();
+        AtomicInteger submitted = new AtomicInteger();
+        CountDownLatch half = new CountDownLatch(1);
+        List<Thread> senders = new ArrayList<>();
+        for (int s = 0; s < SENDERS; s++) {
+            int from = s * PER_SENDER;
+            Thread sender = new Thread(() -> {
+                for (int i = from; i < from + PER_SENDER; i++) {
+                    CompletableFuture<Void> ack = buffer.submit(hit(i));
+                    synchronized (acks) {
+                        acks.add(ack);
+                    }
+                    if (submitted.incrementAndGet() == SENDERS * PER_SENDER / 2) {
+                        half.countDown();
+                    }
+                }
+            });
+            sender.start();
+            senders.add(sender);
+        }
+        assertThat(half.await(30, TimeUnit.SECONDS)).isTrue();
+        buffer.stop();
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        return acks;
+    }
+
+    private void assertWrittenOnce(int count) {
+        assertThat(written).hasSize(count).doesNotHaveDuplicates();
+    }
+
+    private HitIngestBuffer buffer(HitIngestBuffer.AckMode ackMode, boolean wal) {
+        HitWriter hitWriter = mock(HitWriter.class);
+        doAnswer(invocation -> {
+            List<Hit> hits = invocation.getArgument(0);
+            hits.forEach(hit -> written.add(hit.getIp4()));
+            return null;
+        }).when(hitWriter).writeAll(anyList());
+        return new HitIngestBuffer(hitWriter, new ObjectMapper(), new SimpleMeterRegistry(), true, ackMode,
+                1000, 100, 20, 2, 3, 30_000, 10_000, dir.resolve("dead-letter").toString(),
+                wal, dir.resolve("wal").toString(), 4096, false, 1L << 30);
+    }
+
+    private static Hit hit(int ip4) {
+        Hit hit = new Hit();
+        // Журнал хранит строки app и uri, id подставляются при записи в базу
+        hit.setApp("ewm-main-service");
+        hit.setUri("/events/1");
+        hit.setAppId(1);
+        hit.setUriId(1);
+        hit.setIp4(ip4);
+        hit.setTimestamp(TIME);
+        return hit;
+    }
+}
@@ -0,0 +1,107 @@
+package ru.practicum.ewm.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.practicum.ewm.dto.LiveStatsDto;
+import ru.practicum.ewm.model.Hit;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LiveCounterServiceTest {
+    @TempDir
+    Path dir;
+
+    private DictionaryService dictionaryService;
+    private Path snapshotFile;
+
+    @BeforeEach
+    void setUp() {
+        dictionaryService = mock(DictionaryService.class);
+        when(dictionaryService.appName(1)).thenReturn("ewm-main-service");
+        when(dictionaryService.uriName(1)).thenReturn("/events/1");
+        when(dictionaryService.uriName(2)).thenReturn("/events/2");
+        when(dictionaryService.findAppId("ewm-main-service")).thenReturn(Optional.of(1));
+        when(dictionaryService.findUriId("/events/1")).thenReturn(Optional.of(1));
+        when(dictionaryService.findUriId("/events/2")).thenReturn(Optional.of(2));
+        snapshotFile = dir.resolve("live-counters.bin");
+    }
+
+    @Test
+    void countsHitsPerWindow() {
+        LiveCounterService service = start();
+        LocalDateTime now = LocalDateTime.now();
+        service.onHitsSaved(List.of(hit(1, now.minusSeconds(10)), hit(1, now.minusMinutes(2)),
+                hit(1, now.minusMinutes(10)), hit(1, now.minusMinutes(66)), hit(2, now.minusSeconds(5)),
+                hit(2, now.minusSeconds(6))));
+
+        assertThat(service.live(null, 10)).containsExactly(
+                new LiveStatsDto("ewm-main-service", "/events/2", 2L, 2L, 2L),
+                new LiveStatsDto("ewm-main-service", "/events/1", 1L, 2L, 3L));
+        assertThat(service.live(List.of(1), 10)).extracting(LiveStatsDto::getUri).containsExactly("/events/1");
+        assertThat(service.live(null, 1)).extracting(LiveStatsDto::getUri).containsExactly("/events/2");
+    }
+
+    @Test
+    void restoresCountersFromSnapshotAfterRestart() {
+        LiveCounterService service = start();
+        LocalDateTime now = LocalDateTime.now();
+        List<Hit> hits = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            hits.add(hit(1 + i % 2, now.minusSeconds(i * 20L)));
+        }
+        service.onHitsSaved(hits);
+        List<LiveStatsDto> before = service.live(null, 10);
+        service.stop();
+
+        LiveCounterService restarted = start();
+
+        assertThat(Files.exists(snapshotFile)).isTrue();
+        assertThat(restarted.live(null, 10)).isEqualTo(before);
+    }
+
+    // Ключ, чей uri больше не находится в справочнике, при восстановлении пропускается
+    @Test
+    void skipsSnapshotKeysMissingFromDictionary() {
+        LiveCounterService service = start();
+        service.onHitsSaved(List.of(hit(1, LocalDateTime.now()), hit(2, LocalDateTime.now())));
+        service.stop();
+        when(dictionaryService.findUriId("/events/2")).thenReturn(Optional.empty());
+
+        assertThat(start().live(null, 10)).extracting(LiveStatsDto::getUri).containsExactly("/events/1");
+    }
+
+    @Test
+    void ignoresSnapshotOfOtherVersion() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(snapshotFile))) {
+            out.writeInt(99);
+        }
+
+        assertThat(start().live(null, 10)).isEmpty();
+    }
+
+    private LiveCounterService start() {
+        LiveCounterService service = new LiveCounterService(dictionaryService, true, 100, snapshotFile.toString());
+        service.init();
+        return service;
+    }
+
+    private static Hit hit(int uriId, LocalDateTime timestamp) {
+        Hit hit = new Hit();
+        hit.setAppId(1);
+        hit.setUriId(uriId);
+        hit.setTimestamp(timestamp);
+        return hit;
+    }
+}
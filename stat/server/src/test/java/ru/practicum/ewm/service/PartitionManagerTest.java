@@ -0,0 +1,89 @@
+package ru.practicum.ewm.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.practicum.ewm.TestDatabase;
+import ru.practicum.ewm.repository.DatabaseDialect;
+import ru.practicum.ewm.repository.PartitionRepository;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// DDL секций на PostgreSQL; на H2 секционирования нет и менеджер ничего не делает
+class PartitionManagerTest {
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private JdbcTemplate jdbc;
+    private PartitionRepository partitionRepository;
+
+    @Test
+    void createsCurrentAndUpcomingPartitions() {
+        PartitionManager manager = start(TestDatabase.POSTGRESQL);
+
+        manager.init();
+        manager.ensurePartitions();
+
+        LocalDateTime month = LocalDateTime.now().withDayOfMonth(1).toLocalDate().atStartOfDay();
+        for (int i = 0; i <= 3; i++) {
+            assertThat(partitionRepository.exists("stats_p" + month.plusMonths(i).format(MONTH))).isTrue();
+        }
+        assertThat(partitionRepository.exists("stats_p" + month.plusMonths(4).format(MONTH))).isFalse();
+        insert(month.plusMonths(2).plusDays(3));
+        assertThat(jdbc.queryForObject("SELECT tableoid::regclass::text FROM stats", String.class))
+                .isEqualTo("stats_p" + month.plusMonths(2).format(MONTH));
+        assertThat(indexCount("stats_p" + month.format(MONTH))).isEqualTo(indexCount("stats_default"));
+    }
+
+    // Строки периода, уже попавшие в секцию по умолчанию, переносятся в новую секцию
+    @Test
+    void movesRowsOutOfDefaultPartition() {
+        PartitionManager manager = start(TestDatabase.POSTGRESQL);
+        insert(LocalDateTime.of(2020, 5, 10, 12, 0));
+        insert(LocalDateTime.of(2020, 5, 31, 23, 59, 59));
+        insert(LocalDateTime.of(2020, 6, 1, 0, 0));
+        assertThat(count("stats_default")).isEqualTo(3);
+
+        manager.ensurePartitionFor(LocalDateTime.of(2020, 5, 20, 0, 0));
+
+        assertThat(count("stats_p202005")).isEqualTo(2);
+        assertThat(count("stats_default")).isEqualTo(1);
+        assertThat(count("stats")).isEqualTo(3);
+        assertThat(indexCount("stats_p202005")).isEqualTo(indexCount("stats_default"));
+        // Повторный вызов для того же периода DDL не выполняет
+        manager.ensurePartitionFor(LocalDateTime.of(2020, 5, 1, 0, 0));
+        assertThat(count("stats_p202005")).isEqualTo(2);
+    }
+
+    @Test
+    void doesNothingOnH2() {
+        PartitionManager manager = start(TestDatabase.H2);
+
+        manager.init();
+        manager.ensurePartitionFor(LocalDateTime.of(2020, 5, 10, 12, 0));
+
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM information_schema.tables "
+                + "WHERE LOWER(table_name) LIKE 'stats_p%'", Integer.class)).isZero();
+    }
+
+    private PartitionManager start(String platform) {
+        jdbc = new JdbcTemplate(TestDatabase.create(platform));
+        partitionRepository = new PartitionRepository(jdbc);
+        return new PartitionManager(partitionRepository, new DatabaseDialect(jdbc), true,
+                PartitionManager.Granularity.MONTH, 3);
+    }
+
+    private void insert(LocalDateTime datetime) {
+        jdbc.update("INSERT INTO stats (app_id, uri_id, ip4, datetime) VALUES (1, 1, 1, ?)", datetime);
+    }
+
+    private int count(String table) {
+        return jdbc.queryForObject("SELECT COUNT(*) FROM " + table, Integer.class);
+    }
+
+    private int indexCount(String table) {
+        return jdbc.queryForObject("SELECT COUNT(*) FROM pg_index WHERE indrelid = to_regclass(?)",
+                Integer.class, table);
+    }
+}
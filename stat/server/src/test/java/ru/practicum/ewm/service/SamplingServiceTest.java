@@ -0,0 +1,109 @@
+package ru.practicum.ewm.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.practicum.ewm.model.Hit;
+import ru.practicum.ewm.repository.SamplingRepository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SamplingServiceTest {
+    private static final long THRESHOLD = 100;
+    private static final int MAX_WEIGHT = 64;
+    private static final LocalDateTime TIME = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    private SamplingService samplingService;
+
+    @BeforeEach
+    void setUp() {
+        SamplingRepository samplingRepository = mock(SamplingRepository.class);
+        when(samplingRepository.findAll()).thenReturn(Map.of());
+        samplingService = new SamplingService(samplingRepository, mock(DictionaryService.class),
+                new SimpleMeterRegistry(), true, THRESHOLD, MAX_WEIGHT, "");
+        samplingService.init();
+    }
+
+    @Test
+    void keepsEveryHitBelowThreshold() {
+        List<Hit> kept = samplingService.sample(hits(1, (int) THRESHOLD), 1000);
+
+        assertThat(kept).hasSize((int) THRESHOLD).allMatch(hit -> hit.getWeight() == 1);
+        assertThat(samplingService.isSampled(1, TIME.plusDays(1))).isFalse();
+    }
+
+    // Поток, не кратный шагу прореживания: остаток секунды переносится в следующую сохранённую строку
+    @Test
+    void carriesDroppedRemainderAcrossSeconds() {
+        long total = 0;
+        long weight = 0;
+        for (long second = 1000; second < 1010; second++) {
+            List<Hit> batch = hits(1, 301);
+            total += batch.size();
+            weight += weightOf(samplingService.sample(batch, second));
+        }
+
+        assertThat(weight).isLessThanOrEqualTo(total).isGreaterThan(total - MAX_WEIGHT);
+        assertThat(samplingService.isSampled(1, TIME.plusDays(1))).isTrue();
+    }
+
+    // Ошибка оценки SUM(weight) на неравномерном потоке нескольких uri ограничена неучтённым хвостом
+    @Test
+    void estimateErrorIsBoundedByUnclosedTail() {
+        Random random = new Random(42);
+        int uris = 5;
+        long[] total = new long[uris];
+        long[] weight = new long[uris];
+        long kept = 0;
+        for (long second = 1000; second < 1120; second++) {
+            for (int uri = 0; uri < uris; uri++) {
+                // Чередуются тихие секунды и всплески выше порога в десятки раз
+                int rate = random.nextInt(4) == 0 ? random.nextInt((int) THRESHOLD) : random.nextInt(5000);
+                int sent = 0;
+                while (sent < rate) {
+                    int size = Math.min(rate - sent, 1 + random.nextInt(500));
+                    List<Hit> sampled = samplingService.sample(hits(uri, size), second);
+                    kept += sampled.size();
+                    weight[uri] += weightOf(sampled);
+                    total[uri] += size;
+                    sent += size;
+                }
+            }
+        }
+
+        long allHits = 0;
+        long allWeight = 0;
+        for (int uri = 0; uri < uris; uri++) {
+            assertThat(weight[uri]).isLessThanOrEqualTo(total[uri]).isGreaterThan(total[uri] - MAX_WEIGHT);
+            allHits += total[uri];
+            allWeight += weight[uri];
+        }
+        assertThat((double) (allHits - allWeight) / allHits).isLessThan(0.001);
+        // Прореживание действительно сократило число строк
+        assertThat(kept).isLessThan(allHits / 5);
+    }
+
+    private static List<Hit> hits(int uriId, int count) {
+        List<Hit> hits = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Hit hit = new Hit();
+            hit.setAppId(1);
+            hit.setUriId(uriId);
+            hit.setTimestamp(TIME);
+            hits.add(hit);
+        }
+        return hits;
+    }
+
+    private static long weightOf(List<Hit> hits) {
+        return hits.stream().mapToLong(Hit::getWeight).sum();
+    }
+}
@@ -0,0 +1,113 @@
+package ru.practicum.ewm.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionTimedOutException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.TestDatabase;
+import ru.practicum.ewm.dto.StatsDto;
+import ru.practicum.ewm.model.Hit;
+import ru.practicum.ewm.model.StatsKey;
+import ru.practicum.ewm.repository.HitBatchRepository;
+import ru.practicum.ewm.repository.StatsStreamRepository;
+import ru.practicum.ewm.repository.UriFilterBuilder;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Медленный клиент не держит транзакцию и соединение дольше stats.stream.timeout-seconds
+class StatsStreamServiceTest {
+    private static final LocalDateTime DAY = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final int URIS = 20;
+
+    private DataSource dataSource;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = TestDatabase.create(TestDatabase.H2);
+        List<Hit> hits = new ArrayList<>();
+        for (int uriId = 1; uriId <= URIS; uriId++) {
+            Hit hit = new Hit();
+            hit.setAppId(1);
+            hit.setUriId(uriId);
+            hit.setIp4(uriId);
+            hit.setTimestamp(DAY.plusMinutes(uriId));
+            hits.add(hit);
+        }
+        new HitBatchRepository(new JdbcTemplate(dataSource), 100).saveAll(hits);
+    }
+
+    @Test
+    void writesAllRowsWithinTimeout() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        service(60).write(DAY, DAY.plusDays(1), null, false, null, null, out);
+
+        assertThat(out.toString().split("\n")).hasSize(URIS);
+    }
+
+    @Test
+    void abortsSlowClientAfterTimeout() {
+        SlowOutputStream out = new SlowOutputStream(400);
+
+        assertThatThrownBy(() -> service(1).write(DAY, DAY.plusDays(1), null, false, null, null, out))
+                .isInstanceOf(TransactionTimedOutException.class);
+
+        assertThat(out.writes).isBetween(1, 5);
+        assertThat(TransactionSynchronizationManager.isActualTransactionActive()).isFalse();
+    }
+
+    private StatsStreamService service(int timeoutSeconds) {
+        RollupService rollupService = mock(RollupService.class);
+        DictionaryService dictionaryService = mock(DictionaryService.class);
+        when(dictionaryService.toStatsDto(any(StatsKey.class), anyLong())).thenAnswer(invocation -> {
+            StatsKey key = invocation.getArgument(0);
+            return new StatsDto("app" + key.appId(), "/events/" + key.uriId(), invocation.getArgument(1));
+        });
+        return new StatsStreamService(new StatsStreamRepository(new JdbcTemplate(dataSource),
+                new UriFilterBuilder(32), 2), rollupService, dictionaryService, mock(SamplingService.class),
+                mock(CompactionWatermark.class), new TransactionTemplate(new DataSourceTransactionManager(dataSource)),
+                new ObjectMapper(), timeoutSeconds);
+    }
+
+    // Клиент, читающий ответ с задержкой на каждую запись
+    private static class SlowOutputStream extends OutputStream {
+        private final long delayMs;
+        private int writes;
+
+        SlowOutputStream(long delayMs) {
+            this.delayMs = delayMs;
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            writes++;
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package ru.practicum.ewm.service;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.ewm.model.RollupLevel;
+import ru.practicum.ewm.model.TimeSegment;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimeSegmentPlannerTest {
+    private static final List<RollupLevel> LEVELS = List.of(RollupLevel.DAY, RollupLevel.HOUR, RollupLevel.MINUTE);
+    private static final LocalDateTime DAY = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    @Test
+    void splitsUnalignedWindowFromCoarsestLevel() {
+        LocalDateTime from = DAY.plusHours(3).plusMinutes(17).plusSeconds(5);
+        LocalDateTime to = DAY.plusDays(2).plusHours(20).plusMinutes(41).plusSeconds(30);
+
+        assertThat(TimeSegmentPlanner.plan(from, to, LEVELS)).containsExactly(
+                new TimeSegment(null, from, DAY.plusHours(3).plusMinutes(18)),
+                new TimeSegment(RollupLevel.MINUTE, DAY.plusHours(3).plusMinutes(18), DAY.plusHours(4)),
+                new TimeSegment(RollupLevel.HOUR, DAY.plusHours(4), DAY.plusDays(1)),
+                new TimeSegment(RollupLevel.DAY, DAY.plusDays(1), DAY.plusDays(2)),
+                new TimeSegment(RollupLevel.HOUR, DAY.plusDays(2), DAY.plusDays(2).plusHours(20)),
+                new TimeSegment(RollupLevel.MINUTE, DAY.plusDays(2).plusHours(20),
+                        DAY.plusDays(2).plusHours(20).plusMinutes(41)),
+                new TimeSegment(null, DAY.plusDays(2).plusHours(20).plusMinutes(41), to));
+    }
+
+    @Test
+    void alignedAndShortWindows() {
+        assertThat(TimeSegmentPlanner.plan(DAY, DAY.plusDays(3), LEVELS))
+                .containsExactly(new TimeSegment(RollupLevel.DAY, DAY, DAY.plusDays(3)));
+        assertThat(TimeSegmentPlanner.plan(DAY.plusSeconds(10), DAY.plusSeconds(50), LEVELS))
+                .containsExactly(new TimeSegment(null, DAY.plusSeconds(10), DAY.plusSeconds(50)));
+        assertThat(TimeSegmentPlanner.plan(DAY, DAY, LEVELS)).isEmpty();
+        // Без уровней всё окно читается из сырых строк
+        assertThat(TimeSegmentPlanner.plan(DAY, DAY.plusDays(1), List.of()))
+                .containsExactly(new TimeSegment(null, DAY, DAY.plusDays(1)));
+    }
+
+    // На случайных окнах отрезки идут подряд, покрывают окно целиком и выровнены по своему уровню,
+    // а сырые отрезки не содержат ни одной целой минуты
+    @Test
+    void segmentsTileWindowExactly() {
+        Random random = new Random(17);
+        for (int i = 0; i < 2000; i++) {
+            LocalDateTime from = DAY.plusSeconds(random.nextInt(5 * 24 * 3600));
+            LocalDateTime to = from.plusSeconds(random.nextInt(i % 2 == 0 ? 7200 : 4 * 24 * 3600));
+
+            List<TimeSegment> segments = TimeSegmentPlanner.plan(from, to, LEVELS);
+
+            LocalDateTime cursor = from;
+            for (TimeSegment segment : segments) {
+                assertThat(segment.from()).isEqualTo(cursor);
+                assertThat(segment.from()).isBefore(segment.to());
+                if (segment.isRaw()) {
+                    assertThat(RollupLevel.MINUTE.ceil(segment.from()))
+                            .isAfterOrEqualTo(RollupLevel.MINUTE.floor(segment.to()));
+                } else {
+                    assertThat(segment.level().floor(segment.from())).isEqualTo(segment.from());
+                    assertThat(segment.level().floor(segment.to())).isEqualTo(segment.to());
+                }
+                cursor = segment.to();
+            }
+            assertThat(cursor).isEqualTo(from.isBefore(to) ? to : from);
+        }
+    }
+
+    // До границы уплотнения сырых отрезков нет: края расширяются до минут
+    @Test
+    void widensEdgesBeforeWatermark() {
+        LocalDateTime watermark = DAY.plusDays(3);
+        LocalDateTime from = DAY.plusHours(5).plusSeconds(20);
+        LocalDateTime to = DAY.plusDays(1).plusHours(2).plusSeconds(40);
+
+        List<TimeSegment> compacted = TimeSegmentPlanner.plan(from, to, LEVELS, watermark);
+        List<TimeSegment> crossing = TimeSegmentPlanner.plan(from, watermark.plusSeconds(30), LEVELS, watermark);
+
+        assertThat(compacted).noneMatch(TimeSegment::isRaw);
+        assertThat(compacted.get(0).from()).isEqualTo(DAY.plusHours(5));
+        assertThat(compacted.get(compacted.size() - 1).to()).isEqualTo(DAY.plusDays(1).plusHours(2).plusMinutes(1));
+        assertThat(crossing.get(0)).isEqualTo(new TimeSegment(RollupLevel.HOUR, DAY.plusHours(5), DAY.plusDays(1)));
+        assertThat(crossing.get(crossing.size() - 1))
+                .isEqualTo(new TimeSegment(null, watermark, watermark.plusSeconds(30)));
+        assertThat(TimeSegmentPlanner.plan(from, to, LEVELS, null)).isEqualTo(TimeSegmentPlanner.plan(from, to, LEVELS));
+    }
+}
@@ -0,0 +1,164 @@
+package ru.practicum.ewm.service;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.TestDatabase;
+import ru.practicum.ewm.dto.CounterDto;
+import ru.practicum.ewm.model.Hit;
+import ru.practicum.ewm.repository.BackfillRepository;
+import ru.practicum.ewm.repository.CompactionRepository;
+import ru.practicum.ewm.repository.DatabaseDialect;
+import ru.practicum.ewm.repository.DictionaryRepository;
+import ru.practicum.ewm.repository.HitBatchRepository;
+import ru.practicum.ewm.repository.HitQueryRepository;
+import ru.practicum.ewm.repository.RollupRepository;
+import ru.practicum.ewm.repository.SketchRepository;
+import ru.practicum.ewm.repository.StatsRepository;
+import ru.practicum.ewm.repository.UriCounterRepository;
+import ru.practicum.ewm.repository.UriFilterBuilder;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Счётчики пополняются в транзакции записи запросов, а пересчёт из суточных агрегатов и скетчей
+// исправляет расхождение и удаляет счётчики uri без данных
+class UriCounterServiceTest {
+    private static final LocalDateTime DAY = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    private JdbcTemplate jdbc;
+    private TransactionTemplate transactionTemplate;
+    private HitBatchRepository hitBatchRepository;
+    private DictionaryService dictionaryService;
+    private RollupService rollupService;
+    private SketchService sketchService;
+    private UriCounterService uriCounterService;
+    private int appId;
+    private List<Integer> uriIds;
+
+    @ParameterizedTest
+    @ValueSource(strings = {TestDatabase.H2, TestDatabase.POSTGRESQL})
+    void countsHitsAndUniques(String platform) {
+        setUp(TestDatabase.create(platform));
+        // uri /events/i получает 100 * (i + 1) запросов с 50 * (i + 1) адресов, в два приёма
+        write(0, 2);
+        write(2, 4);
+
+        assertThat(counters()).extractingByKey("/events/2").extracting(CounterDto::getHits).isEqualTo(300L);
+        // Уникальные появляются после сброса скетчей
+        assertThat(counters()).extractingByKey("/events/2").extracting(CounterDto::getUniques).isEqualTo(0L);
+        uriCounterService.flush();
+
+        Map<String, CounterDto> counters = counters();
+        assertThat(counters).hasSize(3);
+        for (int i = 0; i < 3; i++) {
+            CounterDto counter = counters.get("/events/" + i);
+            assertThat(counter.getApp()).isEqualTo("ewm-main-service");
+            assertThat(counter.getHits()).isEqualTo(100L * (i + 1));
+            // На малых множествах оценка HyperLogLog почти точна
+            assertThat(counter.getUniques()).isBetween(50L * (i + 1) - 3, 50L * (i + 1) + 3);
+        }
+        assertThat(uriCounterService.counters(List.of(uriIds.get(1)))).singleElement()
+                .extracting(CounterDto::getHits).isEqualTo(200L);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {TestDatabase.H2, TestDatabase.POSTGRESQL})
+    void reconcileRepairsDrift(String platform) {
+        setUp(TestDatabase.create(platform));
+        write(0, 4);
+        uriCounterService.flush();
+        Map<String, CounterDto> exact = counters();
+
+        jdbc.update("UPDATE stats_uri_counters SET hits = hits + 17, uniques = 0 WHERE uri_id = ?", uriIds.get(0));
+        jdbc.update("DELETE FROM stats_uri_counters WHERE uri_id = ?", uriIds.get(1));
+        // Счётчик uri, у которого нет ни одного запроса
+        jdbc.update("INSERT INTO stats_uri_counters (uri_id, app_id, hits) VALUES (?, ?, 5)",
+                dictionaryService.uriId("/events/404"), appId);
+
+        uriCounterService.reconcile();
+
+        assertThat(counters()).isEqualTo(exact);
+    }
+
+    // Пустая таблица счётчиков при непустой stats заполняется пересчётом при старте
+    @ParameterizedTest
+    @ValueSource(strings = {TestDatabase.H2, TestDatabase.POSTGRESQL})
+    void initRebuildsEmptyTable(String platform) {
+        setUp(TestDatabase.create(platform));
+        write(0, 4);
+        uriCounterService.flush();
+        Map<String, CounterDto> exact = counters();
+        jdbc.update("DELETE FROM stats_uri_counters");
+
+        uriCounterService.init();
+
+        assertThat(counters()).isEqualTo(exact);
+    }
+
+    private void setUp(DataSource dataSource) {
+        jdbc = new JdbcTemplate(dataSource);
+        DatabaseDialect dialect = new DatabaseDialect(jdbc);
+        UriFilterBuilder uriFilterBuilder = new UriFilterBuilder(32);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        HitQueryRepository hitQueryRepository = new HitQueryRepository(jdbc, dialect, uriFilterBuilder, 1000);
+        BackfillRepository backfillRepository = new BackfillRepository(jdbc);
+        hitBatchRepository = new HitBatchRepository(jdbc, 500);
+        dictionaryService = new DictionaryService(new DictionaryRepository(jdbc, dialect));
+        StatsRepository statsRepository = mock(StatsRepository.class);
+        when(statsRepository.existsAny()).thenAnswer(invocation ->
+                jdbc.queryForObject("SELECT COUNT(*) FROM stats", Long.class) > 0);
+        CompactionWatermark compactionWatermark = new CompactionWatermark(new CompactionRepository(jdbc, dialect));
+        compactionWatermark.init();
+        rollupService = new RollupService(new RollupRepository(jdbc, dialect, uriFilterBuilder), statsRepository,
+                hitQueryRepository, backfillRepository, transactionTemplate, compactionWatermark, true);
+        sketchService = new SketchService(new SketchRepository(jdbc, dialect, uriFilterBuilder), statsRepository,
+                hitQueryRepository, backfillRepository, transactionTemplate, compactionWatermark, true);
+        rollupService.init();
+        sketchService.init();
+        uriCounterService = new UriCounterService(new UriCounterRepository(jdbc, dialect, uriFilterBuilder, 1000),
+                statsRepository, rollupService, sketchService, dictionaryService, transactionTemplate, true);
+        uriCounterService.init();
+        appId = dictionaryService.appId("ewm-main-service");
+        uriIds = List.of(dictionaryService.uriId("/events/0"), dictionaryService.uriId("/events/1"),
+                dictionaryService.uriId("/events/2"));
+    }
+
+    // Четверти fromQuarter..toQuarter-1 запросов каждого uri, записанные в одной транзакции, как HitWriter.writeAll
+    private void write(int fromQuarter, int toQuarter) {
+        List<Hit> hits = new ArrayList<>();
+        for (int i = 0; i < uriIds.size(); i++) {
+            int count = 100 * (i + 1);
+            for (int n = count * fromQuarter / 4; n < count * toQuarter / 4; n++) {
+                Hit hit = new Hit();
+                hit.setAppId(appId);
+                hit.setUriId(uriIds.get(i));
+                hit.setIp4(n % (50 * (i + 1)));
+                hit.setTimestamp(DAY.plusMinutes(n * 43L));
+                hits.add(hit);
+            }
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            hitBatchRepository.saveAll(hits);
+            rollupService.onHitsSaved(hits);
+            sketchService.onHitsSaved(hits);
+            uriCounterService.onHitsSaved(hits);
+        });
+    }
+
+    private Map<String, CounterDto> counters() {
+        return uriCounterService.counters(null).stream()
+                .collect(Collectors.toMap(CounterDto::getUri, Function.identity()));
+    }
+}
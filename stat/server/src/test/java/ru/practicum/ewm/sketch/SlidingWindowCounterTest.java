@@ -0,0 +1,97 @@
+package ru.practicum.ewm.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SlidingWindowCounterTest {
+    // Середина минуты, чтобы сдвиги в секундах не пересекали лишних границ минут
+    private static final long NOW = 28_333_333L * 60 + 30;
+
+    @Test
+    void sumsOnlyHitsInsideEachWindow() {
+        SlidingWindowCounter counter = new SlidingWindowCounter();
+        // Запрос 66-минутной давности попадает в ту же поминутную ячейку, что и минута 6 минут назад
+        counter.add(NOW - 66 * 60, 1);
+        counter.add(NOW - 10 * 60, 1);
+        counter.add(NOW - 2 * 60, 1);
+        counter.add(NOW - 10, 1);
+
+        assertThat(counter.sumSeconds(NOW, 60)).isEqualTo(1);
+        assertThat(counter.sumSeconds(NOW, 5 * 60)).isEqualTo(2);
+        assertThat(counter.sumMinutes(NOW, SlidingWindowCounter.MINUTES)).isEqualTo(3);
+        assertThat(counter.getLastSecond()).isEqualTo(NOW - 10);
+    }
+
+    @Test
+    void staleSlotIsResetByNextPeriod() {
+        SlidingWindowCounter counter = new SlidingWindowCounter();
+        counter.add(NOW - SlidingWindowCounter.SECONDS, 5);
+        counter.add(NOW, 1);
+
+        assertThat(counter.sumSeconds(NOW, SlidingWindowCounter.SECONDS)).isEqualTo(1);
+        // Более ранний период в уже переписанную ячейку не добавляется
+        counter.add(NOW - SlidingWindowCounter.SECONDS, 1);
+        assertThat(counter.sumSeconds(NOW, SlidingWindowCounter.SECONDS)).isEqualTo(1);
+    }
+
+    @Test
+    void concurrentAddsOnOneKeySumExactly() throws InterruptedException {
+        SlidingWindowCounter counter = new SlidingWindowCounter();
+        int threads = 8;
+        int adds = 1_000_000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int j = 0; j < adds; j++) {
+                    counter.add(NOW, 1);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertThat(counter.sumSeconds(NOW, 1)).isEqualTo((long) threads * adds);
+        assertThat(counter.sumMinutes(NOW, 1)).isEqualTo((long) threads * adds);
+    }
+
+    // Снимок читается через 90 секунд: ячейки, выпавшие за это время из окон, отбрасываются
+    @Test
+    void restoresSnapshotShiftedToNewTime() throws IOException {
+        SlidingWindowCounter counter = new SlidingWindowCounter();
+        counter.add(NOW - 10, 1);
+        counter.add(NOW - 200, 2);
+        counter.add(NOW - 250, 4);
+        counter.add(NOW - 59 * 60, 8);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        counter.writeTo(new DataOutputStream(bytes), NOW);
+
+        long later = NOW + 90;
+        SlidingWindowCounter restored = SlidingWindowCounter.readFrom(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), NOW, later);
+
+        assertThat(restored.getLastSecond()).isEqualTo(NOW - 10);
+        assertThat(restored.sumSeconds(later, SlidingWindowCounter.SECONDS)).isEqualTo(3);
+        assertThat(restored.sumMinutes(later, SlidingWindowCounter.MINUTES)).isEqualTo(7);
+    }
+}
@@ -0,0 +1,158 @@
+package ru.practicum.ewm.wal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.practicum.ewm.mapper.IpAddressMapper;
+import ru.practicum.ewm.model.Hit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Маленькие сегменты, чтобы записи переходили через их границы
+class HitLogTest {
+    private static final int SEGMENT_SIZE = 256;
+    private static final LocalDateTime TIME = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsBackAcrossSegments() throws IOException {
+        List<Hit> hits = hits(0, 100);
+        List<Long> positions = new ArrayList<>();
+        try (HitLog log = new HitLog(dir, SEGMENT_SIZE, false)) {
+            hits.forEach(hit -> positions.add(log.append(hit)));
+
+            assertThat(segments()).hasSizeGreaterThan(10);
+            List<Hit> read = new ArrayList<>();
+            List<Long> ends = new ArrayList<>();
+            long position = 0;
+            while (position < log.getWritePosition()) {
+                HitLog.Batch batch = log.read(position, 7);
+                assertThat(batch.hits()).hasSizeLessThanOrEqualTo(7).hasSameSizeAs(batch.ends());
+                read.addAll(batch.hits());
+                ends.addAll(batch.ends());
+                position = batch.next();
+            }
+
+            assertThat(describe(read)).isEqualTo(describe(hits));
+            assertThat(ends).isEqualTo(positions);
+            assertThat(log.pending()).isEqualTo(log.getWritePosition());
+        }
+    }
+
+    // После перезапуска читаются все записи от сохранённой позиции, новые дописываются за ними
+    @Test
+    void recoversAfterReopen() throws IOException {
+        long written;
+        try (HitLog log = new HitLog(dir, SEGMENT_SIZE, true)) {
+            hits(0, 20).forEach(log::append);
+            written = log.getWritePosition();
+        }
+
+        try (HitLog log = new HitLog(dir, SEGMENT_SIZE, false)) {
+            assertThat(log.getWritePosition()).isEqualTo(written);
+            log.append(hits(20, 21).get(0));
+
+            assertThat(describe(readAll(log, 0))).isEqualTo(describe(hits(0, 21)));
+        }
+    }
+
+    // Оборванная при сбое последняя запись не проходит проверку CRC и отбрасывается вместе с хвостом сегмента
+    @Test
+    void dropsTornLastRecord() throws IOException {
+        long beforeLast;
+        long written;
+        try (HitLog log = new HitLog(dir, 4096, false)) {
+            hits(0, 9).forEach(log::append);
+            beforeLast = log.getWritePosition();
+            log.append(hits(9, 10).get(0));
+            written = log.getWritePosition();
+        }
+        try (FileChannel channel = FileChannel.open(segments().get(0), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0x55, 0x55}), written - 4);
+        }
+
+        try (HitLog log = new HitLog(dir, 4096, false)) {
+            assertThat(log.getWritePosition()).isEqualTo(beforeLast);
+            assertThat(describe(readAll(log, 0))).isEqualTo(describe(hits(0, 9)));
+            log.append(hits(50, 51).get(0));
+
+            List<Hit> expected = hits(0, 9);
+            expected.addAll(hits(50, 51));
+            assertThat(describe(readAll(log, 0))).isEqualTo(describe(expected));
+        }
+    }
+
+    // Checkpoint удаляет целиком применённые сегменты, перезапуск продолжает с него
+    @Test
+    void resumesFromCheckpoint() throws IOException {
+        List<Long> positions = new ArrayList<>();
+        try (HitLog log = new HitLog(dir, SEGMENT_SIZE, false)) {
+            hits(0, 100).forEach(hit -> positions.add(log.append(hit)));
+            int before = segments().size();
+
+            log.checkpoint(positions.get(49));
+
+            assertThat(segments()).hasSizeLessThan(before);
+            assertThat(log.pending()).isEqualTo(positions.get(99) - positions.get(49));
+        }
+
+        try (HitLog log = new HitLog(dir, SEGMENT_SIZE, false)) {
+            assertThat(log.getCheckpoint()).isEqualTo(positions.get(49));
+            assertThat(describe(readAll(log, log.getCheckpoint()))).isEqualTo(describe(hits(50, 100)));
+        }
+    }
+
+    private static List<Hit> readAll(HitLog log, long from) {
+        List<Hit> hits = new ArrayList<>();
+        long position = from;
+        while (position < log.getWritePosition()) {
+            HitLog.Batch batch = log.read(position, 1000);
+            hits.addAll(batch.hits());
+            position = batch.next();
+        }
+        return hits;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.toString().endsWith(".wal")).sorted().toList();
+        }
+    }
+
+    // Каждый третий запрос - с IPv6, uri разной длины и с не-ASCII символами
+    private static List<Hit> hits(int from, int to) {
+        List<Hit> hits = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            Hit hit = new Hit();
+            hit.setApp("ewm-main-service");
+            hit.setUri("/events/" + i + "/".repeat(i % 13) + (i % 5 == 0 ? "/поиск" : ""));
+            hit.setTimestamp(TIME.plusSeconds(i));
+            if (i % 3 == 0) {
+                hit.setIp6(IpAddressMapper.parseIpv6("2001:db8::" + Integer.toHexString(i)));
+            } else {
+                hit.setIp4(0xc0a80000 + i);
+            }
+            hits.add(hit);
+        }
+        return hits;
+    }
+
+    private static List<String> describe(List<Hit> hits) {
+        return hits.stream()
+                .map(hit -> hit.getApp() + " " + hit.getUri() + " " + hit.getTimestamp() + " "
+                        + IpAddressMapper.format(hit.getIp4(), hit.getIp6()))
+                .toList();
+    }
+}